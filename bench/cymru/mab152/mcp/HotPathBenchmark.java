@@ -0,0 +1,214 @@
+package cymru.mab152.mcp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the lookups and allocations done for every transaction at the gates, on SyntheticParkings
+ * of several sizes and occupancies (JMH parameters), reporting the time and the bytes allocated per operation.
+ * An O(1), allocation-free path shows the same numbers at every size.
+ * <p>
+ * The operations:<br>
+ * <b>duplicatePlateCheck</b> -- looking up an arriving license plate, as the console does before
+ * asking for the rest (a plate that isn't parked)<br>
+ * <b>receiptLookup</b> -- finding the ParkingSpace of a ParkingReceipt, as collect() and pay() do<br>
+ * <b>chooseRandomSpace</b> -- the default AllocationStrategy picking a free ParkingSpace<br>
+ * <b>getParkingSpaceById</b><br>
+ * <b>getNumberOfFreeSpaces</b> -- the free spaces of every ParkingZone, as the display boards get them<br>
+ * <b>issueExitToken</b> -- generating a new ExitToken (removed straight away, so their number stays the same)<br>
+ * <b>exitTokenValidation</b> -- finding an ExitToken and checking it's still valid, as exit() does
+ * <p>
+ * The times are averages per operation. For percentiles, run with "-bm sample": JMH then times single calls,
+ * so for operations this short they include the timer's own overhead (a few tens of nanoseconds).
+ * <p>
+ * Usage (compiled as described in PersistenceBenchmark; main() adds the GC profiler, "-prof gc",
+ * and takes the other JMH options, i.e. <code>-p spaces=100000 -p occupancy=0.9</code>):<br>
+ * <code>java -cp out/bench:out/production/mab152_mcp:lib/json-simple-1.1.jar:"lib/jmh/*"
+ * cymru.mab152.mcp.HotPathBenchmark</code>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(2)
+public class HotPathBenchmark {
+
+    private static final int KEYS = 1024; // a power of two
+
+    @Param({"1000", "10000", "100000"})
+    int spaces;
+
+    @Param({"0.1", "0.5", "0.9"})
+    double occupancy;
+
+    private Parking parking;
+    private ParkingService service;
+    private final String[] absentPlates = new String[KEYS];
+    private final int[] receiptIds = new int[KEYS];
+    private final String[] parkingSpaceIds = new String[KEYS];
+    private final int[] exitTokens = new int[KEYS];
+    private Vehicle arriving;
+    private int next;
+
+    /**
+     * Builds the Parking and picks the keys the operations look up, at random; they're used in turns.
+     *
+     * @throws Throwable thrown if the Parking cannot be built
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        parking = SyntheticParking.build(spaces, occupancy, spaces);
+        service = new ParkingService(parking);
+        Random random = new Random(spaces);
+
+        ArrayList<ParkingSpace> all = new ArrayList<>();
+        ArrayList<Vehicle> vehicles = new ArrayList<>();
+        for (ParkingZone pz : parking.getParkingZones()) {
+            for (ParkingSpace ps : pz.getListOfParkingSpaces()) {
+                all.add(ps);
+                if (ps.getVehicle() != null) {
+                    vehicles.add(ps.getVehicle());
+                }
+            }
+        }
+        ArrayList<ExitToken> tokens = new ArrayList<>(parking.getExitTokens());
+
+        for (int i = 0; i < KEYS; i++) {
+            absentPlates[i] = "NEW" + i;
+            receiptIds[i] = vehicles.isEmpty() ? -1
+                    : vehicles.get(random.nextInt(vehicles.size())).getParkingReceipt().getId();
+            parkingSpaceIds[i] = all.get(random.nextInt(all.size())).getID();
+            exitTokens[i] = tokens.isEmpty() ? -1 : tokens.get(random.nextInt(tokens.size())).getId();
+        }
+        // Zone "A" takes STANDARD Vehicles
+        arriving = new Vehicle("NEW", SyntheticParking.heightOf(VehicleType.STANDARD),
+                SyntheticParking.lengthOf(VehicleType.STANDARD), VehicleType.STANDARD);
+    }
+
+    /**
+     * Stops the event delivery of the Parking.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        parking.getEventBus().close();
+    }
+
+    /**
+     * Returns the index of the next key to use.
+     */
+    private int next() {
+        return next++ & (KEYS - 1);
+    }
+
+    /**
+     * Looks up a license plate that isn't parked.
+     *
+     * @return whether it's free to park
+     */
+    @Benchmark
+    public boolean duplicatePlateCheck() {
+        return parking.getParkingSpaceByLicensePlate(absentPlates[next()]) == null;
+    }
+
+    /**
+     * Finds the ParkingSpace of a ParkingReceipt.
+     *
+     * @return the ParkingSpace
+     */
+    @Benchmark
+    public ParkingSpace receiptLookup() {
+        return parking.getParkingSpaceByReceiptId(receiptIds[next()]);
+    }
+
+    /**
+     * Lets the default AllocationStrategy pick a free ParkingSpace.
+     *
+     * @return the ParkingSpace
+     * @throws Throwable thrown if there are no free ParkingSpaces
+     */
+    @Benchmark
+    public ParkingSpace chooseRandomSpace() throws Throwable {
+        return parking.getAllocationStrategy().choose(arriving, parking.getParkingZones());
+    }
+
+    /**
+     * Finds a ParkingSpace by its ID.
+     *
+     * @return the ParkingSpace
+     */
+    @Benchmark
+    public ParkingSpace getParkingSpaceById() {
+        return parking.getParkingSpaceById(parkingSpaceIds[next()]);
+    }
+
+    /**
+     * Counts the free ParkingSpaces of every ParkingZone.
+     *
+     * @return the counts
+     */
+    @Benchmark
+    public LinkedHashMap<String, Integer> getNumberOfFreeSpaces() {
+        return service.getNumberOfFreeSpaces();
+    }
+
+    /**
+     * Issues an ExitToken and removes it again.
+     *
+     * @return the ExitToken
+     * @throws Throwable thrown if no ExitToken can be issued
+     */
+    @Benchmark
+    public ExitToken issueExitToken() throws Throwable {
+        ExitToken et = parking.issueExitToken();
+        parking.removeExitToken(et);
+        return et;
+    }
+
+    /**
+     * Finds an ExitToken and checks that it's still valid.
+     *
+     * @return whether the Vehicle can exit
+     */
+    @Benchmark
+    public boolean exitTokenValidation() {
+        ExitToken et = parking.getExitToken(exitTokens[next()]);
+        return et != null && et.canExit(new Date());
+    }
+
+    /**
+     * Runs the benchmarks with the GC profiler, so the bytes allocated per operation are reported too.
+     *
+     * @param args JMH command line options
+     * @throws Throwable thrown if the options are invalid or the run fails
+     */
+    public static void main(String[] args) throws Throwable {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(HotPathBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,107 @@
+package cymru.mab152.mcp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks Parking.save() and Parking.load() on synthetic databases of several sizes, so a new storage
+ * engine or serializer can be compared with the JSON database before it's used.
+ * <p>
+ * For every size a SyntheticParking is built and saved once to a temporary file; then save() rewrites that
+ * file and load() reads it into a new Parking. Every call is timed on its own (Mode.SampleTime), so the
+ * percentiles JMH prints are those of single saves and loads. Add "-prof gc" for the allocation and GCs.
+ * The sizes and the occupancy are JMH parameters; the 1M spaces database needs a few GB of heap,
+ * i.e. <code>-p spaces=1000000 -jvmArgsAppend -Xmx4g</code>.
+ * <p>
+ * Usage (from the project directory, with the application compiled to out/production/mab152_mcp; the JMH
+ * annotation processor in lib/jmh generates the benchmark code):<br>
+ * <code>javac -cp out/production/mab152_mcp:lib/json-simple-1.1.jar:"lib/jmh/*"
+ * -d out/bench bench/cymru/mab152/mcp/*.java</code><br>
+ * <code>java -cp out/bench:out/production/mab152_mcp:lib/json-simple-1.1.jar:"lib/jmh/*"
+ * org.openjdk.jmh.Main PersistenceBenchmark</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PersistenceBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int spaces;
+
+    @Param({"0.5"})
+    double occupancy;
+
+    private Parking parking;
+    private File file;
+
+    /**
+     * Builds the Parking and saves it once, so there's a database to load.
+     *
+     * @throws Throwable thrown if the Parking cannot be built or saved
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        parking = SyntheticParking.build(spaces, occupancy, spaces);
+        file = File.createTempFile("mcp-benchmark-" + spaces + "-", ".json");
+        file.deleteOnExit();
+        parking.save(file.getPath());
+    }
+
+    /**
+     * Deletes the database.
+     *
+     * @throws IOException thrown if it cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        parking.getEventBus().close();
+        if (!file.delete()) {
+            throw new IOException("The benchmark database cannot be deleted: " + file.getPath());
+        }
+    }
+
+    /**
+     * Rewrites the database.
+     *
+     * @return the Parking saved
+     * @throws Throwable thrown if it cannot be saved
+     */
+    @Benchmark
+    public Parking save() throws Throwable {
+        parking.save(file.getPath());
+        return parking;
+    }
+
+    /**
+     * Reads the database into a new Parking.
+     *
+     * @return the Parking loaded
+     * @throws Throwable thrown if it cannot be loaded
+     */
+    @Benchmark
+    public Parking load() throws Throwable {
+        Parking loaded = new Parking();
+        loaded.load(file.getPath());
+        loaded.getEventBus().close();
+        return loaded;
+    }
+
+}
@@ -0,0 +1,130 @@
+package cymru.mab152.mcp;
+
+import cymru.mab152.mcp.exception.ParkingSpaceOccupiedException;
+import cymru.mab152.mcp.exception.ParkingZoneMismatchException;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * Builds synthetic Parkings of any size for the benchmarks.
+ * <p>
+ * The ParkingSpaces are split between ZONES ParkingZones ("A" - "J"), each accepting one VehicleType in turns.
+ * A share of the ParkingSpaces (picked at random, but the same for the same seed) is taken by Vehicles
+ * of the right type, every one with a ParkingReceipt; one in ten Drivers is disabled.
+ * For every ten Vehicles there's an unused ExitToken (up to MAX_EXIT_TOKENS, as tokens have four digits).
+ */
+public class SyntheticParking {
+
+    static final int ZONES = 10;
+    static final int MAX_EXIT_TOKENS = 4000;
+    private static final VehicleType[] TYPES = {VehicleType.STANDARD, VehicleType.HIGHER, VehicleType.LONGER,
+            VehicleType.COACH, VehicleType.MOTORBIKE};
+
+    /**
+     * The constructor for SyntheticParking objects. There are none, it only has static methods.
+     */
+    private SyntheticParking() {
+    }
+
+    /**
+     * Builds a Parking in memory.
+     *
+     * @param spaces number of ParkingSpaces (at least ZONES)
+     * @param occupancy share of the ParkingSpaces taken (0.0 - 1.0)
+     * @param seed seed of the random choices
+     * @return the Parking
+     * @throws ParkingZoneMismatchException thrown if a ParkingSpace doesn't match its ParkingZone
+     * @throws ParkingSpaceOccupiedException thrown if a ParkingSpace is taken twice
+     */
+    static Parking build(int spaces, double occupancy, long seed)
+            throws ParkingZoneMismatchException, ParkingSpaceOccupiedException {
+        Parking parking = new Parking();
+        parking.setName("Synthetic Parking " + spaces);
+        Random random = new Random(seed);
+
+        int zones = Math.min(ZONES, Math.max(1, spaces));
+        ArrayList<ParkingSpace> all = new ArrayList<>(spaces);
+        for (int z = 0; z < zones; z++) {
+            String zoneId = String.valueOf((char) ('A' + z));
+            ArrayList<VehicleType> acceptedVehicles = new ArrayList<>();
+            acceptedVehicles.add(TYPES[z % TYPES.length]);
+            ParkingZone pz = new ParkingZone(zoneId, 1.0f + z % 3, acceptedVehicles);
+
+            // The first zones get the rest of the division
+            int zoneSpaces = spaces / zones + ((z < spaces % zones) ? 1 : 0);
+            ArrayList<ParkingSpace> parkingSpaces = new ArrayList<>(zoneSpaces);
+            for (int s = 1; s <= zoneSpaces; s++) {
+                parkingSpaces.add(new ParkingSpace(zoneId + s));
+            }
+            pz.addParkingSpace(parkingSpaces);
+            parking.addParkingZone(pz);
+            all.addAll(parkingSpaces);
+        }
+
+        int vehicles = (int) Math.round(spaces * Math.min(Math.max(occupancy, 0.0), 1.0));
+        int receiptId = parking.reserveReceiptIds(vehicles);
+        // A partial Fisher-Yates shuffle picks the ParkingSpaces taken
+        for (int i = 0; i < vehicles; i++) {
+            int j = i + random.nextInt(all.size() - i);
+            ParkingSpace ps = all.get(j);
+            all.set(j, all.get(i));
+            all.set(i, ps);
+
+            VehicleType vt = TYPES[(ps.getParkingZone().getId().charAt(0) - 'A') % TYPES.length];
+            Vehicle v = new Vehicle(licensePlateOf(i), heightOf(vt), lengthOf(vt), vt);
+            v.setParkingReceipt(new ParkingReceipt(receiptId++, new Date(), random.nextInt(10) == 0));
+            parking.registerLicensePlate(v);
+            v.parkIn(ps);
+            parking.registerParkingReceipt(v, ps);
+        }
+
+        for (int i = 0; i < Math.min(vehicles / 10, MAX_EXIT_TOKENS); i++) {
+            parking.issueExitToken();
+        }
+        return parking;
+    }
+
+    /**
+     * Returns the license plate of the n-th synthetic Vehicle.
+     *
+     * @param n number of the Vehicle
+     * @return its license plate
+     */
+    static String licensePlateOf(int n) {
+        return "SYN" + n;
+    }
+
+    /**
+     * Returns a height that fits a VehicleType.
+     *
+     * @param vt the VehicleType
+     * @return height in metres
+     */
+    static float heightOf(VehicleType vt) {
+        switch (vt) {
+            case HIGHER: return 2.5f;
+            case LONGER: return 2.5f;
+            case COACH: return 3.5f;
+            case MOTORBIKE: return 1.2f;
+            default: return 1.5f;
+        }
+    }
+
+    /**
+     * Returns a length that fits a VehicleType.
+     *
+     * @param vt the VehicleType
+     * @return length in metres
+     */
+    static float lengthOf(VehicleType vt) {
+        switch (vt) {
+            case LONGER: return 5.5f;
+            case COACH: return 12.0f;
+            case MOTORBIKE: return 2.0f;
+            default: return 4.5f;
+        }
+    }
+
+}
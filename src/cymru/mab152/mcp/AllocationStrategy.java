@@ -0,0 +1,87 @@
+package cymru.mab152.mcp;
+
+import cymru.mab152.mcp.exception.NoFreeParkingSpacesException;
+
+import java.util.List;
+
+/**
+ * Decides which free ParkingSpace an arriving Vehicle is parked in.
+ * <p>
+ * Strategies only pick a candidate -- the Vehicle still has to claim it, and if another gate
+ * got there first, the strategy is simply asked again. They are chosen by name in the database
+ * ("allocation"), see forName().
+ */
+public interface AllocationStrategy {
+
+    /**
+     * Returns the strategy for the name used in the database.
+     *
+     * @param name "random", "first-fit", "nearest-to-exit", "least-loaded" or "best-fit"
+     *             (null for the default, random)
+     * @return a new strategy
+     * @throws IllegalArgumentException thrown if there's no strategy with that name
+     */
+    static AllocationStrategy forName(String name) throws IllegalArgumentException {
+        if (name == null) {
+            return new RandomAllocation();
+        }
+        switch (name) {
+            case RandomAllocation.NAME:
+                return new RandomAllocation();
+            case FirstFitAllocation.NAME:
+                return new FirstFitAllocation();
+            case NearestToExitAllocation.NAME:
+                return new NearestToExitAllocation();
+            case LeastLoadedAllocation.NAME:
+                return new LeastLoadedAllocation();
+            case BestFitAllocation.NAME:
+                return new BestFitAllocation();
+            default:
+                throw new IllegalArgumentException("Unknown allocation strategy: " + name);
+        }
+    }
+
+    /**
+     * Returns the name the strategy is saved under.
+     *
+     * @return name of the strategy
+     */
+    String getName();
+
+    /**
+     * Sets the ParkingZones to choose from. Called when the strategy is installed
+     * and whenever a ParkingZone is added.
+     *
+     * @param zones all ParkingZones of the Parking
+     */
+    default void setParkingZones(List<ParkingZone> zones) {
+    }
+
+    /**
+     * Called whenever a ParkingSpace is claimed or released. Calls for the same space may overlap,
+     * so a strategy keeping its own index of the free spaces must re-check the space's state after updating it.
+     *
+     * @param ps the ParkingSpace
+     */
+    default void onSpaceChanged(ParkingSpace ps) {
+    }
+
+    /**
+     * Called whenever the number of free ParkingSpaces of a ParkingZone changes.
+     *
+     * @param pz the ParkingZone
+     */
+    default void onFreeSpacesChanged(ParkingZone pz) {
+    }
+
+    /**
+     * Picks a free ParkingSpace for the Vehicle.
+     *
+     * @param v Vehicle to be parked
+     * @param zones all ParkingZones of the Parking
+     * @return a free ParkingSpace that accepts the Vehicle
+     * @throws NoFreeParkingSpacesException thrown if there are no free ParkingSpaces for the Vehicle
+     */
+    ParkingSpace choose(Vehicle v, List<ParkingZone> zones) throws NoFreeParkingSpacesException;
+
+}
@@ -0,0 +1,72 @@
+package cymru.mab152.mcp;
+
+/**
+ * The result of one arrival in a batch -- either a ParkResult or the reason it couldn't be parked.
+ */
+public class BatchParkResult {
+
+    private final String licensePlate;
+    private final ParkResult parkResult; // null if the Vehicle couldn't be parked
+    private final Throwable error; // null if the Vehicle has been parked
+
+    /**
+     * The constructor for BatchParkResult objects of parked Vehicles.
+     *
+     * @param lp vehicle's license plate
+     * @param parkResult info about the parked Vehicle
+     */
+    BatchParkResult(String lp, ParkResult parkResult) {
+        this.licensePlate = lp;
+        this.parkResult = parkResult;
+        this.error = null;
+    }
+
+    /**
+     * The constructor for BatchParkResult objects of Vehicles that couldn't be parked.
+     *
+     * @param lp vehicle's license plate
+     * @param error the exception thrown while parking
+     */
+    BatchParkResult(String lp, Throwable error) {
+        this.licensePlate = lp;
+        this.parkResult = null;
+        this.error = error;
+    }
+
+    /**
+     * Returns Vehicle's license plate.
+     *
+     * @return vehicle's license plate
+     */
+    String getLicensePlate() {
+        return this.licensePlate;
+    }
+
+    /**
+     * Returns a boolean whether the Vehicle has been parked.
+     *
+     * @return TRUE if the Vehicle has been parked
+     */
+    boolean isParked() {
+        return this.parkResult != null;
+    }
+
+    /**
+     * Returns info about the parked Vehicle.
+     *
+     * @return the ParkResult or null if the Vehicle couldn't be parked
+     */
+    ParkResult getParkResult() {
+        return this.parkResult;
+    }
+
+    /**
+     * Returns the reason the Vehicle couldn't be parked.
+     *
+     * @return the exception or null if the Vehicle has been parked
+     */
+    Throwable getError() {
+        return this.error;
+    }
+
+}
@@ -0,0 +1,197 @@
+package cymru.mab152.mcp;
+
+import cymru.mab152.mcp.exception.NoFreeParkingSpacesException;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Parks the Vehicle in the smallest free ParkingSpace it fits into, by the spaces' maximum height and length,
+ * so the large spaces stay free for large Vehicles on busy days.
+ * <p>
+ * The free spaces with dimensions are kept in a sorted index by (height, length). The smallest space
+ * that fits is found by jumping through the index, one look-up per distinct height that's too short in length.
+ * ParkingSpaces without dimensions are only used if none of the others fits, by the VehicleTypes of their
+ * ParkingZones, nearest to the exit first.
+ */
+public class BestFitAllocation implements AllocationStrategy {
+
+    static final String NAME = "best-fit";
+
+    private volatile ConcurrentSkipListMap<FitKey, ParkingSpace> sized;
+    private volatile HashMap<ParkingZone, ConcurrentSkipListMap<Long, ParkingSpace>> unsized; // by ParkingSpace.getRank()
+
+    /**
+     * The constructor for BestFitAllocation objects.
+     */
+    BestFitAllocation() {
+        this.sized = new ConcurrentSkipListMap<>();
+        this.unsized = new HashMap<>();
+    }
+
+    /**
+     * Returns the name the strategy is saved under.
+     *
+     * @return name of the strategy
+     */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Builds the indexes of the free ParkingSpaces.
+     *
+     * @param zones all ParkingZones of the Parking
+     */
+    @Override
+    public synchronized void setParkingZones(List<ParkingZone> zones) {
+        ConcurrentSkipListMap<FitKey, ParkingSpace> newSized = new ConcurrentSkipListMap<>();
+        HashMap<ParkingZone, ConcurrentSkipListMap<Long, ParkingSpace>> newUnsized = new HashMap<>();
+        for (ParkingZone pz : zones) {
+            ConcurrentSkipListMap<Long, ParkingSpace> zoneUnsized = new ConcurrentSkipListMap<>();
+            for (ParkingSpace ps : pz.getListOfParkingSpaces()) {
+                if (!ps.isAvailable()) {
+                    continue;
+                }
+                if (ps.hasDimensions()) {
+                    newSized.put(new FitKey(ps), ps);
+                } else {
+                    zoneUnsized.put(ps.getRank(), ps);
+                }
+            }
+            newUnsized.put(pz, zoneUnsized);
+        }
+        this.sized = newSized;
+        this.unsized = newUnsized;
+    }
+
+    /**
+     * Adds the ParkingSpace to the indexes or removes it, depending on whether it's free.
+     * Another call for the same space may overlap with this one and act on an older state, so the state
+     * is read again afterwards -- if it has changed, the index is updated again.
+     *
+     * @param ps the ParkingSpace
+     */
+    @Override
+    public void onSpaceChanged(ParkingSpace ps) {
+        boolean available;
+        if (ps.hasDimensions()) {
+            FitKey key = new FitKey(ps);
+            do {
+                available = ps.isAvailable();
+                if (available) {
+                    sized.put(key, ps);
+                } else {
+                    sized.remove(key, ps);
+                }
+            } while (ps.isAvailable() != available);
+            return;
+        }
+        ConcurrentSkipListMap<Long, ParkingSpace> zoneUnsized = unsized.get(ps.getParkingZone());
+        if (zoneUnsized != null) {
+            do {
+                available = ps.isAvailable();
+                if (available) {
+                    zoneUnsized.put(ps.getRank(), ps);
+                } else {
+                    zoneUnsized.remove(ps.getRank(), ps);
+                }
+            } while (ps.isAvailable() != available);
+        }
+    }
+
+    /**
+     * Picks the smallest free ParkingSpace the Vehicle fits into.
+     *
+     * @param v Vehicle to be parked
+     * @param zones all ParkingZones of the Parking
+     * @return a free ParkingSpace that accepts the Vehicle
+     * @throws NoFreeParkingSpacesException thrown if there are no free ParkingSpaces for the Vehicle
+     */
+    @Override
+    public ParkingSpace choose(Vehicle v, List<ParkingZone> zones) throws NoFreeParkingSpacesException {
+        float length = v.getLength();
+
+        // The first space at least as high, then -- if it's too short -- the first long enough one of that height.
+        // A Vehicle without dimensions can't be fitted by them, so it only gets a space of its VehicleType
+        Map.Entry<FitKey, ParkingSpace> entry = (v.getHeight() > 0 && length > 0)
+                ? sized.ceilingEntry(FitKey.probe(v.getHeight(), length)) : null;
+        while (entry != null) {
+            if (entry.getKey().length >= length) {
+                return entry.getValue();
+            }
+            entry = sized.ceilingEntry(FitKey.probe(entry.getKey().height, length));
+        }
+
+        // None of the spaces with dimensions fits -- use one without
+        VehicleType vt = v.getVehicleType();
+        HashMap<ParkingZone, ConcurrentSkipListMap<Long, ParkingSpace>> currentUnsized = unsized;
+        for (ParkingZone pz : zones) {
+            ConcurrentSkipListMap<Long, ParkingSpace> zoneUnsized = currentUnsized.get(pz);
+            if (zoneUnsized != null && pz.isVehicleAccepted(vt)) {
+                Map.Entry<Long, ParkingSpace> unsizedEntry = zoneUnsized.firstEntry();
+                if (unsizedEntry != null) {
+                    return unsizedEntry.getValue();
+                }
+            }
+        }
+        throw new NoFreeParkingSpacesException("There are no free parking spaces! Try again later.");
+    }
+
+    /**
+     * Orders the ParkingSpaces by height, then length, then distance to the exit.
+     */
+    private static final class FitKey implements Comparable<FitKey> {
+        private final float height;
+        private final float length;
+        private final int distance;
+        private final String id; // ParkingSpace IDs are unique within the Parking
+
+        private FitKey(float height, float length, int distance, String id) {
+            this.height = height;
+            this.length = length;
+            this.distance = distance;
+            this.id = id;
+        }
+
+        private FitKey(ParkingSpace ps) {
+            this(ps.getMaxHeight(), ps.getMaxLength(), ps.getDistance(), ps.getID());
+        }
+
+        /**
+         * Returns a key that sorts before all spaces of the given height and length.
+         */
+        private static FitKey probe(float height, float length) {
+            return new FitKey(height, length, Integer.MIN_VALUE, "");
+        }
+
+        @Override
+        public int compareTo(FitKey other) {
+            int c = Float.compare(height, other.height);
+            if (c == 0) {
+                c = Float.compare(length, other.length);
+            }
+            if (c == 0) {
+                c = Integer.compare(distance, other.distance);
+            }
+            if (c == 0) {
+                c = id.compareTo(other.id);
+            }
+            return c;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof FitKey && compareTo((FitKey) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+    }
+
+}
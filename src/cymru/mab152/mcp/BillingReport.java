@@ -0,0 +1,118 @@
+package cymru.mab152.mcp;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * The result of a BillingRun: revenue accrued by the Vehicles still parked, by ParkingZone and VehicleType.
+ * All amounts are in pence.
+ */
+public class BillingReport {
+
+    private final long asOfMillis;
+    private final long snapshotVersion;
+    private final String[] zoneIds;
+    private final long[] pence; // [zone * number of types + type]
+    private final long[] vehicles;
+
+    /**
+     * The constructor for BillingReport objects.
+     *
+     * @param asOfMillis the time the stays were priced at (epoch milliseconds)
+     * @param snapshotVersion version of the ParkingSnapshot the stays were read from
+     * @param zoneIds IDs of the ParkingZones
+     * @param pence accrued revenue by zone and type
+     * @param vehicles number of Vehicles by zone and type
+     */
+    BillingReport(long asOfMillis, long snapshotVersion, String[] zoneIds, long[] pence, long[] vehicles) {
+        this.asOfMillis = asOfMillis;
+        this.snapshotVersion = snapshotVersion;
+        this.zoneIds = zoneIds;
+        this.pence = pence;
+        this.vehicles = vehicles;
+    }
+
+    /**
+     * Returns the revenue accrued in a ParkingZone by one VehicleType.
+     *
+     * @param zone index of the ParkingZone
+     * @param vt the VehicleType
+     * @return accrued revenue (in pence)
+     */
+    long getAccruedPence(int zone, VehicleType vt) {
+        return pence[zone * VehicleType.values().length + vt.ordinal()];
+    }
+
+    /**
+     * Returns the number of Vehicles of one VehicleType parked in a ParkingZone.
+     *
+     * @param zone index of the ParkingZone
+     * @param vt the VehicleType
+     * @return number of Vehicles
+     */
+    long getVehicles(int zone, VehicleType vt) {
+        return vehicles[zone * VehicleType.values().length + vt.ordinal()];
+    }
+
+    /**
+     * Returns the IDs of the ParkingZones, in the order used by the other methods.
+     *
+     * @return ParkingZone IDs
+     */
+    String[] getZoneIds() {
+        return this.zoneIds.clone();
+    }
+
+    /**
+     * Returns the revenue accrued by all Vehicles.
+     *
+     * @return accrued revenue (in pence)
+     */
+    long getTotalPence() {
+        long total = 0;
+        for (long p : pence) {
+            total += p;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of Vehicles billed.
+     *
+     * @return number of Vehicles
+     */
+    long getTotalVehicles() {
+        long total = 0;
+        for (long v : vehicles) {
+            total += v;
+        }
+        return total;
+    }
+
+    /**
+     * Writes the report as CSV, one line per ParkingZone and VehicleType with any Vehicles,
+     * followed by the total.
+     *
+     * @param out where to write the report
+     * @throws IOException thrown if the report cannot be written
+     */
+    void writeCsv(Appendable out) throws IOException {
+        out.append("# accrued revenue as of ").append(Instant.ofEpochMilli(asOfMillis).toString())
+                .append(" (snapshot ").append(String.valueOf(snapshotVersion)).append(")\n");
+        out.append("zone,vehicleType,vehicles,accrued\n");
+        VehicleType[] types = VehicleType.values();
+        for (int z = 0; z < zoneIds.length; z++) {
+            for (VehicleType vt : types) {
+                if (getVehicles(z, vt) == 0) {
+                    continue;
+                }
+                out.append(zoneIds[z]).append(',').append(vt.toString()).append(',')
+                        .append(String.valueOf(getVehicles(z, vt))).append(',')
+                        .append(PaymentSession.formatPence(getAccruedPence(z, vt))).append('\n');
+            }
+        }
+        out.append("TOTAL,,").append(String.valueOf(getTotalVehicles())).append(',')
+                .append(PaymentSession.formatPence(getTotalPence())).append('\n');
+    }
+
+}
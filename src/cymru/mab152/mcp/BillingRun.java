@@ -0,0 +1,141 @@
+package cymru.mab152.mcp;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The end-of-day billing job: prices every Vehicle still parked as if it left at a given time,
+ * and adds up the accrued revenue by ParkingZone and VehicleType.
+ * <p>
+ * The open stays are copied out of a ParkingSnapshot into flat arrays first, so the live ParkingReceipts
+ * are never touched (no endDate is set). The copies are then priced in parallel with fork-join,
+ * each task adding up its own totals, which are merged on the way back.
+ */
+public class BillingRun {
+
+    private static final int THRESHOLD = 4096; // stays priced by a single task
+
+    private final Tariff tariff;
+    private final long asOfMillis;
+    private final int types;
+
+    // The open stays, one index per Vehicle
+    private final long[] startMillis;
+    private final long[] pencePerHour;
+    private final int[] zoneIndex;
+    private final VehicleType[] vehicleType;
+    private final boolean[] isDisabled;
+
+    private BillingRun(Tariff tariff, long asOfMillis, int size) {
+        this.tariff = tariff;
+        this.asOfMillis = asOfMillis;
+        this.types = VehicleType.values().length;
+        this.startMillis = new long[size];
+        this.pencePerHour = new long[size];
+        this.zoneIndex = new int[size];
+        this.vehicleType = new VehicleType[size];
+        this.isDisabled = new boolean[size];
+    }
+
+    /**
+     * Prices all Vehicles parked at the given time.
+     *
+     * @param parking the Parking
+     * @param asOfMillis the time the stays are priced at (epoch milliseconds), i.e. midnight
+     * @return the report
+     */
+    static BillingReport run(Parking parking, long asOfMillis) {
+        ParkingSnapshot snapshot = parking.getSnapshot();
+        List<ParkingSnapshot.Zone> zones = snapshot.getZones();
+
+        int size = 0;
+        for (ParkingSnapshot.Zone zone : zones) {
+            size += zone.getSpaces().size() - zone.getNumberOfFreeSpaces();
+        }
+
+        // Copy the open stays (Vehicles parked after asOf aren't billed yet)
+        BillingRun billingRun = new BillingRun(parking.getTariff(), asOfMillis, size);
+        String[] zoneIds = new String[zones.size()];
+        int n = 0;
+        for (int z = 0; z < zones.size(); z++) {
+            ParkingSnapshot.Zone zone = zones.get(z);
+            zoneIds[z] = zone.getId();
+            long pence = ParkingService.toPence(zone.getPrice());
+            for (ParkingSnapshot.Space space : zone.getSpaces()) {
+                Vehicle v = space.getVehicle();
+                if (v == null) {
+                    continue;
+                }
+                ParkingReceipt pr = v.getParkingReceipt();
+                long start = pr.getStartDate().getTime();
+                if (start > asOfMillis) {
+                    continue;
+                }
+                billingRun.startMillis[n] = start;
+                billingRun.pencePerHour[n] = pence;
+                billingRun.zoneIndex[n] = z;
+                billingRun.vehicleType[n] = v.getVehicleType();
+                billingRun.isDisabled[n] = pr.isOwnerDisabled();
+                n++;
+            }
+        }
+
+        Totals totals = ForkJoinPool.commonPool().invoke(billingRun.new PriceTask(0, n, zoneIds.length));
+        return new BillingReport(asOfMillis, snapshot.getVersion(), zoneIds, totals.pence, totals.vehicles);
+    }
+
+    /**
+     * Accrued revenue and number of Vehicles, indexed by [zone * number of types + type].
+     */
+    private static class Totals {
+        private final long[] pence;
+        private final long[] vehicles;
+
+        private Totals(int cells) {
+            pence = new long[cells];
+            vehicles = new long[cells];
+        }
+
+        private Totals merge(Totals other) {
+            for (int i = 0; i < pence.length; i++) {
+                pence[i] += other.pence[i];
+                vehicles[i] += other.vehicles[i];
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Prices the stays in [from, to), splitting the range in half until it's small enough.
+     */
+    private class PriceTask extends RecursiveTask<Totals> {
+        private final int from, to, zones;
+
+        private PriceTask(int from, int to, int zones) {
+            this.from = from;
+            this.to = to;
+            this.zones = zones;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (to - from <= THRESHOLD) {
+                Totals totals = new Totals(zones * types);
+                for (int i = from; i < to; i++) {
+                    int cell = zoneIndex[i] * types + vehicleType[i].ordinal();
+                    totals.pence[cell] += tariff.pricePence(startMillis[i], asOfMillis, pencePerHour[i],
+                            vehicleType[i], isDisabled[i]);
+                    totals.vehicles[cell]++;
+                }
+                return totals;
+            }
+            int middle = (from + to) >>> 1;
+            PriceTask left = new PriceTask(from, middle, zones);
+            left.fork();
+            Totals right = new PriceTask(middle, to, zones).compute();
+            return left.join().merge(right);
+        }
+    }
+
+}
@@ -0,0 +1,30 @@
+package cymru.mab152.mcp;
+
+/**
+ * A request to collect a Vehicle, identified by its ParkingReceipt.
+ * Collecting only calculates the price -- the Vehicle leaves its ParkingSpace
+ * once the matching PaymentRequest has been accepted.
+ */
+public class CollectRequest {
+
+    private final int receiptId;
+
+    /**
+     * The constructor for CollectRequest objects.
+     *
+     * @param receiptId ID of the Vehicle's ParkingReceipt
+     */
+    CollectRequest(int receiptId) {
+        this.receiptId = receiptId;
+    }
+
+    /**
+     * Returns the ParkingReceipt's ID.
+     *
+     * @return ParkingReceipt id
+     */
+    int getReceiptId() {
+        return this.receiptId;
+    }
+
+}
@@ -0,0 +1,107 @@
+package cymru.mab152.mcp;
+
+/**
+ * The result of a CollectRequest: where the Vehicle is, how long it's been parked and the price to pay.
+ */
+public class CollectResult {
+
+    private final int receiptId;
+    private final String licensePlate;
+    private final String parkingSpaceId;
+    private final VehicleType vehicleType;
+    private final long minutesParked;
+    private final long pricePence;
+
+    /**
+     * The constructor for CollectResult objects.
+     *
+     * @param receiptId ID of the Vehicle's ParkingReceipt
+     * @param lp Vehicle's license plate
+     * @param psId ID of the ParkingSpace the Vehicle is parked in
+     * @param vt Vehicle's type
+     * @param minutesParked how long the Vehicle has been parked (in minutes)
+     * @param pricePence price to pay (in pence)
+     */
+    CollectResult(int receiptId, String lp, String psId, VehicleType vt, long minutesParked, long pricePence) {
+        this.receiptId = receiptId;
+        this.licensePlate = lp;
+        this.parkingSpaceId = psId;
+        this.vehicleType = vt;
+        this.minutesParked = minutesParked;
+        this.pricePence = pricePence;
+    }
+
+    /**
+     * Returns the ParkingReceipt's ID.
+     *
+     * @return ParkingReceipt id
+     */
+    int getReceiptId() {
+        return this.receiptId;
+    }
+
+    /**
+     * Returns Vehicle's license plate.
+     *
+     * @return vehicle's license plate
+     */
+    String getLicensePlate() {
+        return this.licensePlate;
+    }
+
+    /**
+     * Returns the ID of the ParkingSpace the Vehicle is parked in.
+     *
+     * @return ParkingSpace id
+     */
+    String getParkingSpaceId() {
+        return this.parkingSpaceId;
+    }
+
+    /**
+     * Returns Vehicle's type.
+     *
+     * @return vehicle type (enum)
+     */
+    VehicleType getVehicleType() {
+        return this.vehicleType;
+    }
+
+    /**
+     * Returns how long the Vehicle has been parked.
+     *
+     * @return minutes parked
+     */
+    long getMinutesParked() {
+        return this.minutesParked;
+    }
+
+    /**
+     * Returns the price to pay (in units).
+     *
+     * @return price to pay
+     */
+    float getPrice() {
+        return this.pricePence / 100.0f;
+    }
+
+    /**
+     * Returns the price to pay (in pence).
+     *
+     * @return price
+     */
+    long getPricePence() {
+        return this.pricePence;
+    }
+
+    /**
+     * Returns a boolean whether an Employee can collect the Vehicle for the Customer
+     * (not available for coaches and motorbikes).
+     *
+     * @return can the Vehicle be collected by an Employee
+     */
+    boolean canBeAssisted() {
+        return ParkingService.canBeAssisted(this.vehicleType);
+    }
+
+}
@@ -0,0 +1,169 @@
+package cymru.mab152.mcp;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a table in a simple columnar format, so a reader can load one column without parsing the others.
+ * <p>
+ * The file starts with "MCPCOL", a version byte (1), the number of columns and, for every column,
+ * its name (DataOutput.writeUTF) and type (a byte, ExportWriter.Type.ordinal()). Then come row groups
+ * of up to ROW_GROUP rows: the number of rows (an int), then every column as the number of its bytes (an int)
+ * followed by its values -- 8 bytes per LONG and DOUBLE, 1 per BOOLEAN, writeUTF per STRING.
+ * A row group of 0 rows ends the file. All numbers are big-endian.
+ * Only one row group is kept in memory at a time.
+ */
+public class ColumnarExportWriter implements ExportWriter {
+
+    static final String NAME = "columnar";
+    static final byte VERSION = 1;
+    private static final int ROW_GROUP = 8192;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+    private final Type[] types;
+    private final ByteArrayOutputStream[] buffers;
+    private final DataOutputStream[] columns;
+    private int column; // the next value's column
+    private int groupRows;
+    private long rows;
+
+    /**
+     * The constructor for ColumnarExportWriter objects. Writes the header.
+     *
+     * @param out where the table is written to
+     * @param names names of the columns
+     * @param types types of the columns
+     * @throws IOException thrown if the header cannot be written
+     */
+    ColumnarExportWriter(OutputStream out, String[] names, Type[] types) throws IOException {
+        if (names.length != types.length) {
+            throw new IllegalArgumentException("Every column needs a name and a type!");
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        this.types = types.clone();
+        this.buffers = new ByteArrayOutputStream[types.length];
+        this.columns = new DataOutputStream[types.length];
+        for (int i = 0; i < types.length; i++) {
+            buffers[i] = new ByteArrayOutputStream();
+            columns[i] = new DataOutputStream(buffers[i]);
+        }
+
+        this.out.writeBytes("MCPCOL");
+        this.out.writeByte(VERSION);
+        this.out.writeInt(names.length);
+        for (int i = 0; i < names.length; i++) {
+            this.out.writeUTF(names[i]);
+            this.out.writeByte(types[i].ordinal());
+        }
+    }
+
+    /**
+     * Adds a value to the LONG column.
+     *
+     * @param value the value
+     * @throws IOException thrown if it cannot be written
+     */
+    @Override
+    public void writeLong(long value) throws IOException {
+        next(Type.LONG).writeLong(value);
+    }
+
+    /**
+     * Adds a value to the DOUBLE column.
+     *
+     * @param value the value
+     * @throws IOException thrown if it cannot be written
+     */
+    @Override
+    public void writeDouble(double value) throws IOException {
+        next(Type.DOUBLE).writeDouble(value);
+    }
+
+    /**
+     * Adds a value to the BOOLEAN column.
+     *
+     * @param value the value
+     * @throws IOException thrown if it cannot be written
+     */
+    @Override
+    public void writeBoolean(boolean value) throws IOException {
+        next(Type.BOOLEAN).writeBoolean(value);
+    }
+
+    /**
+     * Adds a value to the STRING column.
+     *
+     * @param value the value (null is written as an empty String)
+     * @throws IOException thrown if it cannot be written
+     */
+    @Override
+    public void writeString(String value) throws IOException {
+        next(Type.STRING).writeUTF((value == null) ? "" : value);
+    }
+
+    /**
+     * Ends the row, writing the row group out once it's full.
+     *
+     * @throws IOException thrown if it cannot be written
+     */
+    @Override
+    public void endRow() throws IOException {
+        if (column != types.length) {
+            throw new IllegalStateException("The row doesn't have a value for every column!");
+        }
+        column = 0;
+        rows++;
+        if (++groupRows == ROW_GROUP) {
+            writeGroup();
+        }
+    }
+
+    /**
+     * Returns the number of rows written.
+     *
+     * @return number of rows
+     */
+    @Override
+    public long getRows() {
+        return this.rows;
+    }
+
+    /**
+     * Writes the last row group and the end of the file, and closes it.
+     *
+     * @throws IOException thrown if it cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (groupRows > 0) {
+                writeGroup();
+            }
+            out.writeInt(0);
+        } finally {
+            out.close();
+        }
+    }
+
+    private DataOutputStream next(Type type) {
+        if (column == types.length || types[column] != type) {
+            throw new IllegalStateException("The next column isn't a " + type + " column!");
+        }
+        return columns[column++];
+    }
+
+    private void writeGroup() throws IOException {
+        out.writeInt(groupRows);
+        for (ByteArrayOutputStream buffer : buffers) {
+            out.writeInt(buffer.size());
+            buffer.writeTo(out);
+            buffer.reset();
+        }
+        groupRows = 0;
+    }
+
+}
@@ -0,0 +1,148 @@
+package cymru.mab152.mcp;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a table as CSV (RFC 4180): a header line with the column names, then one line per row.
+ * Strings with commas, quotes or line breaks are quoted.
+ */
+public class CsvExportWriter implements ExportWriter {
+
+    static final String NAME = "csv";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Writer out;
+    private boolean isFirstValue;
+    private long rows;
+
+    /**
+     * The constructor for CsvExportWriter objects. Writes the header line.
+     *
+     * @param out where the table is written to
+     * @param columns names of the columns
+     * @throws IOException thrown if the header cannot be written
+     */
+    CsvExportWriter(OutputStream out, String[] columns) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.isFirstValue = true;
+        for (String column : columns) {
+            writeString(column);
+        }
+        this.out.write("\r\n");
+        this.isFirstValue = true;
+        this.rows = 0;
+    }
+
+    /**
+     * Writes a number.
+     *
+     * @param value the value
+     * @throws IOException thrown if it cannot be written
+     */
+    @Override
+    public void writeLong(long value) throws IOException {
+        separate();
+        out.write(Long.toString(value));
+    }
+
+    /**
+     * Writes a number.
+     *
+     * @param value the value
+     * @throws IOException thrown if it cannot be written
+     */
+    @Override
+    public void writeDouble(double value) throws IOException {
+        separate();
+        out.write(Double.toString(value));
+    }
+
+    /**
+     * Writes "true" or "false".
+     *
+     * @param value the value
+     * @throws IOException thrown if it cannot be written
+     */
+    @Override
+    public void writeBoolean(boolean value) throws IOException {
+        separate();
+        out.write(value ? "true" : "false");
+    }
+
+    /**
+     * Writes a String, quoted if needed.
+     *
+     * @param value the value (null is written as an empty field)
+     * @throws IOException thrown if it cannot be written
+     */
+    @Override
+    public void writeString(String value) throws IOException {
+        separate();
+        if (value == null) {
+            return;
+        }
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    /**
+     * Ends the line.
+     *
+     * @throws IOException thrown if it cannot be written
+     */
+    @Override
+    public void endRow() throws IOException {
+        out.write("\r\n");
+        isFirstValue = true;
+        rows++;
+    }
+
+    /**
+     * Returns the number of rows written (without the header).
+     *
+     * @return number of rows
+     */
+    @Override
+    public long getRows() {
+        return this.rows;
+    }
+
+    /**
+     * Flushes the buffer and closes the file.
+     *
+     * @throws IOException thrown if it cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void separate() throws IOException {
+        if (!isFirstValue) {
+            out.write(',');
+        }
+        isFirstValue = false;
+    }
+
+}
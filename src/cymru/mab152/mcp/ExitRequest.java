@@ -0,0 +1,28 @@
+package cymru.mab152.mcp;
+
+/**
+ * A request to open the exit barrier with an ExitToken.
+ */
+public class ExitRequest {
+
+    private final int token;
+
+    /**
+     * The constructor for ExitRequest objects.
+     *
+     * @param token ID of the ExitToken
+     */
+    ExitRequest(int token) {
+        this.token = token;
+    }
+
+    /**
+     * Returns the ExitToken's ID.
+     *
+     * @return token's id
+     */
+    int getToken() {
+        return this.token;
+    }
+
+}
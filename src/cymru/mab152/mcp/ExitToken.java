@@ -51,7 +51,8 @@ public class ExitToken {
     boolean canExit(Date currentDate) {
         long currentDateTimestamp = currentDate.getTime();
         long dateTimeStamp = this.date.getTime();
-        return currentDateTimestamp - dateTimeStamp > MINUTES_ALLOWED * 60;
+        // Timestamps are in milliseconds
+        return currentDateTimestamp - dateTimeStamp <= MINUTES_ALLOWED * 60 * 1000L;
     }
 
     /**
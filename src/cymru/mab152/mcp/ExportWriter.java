@@ -0,0 +1,109 @@
+package cymru.mab152.mcp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes one table of a ParkingExport, row by row, in a file format.
+ * <p>
+ * Values are written in the order of the columns, then the row is ended. Writers only keep a bounded
+ * buffer, so a table of any size is streamed to the file. They are chosen by name, see forName().
+ */
+public interface ExportWriter extends Closeable {
+
+    /**
+     * Types of the columns.
+     */
+    enum Type {
+        LONG, DOUBLE, BOOLEAN, STRING
+    }
+
+    /**
+     * Returns a writer for the name of a format.
+     *
+     * @param format "csv" or "columnar"
+     * @param out where the table is written to (closed with the writer)
+     * @param columns names of the columns
+     * @param types types of the columns
+     * @return a new writer
+     * @throws IOException thrown if the header cannot be written
+     * @throws IllegalArgumentException thrown if there's no format with that name
+     */
+    static ExportWriter forName(String format, OutputStream out, String[] columns, Type[] types)
+            throws IOException, IllegalArgumentException {
+        switch (format) {
+            case CsvExportWriter.NAME:
+                return new CsvExportWriter(out, columns);
+            case ColumnarExportWriter.NAME:
+                return new ColumnarExportWriter(out, columns, types);
+            default:
+                throw new IllegalArgumentException("Unknown export format: " + format);
+        }
+    }
+
+    /**
+     * Returns the extension of the files in a format.
+     *
+     * @param format "csv" or "columnar"
+     * @return file extension (without the dot)
+     * @throws IllegalArgumentException thrown if there's no format with that name
+     */
+    static String extensionOf(String format) throws IllegalArgumentException {
+        switch (format) {
+            case CsvExportWriter.NAME:
+                return "csv";
+            case ColumnarExportWriter.NAME:
+                return "col";
+            default:
+                throw new IllegalArgumentException("Unknown export format: " + format);
+        }
+    }
+
+    /**
+     * Writes the next value of the row.
+     *
+     * @param value the value of a LONG column
+     * @throws IOException thrown if it cannot be written
+     */
+    void writeLong(long value) throws IOException;
+
+    /**
+     * Writes the next value of the row.
+     *
+     * @param value the value of a DOUBLE column
+     * @throws IOException thrown if it cannot be written
+     */
+    void writeDouble(double value) throws IOException;
+
+    /**
+     * Writes the next value of the row.
+     *
+     * @param value the value of a BOOLEAN column
+     * @throws IOException thrown if it cannot be written
+     */
+    void writeBoolean(boolean value) throws IOException;
+
+    /**
+     * Writes the next value of the row.
+     *
+     * @param value the value of a STRING column
+     * @throws IOException thrown if it cannot be written
+     */
+    void writeString(String value) throws IOException;
+
+    /**
+     * Ends the row.
+     *
+     * @throws IOException thrown if it cannot be written
+     */
+    void endRow() throws IOException;
+
+    /**
+     * Returns the number of rows written.
+     *
+     * @return number of rows
+     */
+    long getRows();
+
+}
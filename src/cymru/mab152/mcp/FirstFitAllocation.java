@@ -0,0 +1,49 @@
+package cymru.mab152.mcp;
+
+import cymru.mab152.mcp.exception.NoFreeParkingSpacesException;
+
+import java.util.List;
+
+/**
+ * Fills the ParkingZones in the order they are listed in the database,
+ * each one from the ParkingSpace nearest to the exit.
+ * Zones further down the list stay empty for as long as possible (i.e. to be cleaned).
+ */
+public class FirstFitAllocation implements AllocationStrategy {
+
+    static final String NAME = "first-fit";
+
+    /**
+     * Returns the name the strategy is saved under.
+     *
+     * @return name of the strategy
+     */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Picks the nearest free ParkingSpace the Vehicle fits into, in the first ParkingZone that accepts it
+     * and has one.
+     *
+     * @param v Vehicle to be parked
+     * @param zones all ParkingZones of the Parking
+     * @return a free ParkingSpace that accepts the Vehicle
+     * @throws NoFreeParkingSpacesException thrown if there are no free ParkingSpaces for the Vehicle
+     */
+    @Override
+    public ParkingSpace choose(Vehicle v, List<ParkingZone> zones) throws NoFreeParkingSpacesException {
+        VehicleType vt = v.getVehicleType();
+        for (ParkingZone pz : zones) {
+            if (pz.getNumberOfFreeSpaces() > 0 && pz.isVehicleAccepted(vt)) {
+                ParkingSpace ps = pz.getNearestFreeParkingSpaceFor(v);
+                if (ps != null) {
+                    return ps;
+                }
+            }
+        }
+        throw new NoFreeParkingSpacesException("There are no free parking spaces! Try again later.");
+    }
+
+}
@@ -0,0 +1,269 @@
+package cymru.mab152.mcp;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds, so the slow outliers can be seen and not only the average.
+ * <p>
+ * The buckets are log-linear (like HdrHistogram's): every power of two is split into SUB_BUCKETS equal buckets,
+ * so a value is kept to within 1/SUB_BUCKETS (about 1.6%) of itself, from 1 ns up to MAX_NANOS (about 68 s;
+ * longer ones are counted as MAX_NANOS). Recording is an array increment and a few striped adds.
+ * The buckets are striped by thread, like a LongAdder, so the gates don't contend on the same cache lines;
+ * a stripe is only allocated once a thread records into it, and the stripes are merged when a Snapshot is taken.
+ * <p>
+ * A Snapshot is of everything recorded so far; an interval Snapshot is of what was recorded since the previous
+ * interval Snapshot. Snapshots are immutable and can be merged, i.e. over several operations or Parkings.
+ */
+public class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 6;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final long MAX_NANOS = (1L << 36) - 1;
+    static final int BUCKETS = bucketOf(MAX_NANOS) + 1;
+    // A power of two, at least the number of processors (up to 8)
+    private static final int STRIPES = Math.min(8,
+            Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final AtomicReferenceArray<AtomicLongArray> stripes; // null until first recorded into
+    private final LongAdder count;
+    private final LongAdder totalNanos;
+    private final LongAccumulator maxNanos;
+    private final LongAccumulator intervalMaxNanos;
+    private Snapshot lastTotal; // the totals at the previous interval Snapshot
+
+    /**
+     * The constructor for LatencyHistogram objects.
+     */
+    LatencyHistogram() {
+        this.stripes = new AtomicReferenceArray<>(STRIPES);
+        this.count = new LongAdder();
+        this.totalNanos = new LongAdder();
+        this.maxNanos = new LongAccumulator(Long::max, 0);
+        this.intervalMaxNanos = new LongAccumulator(Long::max, 0);
+        this.lastTotal = new Snapshot(new long[BUCKETS], 0, 0, 0);
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency in nanoseconds (negative ones are counted as 0)
+     */
+    void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_NANOS);
+        int i = (int) Thread.currentThread().threadId() & (STRIPES - 1);
+        AtomicLongArray stripe = stripes.get(i);
+        if (stripe == null) {
+            // Whoever loses the race uses the winner's stripe
+            stripes.compareAndSet(i, null, new AtomicLongArray(BUCKETS));
+            stripe = stripes.get(i);
+        }
+        stripe.getAndIncrement(bucketOf(value));
+        count.increment();
+        totalNanos.add(value);
+        maxNanos.accumulate(value);
+        intervalMaxNanos.accumulate(value);
+    }
+
+    /**
+     * Returns the number of latencies recorded so far, without merging the buckets.
+     *
+     * @return number of latencies
+     */
+    long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of the latencies recorded so far.
+     *
+     * @return total in nanoseconds
+     */
+    long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * Returns the longest latency recorded so far.
+     *
+     * @return longest latency in nanoseconds
+     */
+    long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Takes a Snapshot of everything recorded so far.
+     * Latencies recorded while it's taken may or may not be in it.
+     *
+     * @return the Snapshot
+     */
+    Snapshot getSnapshot() {
+        long[] counts = new long[BUCKETS];
+        long n = 0;
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray stripe = stripes.get(s);
+            if (stripe == null) {
+                continue;
+            }
+            for (int i = 0; i < BUCKETS; i++) {
+                long c = stripe.get(i);
+                counts[i] += c;
+                n += c;
+            }
+        }
+        return new Snapshot(counts, n, totalNanos.sum(), maxNanos.get());
+    }
+
+    /**
+     * Takes a Snapshot of what was recorded since the previous interval Snapshot (or since the start).
+     *
+     * @return the Snapshot of the interval
+     */
+    synchronized Snapshot getIntervalSnapshot() {
+        long max = intervalMaxNanos.getThenReset();
+        Snapshot total = getSnapshot();
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = total.counts[i] - lastTotal.counts[i];
+        }
+        Snapshot interval = new Snapshot(counts, total.count - lastTotal.count,
+                total.totalNanos - lastTotal.totalNanos, max);
+        lastTotal = total;
+        return interval;
+    }
+
+    /**
+     * Returns the bucket of a value: the values below 2 * SUB_BUCKETS have a bucket each,
+     * every higher power of two is split into SUB_BUCKETS.
+     *
+     * @param value the value (0 - MAX_NANOS)
+     * @return index of the bucket
+     */
+    static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Returns the highest value that falls into a bucket.
+     *
+     * @param bucket index of the bucket
+     * @return its highest value
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * The latencies recorded up to a point in time (or in an interval).
+     */
+    static class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        /**
+         * The constructor for Snapshot objects.
+         *
+         * @param counts number of latencies in each bucket
+         * @param count number of latencies
+         * @param totalNanos sum of the latencies
+         * @param maxNanos longest latency
+         */
+        private Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        /**
+         * Returns the number of latencies.
+         *
+         * @return number of latencies
+         */
+        long getCount() {
+            return this.count;
+        }
+
+        /**
+         * Returns the sum of the latencies.
+         *
+         * @return total in nanoseconds
+         */
+        long getTotalNanos() {
+            return this.totalNanos;
+        }
+
+        /**
+         * Returns the longest latency.
+         *
+         * @return longest latency in nanoseconds
+         */
+        long getMaxNanos() {
+            return this.maxNanos;
+        }
+
+        /**
+         * Returns the average latency.
+         *
+         * @return average in nanoseconds (0 if there are none)
+         */
+        double getMeanNanos() {
+            return (count == 0) ? 0.0 : totalNanos / (double) count;
+        }
+
+        /**
+         * Returns the latency that the given share of the latencies don't exceed, i.e. 99.0 for the p99.
+         * It's the highest value of its bucket, so it's never lower than the real one
+         * (but never higher than the longest latency either).
+         *
+         * @param percentile the percentile (0.0 - 100.0)
+         * @return the latency in nanoseconds (0 if there are none)
+         */
+        long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            double p = Math.min(Math.max(percentile, 0.0), 100.0);
+            long rank = Math.max(1, (long) Math.ceil(p / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        /**
+         * Merges this Snapshot with another one, as if all the latencies had been recorded by one histogram.
+         *
+         * @param other the other Snapshot
+         * @return the merged Snapshot
+         */
+        Snapshot merge(Snapshot other) {
+            long[] merged = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                merged[i] = this.counts[i] + other.counts[i];
+            }
+            return new Snapshot(merged, this.count + other.count, this.totalNanos + other.totalNanos,
+                    Math.max(this.maxNanos, other.maxNanos));
+        }
+    }
+
+}
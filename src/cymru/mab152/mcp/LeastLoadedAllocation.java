@@ -0,0 +1,205 @@
+package cymru.mab152.mcp;
+
+import cymru.mab152.mcp.exception.NoFreeParkingSpacesException;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Parks the Vehicle in the ParkingZone with the smallest share of its ParkingSpaces taken,
+ * so all zones fill up evenly.
+ * <p>
+ * For every VehicleType there's a heap of the ParkingZones accepting it, ordered by load.
+ * The ParkingZones report every change of their free spaces, so the least loaded zone is always on top.
+ */
+public class LeastLoadedAllocation implements AllocationStrategy {
+
+    static final String NAME = "least-loaded";
+
+    private volatile ZoneHeap[] heaps; // by VehicleType.ordinal()
+
+    /**
+     * The constructor for LeastLoadedAllocation objects.
+     */
+    LeastLoadedAllocation() {
+        this.heaps = new ZoneHeap[VehicleType.values().length];
+        for (int i = 0; i < heaps.length; i++) {
+            heaps[i] = new ZoneHeap(0);
+        }
+    }
+
+    /**
+     * Returns the name the strategy is saved under.
+     *
+     * @return name of the strategy
+     */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Builds the heaps of the ParkingZones.
+     *
+     * @param zones all ParkingZones of the Parking
+     */
+    @Override
+    public synchronized void setParkingZones(List<ParkingZone> zones) {
+        ZoneHeap[] newHeaps = new ZoneHeap[VehicleType.values().length];
+        for (VehicleType vt : VehicleType.values()) {
+            ZoneHeap heap = new ZoneHeap(zones.size());
+            for (ParkingZone pz : zones) {
+                if (pz.isVehicleAccepted(vt)) {
+                    heap.add(pz);
+                }
+            }
+            newHeaps[vt.ordinal()] = heap;
+        }
+        this.heaps = newHeaps;
+    }
+
+    /**
+     * Moves the ParkingZone to its new place in the heaps of the VehicleTypes it accepts (it's in no others).
+     *
+     * @param pz the ParkingZone
+     */
+    @Override
+    public void onFreeSpacesChanged(ParkingZone pz) {
+        ZoneHeap[] currentHeaps = heaps;
+        for (VehicleType vt : pz.getListOfAcceptedVehicles()) {
+            currentHeaps[vt.ordinal()].update(pz);
+        }
+    }
+
+    /**
+     * Picks the nearest free ParkingSpace the Vehicle fits into, in the least loaded ParkingZone accepting it.
+     * If the Vehicle doesn't fit any free space of that zone, the least loaded of the other zones that has one
+     * is used.
+     *
+     * @param v Vehicle to be parked
+     * @param zones all ParkingZones of the Parking
+     * @return a free ParkingSpace that accepts the Vehicle
+     * @throws NoFreeParkingSpacesException thrown if there are no free ParkingSpaces for the Vehicle
+     */
+    @Override
+    public ParkingSpace choose(Vehicle v, List<ParkingZone> zones) throws NoFreeParkingSpacesException {
+        ParkingZone least = heaps[v.getVehicleType().ordinal()].peek();
+        ParkingSpace ps = (least != null) ? least.getNearestFreeParkingSpaceFor(v) : null;
+        if (ps != null) {
+            return ps;
+        }
+
+        ParkingSpace best = null;
+        double bestLoad = Double.MAX_VALUE;
+        for (ParkingZone pz : zones) {
+            if (pz != least && pz.getNumberOfFreeSpaces() > 0 && pz.isVehicleAccepted(v.getVehicleType())
+                    && load(pz) < bestLoad) {
+                ParkingSpace candidate = pz.getNearestFreeParkingSpaceFor(v);
+                if (candidate != null) {
+                    best = candidate;
+                    bestLoad = load(pz);
+                }
+            }
+        }
+        if (best == null) {
+            throw new NoFreeParkingSpacesException("There are no free parking spaces! Try again later.");
+        }
+        return best;
+    }
+
+    /**
+     * Returns the share of the ParkingZone's spaces that are taken (1 if it has none).
+     *
+     * @param pz the ParkingZone
+     * @return load between 0 and 1
+     */
+    private static double load(ParkingZone pz) {
+        int size = pz.getListOfParkingSpaces().size();
+        return (size == 0) ? 1 : 1 - (double) pz.getNumberOfFreeSpaces() / size;
+    }
+
+    /**
+     * A binary min-heap of ParkingZones by load that knows where each zone is, so it can be moved in O(log n).
+     * The loads are copied when a zone is added or updated, so the heap stays consistent
+     * while the zones keep changing; each change is followed by its own update.
+     */
+    private static class ZoneHeap {
+        private final ParkingZone[] zones;
+        private final double[] loads;
+        private final HashMap<ParkingZone, Integer> index;
+        private int size;
+
+        private ZoneHeap(int capacity) {
+            zones = new ParkingZone[capacity];
+            loads = new double[capacity];
+            index = new HashMap<>();
+        }
+
+        private synchronized void add(ParkingZone pz) {
+            zones[size] = pz;
+            loads[size] = load(pz);
+            index.put(pz, size);
+            siftUp(size++);
+        }
+
+        private synchronized ParkingZone peek() {
+            return (size > 0) ? zones[0] : null;
+        }
+
+        private synchronized void update(ParkingZone pz) {
+            Integer i = index.get(pz);
+            if (i == null) {
+                return;
+            }
+            double old = loads[i];
+            loads[i] = load(pz);
+            if (loads[i] < old) {
+                siftUp(i);
+            } else {
+                siftDown(i);
+            }
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (loads[parent] <= loads[i]) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int smallest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && loads[left] < loads[smallest]) {
+                    smallest = left;
+                }
+                if (right < size && loads[right] < loads[smallest]) {
+                    smallest = right;
+                }
+                if (smallest == i) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            ParkingZone tempZone = zones[a];
+            zones[a] = zones[b];
+            zones[b] = tempZone;
+            double tempLoad = loads[a];
+            loads[a] = loads[b];
+            loads[b] = tempLoad;
+            index.put(zones[a], a);
+            index.put(zones[b], b);
+        }
+    }
+
+}
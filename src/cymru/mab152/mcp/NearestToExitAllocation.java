@@ -0,0 +1,52 @@
+package cymru.mab152.mcp;
+
+import cymru.mab152.mcp.exception.NoFreeParkingSpacesException;
+
+import java.util.List;
+
+/**
+ * Parks the Vehicle in the free ParkingSpace nearest to the exit, whichever ParkingZone it's in
+ * (see the "distance" of the ParkingSpaces in the database).
+ */
+public class NearestToExitAllocation implements AllocationStrategy {
+
+    static final String NAME = "nearest-to-exit";
+
+    /**
+     * Returns the name the strategy is saved under.
+     *
+     * @return name of the strategy
+     */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Compares the nearest free ParkingSpace of every ParkingZone that accepts the Vehicle
+     * and picks the nearest of them.
+     *
+     * @param v Vehicle to be parked
+     * @param zones all ParkingZones of the Parking
+     * @return a free ParkingSpace that accepts the Vehicle
+     * @throws NoFreeParkingSpacesException thrown if there are no free ParkingSpaces for the Vehicle
+     */
+    @Override
+    public ParkingSpace choose(Vehicle v, List<ParkingZone> zones) throws NoFreeParkingSpacesException {
+        VehicleType vt = v.getVehicleType();
+        ParkingSpace nearest = null;
+        for (ParkingZone pz : zones) {
+            if (pz.getNumberOfFreeSpaces() > 0 && pz.isVehicleAccepted(vt)) {
+                ParkingSpace ps = pz.getNearestFreeParkingSpaceFor(v);
+                if (ps != null && (nearest == null || ps.getDistance() < nearest.getDistance())) {
+                    nearest = ps;
+                }
+            }
+        }
+        if (nearest == null) {
+            throw new NoFreeParkingSpacesException("There are no free parking spaces! Try again later.");
+        }
+        return nearest;
+    }
+
+}
@@ -0,0 +1,99 @@
+package cymru.mab152.mcp;
+
+/**
+ * Occupancy aggregates of a ParkingZone (or one VehicleType in it) over a window.
+ */
+public class OccupancyStats {
+
+    private final ZoneOccupancy.Window window;
+    private final int current;
+    private final int peak;
+    private final double average;
+    private final long arrivals;
+    private final double turnover;
+
+    /**
+     * The constructor for OccupancyStats objects.
+     *
+     * @param window the window
+     * @param current number of Vehicles parked now
+     * @param peak most Vehicles parked at once in the window
+     * @param average average number of Vehicles parked in the window
+     * @param arrivals number of Vehicles that arrived in the window
+     * @param turnover arrivals per ParkingSpace of the zone
+     */
+    OccupancyStats(ZoneOccupancy.Window window, int current, int peak, double average, long arrivals,
+                   double turnover) {
+        this.window = window;
+        this.current = current;
+        this.peak = peak;
+        this.average = average;
+        this.arrivals = arrivals;
+        this.turnover = turnover;
+    }
+
+    /**
+     * Returns the window the aggregates are for.
+     *
+     * @return the window
+     */
+    ZoneOccupancy.Window getWindow() {
+        return this.window;
+    }
+
+    /**
+     * Returns the number of Vehicles parked now.
+     *
+     * @return number of Vehicles
+     */
+    int getCurrent() {
+        return this.current;
+    }
+
+    /**
+     * Returns the most Vehicles parked at once in the window (sampled every minute).
+     *
+     * @return peak number of Vehicles
+     */
+    int getPeak() {
+        return this.peak;
+    }
+
+    /**
+     * Returns the average number of Vehicles parked in the window.
+     *
+     * @return average number of Vehicles
+     */
+    double getAverage() {
+        return this.average;
+    }
+
+    /**
+     * Returns the number of Vehicles that arrived in the window.
+     *
+     * @return number of arrivals
+     */
+    long getArrivals() {
+        return this.arrivals;
+    }
+
+    /**
+     * Returns the turnover: arrivals per ParkingSpace of the zone in the window.
+     *
+     * @return turnover
+     */
+    double getTurnover() {
+        return this.turnover;
+    }
+
+    /**
+     * Returns the aggregates as a String.
+     *
+     * @return all aggregates
+     */
+    public String toString() {
+        return String.format("last %s: peak %d, average %.1f, %d arrivals (turnover %.2f)",
+                window.toString().toLowerCase(), peak, average, arrivals, turnover);
+    }
+
+}
@@ -0,0 +1,124 @@
+package cymru.mab152.mcp;
+
+/**
+ * A request to park a Vehicle, sent to ParkingService by a console, a gate or any other client.
+ */
+public class ParkRequest {
+
+    private final String licensePlate;
+    private final float height, length; // both 0 if only the type is known
+    private final VehicleType vehicleType; // null if it should be calculated from the dimensions
+    private final boolean isDriverDisabled;
+    private final boolean needsAssistance;
+    private final String parkingSpaceId; // null if any suitable ParkingSpace will do
+
+    /**
+     * The constructor for ParkRequest objects.
+     *
+     * @param lp vehicle's license plate
+     * @param h vehicle's height in metres
+     * @param l vehicle's length in metres
+     * @param vt vehicle type (enum) or null to calculate it from the dimensions
+     * @param isDisabled is the Driver disabled (applicable for discounts)
+     * @param needsAssistance should the Vehicle be parked by an Employee
+     * @param psId ID of the ParkingSpace to park in or null to pick one automatically
+     */
+    ParkRequest(String lp, float h, float l, VehicleType vt, boolean isDisabled, boolean needsAssistance,
+                String psId) {
+        this.licensePlate = lp;
+        this.height = h;
+        this.length = l;
+        this.vehicleType = vt;
+        this.isDriverDisabled = isDisabled;
+        this.needsAssistance = needsAssistance;
+        this.parkingSpaceId = psId;
+    }
+
+    /**
+     * The constructor for ParkRequest objects of Drivers parking by themselves
+     * in any suitable ParkingSpace.
+     *
+     * @param lp vehicle's license plate
+     * @param h vehicle's height in metres
+     * @param l vehicle's length in metres
+     * @param vt vehicle type (enum) or null to calculate it from the dimensions
+     * @param isDisabled is the Driver disabled (applicable for discounts)
+     */
+    ParkRequest(String lp, float h, float l, VehicleType vt, boolean isDisabled) {
+        this(lp, h, l, vt, isDisabled, false, null);
+    }
+
+    /**
+     * Returns the same request, but targeting the ParkingSpace given.
+     *
+     * @param psId ID of the ParkingSpace to park in
+     * @return a new ParkRequest
+     */
+    ParkRequest inParkingSpace(String psId) {
+        return new ParkRequest(licensePlate, height, length, vehicleType, isDriverDisabled, needsAssistance, psId);
+    }
+
+    /**
+     * Returns Vehicle's license plate.
+     *
+     * @return vehicle's license plate
+     */
+    String getLicensePlate() {
+        return this.licensePlate;
+    }
+
+    /**
+     * Returns Vehicle's height in metres.
+     *
+     * @return Vehicle's height
+     */
+    float getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Returns Vehicle's length in metres.
+     *
+     * @return Vehicle's length
+     */
+    float getLength() {
+        return this.length;
+    }
+
+    /**
+     * Returns Vehicle's type (null if it should be calculated from the dimensions).
+     *
+     * @return vehicle type (enum)
+     */
+    VehicleType getVehicleType() {
+        return this.vehicleType;
+    }
+
+    /**
+     * Returns a boolean whether the Driver is disabled.
+     *
+     * @return is the Driver disabled
+     */
+    boolean isDriverDisabled() {
+        return this.isDriverDisabled;
+    }
+
+    /**
+     * Returns a boolean whether the Customer asked for an Employee's assistance.
+     *
+     * @return does the Customer need assistance
+     */
+    boolean needsAssistance() {
+        return this.needsAssistance;
+    }
+
+    /**
+     * Returns the ID of the requested ParkingSpace.
+     *
+     * @return ParkingSpace id or null if any will do
+     */
+    String getParkingSpaceId() {
+        return this.parkingSpaceId;
+    }
+
+}
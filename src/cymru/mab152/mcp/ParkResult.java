@@ -0,0 +1,64 @@
+package cymru.mab152.mcp;
+
+/**
+ * The result of a successful ParkRequest.
+ */
+public class ParkResult {
+
+    private final int receiptId;
+    private final String parkingSpaceId;
+    private final VehicleType vehicleType;
+    private final ValetJob valetJob; // null if the Driver parked by themselves
+
+    /**
+     * The constructor for ParkResult objects.
+     *
+     * @param receiptId ID of the ParkingReceipt issued for the Vehicle
+     * @param psId ID of the ParkingSpace the Vehicle is parked in
+     * @param vt Vehicle's type
+     * @param valetJob the job queued for an Employee to park the Vehicle or null if none
+     */
+    ParkResult(int receiptId, String psId, VehicleType vt, ValetJob valetJob) {
+        this.receiptId = receiptId;
+        this.parkingSpaceId = psId;
+        this.vehicleType = vt;
+        this.valetJob = valetJob;
+    }
+
+    /**
+     * Returns the ParkingReceipt's ID.
+     *
+     * @return ParkingReceipt id
+     */
+    int getReceiptId() {
+        return this.receiptId;
+    }
+
+    /**
+     * Returns the ID of the ParkingSpace the Vehicle is parked in.
+     *
+     * @return ParkingSpace id
+     */
+    String getParkingSpaceId() {
+        return this.parkingSpaceId;
+    }
+
+    /**
+     * Returns Vehicle's type.
+     *
+     * @return vehicle type (enum)
+     */
+    VehicleType getVehicleType() {
+        return this.vehicleType;
+    }
+
+    /**
+     * Returns the job queued for an Employee to park the Vehicle.
+     *
+     * @return the ValetJob or null if the Customer didn't ask for assistance
+     */
+    ValetJob getValetJob() {
+        return this.valetJob;
+    }
+
+}
@@ -7,52 +7,132 @@ import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 import java.io.*;
-import java.text.SimpleDateFormat;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
-import java.util.Random;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The main Parking class. Contains all data about the Parking,
- * as well as methods allowing to interact with it.
+ * as well as the low-level methods used by ParkingService to interact with it.
+ * All of them can be called by several threads (i.e. gates) at the same time.
  */
 public class Parking {
 
-    private Random rand;
-    private Scanner in;
+    private static final int MAX_REFUSED_CHOICES = 16; // ParkingSpaces picked for a Vehicle that doesn't fit them
+
     private String name;
     private JSONParser parser;
-    private ArrayList<ParkingZone> parkingZones;
-    private ArrayList<DriverEmployee> driverEmployees;
-    private ArrayList<FreeEmployee> freeEmployees;
-    private ArrayList<ExitToken> exitTokens;
+    private CopyOnWriteArrayList<ParkingZone> parkingZones; // rarely changed, so readers never see it half-updated
+    private CopyOnWriteArrayList<DriverEmployee> driverEmployees;
+    private CopyOnWriteArrayList<FreeEmployee> freeEmployees;
+    private ReentrantLock employeesLock; // Employees move between the two lists under it
+    private Condition employeeFreed;
+    private ConcurrentHashMap<Integer, ExitToken> exitTokens;
+    private ConcurrentHashMap<String, Vehicle> vehicles; // by license plate, from arrival until they leave
+    private ConcurrentHashMap<Integer, ParkingSpace> parkingSpacesByReceiptId; // from parking until paid or removed
+    private AtomicInteger nextReceiptId;
+    private ParkingEventBus eventBus;
+    private ValetDispatcher valetDispatcher;
+    private AtomicReference<ParkingSnapshot> snapshot;
+    private PaymentSessions paymentSessions;
+    private volatile Tariff tariff;
+    private volatile AllocationStrategy allocationStrategy;
+    private Reservations reservations;
+    private StayArchive stayArchive;
+    private ParkingMetrics metrics;
+    private ParkingLog log;
 
     /**
      * The constructor for Parking object.
      */
     public Parking() {
-        rand = new Random();
-        in = new Scanner(System.in);
         parser = new JSONParser();
-        parkingZones = new ArrayList<>();
-        driverEmployees = new ArrayList<>();
-        freeEmployees = new ArrayList<>();
-        exitTokens = new ArrayList<>();
+        parkingZones = new CopyOnWriteArrayList<>();
+        driverEmployees = new CopyOnWriteArrayList<>();
+        freeEmployees = new CopyOnWriteArrayList<>();
+        employeesLock = new ReentrantLock();
+        employeeFreed = employeesLock.newCondition();
+        exitTokens = new ConcurrentHashMap<>();
+        vehicles = new ConcurrentHashMap<>();
+        parkingSpacesByReceiptId = new ConcurrentHashMap<>();
+        nextReceiptId = new AtomicInteger(0);
+        eventBus = new ParkingEventBus();
+        valetDispatcher = new ValetDispatcher(this);
+        snapshot = new AtomicReference<>();
+        paymentSessions = new PaymentSessions(new ParkingService(this));
+        tariff = Tariff.DEFAULT;
+        setAllocationStrategy(new RandomAllocation());
+        reservations = new Reservations(this);
+        stayArchive = new StayArchive();
+        metrics = new ParkingMetrics(this);
+        log = new ParkingLog();
+    }
+
+    /**
+     * Returns an immutable snapshot of the ParkingZones, ParkingSpaces and Vehicles.
+     * If anything has changed since the last snapshot, a new one is taken (reusing the unchanged zones)
+     * and published for the next readers. Nothing is locked, so the gates are never held up.
+     *
+     * @return the latest snapshot
+     */
+    ParkingSnapshot getSnapshot() {
+        ParkingSnapshot current = snapshot.get();
+        if (current != null && current.isUpToDate(name, parkingZones)) {
+            return current;
+        }
+        ParkingSnapshot next = ParkingSnapshot.of(name, parkingZones, current);
+        // If another reader has published a snapshot meanwhile, theirs is kept -- both are consistent
+        snapshot.compareAndSet(current, next);
+        return next;
     }
 
     /**
-     * Scans all existing ParkingReceipts and returns a new, unique ID that can be used.
+     * Returns a new, unique ParkingReceipt ID that can be used.
+     * IDs are handed out atomically, so concurrent gates never get the same one.
      *
      * @return new, unique ParkingReceipt ID
      */
-    private int getNextReceiptId() {
+    int getNextReceiptId() {
+        return nextReceiptId.getAndIncrement();
+    }
+
+    /**
+     * Reserves a block of consecutive ParkingReceipt IDs, i.e. for a whole batch of arrivals.
+     *
+     * @param count number of IDs to reserve
+     * @return the first ID of the block
+     */
+    int reserveReceiptIds(int count) {
+        return nextReceiptId.getAndAdd(count);
+    }
+
+    /**
+     * Scans all existing ParkingReceipts and returns the first ID that hasn't been used yet.
+     * It's used to seed the ParkingReceipt ID counter after loading the database.
+     *
+     * @return first unused ParkingReceipt ID
+     */
+    private int findNextReceiptId() {
         int max = -1;
 
         for (ParkingZone pz : parkingZones) {
             for (ParkingSpace ps : pz.getListOfParkingSpaces()) {
-                if (!ps.isFree()) {
-                    int tempReceiptId = ps.getVehicle().getParkingReceipt().getId();
+                Vehicle v = ps.getVehicle();
+                if (v != null) {
+                    int tempReceiptId = v.getParkingReceipt().getId();
                     if (tempReceiptId > max) {
                         max = tempReceiptId;
                     }
@@ -91,17 +171,49 @@ public class Parking {
     }
 
     /**
-     * Empties the JSON database file and then writes all data to it.
+     * Writes all data to the JSON database file (timed in the ParkingMetrics
+     * and recorded as a ParkingEvents.Save).
      *
      * @param Filename database filename
      * @throws FileNotFoundException thrown if provided file doesn't exist
      */
     void save(String Filename) throws FileNotFoundException {
-
-        // Clear the file
-        try (PrintWriter pw = new PrintWriter(Filename)) {
-            pw.write("");
+        ParkingEvents.Save event = new ParkingEvents.Save();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            writeDatabase(Filename);
+        } finally {
+            metrics.record(ParkingMetrics.Timer.SAVE, start);
+            event.end();
+            // What was written is only counted while the event is being recorded
+            if (event.shouldCommit()) {
+                event.file = Filename;
+                event.bytes = new File(Filename).length();
+                for (ParkingZone pz : parkingZones) {
+                    event.parkingSpaces += pz.getListOfParkingSpaces().size();
+                    // Not spaces minus free ones -- the held spaces aren't free but have no Vehicle
+                    for (ParkingSpace ps : pz.getListOfParkingSpaces()) {
+                        if (ps.getVehicle() != null) {
+                            event.vehicles++;
+                        }
+                    }
+                }
+                event.exitTokens = exitTokens.size();
+                event.commit();
+            }
         }
+    }
+
+    /**
+     * Writes all data to a temporary file next to the JSON database file and then moves it over the database,
+     * so the database is never left half-written. The gates keep parking and collecting meanwhile,
+     * so every ParkingSpace is read once and its Vehicle and ParkingReceipt are written together.
+     *
+     * @param Filename database filename
+     * @throws FileNotFoundException thrown if provided file doesn't exist
+     */
+    private void writeDatabase(String Filename) throws FileNotFoundException {
 
         // Save all data to the JSON file
         // Create the main JSON object
@@ -109,16 +221,19 @@ public class Parking {
         // Add the Parking's name to the main JSON object
         mainJsonObject.put("name", this.name);
 
-        // Create a JSON array for Employees
+        // Create a JSON array for Employees, both free and on a valet job (they are all free after loading).
+        // Employees move between the lists under the employees lock, so nobody is missed or written twice
         JSONArray jsonEmployees = new JSONArray();
-        for (FreeEmployee fe : freeEmployees) {
-            // Create a JSON object for each Employee
-            JSONObject jsonEmployee = new JSONObject();
-            jsonEmployee.put("id", fe.getId());
-            jsonEmployee.put("name", fe.getName());
-
-            // Add the Employee JSON object to JSON array
-            jsonEmployees.add(jsonEmployee);
+        employeesLock.lock();
+        try {
+            for (FreeEmployee fe : freeEmployees) {
+                jsonEmployees.add(toJsonEmployee(fe.getId(), fe.getName()));
+            }
+            for (DriverEmployee de : driverEmployees) {
+                jsonEmployees.add(toJsonEmployee(de.getId(), de.getName()));
+            }
+        } finally {
+            employeesLock.unlock();
         }
         // Add the JSON array with Employees to the main JSON object
         mainJsonObject.put("employees", jsonEmployees);
@@ -137,6 +252,13 @@ public class Parking {
                 // Create a JSON object for each ParkingSpace and but its ID into it
                 JSONObject jsonParkingSpace = new JSONObject();
                 jsonParkingSpace.put("id", ps.getID());
+                if (ps.getConfiguredDistance() >= 0) {
+                    jsonParkingSpace.put("distance", ps.getConfiguredDistance());
+                }
+                if (ps.hasDimensions()) {
+                    jsonParkingSpace.put("maxHeight", ps.getMaxHeight());
+                    jsonParkingSpace.put("maxLength", ps.getMaxLength());
+                }
 
                 // Add the JSON ParkingSpace object to the JSON ParkingZone array
                 jsonParkingSpaces.add(jsonParkingSpace);
@@ -164,16 +286,28 @@ public class Parking {
         // Add the JSON array with ParkingZones to the main JSON object
         mainJsonObject.put("parkingZones", jsonParkingZones);
 
+        // Save the AllocationStrategy's name
+        mainJsonObject.put("allocation", allocationStrategy.getName());
+
+        // Save the Tariff as it was loaded (the DEFAULT one isn't saved)
+        if (tariff.getConfig() != null) {
+            mainJsonObject.put("tariff", tariff.getConfig());
+        }
+
         // -------------------------------
-        // Create a JSON array for Vehicles
+        // Create JSON arrays for Vehicles and their ParkingReceipts
         JSONArray jsonVehicles = new JSONArray();
+        JSONArray jsonParkingReceipts = new JSONArray();
 
         // Get all Vehicles
         for (ParkingZone pz : parkingZones) {
             for (ParkingSpace ps : pz.getListOfParkingSpaces()) {
-                // If the ParkingSpace contains a Vehicle -- add it to the JSON array
-                if (!ps.isFree()) {
-                    Vehicle v = ps.getVehicle();
+                // If the ParkingSpace contains a Vehicle -- add it to the JSON arrays
+                // (read once, as it may leave or be replaced meanwhile)
+                Vehicle v = ps.getVehicle();
+                if (v != null) {
+                    ParkingReceipt tempParkingReceipt = v.getParkingReceipt();
+
                     // Create a JSON object for each Vehicle
                     JSONObject jsonVehicle = new JSONObject();
 
@@ -183,28 +317,12 @@ public class Parking {
                     jsonVehicle.put("type", v.getVehicleType().toString().toUpperCase());
                     jsonVehicle.put("height", v.getHeight());
                     jsonVehicle.put("length", v.getLength());
-                    jsonVehicle.put("receiptId", v.getParkingReceipt().getId());
+                    jsonVehicle.put("receiptId", tempParkingReceipt.getId());
 
                     // Add the JSON object to the JSON array
                     jsonVehicles.add(jsonVehicle);
-                }
-            }
-        }
-
-        // Add the JSON array with Vehicles to the main JSON object
-        mainJsonObject.put("vehicles", jsonVehicles);
-
-        // -------------------------------
-        // Create a JSON array for ParkingReceipts
-        JSONArray jsonParkingReceipts = new JSONArray();
 
-        // Get all ParkingReceipts
-        for (ParkingZone pz : parkingZones) {
-            for (ParkingSpace ps : pz.getListOfParkingSpaces()) {
-                if (!ps.isFree()) {
-                    ParkingReceipt tempParkingReceipt = ps.getVehicle().getParkingReceipt();
-
-                    // Create a JSON object for each ParkingReceipt
+                    // Create a JSON object for the Vehicle's ParkingReceipt
                     JSONObject jsonParkingReceipt = new JSONObject();
 
                     // Put all ParkingReceipt's data into the JSON object
@@ -218,7 +336,8 @@ public class Parking {
             }
         }
 
-        // Add the JSON array with ParkingReceipts to the main JSON object
+        // Add the JSON arrays with Vehicles and ParkingReceipts to the main JSON object
+        mainJsonObject.put("vehicles", jsonVehicles);
         mainJsonObject.put("parkingReceipts", jsonParkingReceipts);
 
         // ----------------------------
@@ -226,7 +345,7 @@ public class Parking {
         JSONArray jsonExitTokens = new JSONArray();
 
         // Get all ExitTokens
-        for (ExitToken et : exitTokens) {
+        for (ExitToken et : exitTokens.values()) {
 
             // Create a JSON object for each ExitToken
             JSONObject jsonExitToken = new JSONObject();
@@ -243,18 +362,73 @@ public class Parking {
         mainJsonObject.put("exitTokens", jsonExitTokens);
 
         // ----------------------------
-        // Save all data to the JSON database file
-        try (FileWriter fw = new FileWriter(Filename)) {
-            fw.write(mainJsonObject.toJSONString());
-            fw.flush();
+        // Create a JSON array for Reservations
+        JSONArray jsonReservations = new JSONArray();
+        for (Reservation r : reservations.getAll()) {
+            JSONObject jsonReservation = new JSONObject();
+            jsonReservation.put("licensePlate", r.getLicensePlate());
+            jsonReservation.put("parkingSpace", r.getParkingSpace().getID());
+            jsonReservation.put("until", r.getUntilMillis());
+            jsonReservations.add(jsonReservation);
+        }
+        mainJsonObject.put("reservations", jsonReservations);
+
+        // ----------------------------
+        // Save all data to a temporary file, then replace the JSON database file with it
+        File database = new File(Filename).getAbsoluteFile();
+        File temp = new File(database.getParentFile(), database.getName() + ".tmp");
+        boolean isWritten;
+        try (PrintWriter pw = new PrintWriter(temp)) {
+            pw.write(mainJsonObject.toJSONString());
+            // PrintWriter doesn't throw, it only remembers the error
+            isWritten = !pw.checkError();
+        }
+        if (!isWritten) {
+            temp.delete();
+            log.publish(ParkingLog.Kind.SAVE_FAILED, null, null,
+                    "An error occurred while writing to the database: " + temp + " cannot be written", -1, -1);
+            return;
+        }
+        try {
+            replaceFile(temp, database);
         } catch (IOException e) {
-            System.err.println("An error occurred while writing to the database:");
-            System.err.println(e.getMessage());
+            log.publish(ParkingLog.Kind.SAVE_FAILED, null, null,
+                    "An error occurred while writing to the database: " + e.getMessage(), -1, -1);
         }
     }
 
     /**
-     * Reads the JSON database file.
+     * Creates the JSON object of an Employee.
+     *
+     * @param id Employee's ID
+     * @param name Employee's name
+     * @return JSON object with the Employee's data
+     */
+    private static JSONObject toJsonEmployee(int id, String name) {
+        JSONObject jsonEmployee = new JSONObject();
+        jsonEmployee.put("id", id);
+        jsonEmployee.put("name", name);
+        return jsonEmployee;
+    }
+
+    /**
+     * Moves a file over another one, atomically where the file system can do it.
+     *
+     * @param source the file to move
+     * @param target the file to replace
+     * @throws IOException thrown if the file cannot be moved
+     */
+    private static void replaceFile(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads the JSON database file (timed in the ParkingMetrics and recorded as a ParkingEvents.Load).
      *
      * @param Filename database Filename
      * @throws FileNotFoundException thrown if provided file doesn't exist
@@ -262,9 +436,54 @@ public class Parking {
      * @throws ParkingZoneMismatchException thrown if a ParkingSpace is inside a ParkingZone that can't support it
      * @throws ParkingSpaceOccupiedException thrown if ParkingSpace is already occupied
      * @throws VehicleDoesNotExistException thrown if Vehicle does not exist
+     * @throws InvalidTariffException thrown if the Tariff is not valid
+     * @throws IllegalArgumentException thrown if the AllocationStrategy or a Vehicle's type is invalid
      */
     void load(String Filename) throws FileNotFoundException, ParseException, ParkingZoneMismatchException,
-            ParkingSpaceOccupiedException, VehicleDoesNotExistException, IOException {
+            ParkingSpaceOccupiedException, VehicleDoesNotExistException, IOException, InvalidTariffException {
+        ParkingEvents.Load event = new ParkingEvents.Load();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            readDatabase(Filename);
+            log.publish(ParkingLog.Kind.LOADED, null, null, new File(Filename).getAbsolutePath(), -1, -1);
+        } finally {
+            metrics.record(ParkingMetrics.Timer.LOAD, start);
+            event.end();
+            // What was read is only counted while the event is being recorded
+            if (event.shouldCommit()) {
+                event.file = Filename;
+                event.bytes = new File(Filename).length();
+                for (ParkingZone pz : parkingZones) {
+                    event.parkingSpaces += pz.getListOfParkingSpaces().size();
+                    // Not spaces minus free ones -- the held spaces aren't free but have no Vehicle
+                    for (ParkingSpace ps : pz.getListOfParkingSpaces()) {
+                        if (ps.getVehicle() != null) {
+                            event.vehicles++;
+                        }
+                    }
+                }
+                event.exitTokens = exitTokens.size();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Reads the JSON database file.
+     *
+     * @param Filename database Filename
+     * @throws FileNotFoundException thrown if provided file doesn't exist
+     * @throws ParseException thrown if JSON cannot be parsed
+     * @throws ParkingZoneMismatchException thrown if a ParkingSpace is inside a ParkingZone that can't support it
+     * @throws ParkingSpaceOccupiedException thrown if ParkingSpace is already occupied
+     * @throws VehicleDoesNotExistException thrown if Vehicle does not exist
+     * @throws InvalidTariffException thrown if the Tariff is not valid
+     * @throws IllegalArgumentException thrown if the AllocationStrategy or a Vehicle's type is invalid
+     */
+    private void readDatabase(String Filename) throws FileNotFoundException, ParseException,
+            ParkingZoneMismatchException, ParkingSpaceOccupiedException, VehicleDoesNotExistException, IOException,
+            InvalidTariffException {
 
         String fileContent = getContent(Filename);
         Object obj = parser.parse(fileContent);
@@ -273,6 +492,9 @@ public class Parking {
         // Set Parking name
         this.name = mainJsonObject.get("name").toString();
 
+        // Compile the Tariff (the DEFAULT one if there's none)
+        tariff = Tariff.compile((JSONObject) mainJsonObject.get("tariff"));
+
         // Parse Employees
         JSONArray jsonEmployees = (JSONArray) mainJsonObject.get("employees");
         parseEmployees(jsonEmployees);
@@ -281,9 +503,17 @@ public class Parking {
         JSONArray jsonParkingZones = (JSONArray) mainJsonObject.get("parkingZones");
         parseParkingZones(jsonParkingZones);
 
+        // Pick the AllocationStrategy (random if there's none)
+        Object allocation = mainJsonObject.get("allocation");
+        setAllocationStrategy(AllocationStrategy.forName((allocation != null) ? allocation.toString() : null));
+
         // Parse parked Vehicles
         JSONArray jsonVehicles = (JSONArray) mainJsonObject.get("vehicles");
         parseVehicles(jsonVehicles);
+        for (ParkingZone pz : parkingZones) {
+            // The Vehicles already parked don't count as arrivals
+            pz.getOccupancy().resetArrivals();
+        }
 
         // Parse ParkingReceipts
         JSONArray jsonParkingReceipts = (JSONArray) mainJsonObject.get("parkingReceipts");
@@ -292,6 +522,15 @@ public class Parking {
         // Parse ExitTokens
         JSONArray jsonExitTokens = (JSONArray) mainJsonObject.get("exitTokens");
         parseExitTokens(jsonExitTokens);
+
+        // Hold the reserved ParkingSpaces again (older databases don't have any)
+        JSONArray jsonReservations = (JSONArray) mainJsonObject.get("reservations");
+        if (jsonReservations != null) {
+            parseReservations(jsonReservations);
+        }
+
+        // New ParkingReceipts continue after the ones already in the database
+        nextReceiptId.set(findNextReceiptId());
     }
 
     /**
@@ -307,7 +546,13 @@ public class Parking {
 
             // Add the Employee to the list
             FreeEmployee tempEmployee = new FreeEmployee(tempID, tempName);
-            freeEmployees.add(tempEmployee);
+            employeesLock.lock();
+            try {
+                freeEmployees.add(tempEmployee);
+                employeeFreed.signalAll();
+            } finally {
+                employeesLock.unlock();
+            }
         }
     }
 
@@ -329,8 +574,14 @@ public class Parking {
                 JSONObject temp = (JSONObject) o2;
                 String tempParkingSpaceId = temp.get("id").toString();
 
-                // Add the ParkingSpace to the temp list
-                ParkingSpace tempParkingSpace = new ParkingSpace(tempParkingSpaceId);
+                // Add the ParkingSpace to the temp list (with its distance to the exit, if there's one)
+                ParkingSpace tempParkingSpace = (temp.get("distance") != null)
+                        ? new ParkingSpace(tempParkingSpaceId, Integer.parseInt(temp.get("distance").toString()))
+                        : new ParkingSpace(tempParkingSpaceId);
+                if (temp.get("maxHeight") != null && temp.get("maxLength") != null) {
+                    tempParkingSpace.setMaxDimensions(Float.parseFloat(temp.get("maxHeight").toString()),
+                            Float.parseFloat(temp.get("maxLength").toString()));
+                }
                 tempParkingSpacesList.add(tempParkingSpace);
             }
 
@@ -348,7 +599,32 @@ public class Parking {
             // Assign the ParkingSpaces to the ParkingZone and add it to the main list
             ParkingZone tempParkingZone = new ParkingZone(tempParkingZoneId, tempPrice, tempAcceptedVehicleList);
             tempParkingZone.addParkingSpace(tempParkingSpacesList);
-            parkingZones.add(tempParkingZone);
+            addParkingZone(tempParkingZone);
+        }
+    }
+
+    /**
+     * Imports all Reservations from JSON database. The ones that have expired meanwhile are dropped.
+     *
+     * @param ja JSON array with Reservations
+     */
+    private void parseReservations(JSONArray ja) {
+        long now = System.currentTimeMillis();
+        for (Object o : ja) {
+            JSONObject tempReservationObj = (JSONObject) o;
+            long tempUntil = Long.parseLong(tempReservationObj.get("until").toString());
+            if (tempUntil <= now) {
+                continue;
+            }
+            try {
+                reservations.reserveSpace(tempReservationObj.get("licensePlate").toString(),
+                        tempReservationObj.get("parkingSpace").toString(), tempUntil);
+            } catch (ReservationAlreadyExistsException | ParkingSpaceDoesNotExistException
+                    | ParkingSpaceOccupiedException e) {
+                log.publish(ParkingLog.Kind.RESERVATION_DROPPED, null,
+                        tempReservationObj.get("parkingSpace").toString(), "Reservation for "
+                                + tempReservationObj.get("licensePlate") + " dropped: " + e.getMessage(), -1, -1);
+            }
         }
     }
 
@@ -360,6 +636,14 @@ public class Parking {
      * @throws ParkingSpaceOccupiedException thrown if the ParkingSpace is already occupied
      */
     private void parseVehicles(JSONArray ja) throws IllegalArgumentException, ParkingSpaceOccupiedException {
+        // Looking every ParkingSpace up with getParkingSpaceById() would scan all of them for every Vehicle
+        HashMap<String, ParkingSpace> parkingSpacesById = new HashMap<>();
+        for (ParkingZone pz : parkingZones) {
+            for (ParkingSpace ps : pz.getListOfParkingSpaces()) {
+                parkingSpacesById.putIfAbsent(ps.getID(), ps);
+            }
+        }
+
         for (Object o : ja) {
             JSONObject tempVehicleObject = (JSONObject) o;
             String tempLicensePlate = tempVehicleObject.get("licensePlate").toString();
@@ -381,7 +665,8 @@ public class Parking {
             tempVehicle.setTempParkingReceiptId(tempVehicleReceiptId);
 
             // Add the Vehicle to the ParkingSpace
-            ParkingSpace tempParkingSpace = getParkingSpaceById(tempParkingSpaceId);
+            ParkingSpace tempParkingSpace = parkingSpacesById.get(tempParkingSpaceId);
+            registerLicensePlate(tempVehicle);
             tempVehicle.parkIn(tempParkingSpace);
         }
     }
@@ -393,6 +678,16 @@ public class Parking {
      * @throws VehicleDoesNotExistException thrown if Vehicle does not exist
      */
     private void parseParkingReceipts(JSONArray ja) throws VehicleDoesNotExistException {
+        // The parked Vehicles by their temp ParkingReceipt IDs, so they aren't searched for every ParkingReceipt
+        HashMap<Integer, ParkingSpace> parkingSpacesByReceiptId = new HashMap<>();
+        for (ParkingZone pz : parkingZones) {
+            for (ParkingSpace ps : pz.getListOfParkingSpaces()) {
+                if (ps.getVehicle() != null) {
+                    parkingSpacesByReceiptId.put(ps.getVehicle().getTempParkingReceiptId(), ps);
+                }
+            }
+        }
+
         for (Object o : ja) {
             JSONObject tempParkingReceiptObject = (JSONObject) o;
 
@@ -404,23 +699,18 @@ public class Parking {
 
             // Find the Vehicle that corresponds to this ParkingReceipt
             Vehicle tempVehicle = null;
-            for (ParkingZone pz : parkingZones) {
-                for (ParkingSpace ps : pz.getListOfParkingSpaces()) {
-                    if (ps.getVehicle() != null) {
-                        if (ps.getVehicle().getTempParkingReceiptId() == tempId) {
-                            // Get the Vehicle
-                            tempVehicle = ps.getVehicle();
-                            // Set the price per hour of parking to the ParkingReceipt
-                            tempParkReceipt.setPricePerHour(pz.getPrice());
-                            break;
-                        }
-                    }
-                }
+            ParkingSpace ps = parkingSpacesByReceiptId.get(tempId);
+            if (ps != null) {
+                // Get the Vehicle
+                tempVehicle = ps.getVehicle();
+                // Set the price per hour of parking to the ParkingReceipt
+                tempParkReceipt.setPricePerHour(ps.getParkingZone().getPrice());
             }
 
             // Check if the Vehicle was found
             if (tempVehicle != null) {
                 tempVehicle.setParkingReceipt(tempParkReceipt);
+                registerParkingReceipt(tempVehicle, ps);
             } else {
                 throw new VehicleDoesNotExistException("The vehicle that this parking receipt " + "is assigned to does not exist!");
             }
@@ -433,7 +723,7 @@ public class Parking {
      * @param id ParkingSpace ID (i.e. "A12" or "C4")
      * @return a ParkingSpace object or null if not found
      */
-    private ParkingSpace getParkingSpaceById(String id) {
+    ParkingSpace getParkingSpaceById(String id) {
         for (ParkingZone pz : parkingZones) {
             for (ParkingSpace ps : pz.getListOfParkingSpaces()) {
                 if (ps.getID().equals(id)) {
@@ -460,7 +750,7 @@ public class Parking {
 
             // Create an ExitToken and add it to the array
             ExitToken tempExitToken = new ExitToken(tempExitTokenId, tempExitTokenDate);
-            exitTokens.add(tempExitToken);
+            exitTokens.put(tempExitToken.getId(), tempExitToken);
         }
     }
 
@@ -474,7 +764,6 @@ public class Parking {
     private String getContent(String Filename) throws FileNotFoundException, IOException {
         StringBuilder sb = new StringBuilder();
         File file = new File(Filename);
-        System.out.println(file.getAbsolutePath());
         if (!file.exists()){
            boolean success = file.createNewFile();
            if (!success) throw new FileNotFoundException();
@@ -509,77 +798,11 @@ public class Parking {
      */
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        sb.append(this.name);
-
-        // Display ParkingZones
-        sb.append("\n\n---------- PARKING ZONES ----------\n");
-        if (parkingZones.size() > 0) {
-            sb.append("Has ");
-            sb.append(parkingZones.size());
-            sb.append((parkingZones.size() == 1) ? " parking zone:\n" : " parking zones:\n");
-            for (ParkingZone pz : parkingZones) {
-                sb.append(pz.toString());
-                sb.append("\n\n");
-            }
-        } else {
-            sb.append("Doesn't have any parking zones.");
-        }
-
-        // Display Vehicles
-        sb.append("\n\n---------- VEHICLES ----------");
-        ArrayList<Vehicle> vehicles = new ArrayList<>();
-
-        // Get all Vehicles into the array
-        for (ParkingZone pz : parkingZones) {
-            for (ParkingSpace ps : pz.getListOfParkingSpaces()) {
-                if (!ps.isFree()) {
-                    vehicles.add(ps.getVehicle());
-                }
-            }
-        }
-
-        if (vehicles.size() > 0) {
-            sb.append((vehicles.size() == 1) ? "There is " : "There are ");
-            sb.append(vehicles.size());
-            sb.append((vehicles.size() == 1) ? " vehicle parked in the parking:" : " vehicles parked in the parking:");
-            for (Vehicle v : vehicles) {
-                sb.append(v.toString());
-                sb.append("\n");
-            }
-        } else {
-            sb.append("\nThere are no vehicles parked in this parking.");
-        }
-
-        // Display FreeEmployees
-        sb.append("\n\n---------- FREE EMPLOYEES ----------\n");
-
-        if (freeEmployees.size() > 0) {
-            sb.append((freeEmployees.size() == 1) ? "There is currently " : "There are currently ");
-            sb.append(freeEmployees.size());
-            sb.append((freeEmployees.size() == 1) ? " free employee:\n" : " free employees:\n");
-            for (FreeEmployee fe : freeEmployees) {
-                sb.append(fe.toString());
-                sb.append("\n");
-            }
-        } else {
-            sb.append("There are currently no free employees.");
-        }
-
-        // Display ExitTokens
-        sb.append("\n\n---------- EXIT TOKENS ----------\n");
-
-        if (exitTokens.size() > 0) {
-            sb.append((exitTokens.size() == 1) ? "There is currently " : "There are currently ");
-            sb.append(exitTokens.size());
-            sb.append((exitTokens.size() == 1) ? " exit token:\n" : " exit tokens:\n");
-            for (ExitToken et : exitTokens) {
-                sb.append(et.toString());
-                sb.append("\n");
-            }
-        } else {
-            sb.append("There are currently no exit tokens.");
+        try {
+            new ParkingReport(this).write(sb);
+        } catch (IOException e) {
+            // A StringBuilder never throws
         }
-
         return sb.toString();
     }
 
@@ -588,8 +811,12 @@ public class Parking {
      *
      * @param pz ParkingZone object to be added
      */
-    private void addParkingZone(ParkingZone pz) {
+    void addParkingZone(ParkingZone pz) {
         parkingZones.add(pz);
+        pz.setEventBus(eventBus);
+        AllocationStrategy strategy = allocationStrategy;
+        pz.setAllocationStrategy(strategy);
+        strategy.setParkingZones(parkingZones);
     }
 
     /**
@@ -607,561 +834,183 @@ public class Parking {
     }
 
     /**
-     * Used to get Vehicle's height and length.
+     * Claims a free ParkingSpace chosen by the AllocationStrategy and parks the Vehicle in it.
+     * If another gate claims the chosen ParkingSpace first, a new one is picked,
+     * until the Vehicle is parked or there are no free ParkingSpaces left.
+     * A ParkingSpace the Vehicle doesn't fit into is never used, whatever the strategy picks;
+     * a strategy that keeps picking one is given up on after MAX_REFUSED_CHOICES.
      *
-     * @param dimensionName name of the dimension (either "length" or "height")
-     * @return floating-point number value of the dimension
+     * @param v Vehicle to be parked
+     * @return the ParkingSpace the Vehicle has been parked in
+     * @throws NoFreeParkingSpacesException thrown if there are no free ParkingSpaces for the Vehicle
      */
-    private float getVehicleDimension(String dimensionName) {
-        String response;
-        float dimension = -1.0f; // If it's still -1.0 -- it's invalid
-
-        if (dimensionName.toUpperCase().equals("LENGTH") || dimensionName.toUpperCase().equals("HEIGHT")) {
-            dimensionName = dimensionName.toLowerCase();
-            // Get vehicle dimensions
-            boolean isResponseValid = false;
-
-            do {
-                System.out.print("What's your vehicle's " + dimensionName + " (in metres)? ");
-                response = in.nextLine();
-                try {
-                    dimension = Float.parseFloat(response);
-                    isResponseValid = true;
-                } catch (NumberFormatException e) {
-                    // Catch illegal float value
-                    System.err.println("Invalid value (" + response + ")!\n" + e.getMessage());
-                } finally {
-                    if (response.isEmpty()) {
-                        isResponseValid = false;
-                    }
+    ParkingSpace parkInFreeParkingSpace(Vehicle v) throws NoFreeParkingSpacesException {
+        int refused = 0;
+        while (true) {
+            ParkingSpace ps = allocationStrategy.choose(v, parkingZones);
+            if (!ps.accepts(v)) {
+                if (++refused >= MAX_REFUSED_CHOICES) {
+                    throw new NoFreeParkingSpacesException("There are no free parking spaces for this vehicle!");
                 }
-            } while (!isResponseValid);
-        }
-        else {
-            throw new IllegalArgumentException("The specified argument " + dimensionName + " is not valid!" +
-                    "\nAccepted values are: \"LENGTH\" and \"HEIGHT\"");
+                continue;
+            }
+            try {
+                v.parkIn(ps);
+                return ps;
+            } catch (ParkingSpaceOccupiedException e) {
+                // Someone else took this ParkingSpace in the meantime -- try another one
+            }
         }
-        return dimension;
     }
 
     /**
-     * Adds a Vehicle.
+     * Returns the Reservations holding ParkingSpaces for pre-booked Vehicles.
      *
-     * @throws VehicleSizeNotSupportedException thrown if Vehicle's size is not supported
-     * @throws VehicleAlreadyExistsException thrown if there is already a Vehicle with the same license plate
+     * @return the Reservations
      */
-    void addVehicle() throws VehicleSizeNotSupportedException, VehicleAlreadyExistsException {
-        String response, licensePlate;
-        boolean isMotorbike, isCoach = false, isDriverDisabled, needsAssistance = false;
-        float height, length;
-        Vehicle newVehicle;
-        ParkingReceipt newParkingReceipt;
-
-        // Get license plate number
-        do {
-            System.out.print("What's your license plate? ");
-            response = in.nextLine().toUpperCase();
-        } while (response.isEmpty());
-        licensePlate = response;
-
-        // Check if there's a Vehicle with the same license plate already parked
-        for (ParkingZone pz : parkingZones) {
-            for (ParkingSpace ps : pz.getListOfParkingSpaces()) {
-                if (!ps.isFree()) {
-                    if (ps.getVehicle().getLicensePlate().equals(licensePlate)) {
-                        throw new VehicleAlreadyExistsException();
-                    }
-                }
-            }
-        }
-
-        // Is it a motorbike?
-        do {
-            System.out.print("Is your vehicle a motorbike? [y/n] ");
-            response = in.nextLine().toUpperCase();
-        } while (! (response.equals("Y") || response.equals("N")));
-        isMotorbike = response.equals("Y");
-
-        // Is it a coach?
-        if (!isMotorbike) {
-            do {
-                System.out.print("Is your vehicle a coach? [y/n] ");
-                response = in.nextLine().toUpperCase();
-            } while (! (response.equals("Y") || response.equals("N")));
-            isCoach = response.equals("Y");
-        }
-
-        // Get vehicle dimensions
-        height = getVehicleDimension("HEIGHT");
-        length = getVehicleDimension("LENGTH");
-
-        // Check if a coach doesn't exceed the 15 metres length limit
-        if (isCoach) {
-            if (length > 15.0f) {
-                throw new VehicleSizeNotSupportedException();
-            }
-        }
-
-        // Is the driver disabled?
-        do {
-            System.out.print("Are you disabled? [y/n] ");
-            response = in.nextLine().toUpperCase();
-        } while (! (response.equals("Y") || response.equals("N")));
-        isDriverDisabled = response.equals("Y");
-
-        // Create the Vehicle object
-        if (isCoach) {
-            newVehicle = new Vehicle(licensePlate, height, length, VehicleType.COACH);
-        } else if (isMotorbike) {
-            newVehicle = new Vehicle(licensePlate, height, length, VehicleType.MOTORBIKE);
-        } else {
-            newVehicle = new Vehicle(licensePlate, height, length);
-        }
-
-        // Get the Vehicle's type
-        VehicleType vehicleType = newVehicle.getVehicleType();
-
-        // Does user need assistance parking their vehicle?
-        // (available only if the vehicle is neither a coach nor a motorbike
-        if (!isCoach && !isMotorbike) {
-            do {
-                System.out.print("Do you need assistance parking your vehicle? [y/n] ");
-                response = in.nextLine().toUpperCase();
-            } while (!(response.equals("Y") || response.equals("N")));
-            needsAssistance = response.equals("Y");
-        }
-
-        // Generate a ParkingReceipt and assign it to the Vehicle
-        newParkingReceipt = new ParkingReceipt(getNextReceiptId(), new Date(), isDriverDisabled);
-        newVehicle.setParkingReceipt(newParkingReceipt);
-
-        boolean parked = false; // changes to true when vehicle has been successfully parked
-        do {
-            if (needsAssistance) {
-                // Check if there are any free employees
-                if (freeEmployees.size() <= 0) {
-                    System.out.println("Sorry, all employees are busy at the moment." +
-                            "\nYou need to park the vehicle yourself.");
-                    // Go to "park yourself" mode
-                    needsAssistance = false;
-                } else {
-                    // Vehicle is parked by a random employee
-                    System.out.println("Your vehicle will be parked by an employee shortly!" +
-                            "\nYour parking receipt number is: " + newParkingReceipt.getId());
-
-                    // ------------------------------------------------------------------------------ //
-                    System.out.println("----- From this point, everything would be displayed to an Employee, not a Customer ---");
-                    // ------------------------------------------------------------------------------ //
-
-                    // Get a random FreeEmployee and convert them into DriverEmployee
-                    DriverEmployee driverEmployee = convertFreeEmployeeIntoDriverEmployee(
-                            freeEmployees.get(rand.nextInt(freeEmployees.size())));
-
-                    System.out.println("Welcome, " + driverEmployee.getName() + "!" +
-                            "\nYou've got a vehicle to park.");
-
-                    do {
-                        System.out.print("Do you want to park it in a specific parking space? [y/n] ");
-                        response = in.nextLine().toUpperCase();
-                    } while (! (response.equals("Y") || (response.equals("N"))));
-                    boolean isRoamingVehicle = response.equals("Y");
-
-                    if (isRoamingVehicle) {
-                        // Employee is roaming the Vehicle to a specified ParkingSpace
-                        boolean isSelectedParkingSpaceFree = false;
-                        ParkingSpace parkingSpace = null;
-                        do {
-                            System.out.print("Enter parking space ID: ");
-                            response = in.nextLine().toUpperCase();
-
-                            // Check if the ParkingSpace is free
-                            for (ParkingZone pz : parkingZones) {
-                                for (ParkingSpace ps : pz.getListOfFreeParkingSpaces()) {
-                                    if (ps.getID().equals(response)) {
-                                        // Check if the ParkingSpace can accept the Vehicle
-                                        if (pz.isVehicleAccepted(vehicleType)) {
-                                            // Check if the ParkingSpace is occupied
-                                            if (ps.isFree()) {
-                                                // Get the ParkingSpace
-                                                parkingSpace = ps;
-                                                isSelectedParkingSpaceFree = true;
-                                            } else {
-                                                System.out.println("This parking space is already occupied!");
-                                            }
-                                        } else {
-                                            System.out.println("This parking zone cannot support this type of vehicle.");
-                                        }
-                                    }
-                                }
-                            }
-                        } while (!isSelectedParkingSpaceFree);
-
-                        // Park the Vehicle in the found, free ParkingSpace
-                        try {
-                            newVehicle.parkIn(parkingSpace);
-                            parked = true;
-                        } catch (ParkingSpaceOccupiedException e) {
-                            // This should never be thrown, as getListOfFreeParkingSpaces()
-                            // should return only free ParkingSpaces
-                            System.err.println(e.getMessage());
-                        }
-
-                    } else {
-                        try {
-                            // Employee is parking the Vehicle in a random ParkingSpace
-                            ParkingSpace randomParkingSpace = getRandomParkingSpace(newVehicle);
-                            System.out.println("Park the vehicle in parking space " + randomParkingSpace.getID());
-                            parked = parkVehicle(newVehicle, randomParkingSpace, newParkingReceipt);
-                        } catch (NoFreeParkingSpacesException e) {
-                            System.err.println(e.getMessage());
-                            break;
-                        }
-                    }
-
-                    // Convert the DriverEmployee back into FreeEmployee
-                    FreeEmployee tempFreeEmployee = convertDriverEmployeeIntoFreeEmployee(driverEmployee);
-                    freeEmployees.add(tempFreeEmployee);
-                }
-            } else {
-                try {
-                    // Get a random ParkingSpace that can accept the Vehicle and try to park the Vehicle in it
-                    ParkingSpace randomParkingSpace = getRandomParkingSpace(newVehicle);
-                    System.out.println("Park your vehicle in parking space " + randomParkingSpace.getID());
-                    parked = parkVehicle(newVehicle, randomParkingSpace, newParkingReceipt);
-                } catch (NoFreeParkingSpacesException e) {
-                    System.err.println(e.getMessage());
-                    break;
-                }
-            }
-        } while (!parked);
+    Reservations getReservations() {
+        return this.reservations;
     }
 
     /**
-     * Returns a random ParkingSpace that can accept the Vehicle provided.
-     * It checks if the ParkingSpace is both free and can accept the type of Vehicle.
+     * Returns the AllocationStrategy that picks the ParkingSpaces for arriving Vehicles.
      *
-     * @param v Vehicle to be parked
-     * @return a free random ParkingSpace
-     * @throws NoFreeParkingSpacesException thrown if there are no free ParkingSpaces in the ParkingZone
+     * @return the AllocationStrategy
      */
-    private ParkingSpace getRandomParkingSpace(Vehicle v) throws NoFreeParkingSpacesException {
-        ArrayList<ParkingZone> tempParkingZones = new ArrayList<>();
-        VehicleType vt = v.getVehicleType();
-
-        // Get all ParkingZones that will accept the Vehicle
-        for (ParkingZone pz : parkingZones) {
-            if (pz.isVehicleAccepted(vt)) {
-                tempParkingZones.add(pz);
-            }
-        }
-
-        if (tempParkingZones.size() != 0) {
-            // Get a random ParkingZone from the list
-            ParkingZone randomParkingZone = tempParkingZones.get(rand.nextInt(tempParkingZones.size()));
-
-            // Find a random ParkingSpace in the random ParkingZone
-            int freeParkingSpacesCount = randomParkingZone.getListOfFreeParkingSpaces().size();
-
-            try {
-                int randomParkingSpaceId = rand.nextInt(freeParkingSpacesCount);
-                return randomParkingZone.getListOfFreeParkingSpaces()
-                        .get(randomParkingSpaceId);
-            } catch (IllegalArgumentException e) {
-                // Thrown if there are no free ParkingSpaces in the ParkingZone
-                throw new NoFreeParkingSpacesException("There are no free parking spaces! Try again later.");
-            }
-        }
-        else {
-            throw new NoFreeParkingSpacesException("There are no free parking spaces! Try again later.");
-        }
+    AllocationStrategy getAllocationStrategy() {
+        return this.allocationStrategy;
     }
 
     /**
-     * Parks a Vehicle in the ParkingSpace given.
-     * This method does NOT check if the Vehicle can be parked in
-     * the ParkingSpace provided, since it's called after using
-     * getRandomParkingSpace() method and should NOT be called manually.
+     * Replaces the AllocationStrategy. Vehicles arriving from now on are parked by the new one.
      *
-     * @param v Vehicle to be parked
-     * @param ps ParkingSpace to be parked in
-     * @param pr ParkingReceipt assigned to the Vehicle
-     * @return TRUE if Parking was successful, FALSE if an error occurred
+     * @param strategy the new AllocationStrategy
      */
-    private boolean parkVehicle(Vehicle v, ParkingSpace ps, ParkingReceipt pr) {
-        // As this is a demo, even in "manual parking" mode
-        // the Vehicle is parked automatically.
-
-        // Try to park the Vehicle in the random ParkingSpace
-        try {
-            v.parkIn(ps);
-            System.out.println("You parked your vehicle!" +
-                    "\nYour parking receipt number is: " + pr.getId());
-            return true;
-        } catch (ParkingSpaceOccupiedException e) {
-            // This should never be thrown, as the getListOfFreeParkingSpaces()
-            // method returns only free ParkingSpaces.
-            System.err.println(e.getMessage());
-            return false;
+    void setAllocationStrategy(AllocationStrategy strategy) {
+        strategy.setParkingZones(parkingZones);
+        for (ParkingZone pz : parkingZones) {
+            pz.setAllocationStrategy(strategy);
         }
+        this.allocationStrategy = strategy;
     }
 
     /**
-     * Generates a unique, free ExitToken.
+     * Generates a random ExitToken ID that isn't currently used.
+     * Another thread may still take it before it's added, so use issueExitToken() to get a token.
      *
      * @return unique token
      */
     private int generateExitToken() {
-        boolean isFree = true;
         int tempToken;
 
         // Keep generating the token as long, as the generated one will be free
         do {
             // Generate a random 4-digits-long number
-            tempToken = rand.nextInt(9000) + 1000;
-
-            // Check if the token already exists
-            for (ExitToken et : exitTokens) {
-                if (et.getId() == tempToken) {
-                    isFree = false;
-                    break;
-                }
-            }
-        } while (!isFree);
+            tempToken = ThreadLocalRandom.current().nextInt(9000) + 1000;
+        } while (exitTokens.containsKey(tempToken));
 
         return tempToken;
     }
 
     /**
-     * Collects a Vehicle.
+     * Generates a new, unique ExitToken and adds it to the list.
      *
-     * @throws VehicleDoesNotExistException thrown if Vehicle doesn't exist
+     * @return the new ExitToken
      */
-    void collectVehicle() throws VehicleDoesNotExistException {
-
-        boolean isValid;
-        String response;
-        int tempReceiptId = -1;
-
-        // Get the ParkingReceipt number
+    ExitToken issueExitToken() {
+        ExitToken exitToken;
+        // Retry if another thread has taken the same ID in the meantime
         do {
-            System.out.print("Enter your parking receipt number: ");
-            response = in.nextLine();
-            try {
-                tempReceiptId = Integer.parseInt(response);
-                isValid = true;
-            } catch (NumberFormatException e) {
-                System.err.println("This is not a valid number!");
-                isValid = false;
-            } finally {
-                if (response.isEmpty()) {
-                    isValid = false;
-                }
-            }
-        } while (!isValid);
-
-
-        Vehicle tempVehicle = null;
-        ParkingSpace tempParkingSpace = null;
-
-        // Search for the Vehicle
-        for (ParkingZone pz : parkingZones ) {
-            for (ParkingSpace ps : pz.getListOfParkingSpaces()) {
-                if (!ps.isFree()) {
-                    int receiptId = ps.getVehicle().getParkingReceipt().getId();
-                    if (receiptId == tempReceiptId) {
-                        tempVehicle = ps.getVehicle();
-                        tempParkingSpace = ps;
-                        ps.getVehicle().getParkingReceipt().setPricePerHour(pz.getPrice());
-                        break;
-                    }
-                }
-            }
-        }
-
-        // If the Vehicle cannot be found, throw an exception
-        if (tempVehicle == null) {
-            throw new VehicleDoesNotExistException("The vehicle assigned to this parking receipt doesn't exist!" +
-                    "\nContact parking staff.");
-        } else {
-            // Set the endDate to "now" and calculate price etc.
-            Date endDate = new Date();
-            try {
-                tempVehicle.getParkingReceipt().setEndDate(endDate);
-            } catch (EndDateBeforeStartDateException e) {
-                System.err.println(e.getMessage());
-            }
-
-            // Get the price to pay
-            float priceToPay = tempVehicle.getParkingReceipt().getPrice();
-
-            // If the Driver is disabled -- halve the price (except for coach Drivers)
-            boolean tempIsDisabled = tempVehicle.getParkingReceipt().isOwnerDisabled();
-            boolean tempIsCoachDriver = tempVehicle.getVehicleType().toString().equals("COACH");
-            if (tempIsDisabled && !tempIsCoachDriver) {
-                priceToPay /= 2;
-            }
-
-            // If the Driver is disabled and it's Sunday -- set priceToPay to 0.00
-            SimpleDateFormat sdf = new SimpleDateFormat("u");
-
-            if (Integer.parseInt(sdf.format(tempVehicle.getParkingReceipt().getStartDate())) == 7 && Integer.parseInt(sdf.format(endDate)) == 7 && tempIsDisabled) {
-                priceToPay = 0.00f;
-            }
-
-            Date startDate = tempVehicle.getParkingReceipt().getStartDate();
-
-            // Calculate the time parked and convert it to user-friendly format
-            long timeParked = endDate.getTime() - startDate.getTime();
-            long secondsParked = timeParked / 1000;
-            long minutesParked = secondsParked / 60;
-            long hoursParked = minutesParked / 60;
-            minutesParked %= 60;
-
-            // Display info to the Customer
-            System.out.print("You've been parked for ");
-            if (hoursParked > 0) {
-                System.out.print(hoursParked + " hours ");
-            }
-            if (minutesParked >= 0) {
-                System.out.print(minutesParked + " min ");
-            }
-
-            // Get the Customer to pay
-            System.out.println("and your payment is: " + priceToPay + " units.");
-            float change = payment(priceToPay);
-
-            // If there is a change -- give it back to the Customer
-            if (change != 0.00f) {
-                System.out.println("Your change is " + change + " units.");
-            }
-
-            // Generate the ExitToken and add it to the array
-            ExitToken exitToken = new ExitToken(generateExitToken(), new Date());
-            exitTokens.add(exitToken);
-
-            // Ask the Customer if they need assistance collecting their Vehicle (not coaches and motorbikes)
-            String tempVehicleType = tempVehicle.getVehicleType().toString().toUpperCase();
-            if (! (tempVehicleType.equals("MOTORBIKE") || tempVehicleType.equals("COACH"))) {
-                boolean needsAssistance;
-                do {
-                    System.out.print("Do you need assistance collecting your vehicle? [y/n] ");
-                    response = in.nextLine().toUpperCase();
-                } while (! (response.equals("Y") || response.equals("N")));
-                needsAssistance = response.equals("Y");
-
-                if (needsAssistance) {
-                    // Check if there are any free employees
-                    if (freeEmployees.size() <= 0) {
-                        // There are no FreeEmployees
-                        System.out.println("Sorry, all employees are busy at the moment." +
-                                "\nYou need to collect the vehicle yourself.");
-                        // Go to "collect yourself" mode
-                        needsAssistance = false;
-                    } else {
-                        // Vehicle collected by an Employee
-                        System.out.println("Your vehicle will be collected by an employee shortly!");
-
-                        // ------------------------------------------------------------------------------ //
-                        System.out.println("----- From this point, everything would be displayed to an Employee, not a Customer ---");
-                        // ------------------------------------------------------------------------------ //
-
-                        // Get a random FreeEmployee and convert them into DriverEmployee
-                        DriverEmployee driverEmployee = convertFreeEmployeeIntoDriverEmployee(
-                                freeEmployees.get(rand.nextInt(freeEmployees.size())));
-
-                        System.out.println("Welcome, " + driverEmployee.getName() + "!" +
-                                "\nYou've got a vehicle to collect." +
-                                "\nThe vehicle is parked in the parking space " + tempParkingSpace.getID() +
-                                "\nThe exit token is: " + exitToken.getId());
-
-                        // As this is a demo, everything happens automatically
-                        System.out.println("Thanks for delivering the Vehicle to the Customer. Your job here is done!");
-
-                        // Convert the DriverEmployee back into FreeEmployee
-                        FreeEmployee tempFreeEmployee = convertDriverEmployeeIntoFreeEmployee(driverEmployee);
-                        freeEmployees.add(tempFreeEmployee);
-
-                    }
-                } else {
-                    // Vehicle collected by the Customer
-                    // Remind the Customer where the Vehicle is
-                    System.out.println("Your vehicle is parked in the parking space " + tempParkingSpace.getID());
-
-                    // Collect the Vehicle and generate ExitToken
-                    System.out.println("You can now exit the car parking with your vehicle!" +
-                            "\nHead towards the exit barrier. Your exit token is: " + exitToken.getId());
-
-                    // Remove the Vehicle from the Parking (also removes the ParkingReceipt)
-                    tempParkingSpace.setVehicle(null);
-                }
-            } else {
+            exitToken = new ExitToken(generateExitToken(), new Date());
+        } while (exitTokens.putIfAbsent(exitToken.getId(), exitToken) != null);
+        return exitToken;
+    }
 
-                // If the Vehicle is neither a motorbike nor a coach, the Customer has to collect it themself
-                // Remind the Customer where the Vehicle is
-                System.out.println("Your vehicle is parked in the parking space " + tempParkingSpace.getID());
+    /**
+     * Searches for an ExitToken by its ID.
+     *
+     * @param id ExitToken's ID
+     * @return the ExitToken or null if not found
+     */
+    ExitToken getExitToken(int id) {
+        return exitTokens.get(id);
+    }
 
-                // Collect the Vehicle and generate ExitToken
-                System.out.println("You can now exit the car parking with your vehicle!" +
-                        "\nHead towards the exit barrier. Your exit token is: " + exitToken.getId());
+    /**
+     * Removes a used ExitToken from the list.
+     *
+     * @param et ExitToken to be removed
+     * @return TRUE if the ExitToken was removed, FALSE if it had already been used
+     */
+    boolean removeExitToken(ExitToken et) {
+        return exitTokens.remove(et.getId(), et);
+    }
 
-                // Remove the Vehicle from the Parking (also removes the ParkingReceipt)
-                tempParkingSpace.setVehicle(null);
-            }
-        }
+    /**
+     * Takes the license plate of an arriving Vehicle in one atomic step, so two gates can't both let in
+     * Vehicles with the same license plate. It stays taken until unregisterLicensePlate() is called.
+     *
+     * @param v the arriving Vehicle
+     * @return TRUE if the license plate was taken, FALSE if there's already a Vehicle with it
+     */
+    boolean registerLicensePlate(Vehicle v) {
+        return vehicles.putIfAbsent(v.getLicensePlate(), v) == null;
     }
 
     /**
-     * The "parking machine" that shows a Customer the price and accepts payments.
-     * Returns the amount of change.
+     * Frees the license plate of a Vehicle that has left the Parking (or couldn't be parked).
      *
-     * @param priceToPay price to be paid for parking
-     * @return change to be given to the Customer
+     * @param v the Vehicle
      */
-    private float payment(float priceToPay) {
+    void unregisterLicensePlate(Vehicle v) {
+        vehicles.remove(v.getLicensePlate(), v);
+    }
 
-        boolean paid = false;
-        String response;
+    /**
+     * Searches for the ParkingSpace a Vehicle with the given license plate is parked in.
+     *
+     * @param licensePlate Vehicle's license plate
+     * @return the ParkingSpace or null if there's no such Vehicle
+     */
+    ParkingSpace getParkingSpaceByLicensePlate(String licensePlate) {
+        Vehicle v = vehicles.get(licensePlate);
+        ParkingSpace ps = (v == null) ? null : v.getParkingSpace();
+        // The Vehicle may still be on its way in, or already be leaving
+        return (ps != null && ps.getVehicle() == v) ? ps : null;
+    }
 
-        if(priceToPay == 0.0f) {
-            paid = true;
-        }
-        while(!paid) {
-            System.out.println("Still to pay: " + priceToPay + " units");
-            System.out.println("You can insert: 20.00, 10.00, 5.00, 2.00, 1.00, 0.50, 0.20, 0.10");
-            System.out.print("Insert coin: ");
-            response = in.nextLine();
-            float amountPaid = Float.parseFloat(response);
-
-            // Detect and filter invalid responses
-            if (amountPaid == 20.00f || amountPaid == 10.00f || amountPaid == 5.00f || amountPaid == 2.00f
-                    || amountPaid == 1.00f || amountPaid == 0.50f || amountPaid == 0.20f || amountPaid == 0.10f) {
-
-                if (priceToPay <= amountPaid) {
-                    paid = true;
-                    return (amountPaid - priceToPay);
-                } else {
-                    priceToPay -= amountPaid;
-                }
-            } else {
-                System.out.println("That's not a valid coin!");
-            }
-        }
+    /**
+     * Records the ParkingSpace a Vehicle has been parked in by its ParkingReceipt's ID, so it can be found
+     * when the Customer collects it and pays. It's kept until unregisterParkingReceipt() is called.
+     *
+     * @param v the parked Vehicle
+     * @param ps the ParkingSpace it's parked in
+     */
+    void registerParkingReceipt(Vehicle v, ParkingSpace ps) {
+        parkingSpacesByReceiptId.put(v.getParkingReceipt().getId(), ps);
+    }
 
-        return 0.00f;
+    /**
+     * Forgets the ParkingReceipt of a Vehicle that has been paid for or removed.
+     *
+     * @param v the Vehicle
+     * @param ps the ParkingSpace it was parked in
+     */
+    void unregisterParkingReceipt(Vehicle v, ParkingSpace ps) {
+        parkingSpacesByReceiptId.remove(v.getParkingReceipt().getId(), ps);
     }
 
     /**
-     * Prints info about how many free ParkingSpaces are available in each ParkingZone
+     * Searches for the ParkingSpace the Vehicle with the given ParkingReceipt is parked in.
+     *
+     * @param receiptId ParkingReceipt's ID
+     * @return the ParkingSpace or null if there's no such Vehicle
      */
-    void getNumberOfFreeSpaces() {
-        System.out.println("Number of free parking spaces:");
-        for (ParkingZone pz : parkingZones) {
-            int freeSpaces = 0;
-            for (ParkingSpace ps : pz.getListOfFreeParkingSpaces()) {
-                freeSpaces++;
-            }
-            System.out.println("Zone " + pz.getId() + " -- " + freeSpaces);
-        }
+    ParkingSpace getParkingSpaceByReceiptId(int receiptId) {
+        ParkingSpace ps = parkingSpacesByReceiptId.get(receiptId);
+        Vehicle v = (ps == null) ? null : ps.getVehicle();
+        // The Vehicle may already be leaving
+        return (v != null && v.getParkingReceipt().getId() == receiptId) ? ps : null;
     }
 
     /**
@@ -1193,207 +1042,233 @@ public class Parking {
     }
 
     /**
-     * Allows an Employee to see Parking statistics.
-     * Displays info such as list of ParkingZones and details about all ParkingSpaces inside them.
+     * Checks if there is at least one FreeEmployee.
+     *
+     * @return a boolean whether any Employee is free
      */
-    void employeeSeeStatistics() {
-        System.out.println("----- Parking statistics: -----");
-        System.out.println(this.name);
-        for (ParkingZone pz : parkingZones) {
-            System.out.println("Parking zone " + pz.getId());
-            System.out.println("(has " + pz.getListOfParkingSpaces().size() + " parking spaces)");
-            for (ParkingSpace ps : pz.getListOfParkingSpaces()) {
-                System.out.println(ps.getID() + " -- " + (ps.isFree() ? "free" : "occupied"));
-            }
-            System.out.println("\n\n");
-        }
+    boolean hasFreeEmployees() {
+        return !freeEmployees.isEmpty();
     }
 
     /**
-     * Allows an Employee to remove a Vehicle from the Parking.
+     * Returns the number of all Employees, both free and busy.
      *
-     * @throws VehicleDoesNotExistException thrown if the Vehicle doesn't exist.
+     * @return number of Employees
      */
-    void employeeRemoveVehicle() throws VehicleDoesNotExistException {
-        System.out.print("Enter vehicle's license plate: ");
-        String response = in.nextLine().toUpperCase();
-
-        Vehicle tempVehicle = null;
-
-        // Search for the Vehicle
-        for (ParkingZone pz : parkingZones) {
-            for (ParkingSpace ps : pz.getListOfParkingSpaces()) {
-                if (!ps.isFree()) {
-                    // Compare Vehicles' license plates
-                    if (ps.getVehicle().getLicensePlate().equals(response)) {
-                        tempVehicle = ps.getVehicle();
-                        // Remove the Vehicle from the Parking
-                        ps.setVehicle(null);
-                        System.out.println("The vehicle has been removed!");
-                        break;
-                    }
-                }
-            }
+    int getNumberOfEmployees() {
+        employeesLock.lock();
+        try {
+            return freeEmployees.size() + driverEmployees.size();
+        } finally {
+            employeesLock.unlock();
         }
+    }
 
-        // Check if the Vehicle was found and removed
-        if (tempVehicle == null) {
-            throw new VehicleDoesNotExistException("The vehicle does not exist!");
+    /**
+     * Waits until at least one Employee is free. The ValetDispatcher waits here on a virtual thread,
+     * for as long as all Employees are busy, so it waits on a Condition -- unlike a monitor's wait(),
+     * it doesn't pin the carrier thread meanwhile.
+     *
+     * @throws InterruptedException thrown if the waiting thread is interrupted
+     */
+    void awaitFreeEmployees() throws InterruptedException {
+        employeesLock.lock();
+        try {
+            while (freeEmployees.isEmpty()) {
+                employeeFreed.await();
+            }
+        } finally {
+            employeesLock.unlock();
         }
     }
 
     /**
-     * Gets info about a Vehicle (as an Employee).
+     * Takes a random FreeEmployee and converts them into DriverEmployee.
      *
-     * @throws VehicleDoesNotExistException thrown if Vehicle doesn't exist.
+     * @return the DriverEmployee or null if all Employees are busy
      */
-    void employeeGetVehicleInfo() throws VehicleDoesNotExistException {
-        String response;
-
-        // Get Vehicle's license plate
-        do {
-            System.out.print("Enter vehicle's license plate: ");
-            response = in.nextLine().toUpperCase();
-        } while (response.isEmpty());
-
-        Vehicle tempVehicle = null;
-
-        // Search for the Vehicle
-        for (ParkingZone pz : parkingZones) {
-            for (ParkingSpace ps : pz.getListOfParkingSpaces()) {
-                if (!ps.isFree()) {
-                    // Compare Vehicles' license plates
-                    if (ps.getVehicle().getLicensePlate().equals(response)) {
-                        tempVehicle = ps.getVehicle();
-
-                        // Display all info about the Vehicle
-                        System.out.println(tempVehicle.toString());
-                        break;
-                    }
-                }
+    DriverEmployee dispatchFreeEmployee() {
+        employeesLock.lock();
+        try {
+            if (freeEmployees.isEmpty()) {
+                return null;
             }
+            return convertFreeEmployeeIntoDriverEmployee(
+                    freeEmployees.get(ThreadLocalRandom.current().nextInt(freeEmployees.size())));
+        } finally {
+            employeesLock.unlock();
         }
+    }
 
-        if (tempVehicle == null) {
-            throw new VehicleDoesNotExistException("The vehicle does not exist!");
+    /**
+     * Converts the DriverEmployee back into FreeEmployee once they are done with a Vehicle.
+     *
+     * @param de DriverEmployee who has finished their job
+     */
+    void releaseDriverEmployee(DriverEmployee de) {
+        employeesLock.lock();
+        try {
+            convertDriverEmployeeIntoFreeEmployee(de);
+            employeeFreed.signalAll();
+        } finally {
+            employeesLock.unlock();
         }
     }
 
     /**
-     * Exists the Parking (through the "barrier" with the token).
+     * Adds a new Employee (FreeEmployee) with a unique ID to the Parking.
      *
-     * @throws TokenExpiredException thrown if the ExitToken has expired (default 15 mins).
+     * @param name new Employee's name
+     * @return the new FreeEmployee
      */
-    void exitParking() throws TokenExpiredException {
-        String response;
-        boolean isValidResponse;
-        int exitToken;
-
-        // Get barrier's token from the Customer
-        do {
-            System.out.print("Enter your exit token: ");
-            response = in.nextLine().toUpperCase();
-
-            try {
-                exitToken = Integer.parseInt(response);
-                isValidResponse = true;
-            } finally {
-                if (response.isEmpty()) {
-                    isValidResponse = false;
-                }
-            }
+    FreeEmployee addEmployee(String name) {
+        employeesLock.lock();
+        try {
+            FreeEmployee fe = new FreeEmployee(getNextEmployeeId(), name);
+            freeEmployees.add(fe);
+            employeeFreed.signalAll();
+            return fe;
+        } finally {
+            employeesLock.unlock();
+        }
+    }
 
-        } while (!isValidResponse);
-
-        boolean doesTokenExist = false;
-        // Search for the ExitToken
-        for (ExitToken et : exitTokens) {
-            if (et.getId() == exitToken) {
-
-                // Check if the token is still valid
-                Date currentDate = new Date();
-                if (et.canExit(currentDate)) {
-                    // the Customer did it in under 15 minutes, they can exit
-                    exitTokens.remove(et);
-                    System.out.println("Thank you for choosing our Parking! Have a great day.");
-                    // <------ The end of "Parking cycle" ------> //
-                } else {
-                    // 15 minutes has passed, the Customer cannot exit
-                    throw new TokenExpiredException();
+    /**
+     * Removes a FreeEmployee from the Parking.
+     *
+     * @param id Employee's ID
+     * @return the removed FreeEmployee or null if there's no free Employee with that ID
+     */
+    FreeEmployee removeEmployee(int id) {
+        employeesLock.lock();
+        try {
+            for (FreeEmployee fe : freeEmployees) {
+                if (fe.getId() == id) {
+                    freeEmployees.remove(fe);
+                    return fe;
                 }
-                doesTokenExist = true;
-                break;
             }
+            return null;
+        } finally {
+            employeesLock.unlock();
         }
+    }
 
-        if (!doesTokenExist) {
-            System.out.println("This token is invalid! Try again.");
-        }
+    /**
+     * Returns the Parking's name.
+     *
+     * @return Parking's name
+     */
+    String getName() {
+        return this.name;
     }
 
     /**
-     * Adds a new Employee (FreeEmployee) to the Parking.
+     * Sets the Parking's name.
+     *
+     * @param name becomes Parking's name
      */
-    void employeeAddEmployee() {
-        String response;
+    void setName(String name) {
+        this.name = name;
+    }
 
-        do {
-            System.out.print("Enter new employee's name: ");
-            response = in.nextLine();
-        } while (response.isEmpty());
+    /**
+     * Returns the bus occupancy events are published on.
+     *
+     * @return the ParkingEventBus
+     */
+    ParkingEventBus getEventBus() {
+        return this.eventBus;
+    }
 
-        // Get a unique Employee ID
-        int tempId = getNextEmployeeId();
+    /**
+     * Returns the dispatcher that assigns assisted parking and collection jobs to Employees.
+     *
+     * @return the ValetDispatcher
+     */
+    ValetDispatcher getValetDispatcher() {
+        return this.valetDispatcher;
+    }
 
-        // Create the FreeEmployee class and add it to the array
-        FreeEmployee tempFreeEmployee = new FreeEmployee(tempId, response);
-        freeEmployees.add(tempFreeEmployee);
+    /**
+     * Returns the compiled pricing rules.
+     *
+     * @return the Tariff
+     */
+    Tariff getTariff() {
+        return this.tariff;
+    }
 
-        System.out.println("The employee " + response + " has been added as employee ID " + tempId);
+    /**
+     * Replaces the pricing rules. Stays priced from now on use the new Tariff.
+     *
+     * @param tariff the new Tariff
+     */
+    void setTariff(Tariff tariff) {
+        this.tariff = tariff;
+    }
 
+    /**
+     * Returns the event log.
+     *
+     * @return the ParkingLog
+     */
+    ParkingLog getLog() {
+        return this.log;
     }
 
     /**
-     * Removes an Employee from the Parking.
+     * Returns the operational metrics.
      *
-     * @throws EmployeeDoesNotExistException thrown if the Employee doesn't exist.
+     * @return the ParkingMetrics
      */
-    void employeeRemoveEmployee() throws EmployeeDoesNotExistException {
-        String response;
-        boolean isValid;
-        int tempEmployeeId = -1;
+    ParkingMetrics getMetrics() {
+        return this.metrics;
+    }
 
-        do {
-            System.out.print("Enter employee's ID: ");
-            response = in.nextLine();
-            try {
-                tempEmployeeId = Integer.parseInt(response);
-                isValid = true;
-            } catch (NumberFormatException e) {
-                System.err.println("It's not a valid number!");
-                isValid = false;
-            } finally {
-                if (response.isEmpty()) {
-                    isValid = false;
-                }
-            }
-        } while (!isValid);
+    /**
+     * Returns the archive of the completed stays.
+     *
+     * @return the StayArchive
+     */
+    StayArchive getStayArchive() {
+        return this.stayArchive;
+    }
 
-        FreeEmployee freeEmployee = null;
+    /**
+     * Returns the open payments of the pay stations.
+     *
+     * @return the PaymentSessions
+     */
+    PaymentSessions getPaymentSessions() {
+        return this.paymentSessions;
+    }
 
-        // Check if the Employee exists
-        for (FreeEmployee fe : freeEmployees) {
-            if (fe.getId() == tempEmployeeId) {
-                freeEmployee = fe;
-                freeEmployees.remove(freeEmployee);
-                System.out.println("Removed employee " + freeEmployee.getName() + " (" + freeEmployee.getId() + ")");
-                break;
-            }
-        }
+    /**
+     * Returns the FreeEmployees waiting for a job.
+     *
+     * @return live list of FreeEmployees
+     */
+    CopyOnWriteArrayList<FreeEmployee> getFreeEmployees() {
+        return this.freeEmployees;
+    }
 
-        if (freeEmployee == null) {
-            throw new EmployeeDoesNotExistException();
-        }
+    /**
+     * Returns the ExitTokens that haven't been used yet.
+     *
+     * @return live view of the ExitTokens
+     */
+    Collection<ExitToken> getExitTokens() {
+        return this.exitTokens.values();
+    }
+
+    /**
+     * Returns the list of all ParkingZones.
+     *
+     * @return list of ParkingZones
+     */
+    CopyOnWriteArrayList<ParkingZone> getParkingZones() {
+        return this.parkingZones;
     }
 
 }
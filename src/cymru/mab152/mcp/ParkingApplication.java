@@ -11,6 +11,7 @@ import java.util.Scanner;
 public class ParkingApplication {
 
     private Parking parking;
+    private ParkingConsole console;
     private Scanner in;
     private String Filename;
 
@@ -18,6 +19,7 @@ public class ParkingApplication {
     private ParkingApplication() {
         in = new Scanner(System.in);
         parking = new Parking();
+        console = new ParkingConsole(parking, new ParkingService(parking), in);
 
         // Get database Filename
 
@@ -25,6 +27,18 @@ public class ParkingApplication {
         Filename = in.nextLine();
     }
 
+    /**
+     * The constructor used when the database filename is given on the command line.
+     *
+     * @param filename database filename
+     */
+    private ParkingApplication(String filename) {
+        in = new Scanner(System.in);
+        parking = new Parking();
+        console = new ParkingConsole(parking, new ParkingService(parking), in);
+        Filename = filename;
+    }
+
     /**
      * Initialise the application (try to load the JSON database file).
      */
@@ -53,7 +67,14 @@ public class ParkingApplication {
         } catch (VehicleDoesNotExistException e) {
             System.err.println(e.getMessage());
             System.exit(1);
+        } catch (InvalidTariffException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
         }
+
+        // Publish the metrics over JMX and write the events next to the database
+        parking.getMetrics().registerMBean(Filename);
+        parking.getLog().open(ParkingLog.filenameFor(Filename));
     }
 
     /**
@@ -74,6 +95,12 @@ public class ParkingApplication {
         System.out.println("C. Get info about a vehicle");
         System.out.println("D. Add an employee");
         System.out.println("E. Remove an employee");
+        System.out.println("F. Run end-of-day billing");
+        System.out.println("G. Reserve a parking space");
+        System.out.println("H. Cancel a reservation");
+        System.out.println("I. Print a page of the parking report");
+        System.out.println("J. See stay analytics");
+        System.out.println("K. Export data for reporting");
 
         // Application menu
         System.out.println("----- APPLICATION MENU -----");
@@ -95,7 +122,7 @@ public class ParkingApplication {
                 case "1": {
                     // Add a Vehicle (as a Customer)
                     try {
-                        parking.addVehicle();
+                        console.addVehicle();
                         save();
                     } catch (VehicleSizeNotSupportedException e) {
                         System.err.println(e.getMessage());
@@ -107,7 +134,7 @@ public class ParkingApplication {
                 case "2": {
                     // Collect a Vehicle (as a Customer)
                     try {
-                        parking.collectVehicle();
+                        console.collectVehicle();
                         save();
                     } catch (VehicleDoesNotExistException e) {
                         System.err.println(e.getMessage());
@@ -116,13 +143,13 @@ public class ParkingApplication {
                 }
                 case "3": {
                     // Get number of free ParkingSpaces (as a Customer)
-                    parking.getNumberOfFreeSpaces();
+                    console.getNumberOfFreeSpaces();
                     break;
                 }
                 case "4": {
                     // Exit the parking (with a token)
                     try {
-                        parking.exitParking();
+                        console.exitParking();
                         save();
                     } catch (TokenExpiredException e) {
                         System.err.println(e.getMessage());
@@ -131,13 +158,13 @@ public class ParkingApplication {
                 }
                 case "A": {
                     // See Parking statistics (as an Employee)
-                    parking.employeeSeeStatistics();
+                    console.employeeSeeStatistics();
                     break;
                 }
                 case "B": {
                     // Remove a Vehicle (as an Employee)
                     try {
-                        parking.employeeRemoveVehicle();
+                        console.employeeRemoveVehicle();
                         save();
                     } catch (VehicleDoesNotExistException e) {
                         System.err.println(e.getMessage());
@@ -147,7 +174,7 @@ public class ParkingApplication {
                 case "C": {
                     // Get info about a Vehicle (as an Employee)
                     try {
-                        parking.employeeGetVehicleInfo();
+                        console.employeeGetVehicleInfo();
                     } catch (VehicleDoesNotExistException e) {
                         System.err.println(e.getMessage());
                     }
@@ -155,22 +182,64 @@ public class ParkingApplication {
                 }
                 case "D": {
                     // Add an Employee
-                    parking.employeeAddEmployee();
+                    console.employeeAddEmployee();
                     save();
                     break;
                 }
                 case "E": {
                     // Remove an Employee
                     try {
-                        parking.employeeRemoveEmployee();
+                        console.employeeRemoveEmployee();
                         save();
                     } catch (EmployeeDoesNotExistException e) {
                         System.err.println(e.getMessage());
                     }
                     break;
                 }
+                case "F": {
+                    // Price all parked Vehicles (as an Employee)
+                    console.employeeRunBilling();
+                    break;
+                }
+                case "G": {
+                    // Hold a ParkingSpace for a pre-booked Vehicle (as an Employee)
+                    try {
+                        console.employeeReserve();
+                        save();
+                    } catch (ReservationAlreadyExistsException | ParkingSpaceDoesNotExistException
+                            | ParkingSpaceOccupiedException | ParkingZoneDoesNotExistException
+                            | NoFreeParkingSpacesException e) {
+                        System.err.println(e.getMessage());
+                    }
+                    break;
+                }
+                case "H": {
+                    // Cancel a Reservation (as an Employee)
+                    try {
+                        console.employeeCancelReservation();
+                        save();
+                    } catch (ReservationDoesNotExistException e) {
+                        System.err.println(e.getMessage());
+                    }
+                    break;
+                }
+                case "I": {
+                    // Print part of the report (as an Employee)
+                    console.employeePrintReportPage();
+                    break;
+                }
+                case "J": {
+                    // Revenue and dwell times of the completed stays (as an Employee)
+                    console.employeeSeeStayAnalytics();
+                    break;
+                }
+                case "K": {
+                    // Export the data to files (as an Employee)
+                    console.employeeExport();
+                    break;
+                }
                 case "X": {
-                    System.out.println(parking.toString());
+                    console.printReport();
 
                     break;
                 }
@@ -208,17 +277,77 @@ public class ParkingApplication {
         }
     }
 
+    /**
+     * Starts the HTTP gate server instead of the interactive menu.
+     * The server runs until the application is stopped, then saves all changes.
+     *
+     * @param port TCP port to listen on
+     */
+    private void runServer(int port) {
+        ParkingGateServer server = new ParkingGateServer(parking, Filename);
+        try {
+            server.start(port);
+        } catch (IOException e) {
+            System.err.println("The gate server cannot be started:\n" + e.getMessage());
+            System.exit(1);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(5)));
+        System.out.println("Gate server listening on port " + port);
+    }
+
+    /**
+     * Starts hosting all sites from the directory given behind one HTTP server.
+     * The host runs until the application is stopped, then saves all changes.
+     *
+     * @param directory directory with the JSON databases of the sites
+     * @param port TCP port to listen on
+     */
+    private static void runSites(String directory, int port) {
+        ParkingSiteHost host = new ParkingSiteHost(directory);
+        try {
+            host.start(port);
+        } catch (IOException e) {
+            System.err.println("The site host cannot be started:\n" + e.getMessage());
+            System.exit(1);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> host.stop(5)));
+        System.out.println("Site host listening on port " + port);
+    }
+
     /**
      * The main method of the application.
+     * Run with "--server &lt;database file&gt; [port]" to start the HTTP gate server
+     * instead of the interactive menu, or with "--sites &lt;directory&gt; [port]" to host
+     * every database in the directory as a separate site.
      *
-     * @param args auto-generated by Java
+     * @param args command line arguments
      */
     public static void main(String[] args) {
         System.out.println("Loading Application. Please wait...");
+
+        if (args.length >= 2 && args[0].equals("--server")) {
+            ParkingApplication app = new ParkingApplication(args[1]);
+            app.init();
+            app.runServer((args.length >= 3) ? Integer.parseInt(args[2]) : 8080);
+            return;
+        }
+
+        if (args.length >= 2 && args[0].equals("--sites")) {
+            runSites(args[1], (args.length >= 3) ? Integer.parseInt(args[2]) : 8080);
+            return;
+        }
+
         ParkingApplication app = new ParkingApplication();
         app.init();
+        // "Q" exits straight from the menu (as does Ctrl+C), so the valet jobs are finished
+        // and the events still in the buffer are written out here
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            app.parking.getValetDispatcher().shutdown(5);
+            app.parking.getLog().close();
+        }));
         app.runMenu();
         app.save();
+        app.parking.getLog().close();
         System.out.println("Thank you for using MCP");
     }
 
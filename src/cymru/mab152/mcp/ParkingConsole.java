@@ -0,0 +1,667 @@
+package cymru.mab152.mcp;
+
+import cymru.mab152.mcp.exception.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The interactive console of the Parking.
+ * It asks the Customers and Employees for input and passes it on to ParkingService.
+ */
+public class ParkingConsole {
+
+    private static final int VALET_TIMEOUT_SECONDS = 30;
+
+    private Parking parking;
+    private ParkingService service;
+    private Scanner in;
+
+    /**
+     * The constructor for ParkingConsole objects.
+     *
+     * @param parking the Parking shown in statistics
+     * @param service the ParkingService all operations go through
+     * @param in the Scanner to read the input from
+     */
+    ParkingConsole(Parking parking, ParkingService service, Scanner in) {
+        this.parking = parking;
+        this.service = service;
+        this.in = in;
+    }
+
+    /**
+     * Asks a yes/no question until a valid answer is given.
+     *
+     * @param question the question to ask
+     * @return TRUE if the answer was "y", FALSE if it was "n"
+     */
+    private boolean askYesNo(String question) {
+        String response;
+        do {
+            System.out.print(question + " [y/n] ");
+            response = in.nextLine().toUpperCase();
+        } while (!(response.equals("Y") || response.equals("N")));
+        return response.equals("Y");
+    }
+
+    /**
+     * Asks for a whole number until a valid one is given.
+     *
+     * @param question the question to ask
+     * @param errorMessage message shown if the response is not a valid number
+     * @return the number
+     */
+    private int askNumber(String question, String errorMessage) {
+        String response;
+        boolean isValid;
+        int number = -1;
+
+        do {
+            System.out.print(question);
+            response = in.nextLine();
+            try {
+                number = Integer.parseInt(response);
+                isValid = true;
+            } catch (NumberFormatException e) {
+                System.err.println(errorMessage);
+                isValid = false;
+            } finally {
+                if (response.isEmpty()) {
+                    isValid = false;
+                }
+            }
+        } while (!isValid);
+
+        return number;
+    }
+
+    /**
+     * Used to get Vehicle's height and length.
+     *
+     * @param dimensionName name of the dimension (either "length" or "height")
+     * @return floating-point number value of the dimension
+     */
+    private float getVehicleDimension(String dimensionName) {
+        String response;
+        float dimension = -1.0f; // If it's still -1.0 -- it's invalid
+
+        if (dimensionName.toUpperCase().equals("LENGTH") || dimensionName.toUpperCase().equals("HEIGHT")) {
+            dimensionName = dimensionName.toLowerCase();
+            // Get vehicle dimensions
+            boolean isResponseValid = false;
+
+            do {
+                System.out.print("What's your vehicle's " + dimensionName + " (in metres)? ");
+                response = in.nextLine();
+                try {
+                    dimension = Float.parseFloat(response);
+                    isResponseValid = true;
+                } catch (NumberFormatException e) {
+                    // Catch illegal float value
+                    System.err.println("Invalid value (" + response + ")!\n" + e.getMessage());
+                } finally {
+                    if (response.isEmpty()) {
+                        isResponseValid = false;
+                    }
+                }
+            } while (!isResponseValid);
+        }
+        else {
+            throw new IllegalArgumentException("The specified argument " + dimensionName + " is not valid!" +
+                    "\nAccepted values are: \"LENGTH\" and \"HEIGHT\"");
+        }
+        return dimension;
+    }
+
+    /**
+     * Adds a Vehicle.
+     *
+     * @throws VehicleSizeNotSupportedException thrown if Vehicle's size is not supported
+     * @throws VehicleAlreadyExistsException thrown if there is already a Vehicle with the same license plate
+     */
+    void addVehicle() throws VehicleSizeNotSupportedException, VehicleAlreadyExistsException {
+        String response, licensePlate;
+        boolean isMotorbike, isCoach = false, isDriverDisabled, needsAssistance = false;
+        float height, length;
+
+        // Get license plate number
+        do {
+            System.out.print("What's your license plate? ");
+            response = in.nextLine().toUpperCase();
+        } while (response.isEmpty());
+        licensePlate = response;
+
+        // Check if there's a Vehicle with the same license plate already parked
+        if (parking.getParkingSpaceByLicensePlate(licensePlate) != null) {
+            throw new VehicleAlreadyExistsException();
+        }
+
+        // Is it a motorbike?
+        isMotorbike = askYesNo("Is your vehicle a motorbike?");
+
+        // Is it a coach?
+        if (!isMotorbike) {
+            isCoach = askYesNo("Is your vehicle a coach?");
+        }
+
+        // Get vehicle dimensions
+        height = getVehicleDimension("HEIGHT");
+        length = getVehicleDimension("LENGTH");
+
+        // Is the driver disabled?
+        isDriverDisabled = askYesNo("Are you disabled?");
+
+        // Does user need assistance parking their vehicle?
+        // (available only if the vehicle is neither a coach nor a motorbike
+        if (!isCoach && !isMotorbike) {
+            needsAssistance = askYesNo("Do you need assistance parking your vehicle?");
+        }
+
+        // Check if there are any employees (if they're all busy, the vehicle waits for the next one)
+        if (needsAssistance && !service.hasEmployees()) {
+            System.out.println("Sorry, there are no employees at the moment." +
+                    "\nYou need to park the vehicle yourself.");
+            // Go to "park yourself" mode
+            needsAssistance = false;
+        }
+
+        // The VehicleType of cars is calculated from their dimensions
+        VehicleType vehicleType = isCoach ? VehicleType.COACH : (isMotorbike ? VehicleType.MOTORBIKE : null);
+        ParkRequest request = new ParkRequest(licensePlate, height, length, vehicleType, isDriverDisabled,
+                needsAssistance, null);
+
+        try {
+            if (needsAssistance) {
+                // Vehicle is parked by an employee
+                System.out.println("Your vehicle will be parked by an employee shortly!");
+
+                // ------------------------------------------------------------------------------ //
+                System.out.println("----- From this point, everything would be displayed to an Employee, not a Customer ---");
+                // ------------------------------------------------------------------------------ //
+
+                System.out.println("You've got a vehicle to park.");
+                ParkResult result;
+                if (askYesNo("Do you want to park it in a specific parking space?")) {
+                    // Employee is roaming the Vehicle to a specified ParkingSpace
+                    result = null;
+                    do {
+                        System.out.print("Enter parking space ID: ");
+                        response = in.nextLine().toUpperCase();
+                        try {
+                            result = service.park(request.inParkingSpace(response));
+                        } catch (ParkingSpaceDoesNotExistException | ParkingSpaceOccupiedException
+                                | VehicleTypeNotAcceptedException e) {
+                            System.out.println(e.getMessage());
+                        }
+                    } while (result == null);
+                } else {
+                    // Employee is parking the Vehicle in a random ParkingSpace
+                    result = service.park(request);
+                    System.out.println("Park the vehicle in parking space " + result.getParkingSpaceId());
+                }
+
+                String employeeName = awaitValet(result.getValetJob());
+                if (employeeName != null) {
+                    System.out.println("Thank you, " + employeeName + "!");
+                }
+                System.out.println("The customer's parking receipt number is: " + result.getReceiptId());
+            } else {
+                // Get a random ParkingSpace that can accept the Vehicle and park the Vehicle in it
+                ParkResult result = service.park(request);
+                System.out.println("Park your vehicle in parking space " + result.getParkingSpaceId());
+                System.out.println("You parked your vehicle!" +
+                        "\nYour parking receipt number is: " + result.getReceiptId());
+            }
+        } catch (NoFreeParkingSpacesException | ParkingSpaceDoesNotExistException | ParkingSpaceOccupiedException
+                | VehicleTypeNotAcceptedException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Waits until an Employee has done the job (as this is a demo, it doesn't take long).
+     *
+     * @param job the queued job or null if there is none
+     * @return name of the Employee who did the job or null if there is none
+     */
+    private String awaitValet(ValetJob job) {
+        if (job == null) {
+            return null;
+        }
+        try {
+            job.awaitDone(VALET_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return job.getEmployeeName();
+    }
+
+    /**
+     * Collects a Vehicle.
+     *
+     * @throws VehicleDoesNotExistException thrown if Vehicle doesn't exist
+     */
+    void collectVehicle() throws VehicleDoesNotExistException {
+
+        // Get the ParkingReceipt number
+        int tempReceiptId = askNumber("Enter your parking receipt number: ", "This is not a valid number!");
+
+        // Find the Vehicle, calculate the price and open the payment
+        PaymentSession session = parking.getPaymentSessions().open(tempReceiptId, false);
+        CollectResult collectResult = session.getCollectResult();
+
+        // Convert the time parked to user-friendly format
+        long hoursParked = collectResult.getMinutesParked() / 60;
+        long minutesParked = collectResult.getMinutesParked() % 60;
+
+        // Display info to the Customer
+        System.out.print("You've been parked for ");
+        if (hoursParked > 0) {
+            System.out.print(hoursParked + " hours ");
+        }
+        if (minutesParked >= 0) {
+            System.out.print(minutesParked + " min ");
+        }
+
+        System.out.println("and your payment is: " + PaymentSession.formatPence(session.getPricePence()) + " units.");
+
+        // Ask the Customer if they need assistance collecting their Vehicle (not coaches and motorbikes)
+        if (collectResult.canBeAssisted()) {
+            boolean needsAssistance = askYesNo("Do you need assistance collecting your vehicle?");
+
+            // Check if there are any employees (if they're all busy, the vehicle waits for the next one)
+            if (needsAssistance && !service.hasEmployees()) {
+                System.out.println("Sorry, there are no employees at the moment." +
+                        "\nYou need to collect the vehicle yourself.");
+                // Go to "collect yourself" mode
+                needsAssistance = false;
+            }
+            try {
+                session.setNeedsAssistance(needsAssistance);
+            } catch (PaymentSessionClosedException e) {
+                // The session has timed out while answering -- payment() reports it
+            }
+        }
+
+        // Get the Customer to pay
+        PaymentResult paymentResult = payment(session);
+        if (paymentResult == null) {
+            return;
+        }
+
+        // If there is a change -- give it back to the Customer
+        if (paymentResult.getChangePence() != 0) {
+            System.out.println("Your change is " + PaymentSession.formatPence(paymentResult.getChangePence()) + " units.");
+        }
+
+        if (paymentResult.getValetJob() != null) {
+            // Vehicle collected by an Employee
+            System.out.println("Your vehicle will be collected by an employee shortly!");
+
+            // ------------------------------------------------------------------------------ //
+            System.out.println("----- From this point, everything would be displayed to an Employee, not a Customer ---");
+            // ------------------------------------------------------------------------------ //
+
+            System.out.println("Welcome, " + awaitValet(paymentResult.getValetJob()) + "!" +
+                    "\nYou've got a vehicle to collect." +
+                    "\nThe vehicle is parked in the parking space " + paymentResult.getParkingSpaceId() +
+                    "\nThe exit token is: " + paymentResult.getExitToken());
+
+            // As this is a demo, everything happens automatically
+            System.out.println("Thanks for delivering the Vehicle to the Customer. Your job here is done!");
+        } else {
+            // Vehicle collected by the Customer
+            // Remind the Customer where the Vehicle is
+            System.out.println("Your vehicle is parked in the parking space " + paymentResult.getParkingSpaceId());
+
+            System.out.println("You can now exit the car parking with your vehicle!" +
+                    "\nHead towards the exit barrier. Your exit token is: " + paymentResult.getExitToken());
+        }
+    }
+
+    /**
+     * The "parking machine" that shows a Customer the price and accepts coins until the payment is finished.
+     * Every coin is passed to the PaymentSession, so other pay stations are never held up.
+     *
+     * @param session the open payment
+     * @return the accepted payment or null if it has been cancelled, timed out or rejected
+     */
+    private PaymentResult payment(PaymentSession session) {
+        PaymentSessions paymentSessions = parking.getPaymentSessions();
+
+        while (session.getState() == PaymentSession.State.AWAITING_COINS) {
+            System.out.println("Still to pay: " + PaymentSession.formatPence(session.getRemainingPence()) + " units");
+            System.out.println("You can insert: 20.00, 10.00, 5.00, 2.00, 1.00, 0.50, 0.20, 0.10");
+            System.out.print("Insert coin (or C to cancel): ");
+            String response = in.nextLine().trim();
+
+            try {
+                if (response.equalsIgnoreCase("C")) {
+                    paymentSessions.cancel(session.getId());
+                } else {
+                    paymentSessions.insertCoin(session.getId(), PaymentSession.parsePence(response));
+                }
+            } catch (InvalidCoinException e) {
+                System.out.println(e.getMessage());
+            } catch (PaymentSessionDoesNotExistException | PaymentSessionClosedException e) {
+                // The session has timed out meanwhile
+                break;
+            }
+        }
+
+        switch (session.getState()) {
+            case COMPLETED:
+                return session.getPaymentResult();
+            case CANCELLED:
+                System.out.println("The payment has been cancelled.");
+                break;
+            case TIMED_OUT:
+                System.out.println("The payment has timed out.");
+                break;
+            default:
+                System.err.println(session.getFailure());
+        }
+        if (session.getRefundPence() > 0) {
+            System.out.println("Please take your " + PaymentSession.formatPence(session.getRefundPence())
+                    + " units back.");
+        }
+        return null;
+    }
+
+    /**
+     * Prints info about how many free ParkingSpaces are available in each ParkingZone
+     */
+    void getNumberOfFreeSpaces() {
+        System.out.println("Number of free parking spaces:");
+        for (Map.Entry<String, Integer> zone : service.getNumberOfFreeSpaces().entrySet()) {
+            System.out.println("Zone " + zone.getKey() + " -- " + zone.getValue());
+        }
+    }
+
+    /**
+     * Allows an Employee to see Parking statistics.
+     * Displays the occupancy of every ParkingZone now and its peak, average and turnover
+     * over the last hour, day and week, overall and by VehicleType.
+     */
+    void employeeSeeStatistics() {
+        System.out.println("----- Parking statistics: -----");
+        System.out.println(parking.getSnapshot().getParkingName());
+        for (ParkingZone pz : parking.getParkingZones()) {
+            ZoneOccupancy occupancy = pz.getOccupancy();
+            System.out.println("Parking zone " + pz.getId() + ": " + occupancy.getOccupied(null) + " of "
+                    + pz.getListOfParkingSpaces().size() + " parking spaces taken, "
+                    + pz.getNumberOfFreeSpaces() + " free");
+            for (ZoneOccupancy.Window window : ZoneOccupancy.Window.values()) {
+                System.out.println("  " + occupancy.getStats(null, window));
+            }
+            for (VehicleType vt : VehicleType.values()) {
+                OccupancyStats day = occupancy.getStats(vt, ZoneOccupancy.Window.DAY);
+                if (day.getCurrent() > 0 || day.getPeak() > 0 || day.getArrivals() > 0) {
+                    System.out.println("  " + vt + " -- " + day.getCurrent() + " now, " + day);
+                }
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * Allows an Employee to remove a Vehicle from the Parking.
+     *
+     * @throws VehicleDoesNotExistException thrown if the Vehicle doesn't exist.
+     */
+    void employeeRemoveVehicle() throws VehicleDoesNotExistException {
+        System.out.print("Enter vehicle's license plate: ");
+        String response = in.nextLine().toUpperCase();
+
+        service.removeVehicle(response);
+        System.out.println("The vehicle has been removed!");
+    }
+
+    /**
+     * Gets info about a Vehicle (as an Employee).
+     *
+     * @throws VehicleDoesNotExistException thrown if Vehicle doesn't exist.
+     */
+    void employeeGetVehicleInfo() throws VehicleDoesNotExistException {
+        String response;
+
+        // Get Vehicle's license plate
+        do {
+            System.out.print("Enter vehicle's license plate: ");
+            response = in.nextLine().toUpperCase();
+        } while (response.isEmpty());
+
+        // Display all info about the Vehicle
+        System.out.println(service.getVehicle(response).toString());
+    }
+
+    /**
+     * Exists the Parking (through the "barrier" with the token).
+     *
+     * @throws TokenExpiredException thrown if the ExitToken has expired (default 15 mins).
+     */
+    void exitParking() throws TokenExpiredException {
+        // Get barrier's token from the Customer
+        int exitToken = askNumber("Enter your exit token: ", "This is not a valid token!");
+
+        try {
+            service.exit(new ExitRequest(exitToken));
+            System.out.println("Thank you for choosing our Parking! Have a great day.");
+            // <------ The end of "Parking cycle" ------> //
+        } catch (ExitTokenDoesNotExistException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Adds a new Employee (FreeEmployee) to the Parking.
+     */
+    void employeeAddEmployee() {
+        String response;
+
+        do {
+            System.out.print("Enter new employee's name: ");
+            response = in.nextLine();
+        } while (response.isEmpty());
+
+        int tempId = service.addEmployee(response);
+
+        System.out.println("The employee " + response + " has been added as employee ID " + tempId);
+    }
+
+    /**
+     * Removes an Employee from the Parking.
+     *
+     * @throws EmployeeDoesNotExistException thrown if the Employee doesn't exist.
+     */
+    void employeeRemoveEmployee() throws EmployeeDoesNotExistException {
+        int tempEmployeeId = askNumber("Enter employee's ID: ", "It's not a valid number!");
+
+        FreeEmployee freeEmployee = service.removeEmployee(tempEmployeeId);
+        System.out.println("Removed employee " + freeEmployee.getName() + " (" + freeEmployee.getId() + ")");
+    }
+
+    /**
+     * Holds a ParkingSpace (or any space in a ParkingZone) for a pre-booked Vehicle.
+     *
+     * @throws ReservationAlreadyExistsException thrown if there's already a Reservation for the license plate
+     * @throws ParkingSpaceDoesNotExistException thrown if there's no such ParkingSpace
+     * @throws ParkingSpaceOccupiedException thrown if the ParkingSpace is taken or already held
+     * @throws ParkingZoneDoesNotExistException thrown if there's no such ParkingZone
+     * @throws NoFreeParkingSpacesException thrown if there are no free ParkingSpaces in the ParkingZone
+     */
+    void employeeReserve() throws ReservationAlreadyExistsException, ParkingSpaceDoesNotExistException,
+            ParkingSpaceOccupiedException, ParkingZoneDoesNotExistException, NoFreeParkingSpacesException {
+        System.out.print("Enter vehicle's license plate: ");
+        String licensePlate = in.nextLine().toUpperCase();
+        System.out.print("Enter parking space ID (or parking zone ID for any space in the zone): ");
+        String id = in.nextLine().toUpperCase();
+        int minutes;
+        do {
+            minutes = askNumber("For how many minutes? ", "It's not a valid number!");
+        } while (minutes <= 0);
+        long untilMillis = System.currentTimeMillis() + minutes * 60_000L;
+
+        boolean isZone = false;
+        for (ParkingZone pz : parking.getParkingZones()) {
+            if (pz.getId().equalsIgnoreCase(id)) {
+                isZone = true;
+            }
+        }
+        Reservation reservation = isZone
+                ? parking.getReservations().reserveInZone(licensePlate, id, untilMillis)
+                : parking.getReservations().reserveSpace(licensePlate, id, untilMillis);
+        System.out.println(reservation);
+    }
+
+    /**
+     * Cancels the Reservation for a license plate.
+     *
+     * @throws ReservationDoesNotExistException thrown if there's no Reservation for the license plate
+     */
+    void employeeCancelReservation() throws ReservationDoesNotExistException {
+        System.out.print("Enter vehicle's license plate: ");
+        String licensePlate = in.nextLine().toUpperCase();
+
+        Reservation reservation = parking.getReservations().cancel(licensePlate);
+        System.out.println("The reservation of parking space " + reservation.getParkingSpace().getID()
+                + " has been cancelled.");
+    }
+
+    /**
+     * Runs the end-of-day billing: prints the revenue accrued so far by all Vehicles still parked.
+     * The Vehicles' ParkingReceipts are left as they are.
+     */
+    void employeeRunBilling() {
+        BillingReport report = BillingRun.run(parking, System.currentTimeMillis());
+        System.out.println("----- End-of-day billing: -----");
+        try {
+            report.writeCsv(System.out);
+        } catch (IOException e) {
+            System.err.println("The report cannot be printed!");
+        }
+    }
+
+    /**
+     * Prints the whole report of the Parking, streamed straight to the console.
+     */
+    void printReport() {
+        writeReport(new ParkingReport(parking));
+    }
+
+    /**
+     * Prints a page of the report of the Parking, narrowed down to one section and possibly one ParkingZone.
+     */
+    void employeePrintReportPage() {
+        ParkingReport report = new ParkingReport(parking);
+        ParkingReport.Section section = null;
+        do {
+            System.out.print("Which section (ZONES, VEHICLES, EMPLOYEES, TOKENS)? ");
+            try {
+                section = ParkingReport.Section.valueOf(in.nextLine().trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("This section does not exist!");
+            }
+        } while (section == null);
+        report.setSections(EnumSet.of(section));
+
+        if (section == ParkingReport.Section.ZONES || section == ParkingReport.Section.VEHICLES) {
+            System.out.print("Enter parking zone ID (or ENTER for all zones): ");
+            String zoneId = in.nextLine().trim();
+            report.setZoneId(zoneId.isEmpty() ? null : zoneId);
+        }
+        if (section == ParkingReport.Section.ZONES) {
+            report.setOccupiedOnly(askYesNo("Only the occupied parking spaces?"));
+        }
+        int page;
+        int pageSize;
+        do {
+            page = askNumber("Which page (from 1)? ", "It's not a valid number!");
+        } while (page <= 0);
+        do {
+            pageSize = askNumber("How many entries per page? ", "It's not a valid number!");
+        } while (pageSize <= 0);
+        report.setPage((long) (page - 1) * pageSize, pageSize);
+        writeReport(report);
+    }
+
+    /**
+     * Writes a report to the console through a buffer, without building it in memory first.
+     *
+     * @param report the report
+     */
+    private void writeReport(ParkingReport report) {
+        // System.out isn't closed, only flushed
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        try {
+            report.write(out);
+            out.append('\n');
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("The report cannot be printed!");
+        }
+    }
+
+    /**
+     * Prints the analytics of the stays completed in the last 24 hours: revenue by zone and hour,
+     * average dwell by VehicleType and the share of disabled discounts.
+     */
+    void employeeSeeStayAnalytics() {
+        StayArchive archive = parking.getStayArchive();
+        long to = System.currentTimeMillis();
+        long from = to - TimeUnit.DAYS.toMillis(1);
+
+        System.out.println("----- Stays completed in the last 24 hours: -----");
+        System.out.println("Revenue by zone and hour:");
+        try {
+            StayAnalytics.revenueByZoneAndHour(archive, from, to).writeCsv(System.out);
+        } catch (IOException e) {
+            System.err.println("The revenue cannot be printed!");
+        }
+        System.out.println("Average dwell by vehicle type:");
+        System.out.print(StayAnalytics.dwellByVehicleType(archive, from, to));
+        System.out.println(StayAnalytics.disabledDiscounts(archive, from, to));
+    }
+
+    /**
+     * Exports the Vehicles, ParkingReceipts, ExitTokens and archived stays to files for reporting,
+     * either all of them or only the ones since the previous export.
+     */
+    void employeeExport() {
+        System.out.print("Enter the directory to export to: ");
+        String directory = in.nextLine().trim();
+        String format = askYesNo("Use the columnar format (instead of CSV)?")
+                ? ColumnarExportWriter.NAME : CsvExportWriter.NAME;
+        long sinceMillis = 0;
+        if (askYesNo("Only export what's new since an earlier export?")) {
+            System.out.print("Enter the time of the earlier export (in epoch milliseconds): ");
+            try {
+                sinceMillis = Long.parseLong(in.nextLine().trim());
+            } catch (NumberFormatException e) {
+                System.err.println("It's not a valid time!");
+                return;
+            }
+        }
+
+        ParkingExport export = new ParkingExport(parking, sinceMillis);
+        try {
+            for (Map.Entry<ParkingExport.Table, Long> entry : export.exportTo(directory, format).entrySet()) {
+                System.out.println(entry.getValue() + " rows of " + entry.getKey().toString().toLowerCase()
+                        + " exported.");
+            }
+            System.out.println("The export is as of " + export.getAsOfMillis()
+                    + " -- use it as the time of the next incremental export.");
+        } catch (IOException e) {
+            System.err.println("The export cannot be written: " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package cymru.mab152.mcp;
+
+/**
+ * An event published on the ParkingEventBus whenever the occupancy of the Parking changes.
+ * Fields that don't apply to the event's type are null (or -1 for numbers).
+ */
+public class ParkingEvent {
+
+    /**
+     * Types of ParkingEvents.
+     */
+    enum Type {
+        SPACE_OCCUPIED, SPACE_FREED, ZONE_COUNT_CHANGED, TOKEN_ISSUED, TOKEN_CONSUMED
+    }
+
+    private final Type type;
+    private final long timestamp;
+    private final String parkingZoneId;
+    private final String parkingSpaceId;
+    private final int freeSpaces;
+    private final int exitToken;
+
+    /**
+     * The constructor for ParkingEvent objects.
+     *
+     * @param type type of the event
+     * @param pzId ID of the ParkingZone (or null)
+     * @param psId ID of the ParkingSpace (or null)
+     * @param freeSpaces number of free ParkingSpaces left in the ParkingZone (or -1)
+     * @param exitToken ID of the ExitToken (or -1)
+     */
+    ParkingEvent(Type type, String pzId, String psId, int freeSpaces, int exitToken) {
+        this.type = type;
+        this.timestamp = System.currentTimeMillis();
+        this.parkingZoneId = pzId;
+        this.parkingSpaceId = psId;
+        this.freeSpaces = freeSpaces;
+        this.exitToken = exitToken;
+    }
+
+    /**
+     * Returns the type of the event.
+     *
+     * @return event type (enum)
+     */
+    Type getType() {
+        return this.type;
+    }
+
+    /**
+     * Returns the time the event was published at (UNIX time format).
+     *
+     * @return timestamp
+     */
+    long getTimestamp() {
+        return this.timestamp;
+    }
+
+    /**
+     * Returns the ID of the ParkingZone the event is about.
+     *
+     * @return ParkingZone id or null
+     */
+    String getParkingZoneId() {
+        return this.parkingZoneId;
+    }
+
+    /**
+     * Returns the ID of the ParkingSpace the event is about.
+     *
+     * @return ParkingSpace id or null
+     */
+    String getParkingSpaceId() {
+        return this.parkingSpaceId;
+    }
+
+    /**
+     * Returns the number of free ParkingSpaces left in the ParkingZone.
+     *
+     * @return number of free ParkingSpaces or -1
+     */
+    int getFreeSpaces() {
+        return this.freeSpaces;
+    }
+
+    /**
+     * Returns the ID of the ExitToken the event is about.
+     *
+     * @return ExitToken id or -1
+     */
+    int getExitToken() {
+        return this.exitToken;
+    }
+
+    /**
+     * Returns all info about the event as a String.
+     *
+     * @return all info about the event
+     */
+    public String toString() {
+        StringBuilder event_sb = new StringBuilder();
+        event_sb.append(type.toString());
+        if (parkingZoneId != null) {
+            event_sb.append(" zone ");
+            event_sb.append(parkingZoneId);
+        }
+        if (parkingSpaceId != null) {
+            event_sb.append(" space ");
+            event_sb.append(parkingSpaceId);
+        }
+        if (freeSpaces >= 0) {
+            event_sb.append(" free ");
+            event_sb.append(freeSpaces);
+        }
+        if (exitToken >= 0) {
+            event_sb.append(" token ");
+            event_sb.append(exitToken);
+        }
+        return event_sb.toString();
+    }
+
+}
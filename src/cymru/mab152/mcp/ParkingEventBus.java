@@ -0,0 +1,246 @@
+package cymru.mab152.mcp;
+
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process publish/subscribe bus for occupancy events.
+ * <p>
+ * Publishing never blocks: every subscriber has its own bounded buffer, and if a slow subscriber's
+ * buffer is full, the event is dropped for that subscriber only (and counted).
+ * Zone count updates are conflated -- a subscriber only gets the latest count of each ParkingZone,
+ * however many times it changed since the last delivery. Only the change is recorded when it's published;
+ * the count is read when it's delivered, so gates racing each other can't leave an older count delivered last.
+ * Events are delivered on virtual threads, one drain at a time per subscriber.
+ */
+public class ParkingEventBus {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    private CopyOnWriteArrayList<Subscription> subscriptions;
+    private ExecutorService executor;
+
+    /**
+     * The constructor for ParkingEventBus objects.
+     */
+    ParkingEventBus() {
+        subscriptions = new CopyOnWriteArrayList<>();
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    /**
+     * A subscriber together with its buffer of undelivered events.
+     */
+    class Subscription {
+        private final ParkingEventListener listener;
+        private final ArrayBlockingQueue<ParkingEvent> buffer;
+        private final ConcurrentHashMap<String, ParkingZone> changedZones; // whose count is to be delivered, by ID
+        private final AtomicBoolean isDraining;
+        private final AtomicLong droppedEvents;
+
+        private Subscription(ParkingEventListener listener, int bufferSize) {
+            this.listener = listener;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+            this.changedZones = new ConcurrentHashMap<>();
+            this.isDraining = new AtomicBoolean(false);
+            this.droppedEvents = new AtomicLong(0);
+        }
+
+        /**
+         * Adds the event to the buffer.
+         */
+        private void offer(ParkingEvent event) {
+            if (!buffer.offer(event)) {
+                droppedEvents.incrementAndGet();
+            }
+            scheduleDrain();
+        }
+
+        /**
+         * Records that the count of the ParkingZone has changed (once, however many times it does).
+         */
+        private void offerZoneChange(ParkingZone pz) {
+            changedZones.put(pz.getId(), pz);
+            scheduleDrain();
+        }
+
+        /**
+         * Starts delivering the events, unless the delivery is already running.
+         */
+        private void scheduleDrain() {
+            if (isDraining.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        /**
+         * Delivers all buffered events to the listener.
+         */
+        private void drain() {
+            do {
+                try {
+                    ParkingEvent event;
+                    while ((event = buffer.poll()) != null) {
+                        deliver(event);
+                    }
+                    Iterator<ParkingZone> it = changedZones.values().iterator();
+                    while (it.hasNext()) {
+                        ParkingZone pz = it.next();
+                        // The change is removed before the count is read, so a change after the read is kept
+                        if (changedZones.remove(pz.getId(), pz)) {
+                            deliver(new ParkingEvent(ParkingEvent.Type.ZONE_COUNT_CHANGED, pz.getId(), null,
+                                    pz.getNumberOfFreeSpaces(), -1));
+                        }
+                    }
+                } finally {
+                    // Even if a listener has thrown an Error -- otherwise the subscriber would never get anything again
+                    isDraining.set(false);
+                }
+
+                // Events published after the last poll but before isDraining was cleared
+                // would otherwise wait for the next publish
+            } while ((!buffer.isEmpty() || !changedZones.isEmpty()) && isDraining.compareAndSet(false, true));
+        }
+
+        private void deliver(ParkingEvent event) {
+            try {
+                listener.onEvent(event);
+            } catch (RuntimeException e) {
+                // A broken subscriber must not stop the delivery to the others
+                System.err.println("A parking event subscriber failed: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Returns the number of events dropped because the subscriber's buffer was full.
+         *
+         * @return number of dropped events
+         */
+        long getDroppedEvents() {
+            return droppedEvents.get();
+        }
+
+        /**
+         * Stops delivering events to the subscriber.
+         */
+        void unsubscribe() {
+            subscriptions.remove(this);
+        }
+    }
+
+    /**
+     * Subscribes a listener with the default buffer size.
+     *
+     * @param listener the listener
+     * @return the Subscription (used to unsubscribe)
+     */
+    Subscription subscribe(ParkingEventListener listener) {
+        return subscribe(listener, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Subscribes a listener.
+     *
+     * @param listener the listener
+     * @param bufferSize how many undelivered events the subscriber can have before new ones are dropped
+     * @return the Subscription (used to unsubscribe)
+     */
+    Subscription subscribe(ParkingEventListener listener, int bufferSize) {
+        Subscription subscription = new Subscription(listener, bufferSize);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Checks if anyone is subscribed, so publishers can skip creating events nobody will get.
+     *
+     * @return a boolean whether there are any subscribers
+     */
+    boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Publishes an event to all subscribers.
+     *
+     * @param event the event
+     */
+    void publish(ParkingEvent event) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * Publishes that a ParkingSpace has been occupied, followed by the new count of its ParkingZone.
+     *
+     * @param ps the ParkingSpace
+     */
+    void publishSpaceOccupied(ParkingSpace ps) {
+        publishSpaceChange(ParkingEvent.Type.SPACE_OCCUPIED, ps);
+    }
+
+    /**
+     * Publishes that a ParkingSpace has been freed, followed by the new count of its ParkingZone.
+     *
+     * @param ps the ParkingSpace
+     */
+    void publishSpaceFreed(ParkingSpace ps) {
+        publishSpaceChange(ParkingEvent.Type.SPACE_FREED, ps);
+    }
+
+    private void publishSpaceChange(ParkingEvent.Type type, ParkingSpace ps) {
+        if (!hasSubscribers()) {
+            return;
+        }
+        ParkingZone pz = ps.getParkingZone();
+        publish(new ParkingEvent(type, pz.getId(), ps.getID(), -1, -1));
+        publishZoneChange(pz);
+    }
+
+    /**
+     * Publishes the new count of a ParkingZone whose free ParkingSpaces have changed
+     * without a Vehicle arriving or leaving, i.e. when a Reservation holds or releases a space.
+     *
+     * @param pz the ParkingZone
+     */
+    void publishZoneCount(ParkingZone pz) {
+        if (!hasSubscribers()) {
+            return;
+        }
+        publishZoneChange(pz);
+    }
+
+    private void publishZoneChange(ParkingZone pz) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offerZoneChange(pz);
+        }
+    }
+
+    /**
+     * Publishes that an ExitToken has been issued or consumed.
+     *
+     * @param type TOKEN_ISSUED or TOKEN_CONSUMED
+     * @param et the ExitToken
+     */
+    void publishToken(ParkingEvent.Type type, ExitToken et) {
+        if (!hasSubscribers()) {
+            return;
+        }
+        publish(new ParkingEvent(type, null, null, -1, et.getId()));
+    }
+
+    /**
+     * Stops the delivery threads. Events already buffered may not be delivered.
+     */
+    void close() {
+        executor.shutdown();
+    }
+
+}
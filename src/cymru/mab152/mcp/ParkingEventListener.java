@@ -0,0 +1,16 @@
+package cymru.mab152.mcp;
+
+/**
+ * A subscriber of the ParkingEventBus, i.e. a display board.
+ */
+public interface ParkingEventListener {
+
+    /**
+     * Called for every event delivered to the subscriber.
+     * Events are delivered one at a time, but not on the thread that published them.
+     *
+     * @param event the event
+     */
+    void onEvent(ParkingEvent event);
+
+}
@@ -0,0 +1,214 @@
+package cymru.mab152.mcp;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The JDK Flight Recorder events of the Parking, so a stalled gate can be told apart from a slow save or GC
+ * in a recording ("java -XX:StartFlightRecording ..." or "jcmd PID JFR.start").
+ * <p>
+ * An event is created, begun before the operation and committed after it. While nothing is being recorded,
+ * commit() does nothing and the JIT removes the event object altogether, so the events can stay in production.
+ * They're shown under "Parking" in JDK Mission Control.
+ */
+public class ParkingEvents {
+
+    static final String CATEGORY = "Parking";
+
+    /**
+     * The constructor for ParkingEvents objects. There are none, it only holds the event types.
+     */
+    private ParkingEvents() {
+    }
+
+    /**
+     * A Vehicle parked (or turned away).
+     */
+    @Name("cymru.mab152.mcp.Park")
+    @Label("Park")
+    @Category({CATEGORY, "Gates"})
+    @StackTrace(false)
+    static class Park extends Event {
+        @Label("Parking Zone")
+        String parkingZone;
+
+        @Label("Parking Space")
+        String parkingSpace;
+
+        @Label("Vehicle Type")
+        String vehicleType;
+
+        @Label("Disabled Driver")
+        boolean isDisabled;
+
+        @Label("Valet Requested")
+        boolean needsAssistance;
+
+        @Label("Parked")
+        @Description("False if the Vehicle was turned away")
+        boolean isParked;
+    }
+
+    /**
+     * The price of a stay calculated for a Vehicle about to be collected.
+     */
+    @Name("cymru.mab152.mcp.Collect")
+    @Label("Collect")
+    @Category({CATEGORY, "Gates"})
+    @StackTrace(false)
+    static class Collect extends Event {
+        @Label("Receipt")
+        long receiptId;
+
+        @Label("Parking Zone")
+        String parkingZone;
+
+        @Label("Vehicle Type")
+        String vehicleType;
+
+        @Label("Minutes Parked")
+        long minutesParked;
+
+        @Label("Price (pence)")
+        long pricePence;
+    }
+
+    /**
+     * A payment accepted and the Vehicle taken out of its ParkingSpace.
+     */
+    @Name("cymru.mab152.mcp.Pay")
+    @Label("Pay")
+    @Category({CATEGORY, "Gates"})
+    @StackTrace(false)
+    static class Pay extends Event {
+        @Label("Receipt")
+        long receiptId;
+
+        @Label("Parking Zone")
+        String parkingZone;
+
+        @Label("Vehicle Type")
+        String vehicleType;
+
+        @Label("Price (pence)")
+        long pricePence;
+
+        @Label("Paid")
+        @Description("False if the payment was refused")
+        boolean isPaid;
+    }
+
+    /**
+     * An ExitToken validated at the barrier.
+     */
+    @Name("cymru.mab152.mcp.ExitTokenValidation")
+    @Label("Exit Token Validation")
+    @Category({CATEGORY, "Gates"})
+    @StackTrace(false)
+    static class ExitTokenValidation extends Event {
+        @Label("Exit Token")
+        int token;
+
+        @Label("Result")
+        @Description("valid, expired or unknown")
+        String result;
+    }
+
+    /**
+     * A ValetJob carried out by an Employee.
+     */
+    @Name("cymru.mab152.mcp.Dispatch")
+    @Label("Employee Dispatch")
+    @Category({CATEGORY, "Valet"})
+    @StackTrace(false)
+    static class Dispatch extends Event {
+        @Label("Job")
+        @Description("PARK or COLLECT")
+        String kind;
+
+        @Label("Employee")
+        String employee;
+
+        @Label("Parking Zone")
+        String parkingZone;
+
+        @Label("Vehicle Type")
+        String vehicleType;
+
+        @Label("Queue Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long waitNanos;
+    }
+
+    /**
+     * The database file read.
+     */
+    @Name("cymru.mab152.mcp.Load")
+    @Label("Load")
+    @Category({CATEGORY, "Database"})
+    static class Load extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytes;
+
+        @Label("Parking Spaces")
+        int parkingSpaces;
+
+        @Label("Vehicles")
+        int vehicles;
+
+        @Label("Exit Tokens")
+        int exitTokens;
+    }
+
+    /**
+     * The database file written.
+     */
+    @Name("cymru.mab152.mcp.Save")
+    @Label("Save")
+    @Category({CATEGORY, "Database"})
+    static class Save extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytes;
+
+        @Label("Parking Spaces")
+        int parkingSpaces;
+
+        @Label("Vehicles")
+        int vehicles;
+
+        @Label("Exit Tokens")
+        int exitTokens;
+    }
+
+    /**
+     * The changes made at the gates written to the database in the background (ParkingGateServer).
+     * The time includes waiting for a save already running.
+     */
+    @Name("cymru.mab152.mcp.Flush")
+    @Label("Flush")
+    @Category({CATEGORY, "Database"})
+    @StackTrace(false)
+    static class Flush extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytes;
+    }
+
+}
@@ -0,0 +1,225 @@
+package cymru.mab152.mcp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+
+/**
+ * Exports the parked Vehicles, their ParkingReceipts, the ExitTokens and the archived stays
+ * as tables, one file each, in CSV or the columnar format (see ExportWriter).
+ * <p>
+ * Rows are streamed from a ParkingSnapshot and the StayArchive straight to the files, so nothing is copied
+ * into memory first. An export can be incremental: it only has the rows from sinceMillis up to the time
+ * the export was taken, which is the sinceMillis of the next export (Vehicles and ParkingReceipts by the time
+ * they were parked, ExitTokens by the time they were issued and stays by the time they ended).
+ */
+public class ParkingExport {
+
+    /**
+     * The tables exported.
+     */
+    enum Table {
+        VEHICLES, RECEIPTS, TOKENS, STAYS
+    }
+
+    private final Parking parking;
+    private final long sinceMillis;
+    private final long asOfMillis;
+    private final ParkingSnapshot snapshot;
+
+    /**
+     * The constructor for ParkingExport objects. Takes the time and the snapshot the export is of.
+     *
+     * @param parking the Parking
+     * @param sinceMillis only export the rows from this time on (epoch milliseconds, 0 for all)
+     */
+    ParkingExport(Parking parking, long sinceMillis) {
+        this.parking = parking;
+        this.sinceMillis = sinceMillis;
+        // Every stay that ended before asOf has been recorded by now
+        this.asOfMillis = parking.getStayArchive().currentMillis();
+        this.snapshot = parking.getSnapshot();
+    }
+
+    /**
+     * Returns the time the export was taken, to be used as sinceMillis of the next one.
+     *
+     * @return time of the export (epoch milliseconds)
+     */
+    long getAsOfMillis() {
+        return this.asOfMillis;
+    }
+
+    /**
+     * Writes all tables to a directory, one file each (named after the table), in the format given.
+     * Every file is written under a temporary name first, so readers never see half of it.
+     *
+     * @param directory the directory (created if it doesn't exist)
+     * @param format "csv" or "columnar"
+     * @return the number of rows written, by table
+     * @throws IOException thrown if a file cannot be written
+     * @throws IllegalArgumentException thrown if there's no format with that name
+     */
+    EnumMap<Table, Long> exportTo(String directory, String format) throws IOException, IllegalArgumentException {
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        String extension = ExportWriter.extensionOf(format);
+
+        EnumMap<Table, Long> rows = new EnumMap<>(Table.class);
+        for (Table table : Table.values()) {
+            Path file = dir.resolve(table.toString().toLowerCase() + "." + extension);
+            Path temp = dir.resolve(file.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                rows.put(table, write(table, format, out));
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return rows;
+    }
+
+    /**
+     * Writes one table.
+     *
+     * @param table the table
+     * @param format "csv" or "columnar"
+     * @param out where the table is written to
+     * @return the number of rows written
+     * @throws IOException thrown if it cannot be written
+     */
+    long write(Table table, String format, OutputStream out) throws IOException {
+        switch (table) {
+            case VEHICLES:
+                try (ExportWriter w = ExportWriter.forName(format, out,
+                        new String[]{"licensePlate", "vehicleType", "height", "length", "parkingZone",
+                                "parkingSpace", "receiptId"},
+                        new ExportWriter.Type[]{ExportWriter.Type.STRING, ExportWriter.Type.STRING,
+                                ExportWriter.Type.DOUBLE, ExportWriter.Type.DOUBLE, ExportWriter.Type.STRING,
+                                ExportWriter.Type.STRING, ExportWriter.Type.LONG})) {
+                    writeVehicles(w);
+                    return w.getRows();
+                }
+            case RECEIPTS:
+                try (ExportWriter w = ExportWriter.forName(format, out,
+                        new String[]{"id", "licensePlate", "parkingZone", "startMillis", "isDisabled",
+                                "pencePerHour"},
+                        new ExportWriter.Type[]{ExportWriter.Type.LONG, ExportWriter.Type.STRING,
+                                ExportWriter.Type.STRING, ExportWriter.Type.LONG, ExportWriter.Type.BOOLEAN,
+                                ExportWriter.Type.LONG})) {
+                    writeReceipts(w);
+                    return w.getRows();
+                }
+            case TOKENS:
+                try (ExportWriter w = ExportWriter.forName(format, out,
+                        new String[]{"id", "dateMillis"},
+                        new ExportWriter.Type[]{ExportWriter.Type.LONG, ExportWriter.Type.LONG})) {
+                    writeTokens(w);
+                    return w.getRows();
+                }
+            case STAYS:
+                try (ExportWriter w = ExportWriter.forName(format, out,
+                        new String[]{"parkingZone", "vehicleType", "isDisabled", "startMillis", "endMillis",
+                                "paidPence", "discountPence"},
+                        new ExportWriter.Type[]{ExportWriter.Type.STRING, ExportWriter.Type.STRING,
+                                ExportWriter.Type.BOOLEAN, ExportWriter.Type.LONG, ExportWriter.Type.LONG,
+                                ExportWriter.Type.LONG, ExportWriter.Type.LONG})) {
+                    writeStays(w);
+                    return w.getRows();
+                }
+            default:
+                throw new IllegalArgumentException("Unknown table: " + table);
+        }
+    }
+
+    private boolean isInPeriod(long millis) {
+        return millis >= sinceMillis && millis < asOfMillis;
+    }
+
+    private void writeVehicles(ExportWriter w) throws IOException {
+        for (ParkingSnapshot.Zone zone : snapshot.getZones()) {
+            for (ParkingSnapshot.Space space : zone.getSpaces()) {
+                Vehicle v = space.getVehicle();
+                if (v == null || !isInPeriod(v.getParkingReceipt().getStartDate().getTime())) {
+                    continue;
+                }
+                w.writeString(v.getLicensePlate());
+                w.writeString(v.getVehicleType().toString());
+                w.writeDouble(v.getHeight());
+                w.writeDouble(v.getLength());
+                w.writeString(zone.getId());
+                w.writeString(space.getID());
+                w.writeLong(v.getParkingReceipt().getId());
+                w.endRow();
+            }
+        }
+    }
+
+    private void writeReceipts(ExportWriter w) throws IOException {
+        for (ParkingSnapshot.Zone zone : snapshot.getZones()) {
+            long pencePerHour = ParkingService.toPence(zone.getPrice());
+            for (ParkingSnapshot.Space space : zone.getSpaces()) {
+                Vehicle v = space.getVehicle();
+                if (v == null) {
+                    continue;
+                }
+                ParkingReceipt pr = v.getParkingReceipt();
+                long start = pr.getStartDate().getTime();
+                if (!isInPeriod(start)) {
+                    continue;
+                }
+                w.writeLong(pr.getId());
+                w.writeString(v.getLicensePlate());
+                w.writeString(zone.getId());
+                w.writeLong(start);
+                w.writeBoolean(pr.isOwnerDisabled());
+                w.writeLong(pencePerHour);
+                w.endRow();
+            }
+        }
+    }
+
+    private void writeTokens(ExportWriter w) throws IOException {
+        for (ExitToken et : parking.getExitTokens()) {
+            if (!isInPeriod(et.getDateTimestamp())) {
+                continue;
+            }
+            w.writeLong(et.getId());
+            w.writeLong(et.getDateTimestamp());
+            w.endRow();
+        }
+    }
+
+    private void writeStays(ExportWriter w) throws IOException {
+        StayArchive archive = parking.getStayArchive();
+        String[] zoneIds = archive.getZoneIds();
+        try {
+            archive.forEachBlock(b -> {
+                try {
+                    for (int i = b.from; i < b.to; i++) {
+                        long end = b.endMillis[i];
+                        if (!isInPeriod(end) || b.zone[i] >= zoneIds.length) {
+                            continue;
+                        }
+                        w.writeString(zoneIds[b.zone[i]]);
+                        w.writeString(StayArchive.typeOf(b.flags[i]).toString());
+                        w.writeBoolean(StayArchive.isDisabled(b.flags[i]));
+                        w.writeLong(end - b.dwellSeconds[i] * 1000L);
+                        w.writeLong(end);
+                        w.writeLong(b.paidPence[i]);
+                        w.writeLong(b.discountPence[i]);
+                        w.endRow();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+}
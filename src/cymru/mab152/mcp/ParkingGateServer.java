@@ -0,0 +1,751 @@
+package cymru.mab152.mcp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import cymru.mab152.mcp.exception.*;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An embedded HTTP server that lets the barriers and display boards use the Parking over the network.
+ * Every request is handled on its own virtual thread, so thousands of gate connections
+ * don't need thousands of platform threads.
+ * <p>
+ * Endpoints (parameters are passed in the query string or as a form-encoded POST body):<br>
+ * <b>POST /park</b> -- plate, height, length, type (optional), disabled, assistance, space (optional)<br>
+ * <b>POST /park-batch</b> -- a JSON array of arrivals, each with plate, height, length, type (optional)
+ * and disabled; height and length can be left out if the type is given. The whole batch is saved
+ * with a single write<br>
+ * <b>POST /collect</b> -- receipt; the price is in pence<br>
+ * <b>POST /pay</b> -- receipt, amount (in pence), assistance; the change is in pence too<br>
+ * <b>POST /exit</b> -- token<br>
+ * <b>POST /payment/open</b> -- receipt, assistance; starts a coin payment at a pay station<br>
+ * <b>POST /payment/coin</b> -- session, coin (in pence)<br>
+ * <b>POST /payment/cancel</b> -- session<br>
+ * <b>GET /payment</b> -- session<br>
+ * <b>POST /reserve</b> -- plate, space or zone, minutes; holds a space for a pre-booked Vehicle<br>
+ * <b>POST /reserve/cancel</b> -- plate<br>
+ * <b>GET /free-spaces</b><br>
+ * <b>GET /occupancy</b> -- occupancy of every zone now and over the last hour, day and week<br>
+ * <b>GET /valet</b> -- valet queue statistics<br>
+ * <b>GET /metrics</b> -- operational metrics in the Prometheus text format (not JSON)
+ */
+public class ParkingGateServer {
+
+    private static final int BACKLOG = 1024;
+    private static final int SAVE_INTERVAL_SECONDS = 1;
+    private static final String JSON_BODY = "body"; // parameter holding a raw JSON request body
+    private static final String METRICS_PATH = "/metrics";
+
+    private Parking parking;
+    private ParkingService service;
+    private String filename;
+    private HttpServer server;
+    private ExecutorService requestExecutor;
+    private ScheduledExecutorService saveExecutor;
+    private AtomicBoolean isDirty;
+    private ReentrantLock saveLock; // not a monitor, so request threads waiting for a save don't pin carriers
+    private HashMap<String, Route> routes;
+
+    /**
+     * The constructor for ParkingGateServer objects.
+     *
+     * @param parking the Parking to serve
+     * @param filename database filename the changes are saved to
+     */
+    ParkingGateServer(Parking parking, String filename) {
+        this.parking = parking;
+        this.service = new ParkingService(parking);
+        this.filename = filename;
+        this.isDirty = new AtomicBoolean(false);
+        this.saveLock = new ReentrantLock();
+
+        routes = new HashMap<>();
+        routes.put("/park", new Route("POST", this::park));
+        routes.put("/park-batch", new Route("POST", this::parkBatch));
+        routes.put("/collect", new Route("POST", this::collect));
+        routes.put("/pay", new Route("POST", this::pay));
+        routes.put("/exit", new Route("POST", this::exit));
+        routes.put("/payment/open", new Route("POST", this::openPayment));
+        routes.put("/payment/coin", new Route("POST", this::insertCoin));
+        routes.put("/payment/cancel", new Route("POST", this::cancelPayment));
+        routes.put("/payment", new Route("GET", this::getPayment));
+        routes.put("/reserve", new Route("POST", this::reserve));
+        routes.put("/reserve/cancel", new Route("POST", this::cancelReservation));
+        routes.put("/free-spaces", new Route("GET", this::freeSpaces));
+        routes.put("/occupancy", new Route("GET", this::occupancy));
+        routes.put("/valet", new Route("GET", this::valet));
+    }
+
+    /**
+     * Returns the Parking served.
+     *
+     * @return the Parking
+     */
+    Parking getParking() {
+        return this.parking;
+    }
+
+    /**
+     * Starts listening on the port given.
+     *
+     * @param port TCP port to listen on
+     * @throws IOException thrown if the server cannot be started
+     */
+    void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        server.createContext("/", exchange -> route(exchange, exchange.getRequestURI().getPath()));
+
+        // One virtual thread per request
+        requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(requestExecutor);
+
+        // Changes are written to the database in the background, at most once per interval,
+        // instead of rewriting the whole file on every request
+        saveExecutor = Executors.newSingleThreadScheduledExecutor();
+        saveExecutor.scheduleWithFixedDelay(this::saveIfDirty, SAVE_INTERVAL_SECONDS, SAVE_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+
+        server.start();
+    }
+
+    /**
+     * Stops the server, waits for the requests and the valet jobs in progress, saves all changes
+     * and closes the event log.
+     *
+     * @param delaySeconds how long to wait for the requests (and then the valet jobs) in progress
+     */
+    void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        requestExecutor.shutdown();
+        saveExecutor.shutdown();
+        try {
+            saveExecutor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        parking.getValetDispatcher().shutdown(delaySeconds);
+        saveIfDirty();
+        parking.getLog().close();
+    }
+
+    /**
+     * Saves the Parking to the database file if anything has changed since the last save
+     * (recorded as a ParkingEvents.Flush). Only one save runs at a time.
+     */
+    void saveIfDirty() {
+        ParkingEvents.Flush event = new ParkingEvents.Flush();
+        event.begin();
+        saveLock.lock();
+        try {
+            if (!isDirty.getAndSet(false)) {
+                return;
+            }
+            parking.save(filename);
+        } catch (FileNotFoundException e) {
+            // Requests may be waiting for the save, so the console is left to the log's own thread
+            parking.getLog().publish(ParkingLog.Kind.SAVE_FAILED, null, null,
+                    "The provided file doesn't exist: " + filename, -1, -1);
+        } finally {
+            saveLock.unlock();
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = filename;
+            event.bytes = new File(filename).length();
+            event.commit();
+        }
+    }
+
+    /**
+     * A single endpoint: takes the request parameters and returns the JSON response.
+     */
+    private interface Endpoint {
+        JSONObject call(Map<String, String> params) throws Throwable;
+    }
+
+    /**
+     * An endpoint together with the HTTP method it accepts.
+     */
+    private static class Route {
+        private final String method;
+        private final Endpoint endpoint;
+
+        private Route(String method, Endpoint endpoint) {
+            this.method = method;
+            this.endpoint = endpoint;
+        }
+    }
+
+    /**
+     * Passes the request to the endpoint for the path given.
+     *
+     * @param exchange the HTTP exchange
+     * @param path the endpoint's path, i.e. "/park"
+     * @throws IOException thrown if the response cannot be sent
+     */
+    void route(HttpExchange exchange, String path) throws IOException {
+        if (path.equals(METRICS_PATH)) {
+            sendMetrics(exchange);
+            return;
+        }
+        Route route = routes.get(path);
+        if (route == null) {
+            send(exchange, 404, error("Unknown endpoint: " + path));
+            return;
+        }
+        handle(exchange, route.method, route.endpoint);
+    }
+
+    /**
+     * Checks the HTTP method, calls the endpoint and sends its response (or the error) back as JSON.
+     * Unexpected exceptions are written to the event log and answered without their details; Errors aren't caught.
+     *
+     * @param exchange the HTTP exchange
+     * @param method the HTTP method accepted by the endpoint
+     * @param endpoint the endpoint
+     * @throws IOException thrown if the response cannot be sent
+     */
+    private void handle(HttpExchange exchange, String method, Endpoint endpoint) throws IOException {
+        int status;
+        JSONObject response;
+
+        try {
+            if (!exchange.getRequestMethod().equalsIgnoreCase(method)) {
+                status = 405;
+                response = error("Use " + method + " for this endpoint.");
+            } else {
+                response = endpoint.call(readParams(exchange));
+                status = 200;
+            }
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            response = error(e.getMessage());
+        } catch (Error e) {
+            // The JVM is in trouble (out of memory, a stack overflow...) -- that's not a failed request
+            throw e;
+        } catch (Throwable t) {
+            // The Parking's own exceptions extend Throwable, so they can't be caught as Exception
+            status = getStatus(t);
+            if (status == 500) {
+                // Not one of the Parking's own errors -- it's logged, but its details aren't sent to the gate
+                StackTraceElement[] stackTrace = t.getStackTrace();
+                parking.getLog().publish(ParkingLog.Kind.REQUEST_FAILED, null, null,
+                        exchange.getRequestURI().getPath() + ": " + t
+                                + ((stackTrace.length > 0) ? " at " + stackTrace[0] : ""), -1, -1);
+                response = error("The request cannot be completed. Contact parking staff.");
+            } else {
+                response = error(t.getMessage());
+            }
+        }
+        send(exchange, status, response);
+    }
+
+    /**
+     * Sends a JSON response.
+     *
+     * @param exchange the HTTP exchange
+     * @param status HTTP status code
+     * @param response the JSON response
+     * @throws IOException thrown if the response cannot be sent
+     */
+    static void send(HttpExchange exchange, int status, JSONObject response) throws IOException {
+        byte[] body = response.toJSONString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    /**
+     * Sends the ParkingMetrics as plain text, for scraping.
+     *
+     * @param exchange the HTTP exchange
+     * @throws IOException thrown if the response cannot be sent
+     */
+    private void sendMetrics(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+            send(exchange, 405, error("Use GET for this endpoint."));
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        parking.getMetrics().writeText(sb);
+        byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    /**
+     * Maps Parking exceptions to HTTP status codes.
+     *
+     * @param t the exception thrown by the endpoint
+     * @return HTTP status code
+     */
+    private static int getStatus(Throwable t) {
+        if (t instanceof VehicleDoesNotExistException || t instanceof ParkingSpaceDoesNotExistException
+                || t instanceof ExitTokenDoesNotExistException || t instanceof PaymentSessionDoesNotExistException
+                || t instanceof ParkingZoneDoesNotExistException || t instanceof ReservationDoesNotExistException) {
+            return 404;
+        } else if (t instanceof VehicleAlreadyExistsException || t instanceof ParkingSpaceOccupiedException
+                || t instanceof PaymentSessionClosedException || t instanceof ReservationAlreadyExistsException) {
+            return 409;
+        } else if (t instanceof VehicleSizeNotSupportedException || t instanceof VehicleTypeNotAcceptedException
+                || t instanceof InvalidCoinException) {
+            return 422;
+        } else if (t instanceof InsufficientPaymentException) {
+            return 402;
+        } else if (t instanceof TokenExpiredException) {
+            return 403;
+        } else if (t instanceof NoFreeParkingSpacesException) {
+            return 503;
+        }
+        return 500;
+    }
+
+    /**
+     * Creates a JSON error response.
+     *
+     * @param message error message
+     * @return JSON object with the message
+     */
+    static JSONObject error(String message) {
+        JSONObject response = new JSONObject();
+        response.put("error", message);
+        return response;
+    }
+
+    /**
+     * Reads the parameters from the query string and (for POST) from the form-encoded body.
+     * A JSON body is not parsed here -- it's passed on as a whole in the JSON_BODY parameter.
+     *
+     * @param exchange the HTTP exchange
+     * @return map of parameter names to values
+     * @throws IOException thrown if the body cannot be read
+     */
+    private static Map<String, String> readParams(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseParams(exchange.getRequestURI().getRawQuery(), params);
+        try (InputStream is = exchange.getRequestBody()) {
+            String body = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            if (contentType != null && contentType.startsWith("application/json")) {
+                params.put(JSON_BODY, body);
+            } else {
+                parseParams(body, params);
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Parses "a=1&amp;b=2" into the map given.
+     *
+     * @param encoded URL-encoded parameters (may be null)
+     * @param params map to put the parameters into
+     */
+    private static void parseParams(String encoded, Map<String, String> params) {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for (String pair : encoded.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = (eq < 0) ? pair : pair.substring(0, eq);
+            String value = (eq < 0) ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Returns a required parameter.
+     *
+     * @param params request parameters
+     * @param name parameter name
+     * @return parameter value
+     */
+    private static String require(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    /**
+     * Returns a required whole number parameter.
+     *
+     * @param params request parameters
+     * @param name parameter name
+     * @return parameter value
+     */
+    private static int requireInt(Map<String, String> params, String name) {
+        try {
+            return Integer.parseInt(require(params, name));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for parameter: " + name);
+        }
+    }
+
+    /**
+     * Returns a required whole number parameter that may not fit an int, i.e. an amount in pence.
+     *
+     * @param params request parameters
+     * @param name parameter name
+     * @return parameter value
+     */
+    private static long requireLong(Map<String, String> params, String name) {
+        try {
+            return Long.parseLong(require(params, name));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for parameter: " + name);
+        }
+    }
+
+    /**
+     * Returns a required floating-point parameter.
+     *
+     * @param params request parameters
+     * @param name parameter name
+     * @return parameter value
+     */
+    private static float requireFloat(Map<String, String> params, String name) {
+        try {
+            return Float.parseFloat(require(params, name));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for parameter: " + name);
+        }
+    }
+
+    /**
+     * POST /park
+     */
+    private JSONObject park(Map<String, String> params) throws Throwable {
+        String type = params.get("type");
+        VehicleType vehicleType = (type == null || type.isEmpty()) ? null : VehicleType.valueOf(type.toUpperCase());
+
+        ParkResult result = service.park(new ParkRequest(require(params, "plate"),
+                requireFloat(params, "height"), requireFloat(params, "length"), vehicleType,
+                Boolean.parseBoolean(params.get("disabled")), Boolean.parseBoolean(params.get("assistance")),
+                params.get("space")));
+        isDirty.set(true);
+
+        JSONObject response = new JSONObject();
+        response.put("receiptId", result.getReceiptId());
+        response.put("parkingSpace", result.getParkingSpaceId());
+        response.put("type", result.getVehicleType().toString());
+        response.put("valet", result.getValetJob() != null);
+        return response;
+    }
+
+    /**
+     * POST /park-batch
+     */
+    private JSONObject parkBatch(Map<String, String> params) {
+        JSONArray arrivals;
+        try {
+            arrivals = (JSONArray) new JSONParser().parse(require(params, JSON_BODY));
+        } catch (ParseException | ClassCastException e) {
+            throw new IllegalArgumentException("The body must be a JSON array of arrivals.");
+        }
+
+        ArrayList<ParkRequest> requests = new ArrayList<>(arrivals.size());
+        for (Object o : arrivals) {
+            if (!(o instanceof JSONObject) || ((JSONObject) o).get("plate") == null) {
+                throw new IllegalArgumentException("Every arrival must be a JSON object with a plate.");
+            }
+            JSONObject arrival = (JSONObject) o;
+            Object plate = arrival.get("plate");
+            Object type = arrival.get("type");
+            requests.add(new ParkRequest(plate.toString(), toFloat(arrival.get("height")),
+                    toFloat(arrival.get("length")),
+                    (type == null) ? null : VehicleType.valueOf(type.toString().toUpperCase()),
+                    Boolean.TRUE.equals(arrival.get("disabled"))));
+        }
+
+        List<BatchParkResult> results = service.parkAll(requests);
+
+        // The whole batch is written to the database at once, before the camera gets the answer
+        isDirty.set(true);
+        saveIfDirty();
+
+        JSONArray jsonResults = new JSONArray();
+        int parked = 0;
+        for (BatchParkResult result : results) {
+            JSONObject jsonResult = new JSONObject();
+            jsonResult.put("plate", result.getLicensePlate());
+            if (result.isParked()) {
+                parked++;
+                jsonResult.put("receiptId", result.getParkResult().getReceiptId());
+                jsonResult.put("parkingSpace", result.getParkResult().getParkingSpaceId());
+                jsonResult.put("type", result.getParkResult().getVehicleType().toString());
+            } else {
+                jsonResult.put("status", getStatus(result.getError()));
+                jsonResult.put("error", result.getError().getMessage());
+            }
+            jsonResults.add(jsonResult);
+        }
+
+        JSONObject response = new JSONObject();
+        response.put("parked", parked);
+        response.put("rejected", results.size() - parked);
+        response.put("results", jsonResults);
+        return response;
+    }
+
+    /**
+     * Converts a JSON number to a float (0 if it's missing).
+     *
+     * @param value the JSON value
+     * @return the number
+     */
+    private static float toFloat(Object value) {
+        if (value == null) {
+            return 0.0f;
+        }
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("Invalid number: " + value);
+        }
+        return ((Number) value).floatValue();
+    }
+
+    /**
+     * POST /collect
+     */
+    private JSONObject collect(Map<String, String> params) throws Throwable {
+        CollectResult result = service.collect(new CollectRequest(requireInt(params, "receipt")));
+
+        JSONObject response = new JSONObject();
+        response.put("receiptId", result.getReceiptId());
+        response.put("licensePlate", result.getLicensePlate());
+        response.put("parkingSpace", result.getParkingSpaceId());
+        response.put("minutesParked", result.getMinutesParked());
+        response.put("price", result.getPricePence());
+        response.put("canBeAssisted", result.canBeAssisted());
+        return response;
+    }
+
+    /**
+     * POST /pay
+     */
+    private JSONObject pay(Map<String, String> params) throws Throwable {
+        PaymentResult result = service.pay(new PaymentRequest(requireInt(params, "receipt"),
+                requireLong(params, "amount"), Boolean.parseBoolean(params.get("assistance"))));
+        isDirty.set(true);
+
+        JSONObject response = new JSONObject();
+        response.put("exitToken", result.getExitToken());
+        response.put("change", result.getChangePence());
+        response.put("parkingSpace", result.getParkingSpaceId());
+        response.put("valet", result.getValetJob() != null);
+        return response;
+    }
+
+    /**
+     * POST /payment/open
+     */
+    private JSONObject openPayment(Map<String, String> params) throws Throwable {
+        PaymentSession session = parking.getPaymentSessions().open(requireInt(params, "receipt"),
+                Boolean.parseBoolean(params.get("assistance")));
+        return paymentSession(session);
+    }
+
+    /**
+     * POST /payment/coin
+     */
+    private JSONObject insertCoin(Map<String, String> params) throws Throwable {
+        return paymentSession(parking.getPaymentSessions().insertCoin(requireInt(params, "session"),
+                requireInt(params, "coin")));
+    }
+
+    /**
+     * POST /payment/cancel
+     */
+    private JSONObject cancelPayment(Map<String, String> params) throws Throwable {
+        return paymentSession(parking.getPaymentSessions().cancel(requireInt(params, "session")));
+    }
+
+    /**
+     * GET /payment
+     */
+    private JSONObject getPayment(Map<String, String> params) throws Throwable {
+        return paymentSession(parking.getPaymentSessions().get(requireInt(params, "session")));
+    }
+
+    /**
+     * GET /occupancy
+     */
+    private JSONObject occupancy(Map<String, String> params) {
+        JSONObject response = new JSONObject();
+        for (ParkingZone pz : parking.getParkingZones()) {
+            ZoneOccupancy occupancy = pz.getOccupancy();
+            JSONObject jsonZone = occupancyStats(occupancy, null);
+            jsonZone.put("spaces", pz.getListOfParkingSpaces().size());
+            jsonZone.put("free", pz.getNumberOfFreeSpaces());
+
+            JSONObject jsonTypes = new JSONObject();
+            for (VehicleType vt : VehicleType.values()) {
+                OccupancyStats week = occupancy.getStats(vt, ZoneOccupancy.Window.WEEK);
+                if (week.getCurrent() > 0 || week.getPeak() > 0 || week.getArrivals() > 0) {
+                    jsonTypes.put(vt.toString(), occupancyStats(occupancy, vt));
+                }
+            }
+            jsonZone.put("types", jsonTypes);
+            response.put(pz.getId(), jsonZone);
+        }
+        return response;
+    }
+
+    /**
+     * Describes the occupancy of a ParkingZone (or one VehicleType in it) as JSON.
+     *
+     * @param occupancy the ZoneOccupancy
+     * @param vt the VehicleType (null for all)
+     * @return JSON object with the current occupancy and the aggregates of every window
+     */
+    private static JSONObject occupancyStats(ZoneOccupancy occupancy, VehicleType vt) {
+        JSONObject json = new JSONObject();
+        json.put("current", occupancy.getOccupied(vt));
+        for (ZoneOccupancy.Window window : ZoneOccupancy.Window.values()) {
+            OccupancyStats stats = occupancy.getStats(vt, window);
+            JSONObject jsonWindow = new JSONObject();
+            jsonWindow.put("peak", stats.getPeak());
+            jsonWindow.put("average", stats.getAverage());
+            jsonWindow.put("arrivals", stats.getArrivals());
+            jsonWindow.put("turnover", stats.getTurnover());
+            json.put(window.toString().toLowerCase(), jsonWindow);
+        }
+        return json;
+    }
+
+    /**
+     * POST /reserve
+     */
+    private JSONObject reserve(Map<String, String> params) throws Throwable {
+        int minutes = requireInt(params, "minutes");
+        if (minutes <= 0) {
+            throw new IllegalArgumentException("Invalid number for parameter: minutes");
+        }
+        long untilMillis = System.currentTimeMillis() + minutes * 60_000L;
+
+        Reservation reservation;
+        if (params.get("zone") != null) {
+            reservation = parking.getReservations().reserveInZone(require(params, "plate"),
+                    require(params, "zone"), untilMillis);
+        } else {
+            reservation = parking.getReservations().reserveSpace(require(params, "plate"),
+                    require(params, "space"), untilMillis);
+        }
+        isDirty.set(true);
+
+        JSONObject response = new JSONObject();
+        response.put("plate", reservation.getLicensePlate());
+        response.put("parkingSpace", reservation.getParkingSpace().getID());
+        response.put("until", reservation.getUntilMillis());
+        return response;
+    }
+
+    /**
+     * POST /reserve/cancel
+     */
+    private JSONObject cancelReservation(Map<String, String> params) throws Throwable {
+        Reservation reservation = parking.getReservations().cancel(require(params, "plate"));
+        isDirty.set(true);
+
+        JSONObject response = new JSONObject();
+        response.put("plate", reservation.getLicensePlate());
+        response.put("parkingSpace", reservation.getParkingSpace().getID());
+        return response;
+    }
+
+    /**
+     * Describes a PaymentSession as JSON (all amounts in pence).
+     *
+     * @param session the session
+     * @return JSON object with the session's state
+     */
+    private JSONObject paymentSession(PaymentSession session) {
+        JSONObject response = new JSONObject();
+        response.put("session", session.getId());
+        response.put("state", session.getState().toString());
+        response.put("price", session.getPricePence());
+        response.put("inserted", session.getInsertedPence());
+        response.put("remaining", session.getRemainingPence());
+
+        PaymentResult result = session.getPaymentResult();
+        if (result != null) {
+            // The Vehicle is no longer in the Parking
+            isDirty.set(true);
+            response.put("exitToken", result.getExitToken());
+            response.put("change", result.getChangePence());
+            response.put("parkingSpace", result.getParkingSpaceId());
+            response.put("valet", result.getValetJob() != null);
+        } else if (session.getState() != PaymentSession.State.AWAITING_COINS) {
+            response.put("refund", session.getRefundPence());
+            if (session.getFailure() != null) {
+                response.put("error", session.getFailure());
+            }
+        }
+        return response;
+    }
+
+    /**
+     * POST /exit
+     */
+    private JSONObject exit(Map<String, String> params) throws Throwable {
+        service.exit(new ExitRequest(requireInt(params, "token")));
+        isDirty.set(true);
+
+        JSONObject response = new JSONObject();
+        response.put("open", true);
+        return response;
+    }
+
+    /**
+     * GET /free-spaces
+     */
+    private JSONObject freeSpaces(Map<String, String> params) {
+        JSONObject response = new JSONObject();
+        response.putAll(service.getNumberOfFreeSpaces());
+        return response;
+    }
+
+    /**
+     * GET /valet
+     */
+    private JSONObject valet(Map<String, String> params) {
+        ValetDispatcher dispatcher = parking.getValetDispatcher();
+        JSONObject response = new JSONObject();
+        response.put("queueLength", dispatcher.getQueueLength());
+        response.put("jobsQueued", dispatcher.getJobsQueued());
+        response.put("jobsCompleted", dispatcher.getJobsCompleted());
+        response.put("averageWaitMillis", dispatcher.getAverageWaitMillis());
+        response.put("maxWaitMillis", dispatcher.getMaxWaitMillis());
+        response.put("utilization", dispatcher.getUtilization());
+        return response;
+    }
+
+}
@@ -0,0 +1,336 @@
+package cymru.mab152.mcp;
+
+import cymru.mab152.mcp.exception.NoFreeParkingSpacesException;
+import cymru.mab152.mcp.exception.ParkingZoneMismatchException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A load generator that finds out how many arrivals and departures per second a Parking can sustain.
+ * It builds a synthetic Parking in memory and drives it from several simulated gates at once,
+ * each gate parking Vehicles and, once their dwell time is over, collecting, paying and exiting.
+ * Nothing is saved to the database.
+ * <p>
+ * Usage (all options are optional):<br>
+ * <code>ParkingLoadGenerator --zones 10 --spaces 500 --gates 8 --seconds 30 --dwell-ms 200
+ * --mix STANDARD=70,HIGHER=10,LONGER=10,COACH=5,MOTORBIKE=5</code>
+ */
+public class ParkingLoadGenerator {
+
+    private static final String[] OPERATIONS = {"park", "collect", "pay", "exit"};
+
+    private int zones = 10;
+    private int spacesPerZone = 500;
+    private int gates = 8;
+    private int seconds = 30;
+    private int dwellMillis = 200;
+    private LinkedHashMap<VehicleType, Integer> mix = new LinkedHashMap<>();
+
+    /**
+     * Reads the options from the command line.
+     *
+     * @param args command line arguments
+     */
+    private ParkingLoadGenerator(String[] args) {
+        mix.put(VehicleType.STANDARD, 70);
+        mix.put(VehicleType.HIGHER, 10);
+        mix.put(VehicleType.LONGER, 10);
+        mix.put(VehicleType.COACH, 5);
+        mix.put(VehicleType.MOTORBIKE, 5);
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--zones": zones = Integer.parseInt(value); break;
+                case "--spaces": spacesPerZone = Integer.parseInt(value); break;
+                case "--gates": gates = Integer.parseInt(value); break;
+                case "--seconds": seconds = Integer.parseInt(value); break;
+                case "--dwell-ms": dwellMillis = Integer.parseInt(value); break;
+                case "--mix": mix = parseMix(value); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+    }
+
+    /**
+     * Parses the VehicleType mix, i.e. "STANDARD=80,COACH=20".
+     *
+     * @param value the mix as text
+     * @return map of VehicleTypes to their weights
+     */
+    private static LinkedHashMap<VehicleType, Integer> parseMix(String value) {
+        LinkedHashMap<VehicleType, Integer> parsed = new LinkedHashMap<>();
+        for (String part : value.split(",")) {
+            String[] typeAndWeight = part.split("=");
+            parsed.put(VehicleType.valueOf(typeAndWeight[0].trim().toUpperCase()),
+                    Integer.parseInt(typeAndWeight[1].trim()));
+        }
+        return parsed;
+    }
+
+    /**
+     * Builds the synthetic Parking. Each ParkingZone accepts one VehicleType from the mix
+     * (in turns), so every type gets at least one ParkingZone.
+     *
+     * @return the Parking
+     * @throws ParkingZoneMismatchException thrown if a ParkingSpace doesn't match its ParkingZone
+     */
+    private Parking buildSite() throws ParkingZoneMismatchException {
+        Parking parking = new Parking();
+        parking.setName("Synthetic Parking");
+        VehicleType[] types = mix.keySet().toArray(new VehicleType[0]);
+
+        for (int z = 0; z < Math.max(zones, types.length); z++) {
+            String zoneId = "Z" + z;
+            ArrayList<VehicleType> acceptedVehicles = new ArrayList<>();
+            acceptedVehicles.add(types[z % types.length]);
+            ParkingZone pz = new ParkingZone(zoneId, 2.0f, acceptedVehicles);
+
+            ArrayList<ParkingSpace> parkingSpaces = new ArrayList<>();
+            for (int s = 0; s < spacesPerZone; s++) {
+                parkingSpaces.add(new ParkingSpace(zoneId + "-" + s));
+            }
+            pz.addParkingSpace(parkingSpaces);
+            parking.addParkingZone(pz);
+        }
+        return parking;
+    }
+
+    /**
+     * Latencies of one operation recorded by one gate (in nanoseconds).
+     */
+    private static class LatencyRecorder {
+        private long[] latencies = new long[1024];
+        private int count = 0;
+
+        void record(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+    }
+
+    /**
+     * A simulated gate. It keeps its own parked Vehicles ordered by the time they are due to leave.
+     */
+    private class Gate implements Runnable {
+        private final int gateId;
+        private final ParkingService service;
+        private final long endNanos;
+        private final Random random;
+        private final LatencyRecorder[] recorders = new LatencyRecorder[OPERATIONS.length];
+        private long rejectedArrivals = 0;
+        private long failedDepartures = 0;
+
+        Gate(int gateId, ParkingService service, long endNanos) {
+            this.gateId = gateId;
+            this.service = service;
+            this.endNanos = endNanos;
+            this.random = new Random(gateId);
+            for (int i = 0; i < recorders.length; i++) {
+                recorders[i] = new LatencyRecorder();
+            }
+        }
+
+        @Override
+        public void run() {
+            // Each entry is {time due to leave, receipt ID}
+            PriorityQueue<long[]> parked = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+            long counter = 0;
+            long now;
+
+            while ((now = System.nanoTime()) < endNanos) {
+                if (!parked.isEmpty() && parked.peek()[0] <= now) {
+                    depart((int) parked.poll()[1]);
+                } else if (arrive(parked, "G" + gateId + "-" + counter++)) {
+                    // Parked -- the next arrival comes straight away
+                } else if (!parked.isEmpty()) {
+                    // The Parking is full -- wait for the next departure
+                    LockSupport.parkNanos(Math.min(parked.peek()[0], endNanos) - now);
+                } else {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            }
+        }
+
+        /**
+         * Parks a Vehicle of a random type from the mix.
+         *
+         * @return TRUE if the Vehicle has been parked
+         */
+        private boolean arrive(PriorityQueue<long[]> parked, String licensePlate) {
+            VehicleType vehicleType = randomVehicleType(random);
+            // Cars get their type from the dimensions, as they would at a real gate
+            boolean isCar = vehicleType != VehicleType.COACH && vehicleType != VehicleType.MOTORBIKE;
+            ParkRequest request = new ParkRequest(licensePlate, heightOf(vehicleType), lengthOf(vehicleType),
+                    isCar ? null : vehicleType, random.nextInt(10) == 0);
+
+            long start = System.nanoTime();
+            try {
+                ParkResult result = service.park(request);
+                long end = System.nanoTime();
+                recorders[0].record(end - start);
+
+                // Exponentially distributed dwell time
+                long dwellNanos = (long) (-Math.log(1.0 - random.nextDouble())
+                        * TimeUnit.MILLISECONDS.toNanos(dwellMillis));
+                parked.add(new long[]{end + dwellNanos, result.getReceiptId()});
+                return true;
+            } catch (NoFreeParkingSpacesException e) {
+                rejectedArrivals++;
+                return false;
+            } catch (Throwable t) {
+                throw new IllegalStateException("Unexpected error while parking", t);
+            }
+        }
+
+        /**
+         * Collects, pays for and exits with a Vehicle.
+         */
+        private void depart(int receiptId) {
+            try {
+                long start = System.nanoTime();
+                CollectResult collectResult = service.collect(new CollectRequest(receiptId));
+                long collected = System.nanoTime();
+                PaymentResult paymentResult = service.pay(new PaymentRequest(receiptId,
+                        collectResult.getPricePence(), false));
+                long paid = System.nanoTime();
+                service.exit(new ExitRequest(paymentResult.getExitToken()));
+                long exited = System.nanoTime();
+
+                recorders[1].record(collected - start);
+                recorders[2].record(paid - collected);
+                recorders[3].record(exited - paid);
+            } catch (Throwable t) {
+                failedDepartures++;
+            }
+        }
+    }
+
+    /**
+     * Picks a random VehicleType according to the mix weights.
+     *
+     * @param random source of randomness
+     * @return the VehicleType
+     */
+    private VehicleType randomVehicleType(Random random) {
+        int total = 0;
+        for (int weight : mix.values()) {
+            total += weight;
+        }
+        int pick = random.nextInt(total);
+        for (Map.Entry<VehicleType, Integer> entry : mix.entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0) {
+                return entry.getKey();
+            }
+        }
+        return VehicleType.STANDARD;
+    }
+
+    private static float heightOf(VehicleType vt) {
+        switch (vt) {
+            case HIGHER: return 2.5f;
+            case LONGER: return 2.5f;
+            case COACH: return 3.5f;
+            case MOTORBIKE: return 1.2f;
+            default: return 1.5f;
+        }
+    }
+
+    private static float lengthOf(VehicleType vt) {
+        switch (vt) {
+            case LONGER: return 5.5f;
+            case COACH: return 12.0f;
+            case MOTORBIKE: return 2.0f;
+            default: return 4.5f;
+        }
+    }
+
+    /**
+     * Runs all gates and prints the report.
+     *
+     * @throws Throwable thrown if the site cannot be built or the run is interrupted
+     */
+    private void run() throws Throwable {
+        ParkingService service = new ParkingService(buildSite());
+        System.out.println("Site: " + Math.max(zones, mix.size()) + " zones x " + spacesPerZone + " spaces, "
+                + gates + " gates, " + seconds + " s, mean dwell " + dwellMillis + " ms, mix " + mix);
+
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + TimeUnit.SECONDS.toNanos(seconds);
+        Gate[] gateRunners = new Gate[gates];
+        Thread[] threads = new Thread[gates];
+        for (int g = 0; g < gates; g++) {
+            gateRunners[g] = new Gate(g, service, endNanos);
+            threads[g] = new Thread(gateRunners[g], "gate-" + g);
+            threads[g].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+        // Merge the latencies of all gates and print the report
+        System.out.printf("%-8s %12s %12s %10s %10s %10s %10s%n",
+                "op", "count", "ops/s", "p50 us", "p99 us", "p999 us", "max us");
+        long rejected = 0, failed = 0;
+        for (Gate gate : gateRunners) {
+            rejected += gate.rejectedArrivals;
+            failed += gate.failedDepartures;
+        }
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            int total = 0;
+            for (Gate gate : gateRunners) {
+                total += gate.recorders[op].count;
+            }
+            long[] merged = new long[total];
+            int offset = 0;
+            for (Gate gate : gateRunners) {
+                LatencyRecorder r = gate.recorders[op];
+                System.arraycopy(r.latencies, 0, merged, offset, r.count);
+                offset += r.count;
+            }
+            Arrays.sort(merged);
+            System.out.printf("%-8s %12d %12.0f %10.1f %10.1f %10.1f %10.1f%n", OPERATIONS[op], total,
+                    total / elapsedSeconds, percentile(merged, 0.50), percentile(merged, 0.99),
+                    percentile(merged, 0.999), percentile(merged, 1.0));
+        }
+        System.out.println("Rejected arrivals (no free spaces): " + rejected);
+        System.out.println("Failed departures: " + failed);
+    }
+
+    /**
+     * Returns a percentile of sorted latencies in microseconds.
+     *
+     * @param sorted sorted latencies in nanoseconds
+     * @param p percentile (0.0 - 1.0)
+     * @return the percentile in microseconds (0 if there are no latencies)
+     */
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1000.0;
+    }
+
+    /**
+     * Runs the load generator.
+     *
+     * @param args command line options (see the class description)
+     * @throws Throwable thrown if the run fails
+     */
+    public static void main(String[] args) throws Throwable {
+        new ParkingLoadGenerator(args).run();
+    }
+
+}
@@ -0,0 +1,383 @@
+package cymru.mab152.mcp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The event log of a Parking: what happened at the gates and in the background, one line per event,
+ * written to a rolling file.
+ * <p>
+ * Publishing never blocks and never touches the console or the disk. The gate claims a slot of a preallocated
+ * ring buffer (a CAS), fills it in and publishes it; if the buffer is full, the event is dropped (and counted).
+ * A single background thread takes the published events in batches, formats them as "key=value" lines and
+ * appends every batch to the file with one write. It sleeps while there's nothing to write,
+ * and the gate that publishes the next event wakes it up. The file is rolled over once it reaches MAX_FILE_BYTES,
+ * keeping MAX_FILES old ones (name.1 being the newest). Errors are also printed to System.err,
+ * by the background thread.
+ * <p>
+ * Events can be published before the log is opened; they wait in the buffer until it is.
+ */
+public class ParkingLog {
+
+    /**
+     * Kinds of events, with the names of the fields they use (null if they don't use it).
+     */
+    enum Kind {
+        PARKED("type", "receipt", null, false),
+        PARK_REJECTED("reason", null, null, false),
+        COLLECTED("type", "receipt", "pricePence", false),
+        PAID("type", "receipt", "pricePence", false),
+        EXITED(null, "token", null, false),
+        EXIT_REFUSED("reason", "token", null, false),
+        LOADED("file", null, null, false),
+        RESERVATION_DROPPED("reason", null, null, true),
+        SAVE_FAILED("reason", null, null, true),
+        REQUEST_FAILED("reason", null, null, true);
+
+        private final String detailName;
+        private final String idName;
+        private final String amountName;
+        private final boolean isError;
+
+        Kind(String detailName, String idName, String amountName, boolean isError) {
+            this.detailName = detailName;
+            this.idName = idName;
+            this.amountName = amountName;
+            this.isError = isError;
+        }
+
+        /**
+         * Returns whether events of this kind are errors (also printed to System.err).
+         *
+         * @return true if they're errors
+         */
+        boolean isError() {
+            return this.isError;
+        }
+    }
+
+    static final int CAPACITY = 8192; // a power of two
+    static final long MAX_FILE_BYTES = 16L * 1024 * 1024;
+    static final int MAX_FILES = 5;
+    private static final int BATCH_SIZE = 512;
+
+    private final Entry[] ring;
+    private final AtomicLong claimed; // sequence of the next slot to be claimed
+    private final AtomicLong consumed; // sequence of the next slot to be written out
+    private final LongAdder dropped;
+    private String filename;
+    private volatile Thread writer;
+    private volatile boolean isOpen;
+    private volatile boolean isWriterAsleep; // set by the writer before it parks, so publish() knows to wake it
+
+    /**
+     * A slot of the ring buffer. It's reused for every CAPACITY-th event.
+     */
+    private static final class Entry {
+        private volatile long sequence = -1; // the sequence of the event in the slot, once it's published
+        private long timeMillis;
+        private Kind kind;
+        private String zone;
+        private String space;
+        private String detail;
+        private long id;
+        private long amount;
+    }
+
+    /**
+     * The constructor for ParkingLog objects. Allocates the whole buffer, but doesn't open the file yet.
+     */
+    ParkingLog() {
+        this.ring = new Entry[CAPACITY];
+        for (int i = 0; i < CAPACITY; i++) {
+            ring[i] = new Entry();
+        }
+        this.claimed = new AtomicLong(0);
+        this.consumed = new AtomicLong(0);
+        this.dropped = new LongAdder();
+    }
+
+    /**
+     * Returns the name of the log file of a database file ("site.json" logs to "site.log").
+     *
+     * @param databaseFilename database filename
+     * @return log filename
+     */
+    static String filenameFor(String databaseFilename) {
+        String base = databaseFilename.endsWith(".json")
+                ? databaseFilename.substring(0, databaseFilename.length() - ".json".length()) : databaseFilename;
+        return base + ".log";
+    }
+
+    /**
+     * Starts writing the events to a file (appending to it if it exists). Does nothing if it's already open.
+     *
+     * @param filename name of the log file
+     */
+    synchronized void open(String filename) {
+        if (isOpen) {
+            return;
+        }
+        this.filename = filename;
+        this.isOpen = true;
+        writer = new Thread(this::writeEvents, "parking-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Writes out all events published so far and closes the file.
+     */
+    synchronized void close() {
+        if (!isOpen) {
+            return;
+        }
+        isOpen = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Publishes an event. Never blocks: if the buffer is full, the event is dropped.
+     *
+     * @param kind kind of the event
+     * @param zone ID of the ParkingZone (or null)
+     * @param space ID of the ParkingSpace (or null)
+     * @param detail the text field of the kind (or null)
+     * @param id the ID field of the kind (or -1)
+     * @param amount the number field of the kind (or -1)
+     */
+    void publish(Kind kind, String zone, String space, String detail, long id, long amount) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() >= CAPACITY) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        Entry e = ring[(int) sequence & (CAPACITY - 1)];
+        e.timeMillis = System.currentTimeMillis();
+        e.kind = kind;
+        e.zone = zone;
+        e.space = space;
+        e.detail = detail;
+        e.id = id;
+        e.amount = amount;
+        e.sequence = sequence; // publishes the fields above to the writer
+
+        // Either the writer sees the event before it parks or this sees it asleep -- both are volatile
+        if (isWriterAsleep) {
+            Thread t = writer;
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of events dropped because the buffer was full.
+     *
+     * @return number of dropped events
+     */
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of events waiting to be written out.
+     *
+     * @return number of events in the buffer
+     */
+    long getPending() {
+        return claimed.get() - consumed.get();
+    }
+
+    /**
+     * The background thread: writes the published events out in batches until the log is closed,
+     * then writes out the rest.
+     */
+    private void writeEvents() {
+        RollingFile file = new RollingFile(filename);
+        StringBuilder batch = new StringBuilder(BATCH_SIZE * 96);
+        StringBuilder errors = new StringBuilder();
+        try {
+            while (true) {
+                boolean wasOpen = isOpen;
+                long next = consumed.get();
+                int n = 0;
+                while (n < BATCH_SIZE) {
+                    Entry e = ring[(int) next & (CAPACITY - 1)];
+                    if (e.sequence != next) {
+                        break; // not published yet
+                    }
+                    int start = batch.length();
+                    format(e, batch);
+                    if (e.kind.isError()) {
+                        errors.append(batch, start, batch.length());
+                    }
+                    e.zone = null;
+                    e.space = null;
+                    e.detail = null;
+                    consumed.lazySet(++next);
+                    n++;
+                }
+
+                if (n > 0) {
+                    file.write(batch);
+                    batch.setLength(0);
+                    if (errors.length() > 0) {
+                        System.err.print(errors);
+                        errors.setLength(0);
+                    }
+                } else if (!wasOpen && consumed.get() == claimed.get()) {
+                    break;
+                } else {
+                    // Nothing to write: sleep until an event is published (or the log is closed)
+                    isWriterAsleep = true;
+                    if (ring[(int) next & (CAPACITY - 1)].sequence != next) {
+                        LockSupport.park(this);
+                    }
+                    isWriterAsleep = false;
+                }
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Formats an event as one line: the time, the kind and the fields it uses.
+     */
+    private static void format(Entry e, StringBuilder sb) {
+        sb.append(Instant.ofEpochMilli(e.timeMillis)).append(' ').append(e.kind);
+        appendField(sb, "zone", e.zone);
+        appendField(sb, "space", e.space);
+        if (e.kind.detailName != null) {
+            appendField(sb, e.kind.detailName, e.detail);
+        }
+        if (e.kind.idName != null && e.id >= 0) {
+            sb.append(' ').append(e.kind.idName).append('=').append(e.id);
+        }
+        if (e.kind.amountName != null && e.amount >= 0) {
+            sb.append(' ').append(e.kind.amountName).append('=').append(e.amount);
+        }
+        sb.append('\n');
+    }
+
+    /**
+     * Appends " name=value", quoting the value if it has spaces, quotes or line breaks. Null values are left out.
+     */
+    private static void appendField(StringBuilder sb, String name, String value) {
+        if (value == null) {
+            return;
+        }
+        sb.append(' ').append(name).append('=');
+        boolean needsQuotes = value.isEmpty();
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == ' ' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            sb.append(value);
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '\r') {
+                sb.append("\\r");
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * The log file, rolled over when it gets too big. Only used by the background thread.
+     */
+    private static final class RollingFile {
+        private final String filename;
+        private OutputStream out; // null if the file can't be opened
+        private long size;
+
+        private RollingFile(String filename) {
+            this.filename = filename;
+            open();
+        }
+
+        /**
+         * Appends a batch of lines, rolling the file over first if they don't fit.
+         */
+        private void write(CharSequence lines) {
+            byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+            if (size > 0 && size + bytes.length > MAX_FILE_BYTES) {
+                rollOver();
+            }
+            if (out == null) {
+                return;
+            }
+            try {
+                out.write(bytes);
+                size += bytes.length;
+            } catch (IOException e) {
+                System.err.println("The parking log cannot be written: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Renames name.4 to name.5, ..., name to name.1 and starts a new file.
+         */
+        private void rollOver() {
+            close();
+            new File(filename + "." + MAX_FILES).delete();
+            for (int i = MAX_FILES - 1; i >= 1; i--) {
+                new File(filename + "." + i).renameTo(new File(filename + "." + (i + 1)));
+            }
+            new File(filename).renameTo(new File(filename + ".1"));
+            open();
+        }
+
+        private void open() {
+            File file = new File(filename);
+            try {
+                out = new FileOutputStream(file, true);
+                size = file.length();
+            } catch (IOException e) {
+                System.err.println("The parking log cannot be opened: " + e.getMessage());
+                out = null;
+            }
+        }
+
+        private void close() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Nothing left to do with it
+            }
+            out = null;
+        }
+    }
+
+}
@@ -0,0 +1,428 @@
+package cymru.mab152.mcp;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The operational metrics of a Parking: counters of what happened at the gates, timers of the operations
+ * and gauges of the free ParkingSpaces and unused ExitTokens.
+ * <p>
+ * Counters and timers are striped (LongAdder, LatencyHistogram), so the gates never contend on them; they're only
+ * added up when the metrics are read. Gauges are read from the live Parking at that time too.
+ * Every timer keeps a histogram, and its percentiles are those of the last full interval (a minute or more),
+ * so a slow minute shows up in the p99 instead of being averaged away.
+ * The metrics can be scraped as text (see writeText()) and are published over JMX as a DynamicMBean,
+ * "cymru.mab152.mcp:type=Parking,database=...,name=..." -- one attribute per metric.
+ */
+public class ParkingMetrics implements DynamicMBean {
+
+    static final String DOMAIN = "cymru.mab152.mcp";
+
+    /**
+     * Things that are counted.
+     */
+    enum Counter {
+        PARKS, COLLECTIONS, EXITS, REJECTED_NO_FREE_SPACES, REJECTED_SIZE_NOT_SUPPORTED
+    }
+
+    /**
+     * Operations that are timed.
+     */
+    enum Timer {
+        LOAD, SAVE, PARK, PARK_BATCH, COLLECT, PAY, EXIT, FREE_SPACES
+    }
+
+    /**
+     * Percentiles of the timers that are published.
+     */
+    enum Percentile {
+        P50(50.0, "0.5"), P90(90.0, "0.9"), P99(99.0, "0.99"), P999(99.9, "0.999");
+
+        private final double percentile;
+        private final String quantile;
+
+        Percentile(double percentile, String quantile) {
+            this.percentile = percentile;
+            this.quantile = quantile;
+        }
+
+        /**
+         * Returns the percentile.
+         *
+         * @return percentile (0.0 - 100.0)
+         */
+        double getPercentile() {
+            return this.percentile;
+        }
+
+        /**
+         * Returns the percentile as a quantile, the way the text format writes it.
+         *
+         * @return quantile (0 - 1)
+         */
+        String getQuantile() {
+            return this.quantile;
+        }
+    }
+
+    private static final long INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Parking parking;
+    private final LongAdder[] counters;
+    private final LatencyHistogram[] timers;
+    private final LatencyHistogram.Snapshot[] lastIntervals; // the last full interval of every timer
+    private long intervalStartNanos;
+    private ObjectName objectName; // null while not registered
+
+    /**
+     * The constructor for ParkingMetrics objects.
+     *
+     * @param parking the Parking whose gauges are read
+     */
+    ParkingMetrics(Parking parking) {
+        this.parking = parking;
+        this.counters = new LongAdder[Counter.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        this.timers = new LatencyHistogram[Timer.values().length];
+        this.lastIntervals = new LatencyHistogram.Snapshot[timers.length];
+        for (int i = 0; i < timers.length; i++) {
+            timers[i] = new LatencyHistogram();
+            lastIntervals[i] = timers[i].getIntervalSnapshot();
+        }
+        this.intervalStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Adds one to a counter.
+     *
+     * @param counter the counter
+     */
+    void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    /**
+     * Records how long an operation took.
+     *
+     * @param timer the operation
+     * @param startNanos System.nanoTime() when the operation started
+     */
+    void record(Timer timer, long startNanos) {
+        timers[timer.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Returns the value of a counter.
+     *
+     * @param counter the counter
+     * @return the count so far
+     */
+    long getCount(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /**
+     * Returns the number of times an operation has been timed.
+     *
+     * @param timer the operation
+     * @return number of operations
+     */
+    long getCount(Timer timer) {
+        return timers[timer.ordinal()].getCount();
+    }
+
+    /**
+     * Returns the total time an operation has taken.
+     *
+     * @param timer the operation
+     * @return total time in nanoseconds
+     */
+    long getTotalNanos(Timer timer) {
+        return timers[timer.ordinal()].getTotalNanos();
+    }
+
+    /**
+     * Returns the longest time an operation has taken.
+     *
+     * @param timer the operation
+     * @return longest time in nanoseconds
+     */
+    long getMaxNanos(Timer timer) {
+        return timers[timer.ordinal()].getMaxNanos();
+    }
+
+    /**
+     * Returns a Snapshot of all the times an operation has taken.
+     *
+     * @param timer the operation
+     * @return the Snapshot
+     */
+    LatencyHistogram.Snapshot getSnapshot(Timer timer) {
+        return timers[timer.ordinal()].getSnapshot();
+    }
+
+    /**
+     * Returns a Snapshot of the times an operation took in the last full interval -- the last minute,
+     * or longer if the metrics haven't been read for a while.
+     *
+     * @param timer the operation
+     * @return the Snapshot
+     */
+    synchronized LatencyHistogram.Snapshot getLastInterval(Timer timer) {
+        long now = System.nanoTime();
+        if (now - intervalStartNanos >= INTERVAL_NANOS) {
+            for (int i = 0; i < timers.length; i++) {
+                lastIntervals[i] = timers[i].getIntervalSnapshot();
+            }
+            intervalStartNanos = now;
+        }
+        return lastIntervals[timer.ordinal()];
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text format.
+     *
+     * @param out where the metrics are written to
+     * @throws IOException thrown if they cannot be written
+     */
+    void writeText(Appendable out) throws IOException {
+        for (Counter counter : Counter.values()) {
+            String name = "mcp_" + counter.toString().toLowerCase(Locale.ROOT) + "_total";
+            out.append("# TYPE ").append(name).append(" counter\n");
+            out.append(name).append(' ').append(String.valueOf(getCount(counter))).append('\n');
+        }
+
+        out.append("# TYPE mcp_free_spaces gauge\n");
+        for (ParkingZone pz : parking.getParkingZones()) {
+            out.append("mcp_free_spaces{zone=\"").append(escape(pz.getId())).append("\"} ")
+                    .append(String.valueOf(pz.getNumberOfFreeSpaces())).append('\n');
+        }
+        out.append("# TYPE mcp_exit_tokens gauge\n");
+        out.append("mcp_exit_tokens ").append(String.valueOf(parking.getExitTokens().size())).append('\n');
+
+        out.append("# TYPE mcp_operation_seconds summary\n");
+        for (Timer timer : Timer.values()) {
+            String operation = timer.toString().toLowerCase(Locale.ROOT);
+            LatencyHistogram.Snapshot interval = getLastInterval(timer);
+            for (Percentile p : Percentile.values()) {
+                out.append("mcp_operation_seconds{operation=\"").append(operation).append("\",quantile=\"")
+                        .append(p.getQuantile()).append("\"} ")
+                        .append(String.valueOf(interval.getValueAtPercentile(p.getPercentile()) / 1e9)).append('\n');
+            }
+            String label = "{operation=\"" + operation + "\"} ";
+            out.append("mcp_operation_seconds_count").append(label)
+                    .append(String.valueOf(getCount(timer))).append('\n');
+            out.append("mcp_operation_seconds_sum").append(label)
+                    .append(String.valueOf(getTotalNanos(timer) / 1e9)).append('\n');
+        }
+        out.append("# TYPE mcp_operation_seconds_max gauge\n");
+        for (Timer timer : Timer.values()) {
+            out.append("mcp_operation_seconds_max{operation=\"").append(timer.toString().toLowerCase(Locale.ROOT))
+                    .append("\"} ").append(String.valueOf(getMaxNanos(timer) / 1e9)).append('\n');
+        }
+    }
+
+    /**
+     * Publishes the metrics on the platform MBeanServer, keyed by the database file of the Parking
+     * (several sites may well share a name). If the metrics of another Parking are already published
+     * under that key, they're left alone and these aren't published.
+     *
+     * @param filename the database file the Parking has been loaded from
+     */
+    synchronized void registerMBean(String filename) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=Parking"
+                    + ",database=" + ObjectName.quote(new File(filename).getAbsolutePath())
+                    + ",name=" + ObjectName.quote(parking.getName()));
+            unregisterMBean();
+            server.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            System.err.println("The parking metrics cannot be published over JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the metrics from the platform MBeanServer, if they're published.
+     */
+    synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            // Already gone
+        }
+        objectName = null;
+    }
+
+    /**
+     * Returns the value of a JMX attribute: a counter ("Parks"), an operation's "Count", "TotalMillis",
+     * "MaxMillis" ("ParkCount") or a percentile of the last interval ("ParkP99Millis"), "ExitTokens"
+     * or "FreeSpaces" followed by a zone ID ("FreeSpacesA").
+     *
+     * @param attribute name of the attribute
+     * @return its value
+     * @throws AttributeNotFoundException thrown if there's no attribute with that name
+     */
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        for (Counter counter : Counter.values()) {
+            if (attribute.equals(camelCase(counter.toString()))) {
+                return getCount(counter);
+            }
+        }
+        for (Timer timer : Timer.values()) {
+            String prefix = camelCase(timer.toString());
+            if (attribute.equals(prefix + "Count")) {
+                return getCount(timer);
+            } else if (attribute.equals(prefix + "TotalMillis")) {
+                return getTotalNanos(timer) / 1e6;
+            } else if (attribute.equals(prefix + "MaxMillis")) {
+                return getMaxNanos(timer) / 1e6;
+            }
+            for (Percentile p : Percentile.values()) {
+                if (attribute.equals(prefix + p + "Millis")) {
+                    return getLastInterval(timer).getValueAtPercentile(p.getPercentile()) / 1e6;
+                }
+            }
+        }
+        if (attribute.equals("ExitTokens")) {
+            return parking.getExitTokens().size();
+        }
+        for (ParkingZone pz : parking.getParkingZones()) {
+            if (attribute.equals("FreeSpaces" + pz.getId())) {
+                return pz.getNumberOfFreeSpaces();
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    /**
+     * Metrics are read-only.
+     *
+     * @param attribute the attribute
+     * @throws AttributeNotFoundException always
+     */
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("The parking metrics are read-only.");
+    }
+
+    /**
+     * Returns the values of several JMX attributes, skipping the ones that don't exist.
+     *
+     * @param attributes names of the attributes
+     * @return their values
+     */
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // Skipped, as the JMX specification asks
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Metrics are read-only.
+     *
+     * @param attributes the attributes
+     * @return an empty list
+     */
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    /**
+     * The metrics have no operations.
+     *
+     * @param actionName name of the operation
+     * @param params its parameters
+     * @param signature types of its parameters
+     * @return nothing
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException("The parking metrics have no operations.");
+    }
+
+    /**
+     * Describes the attributes. The free spaces ones follow the ParkingZones, so they're listed anew every time.
+     *
+     * @return info about the MBean
+     */
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        ArrayList<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Counter counter : Counter.values()) {
+            attributes.add(attribute(camelCase(counter.toString()), "long", "Number of "
+                    + counter.toString().toLowerCase(Locale.ROOT).replace('_', ' ')));
+        }
+        for (Timer timer : Timer.values()) {
+            String prefix = camelCase(timer.toString());
+            String operation = timer.toString().toLowerCase(Locale.ROOT);
+            attributes.add(attribute(prefix + "Count", "long", "Number of " + operation + " operations"));
+            attributes.add(attribute(prefix + "TotalMillis", "double", "Total time of " + operation + " operations"));
+            attributes.add(attribute(prefix + "MaxMillis", "double", "Longest " + operation + " operation"));
+            for (Percentile p : Percentile.values()) {
+                attributes.add(attribute(prefix + p + "Millis", "double", p.getPercentile()
+                        + " percentile of " + operation + " operations in the last interval"));
+            }
+        }
+        attributes.add(attribute("ExitTokens", "int", "Number of unused exit tokens"));
+        for (ParkingZone pz : parking.getParkingZones()) {
+            attributes.add(attribute("FreeSpaces" + pz.getId(), "int", "Free parking spaces in zone " + pz.getId()));
+        }
+        return new MBeanInfo(getClass().getName(), "Operational metrics of the parking " + parking.getName(),
+                attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+    }
+
+    private static MBeanAttributeInfo attribute(String name, String type, String description) {
+        return new MBeanAttributeInfo(name, type, description, true, false, false);
+    }
+
+    /**
+     * Turns "REJECTED_NO_FREE_SPACES" into "RejectedNoFreeSpaces".
+     */
+    private static String camelCase(String constant) {
+        StringBuilder sb = new StringBuilder();
+        for (String word : constant.split("_")) {
+            sb.append(word.charAt(0)).append(word.substring(1).toLowerCase(Locale.ROOT));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Escapes a label value of the text format.
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+}
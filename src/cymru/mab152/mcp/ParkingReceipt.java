@@ -89,22 +89,14 @@ public class ParkingReceipt {
     }
 
     /**
-     * Calculates and returns a pricePerHour to pay for parking a vehicle.
+     * Calculates and returns the basic price to pay for parking a vehicle
+     * (without the Tariff's bands and discounts -- ParkingService uses the Tariff).
      *
-     * @return a pricePerHour to pay
+     * @return the price to pay
      */
     float getPrice() {
-        long millisParked = this.endDate.getTime() - this.startDate.getTime();
-        long secondsParked = millisParked / 1000;
-        long minutesParked = secondsParked / 60;
-        secondsParked %= 60;
-        long hoursParked = minutesParked / 60;
-
-        // Every started hour (even by a second) adds an hour to the counter.
-        if (secondsParked != 0) {
-            hoursParked++;
-        }
-
+        // Every started hour (even by a millisecond) adds an hour to the counter.
+        long hoursParked = Math.ceilDiv(this.endDate.getTime() - this.startDate.getTime(), 3_600_000L);
         return hoursParked * pricePerHour;
     }
 
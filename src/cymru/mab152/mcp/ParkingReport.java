@@ -0,0 +1,281 @@
+package cymru.mab152.mcp;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * A report of everything in the Parking, written straight to a Writer (or any Appendable) one line at a time.
+ * <p>
+ * Nothing is collected before it's written, so a report of any size takes the same memory.
+ * ParkingZones and Vehicles are read from a ParkingSnapshot, so they match each other.
+ * The report can be narrowed down to some sections, one ParkingZone or the occupied ParkingSpaces only,
+ * and every section can be paged: only the entries from the offset on are written, up to the limit.
+ * Pages are found by the zones' counts, so the zones before the page aren't walked.
+ */
+public class ParkingReport {
+
+    /**
+     * The sections of the report, in the order they're written.
+     */
+    enum Section {
+        ZONES, VEHICLES, EMPLOYEES, TOKENS
+    }
+
+    private final Parking parking;
+    private EnumSet<Section> sections;
+    private String zoneId; // null for all ParkingZones
+    private boolean occupiedOnly;
+    private long offset;
+    private long limit;
+
+    /**
+     * The constructor for ParkingReport objects.
+     * By default, the report has all sections and all entries.
+     *
+     * @param parking the Parking to report on
+     */
+    ParkingReport(Parking parking) {
+        this.parking = parking;
+        this.sections = EnumSet.allOf(Section.class);
+        this.zoneId = null;
+        this.occupiedOnly = false;
+        this.offset = 0;
+        this.limit = Long.MAX_VALUE;
+    }
+
+    /**
+     * Sets the sections written.
+     *
+     * @param sections the sections
+     */
+    void setSections(EnumSet<Section> sections) {
+        this.sections = EnumSet.copyOf(sections);
+    }
+
+    /**
+     * Limits the ParkingZones and Vehicles sections to one ParkingZone.
+     *
+     * @param zoneId ID of the ParkingZone (null for all)
+     */
+    void setZoneId(String zoneId) {
+        this.zoneId = zoneId;
+    }
+
+    /**
+     * Sets whether the free (and held) ParkingSpaces are left out of the ParkingZones section.
+     *
+     * @param occupiedOnly TRUE to only list ParkingSpaces with a Vehicle in them
+     */
+    void setOccupiedOnly(boolean occupiedOnly) {
+        this.occupiedOnly = occupiedOnly;
+    }
+
+    /**
+     * Sets the page written of every section.
+     *
+     * @param offset number of entries skipped
+     * @param limit most entries written
+     */
+    void setPage(long offset, long limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("The page cannot be negative!");
+        }
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    /**
+     * Writes the report.
+     *
+     * @param out where the report is written to
+     * @throws IOException thrown if it cannot be written
+     */
+    void write(Appendable out) throws IOException {
+        ParkingSnapshot snapshot = parking.getSnapshot();
+        out.append(snapshot.getParkingName());
+
+        if (sections.contains(Section.ZONES)) {
+            writeZones(out, snapshot);
+        }
+        if (sections.contains(Section.VEHICLES)) {
+            writeVehicles(out, snapshot);
+        }
+        if (sections.contains(Section.EMPLOYEES)) {
+            writeEmployees(out, parking.getFreeEmployees());
+        }
+        if (sections.contains(Section.TOKENS)) {
+            writeTokens(out, parking.getExitTokens());
+        }
+    }
+
+    private void writeZones(Appendable out, ParkingSnapshot snapshot) throws IOException {
+        out.append("\n\n---------- PARKING ZONES ----------\n");
+        int matching = 0;
+        for (ParkingSnapshot.Zone zone : snapshot.getZones()) {
+            if (isIncluded(zone)) {
+                matching++;
+            }
+        }
+        if (matching == 0) {
+            out.append("Doesn't have any parking zones.");
+            return;
+        }
+        out.append("Has ").append(String.valueOf(matching))
+                .append((matching == 1) ? " parking zone:\n" : " parking zones:\n");
+
+        long first = 0; // number of the zone's first entry
+        for (ParkingSnapshot.Zone zone : snapshot.getZones()) {
+            if (!isIncluded(zone)) {
+                continue;
+            }
+            // A zone without any listed ParkingSpaces still takes up one entry
+            long entries = Math.max(1, occupiedOnly ? zone.getNumberOfVehicles() : zone.getSpaces().size());
+            if (first + entries > offset && first < end()) {
+                writeZone(out, zone, first);
+                out.append("\n\n");
+            }
+            first += entries;
+            if (first >= end()) {
+                break;
+            }
+        }
+    }
+
+    private void writeZone(Appendable out, ParkingSnapshot.Zone zone, long first) throws IOException {
+        // Basic info
+        out.append("Parking zone ").append(zone.getId()).append(", the pricePerHour for 1 hour is ")
+                .append(String.valueOf(zone.getPrice())).append(" units.");
+        // Accepted vehicles
+        List<VehicleType> acceptedVehicles = zone.getAcceptedVehicles();
+        if (acceptedVehicles.isEmpty()) {
+            out.append("\nIt doesn't currently accept any types of vehicles.");
+        } else {
+            out.append("\nIt accepts following types of vehicles:\n");
+            for (VehicleType vt : acceptedVehicles) {
+                out.append(vt.toString()).append('\n');
+            }
+        }
+        // Parking spaces
+        if (zone.getSpaces().isEmpty()) {
+            out.append("\nIt doesn't currently contain any parking spaces.");
+            return;
+        }
+        if (occupiedOnly && zone.getNumberOfVehicles() == 0) {
+            out.append("\nIt doesn't currently contain any occupied parking spaces.");
+            return;
+        }
+        out.append(occupiedOnly ? ".\nContains occupied parking spaces:\n" : ".\nContains parking spaces:\n");
+        List<ParkingSnapshot.Space> spaces = zone.getSpaces();
+        long entry = first;
+        // Without the filter every space is an entry, so the ones before the page are skipped at once
+        int i = occupiedOnly ? 0 : (int) Math.max(0, offset - first);
+        entry += i;
+        for (; i < spaces.size() && entry < end(); i++) {
+            ParkingSnapshot.Space space = spaces.get(i);
+            if (occupiedOnly && space.getVehicle() == null) {
+                continue;
+            }
+            if (entry >= offset) {
+                out.append(space.toString()).append('\n');
+            }
+            entry++;
+        }
+    }
+
+    private void writeVehicles(Appendable out, ParkingSnapshot snapshot) throws IOException {
+        out.append("\n\n---------- VEHICLES ----------");
+        long vehicles = 0;
+        for (ParkingSnapshot.Zone zone : snapshot.getZones()) {
+            if (isIncluded(zone)) {
+                vehicles += zone.getNumberOfVehicles();
+            }
+        }
+        if (vehicles == 0) {
+            out.append("\nThere are no vehicles parked in this parking.");
+            return;
+        }
+        out.append((vehicles == 1) ? "There is " : "There are ").append(String.valueOf(vehicles))
+                .append((vehicles == 1) ? " vehicle parked in the parking:" : " vehicles parked in the parking:");
+
+        long entry = 0;
+        for (ParkingSnapshot.Zone zone : snapshot.getZones()) {
+            if (entry >= end()) {
+                break;
+            }
+            if (!isIncluded(zone)) {
+                continue;
+            }
+            // Whole zones before the page are skipped by their counts
+            if (entry + zone.getNumberOfVehicles() <= offset) {
+                entry += zone.getNumberOfVehicles();
+                continue;
+            }
+            for (ParkingSnapshot.Space space : zone.getSpaces()) {
+                if (entry >= end()) {
+                    break;
+                }
+                if (space.getVehicle() == null) {
+                    continue;
+                }
+                if (entry >= offset) {
+                    out.append(space.getVehicle().toString()).append('\n');
+                }
+                entry++;
+            }
+        }
+    }
+
+    private void writeEmployees(Appendable out, Collection<FreeEmployee> freeEmployees) throws IOException {
+        out.append("\n\n---------- FREE EMPLOYEES ----------\n");
+        int size = freeEmployees.size();
+        if (size == 0) {
+            out.append("There are currently no free employees.");
+            return;
+        }
+        out.append((size == 1) ? "There is currently " : "There are currently ").append(String.valueOf(size))
+                .append((size == 1) ? " free employee:\n" : " free employees:\n");
+        long entry = 0;
+        for (FreeEmployee fe : freeEmployees) {
+            if (entry >= end()) {
+                break;
+            }
+            if (entry++ >= offset) {
+                out.append(fe.toString()).append('\n');
+            }
+        }
+    }
+
+    private void writeTokens(Appendable out, Collection<ExitToken> exitTokens) throws IOException {
+        out.append("\n\n---------- EXIT TOKENS ----------\n");
+        int size = exitTokens.size();
+        if (size == 0) {
+            out.append("There are currently no exit tokens.");
+            return;
+        }
+        out.append((size == 1) ? "There is currently " : "There are currently ").append(String.valueOf(size))
+                .append((size == 1) ? " exit token:\n" : " exit tokens:\n");
+        long entry = 0;
+        for (ExitToken et : exitTokens) {
+            if (entry >= end()) {
+                break;
+            }
+            if (entry++ >= offset) {
+                out.append(et.toString()).append('\n');
+            }
+        }
+    }
+
+    private boolean isIncluded(ParkingSnapshot.Zone zone) {
+        return zoneId == null || zone.getId().equalsIgnoreCase(zoneId);
+    }
+
+    /**
+     * Returns the number of the first entry after the page.
+     */
+    private long end() {
+        return (Long.MAX_VALUE - offset < limit) ? Long.MAX_VALUE : offset + limit;
+    }
+
+}
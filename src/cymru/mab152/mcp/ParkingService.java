@@ -0,0 +1,595 @@
+package cymru.mab152.mcp;
+
+import cymru.mab152.mcp.exception.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The non-interactive API of the Parking.
+ * Every operation takes a request object and returns a result object (or throws an exception),
+ * so it can be driven by the console, gate controllers, servers or load tests alike.
+ */
+public class ParkingService {
+
+    private Parking parking;
+
+    /**
+     * The constructor for ParkingService objects.
+     *
+     * @param parking the Parking this service operates on
+     */
+    ParkingService(Parking parking) {
+        this.parking = parking;
+    }
+
+    /**
+     * Returns a boolean whether an Employee can park or collect a Vehicle of the type given
+     * (not available for coaches and motorbikes).
+     *
+     * @param vt vehicle type (enum)
+     * @return can the Vehicle be parked or collected by an Employee
+     */
+    static boolean canBeAssisted(VehicleType vt) {
+        return vt != VehicleType.COACH && vt != VehicleType.MOTORBIKE;
+    }
+
+    /**
+     * Converts an amount in units to whole pence, so payments can be compared and subtracted exactly.
+     *
+     * @param units amount in units
+     * @return amount in pence
+     */
+    static long toPence(float units) {
+        return Math.round(units * 100.0);
+    }
+
+    /**
+     * Parks a Vehicle.
+     * If the request doesn't name a ParkingSpace, a random free one that accepts the Vehicle is used.
+     *
+     * @param req the ParkRequest
+     * @return info about the parked Vehicle
+     * @throws VehicleAlreadyExistsException thrown if there is already a Vehicle with the same license plate
+     * @throws VehicleSizeNotSupportedException thrown if Vehicle's size is not supported
+     * @throws NoFreeParkingSpacesException thrown if there are no free ParkingSpaces for the Vehicle
+     * @throws ParkingSpaceDoesNotExistException thrown if the requested ParkingSpace doesn't exist
+     * @throws ParkingSpaceOccupiedException thrown if the requested ParkingSpace is already occupied
+     * @throws VehicleTypeNotAcceptedException thrown if the requested ParkingSpace can't accept the Vehicle
+     */
+    ParkResult park(ParkRequest req) throws VehicleAlreadyExistsException, VehicleSizeNotSupportedException,
+            NoFreeParkingSpacesException, ParkingSpaceDoesNotExistException, ParkingSpaceOccupiedException,
+            VehicleTypeNotAcceptedException {
+        return parkWithReceipt(req, req.getLicensePlate().toUpperCase(), parking.getNextReceiptId());
+    }
+
+    /**
+     * Parks a whole batch of arrivals, i.e. from a number-plate camera.
+     * Every license plate is checked against the Vehicles in the Parking (including the earlier ones
+     * of the batch) and the ParkingReceipt IDs are reserved for the whole batch at once.
+     * A failed arrival doesn't stop the rest of the batch. Nothing is saved -- the caller
+     * writes the whole batch to the database once. The whole batch is timed in the ParkingMetrics.
+     *
+     * @param reqs the ParkRequests
+     * @return a BatchParkResult for every request, in the same order
+     */
+    List<BatchParkResult> parkAll(List<ParkRequest> reqs) {
+        long start = System.nanoTime();
+        try {
+            return parkBatch(reqs);
+        } finally {
+            parking.getMetrics().record(ParkingMetrics.Timer.PARK_BATCH, start);
+        }
+    }
+
+    /**
+     * Parks a whole batch of arrivals.
+     *
+     * @param reqs the ParkRequests
+     * @return a BatchParkResult for every request, in the same order
+     */
+    private List<BatchParkResult> parkBatch(List<ParkRequest> reqs) {
+        int receiptId = parking.reserveReceiptIds(reqs.size());
+        ArrayList<BatchParkResult> results = new ArrayList<>(reqs.size());
+
+        for (ParkRequest req : reqs) {
+            String licensePlate = req.getLicensePlate().toUpperCase();
+            try {
+                results.add(new BatchParkResult(licensePlate, parkWithReceipt(req, licensePlate, receiptId++)));
+            } catch (VehicleAlreadyExistsException | VehicleSizeNotSupportedException | NoFreeParkingSpacesException
+                    | ParkingSpaceDoesNotExistException | ParkingSpaceOccupiedException
+                    | VehicleTypeNotAcceptedException | RuntimeException e) {
+                // Errors (i.e. running out of memory) aren't about this Vehicle, so they stop the batch
+                results.add(new BatchParkResult(licensePlate, e));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Parks a Vehicle with a ParkingReceipt ID that has already been handed out (timed in the ParkingMetrics
+     * and recorded as a ParkingEvents.Park).
+     *
+     * @param req the ParkRequest
+     * @param licensePlate the upper-case license plate
+     * @param receiptId ID of the ParkingReceipt to issue
+     * @return info about the parked Vehicle
+     * @throws VehicleAlreadyExistsException thrown if there is already a Vehicle with the same license plate
+     * @throws VehicleSizeNotSupportedException thrown if Vehicle's size is not supported
+     * @throws NoFreeParkingSpacesException thrown if there are no free ParkingSpaces for the Vehicle
+     * @throws ParkingSpaceDoesNotExistException thrown if the requested ParkingSpace doesn't exist
+     * @throws ParkingSpaceOccupiedException thrown if the requested ParkingSpace is already occupied
+     * @throws VehicleTypeNotAcceptedException thrown if the requested ParkingSpace can't accept the Vehicle
+     */
+    private ParkResult parkWithReceipt(ParkRequest req, String licensePlate, int receiptId)
+            throws VehicleAlreadyExistsException, VehicleSizeNotSupportedException, NoFreeParkingSpacesException,
+            ParkingSpaceDoesNotExistException, ParkingSpaceOccupiedException, VehicleTypeNotAcceptedException {
+        ParkingEvents.Park event = new ParkingEvents.Park();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            ParkResult result = createAndPark(req, licensePlate, receiptId, event);
+            parking.getMetrics().increment(ParkingMetrics.Counter.PARKS);
+            event.isParked = true;
+            parking.getLog().publish(ParkingLog.Kind.PARKED, event.parkingZone, event.parkingSpace,
+                    event.vehicleType, result.getReceiptId(), -1);
+            return result;
+        } catch (NoFreeParkingSpacesException e) {
+            parking.getMetrics().increment(ParkingMetrics.Counter.REJECTED_NO_FREE_SPACES);
+            parking.getLog().publish(ParkingLog.Kind.PARK_REJECTED, null, null, "no free spaces", -1, -1);
+            throw e;
+        } catch (VehicleSizeNotSupportedException e) {
+            parking.getMetrics().increment(ParkingMetrics.Counter.REJECTED_SIZE_NOT_SUPPORTED);
+            parking.getLog().publish(ParkingLog.Kind.PARK_REJECTED, null, null, "size not supported", -1, -1);
+            throw e;
+        } finally {
+            parking.getMetrics().record(ParkingMetrics.Timer.PARK, start);
+            event.commit();
+        }
+    }
+
+    /**
+     * Parks a Vehicle with a ParkingReceipt ID that has already been handed out.
+     *
+     * @param req the ParkRequest
+     * @param licensePlate the upper-case license plate
+     * @param receiptId ID of the ParkingReceipt to issue
+     * @param event the event filled in with what's known about the Vehicle and where it went
+     * @return info about the parked Vehicle
+     * @throws VehicleAlreadyExistsException thrown if there is already a Vehicle with the same license plate
+     * @throws VehicleSizeNotSupportedException thrown if Vehicle's size is not supported
+     * @throws NoFreeParkingSpacesException thrown if there are no free ParkingSpaces for the Vehicle
+     * @throws ParkingSpaceDoesNotExistException thrown if the requested ParkingSpace doesn't exist
+     * @throws ParkingSpaceOccupiedException thrown if the requested ParkingSpace is already occupied
+     * @throws VehicleTypeNotAcceptedException thrown if the requested ParkingSpace can't accept the Vehicle
+     */
+    private ParkResult createAndPark(ParkRequest req, String licensePlate, int receiptId,
+                                     ParkingEvents.Park event)
+            throws VehicleAlreadyExistsException, VehicleSizeNotSupportedException, NoFreeParkingSpacesException,
+            ParkingSpaceDoesNotExistException, ParkingSpaceOccupiedException, VehicleTypeNotAcceptedException {
+        // Get the Vehicle's type (calculated from the dimensions if not given)
+        VehicleType vehicleType = req.getVehicleType();
+        if (vehicleType == null) {
+            vehicleType = Vehicle.checkType(req.getHeight(), req.getLength());
+        }
+        event.vehicleType = vehicleType.toString();
+        event.isDisabled = req.isDriverDisabled();
+        event.needsAssistance = req.needsAssistance();
+
+        // A Vehicle given only by its type is taken to be as large as the type allows,
+        // so it's never fitted into a space by dimensions it doesn't have
+        float height = req.getHeight();
+        float length = req.getLength();
+        if (height == 0.0f && length == 0.0f) {
+            height = vehicleType.getMaxHeight();
+            length = vehicleType.getMaxLength();
+        }
+        if (height <= 0.0f || length <= 0.0f) {
+            throw new VehicleSizeNotSupportedException();
+        }
+
+        // Check if a coach doesn't exceed the 15 metres length limit
+        if (vehicleType == VehicleType.COACH && length > 15.0f) {
+            throw new VehicleSizeNotSupportedException();
+        }
+
+        // Create the Vehicle and assign a new ParkingReceipt to it
+        Vehicle newVehicle = new Vehicle(licensePlate, height, length, vehicleType);
+        ParkingReceipt newParkingReceipt = new ParkingReceipt(receiptId, new Date(),
+                req.isDriverDisabled());
+        newVehicle.setParkingReceipt(newParkingReceipt);
+
+        // Take the license plate first, so the same Vehicle can't be let in at two gates at once
+        if (!parking.registerLicensePlate(newVehicle)) {
+            throw new VehicleAlreadyExistsException();
+        }
+
+        ParkingSpace parkingSpace = null;
+        try {
+            if (req.getParkingSpaceId() != null) {
+                // Park in the requested ParkingSpace
+                ParkingSpace requested = parking.getParkingSpaceById(req.getParkingSpaceId().toUpperCase());
+                if (requested == null) {
+                    throw new ParkingSpaceDoesNotExistException();
+                }
+                if (!requested.accepts(newVehicle)) {
+                    throw new VehicleTypeNotAcceptedException();
+                }
+                newVehicle.parkIn(requested);
+                parkingSpace = requested;
+            } else {
+                // Park in the ParkingSpace held for the Vehicle, otherwise in one picked by the AllocationStrategy
+                parkingSpace = parking.getReservations().parkReserved(newVehicle);
+                if (parkingSpace == null) {
+                    parkingSpace = parking.parkInFreeParkingSpace(newVehicle);
+                }
+            }
+        } finally {
+            if (parkingSpace == null) {
+                parking.unregisterLicensePlate(newVehicle);
+            }
+        }
+
+        parking.registerParkingReceipt(newVehicle, parkingSpace);
+        parking.getEventBus().publishSpaceOccupied(parkingSpace);
+        event.parkingSpace = parkingSpace.getID();
+        event.parkingZone = parkingSpace.getParkingZone().getId();
+
+        // The space is taken straight away -- if the Customer asked for assistance,
+        // the Vehicle waits for the next free Employee to drive it there
+        ValetJob valetJob = null;
+        if (req.needsAssistance() && canBeAssisted(vehicleType) && hasEmployees()) {
+            valetJob = parking.getValetDispatcher().submit(ValetJob.Kind.PARK, newVehicle, parkingSpace);
+        }
+        return new ParkResult(newParkingReceipt.getId(), parkingSpace.getID(), vehicleType, valetJob);
+    }
+
+    /**
+     * Calculates the price for a parked Vehicle (timed in the ParkingMetrics and recorded
+     * as a ParkingEvents.Collect).
+     * The Vehicle stays in its ParkingSpace until the payment is accepted.
+     *
+     * @param req the CollectRequest
+     * @return the price and info about the stay
+     * @throws VehicleDoesNotExistException thrown if there's no Vehicle with that ParkingReceipt
+     */
+    CollectResult collect(CollectRequest req) throws VehicleDoesNotExistException {
+        ParkingEvents.Collect event = new ParkingEvents.Collect();
+        event.begin();
+        event.receiptId = req.getReceiptId();
+        long start = System.nanoTime();
+        try {
+            CollectResult result = priceCollection(req, event);
+            parking.getLog().publish(ParkingLog.Kind.COLLECTED, event.parkingZone, result.getParkingSpaceId(),
+                    event.vehicleType, event.receiptId, event.pricePence);
+            return result;
+        } finally {
+            parking.getMetrics().record(ParkingMetrics.Timer.COLLECT, start);
+            event.commit();
+        }
+    }
+
+    /**
+     * Calculates the price for a parked Vehicle.
+     * The Vehicle stays in its ParkingSpace until the payment is accepted.
+     *
+     * @param req the CollectRequest
+     * @param event the event filled in with the stay
+     * @return the price and info about the stay
+     * @throws VehicleDoesNotExistException thrown if there's no Vehicle with that ParkingReceipt
+     */
+    private CollectResult priceCollection(CollectRequest req, ParkingEvents.Collect event)
+            throws VehicleDoesNotExistException {
+        ParkingSpace parkingSpace = parking.getParkingSpaceByReceiptId(req.getReceiptId());
+        Vehicle vehicle = (parkingSpace == null) ? null : parkingSpace.getVehicle();
+
+        // If the Vehicle cannot be found, throw an exception
+        if (vehicle == null) {
+            throw new VehicleDoesNotExistException("The vehicle assigned to this parking receipt doesn't exist!" +
+                    "\nContact parking staff.");
+        }
+
+        long priceToPay = priceStay(parkingSpace, vehicle);
+
+        // Calculate the time parked
+        ParkingReceipt pr = vehicle.getParkingReceipt();
+        long minutesParked = (pr.getEndDate().getTime() - pr.getStartDate().getTime()) / 1000 / 60;
+
+        event.parkingZone = parkingSpace.getParkingZone().getId();
+        event.vehicleType = vehicle.getVehicleType().toString();
+        event.minutesParked = minutesParked;
+        event.pricePence = priceToPay;
+
+        return new CollectResult(pr.getId(), vehicle.getLicensePlate(), parkingSpace.getID(),
+                vehicle.getVehicleType(), minutesParked, priceToPay);
+    }
+
+    /**
+     * Accepts the payment for a Vehicle, removes it from its ParkingSpace and issues an ExitToken
+     * (timed in the ParkingMetrics and recorded as a ParkingEvents.Pay).
+     *
+     * @param req the PaymentRequest
+     * @return the ExitToken and the change
+     * @throws VehicleDoesNotExistException thrown if there's no Vehicle with that ParkingReceipt
+     * @throws InsufficientPaymentException thrown if the amount paid doesn't cover the price
+     */
+    PaymentResult pay(PaymentRequest req) throws VehicleDoesNotExistException, InsufficientPaymentException {
+        ParkingEvents.Pay event = new ParkingEvents.Pay();
+        event.begin();
+        event.receiptId = req.getReceiptId();
+        long start = System.nanoTime();
+        try {
+            PaymentResult result = acceptPayment(req, event);
+            parking.getMetrics().increment(ParkingMetrics.Counter.COLLECTIONS);
+            event.isPaid = true;
+            parking.getLog().publish(ParkingLog.Kind.PAID, event.parkingZone, result.getParkingSpaceId(),
+                    event.vehicleType, event.receiptId, event.pricePence);
+            return result;
+        } finally {
+            parking.getMetrics().record(ParkingMetrics.Timer.PAY, start);
+            event.commit();
+        }
+    }
+
+    /**
+     * Accepts the payment for a Vehicle, removes it from its ParkingSpace and issues an ExitToken.
+     *
+     * @param req the PaymentRequest
+     * @param event the event filled in with the stay
+     * @return the ExitToken and the change
+     * @throws VehicleDoesNotExistException thrown if there's no Vehicle with that ParkingReceipt
+     * @throws InsufficientPaymentException thrown if the amount paid doesn't cover the price
+     */
+    private PaymentResult acceptPayment(PaymentRequest req, ParkingEvents.Pay event)
+            throws VehicleDoesNotExistException, InsufficientPaymentException {
+        ParkingSpace parkingSpace = parking.getParkingSpaceByReceiptId(req.getReceiptId());
+        Vehicle vehicle = (parkingSpace == null) ? null : parkingSpace.getVehicle();
+
+        if (vehicle == null) {
+            throw new VehicleDoesNotExistException("The vehicle assigned to this parking receipt doesn't exist!" +
+                    "\nContact parking staff.");
+        }
+
+        // Use the price shown when collecting (or calculate it now, if the Vehicle wasn't collected first)
+        long pricePence = (vehicle.getParkingReceipt().getEndDate() == null)
+                ? priceStay(parkingSpace, vehicle) : calculatePrice(parkingSpace, vehicle);
+        event.parkingZone = parkingSpace.getParkingZone().getId();
+        event.vehicleType = vehicle.getVehicleType().toString();
+        event.pricePence = pricePence;
+        if (req.getAmountPaidPence() < pricePence) {
+            throw new InsufficientPaymentException();
+        }
+
+        // Remove the Vehicle from the Parking (also removes the ParkingReceipt)
+        if (!parkingSpace.release(vehicle)) {
+            throw new VehicleDoesNotExistException("The vehicle assigned to this parking receipt " +
+                    "has already been collected!");
+        }
+
+        parking.unregisterLicensePlate(vehicle);
+        parking.unregisterParkingReceipt(vehicle, parkingSpace);
+        parking.getEventBus().publishSpaceFreed(parkingSpace);
+        archiveStay(parkingSpace, vehicle, pricePence);
+
+        // Generate the ExitToken
+        ExitToken exitToken = parking.issueExitToken();
+        parking.getEventBus().publishToken(ParkingEvent.Type.TOKEN_ISSUED, exitToken);
+
+        // Queue the Vehicle for the next free Employee to collect if the Customer asked for one
+        ValetJob valetJob = null;
+        if (req.needsAssistance() && canBeAssisted(vehicle.getVehicleType()) && hasEmployees()) {
+            valetJob = parking.getValetDispatcher().submit(ValetJob.Kind.COLLECT, vehicle, parkingSpace);
+        }
+
+        return new PaymentResult(exitToken.getId(), req.getAmountPaidPence() - pricePence, parkingSpace.getID(),
+                valetJob);
+    }
+
+    /**
+     * Validates an ExitToken and lets the Customer exit the Parking (timed in the ParkingMetrics
+     * and recorded as a ParkingEvents.ExitTokenValidation).
+     *
+     * @param req the ExitRequest
+     * @throws TokenExpiredException thrown if the ExitToken has expired (default 15 mins)
+     * @throws ExitTokenDoesNotExistException thrown if there's no such ExitToken
+     */
+    void exit(ExitRequest req) throws TokenExpiredException, ExitTokenDoesNotExistException {
+        ParkingEvents.ExitTokenValidation event = new ParkingEvents.ExitTokenValidation();
+        event.begin();
+        event.token = req.getToken();
+        event.result = "unknown";
+        long start = System.nanoTime();
+        try {
+            consumeExitToken(req);
+            parking.getMetrics().increment(ParkingMetrics.Counter.EXITS);
+            event.result = "valid";
+        } catch (TokenExpiredException e) {
+            event.result = "expired";
+            throw e;
+        } finally {
+            parking.getMetrics().record(ParkingMetrics.Timer.EXIT, start);
+            if (event.result.equals("valid")) {
+                parking.getLog().publish(ParkingLog.Kind.EXITED, null, null, null, event.token, -1);
+            } else {
+                parking.getLog().publish(ParkingLog.Kind.EXIT_REFUSED, null, null, event.result, event.token, -1);
+            }
+            event.commit();
+        }
+    }
+
+    /**
+     * Validates an ExitToken and lets the Customer exit the Parking.
+     *
+     * @param req the ExitRequest
+     * @throws TokenExpiredException thrown if the ExitToken has expired (default 15 mins)
+     * @throws ExitTokenDoesNotExistException thrown if there's no such ExitToken
+     */
+    private void consumeExitToken(ExitRequest req) throws TokenExpiredException, ExitTokenDoesNotExistException {
+        ExitToken exitToken = parking.getExitToken(req.getToken());
+        if (exitToken == null) {
+            throw new ExitTokenDoesNotExistException();
+        }
+
+        // Check if the token is still valid
+        if (!exitToken.canExit(new Date())) {
+            throw new TokenExpiredException();
+        }
+
+        // The same token can't open the barrier twice, even if it's used at two gates at once
+        if (!parking.removeExitToken(exitToken)) {
+            throw new ExitTokenDoesNotExistException();
+        }
+        parking.getEventBus().publishToken(ParkingEvent.Type.TOKEN_CONSUMED, exitToken);
+    }
+
+    /**
+     * Returns the number of free ParkingSpaces in each ParkingZone (timed in the ParkingMetrics).
+     *
+     * @return map of ParkingZone IDs to the number of free ParkingSpaces (in ParkingZone order)
+     */
+    LinkedHashMap<String, Integer> getNumberOfFreeSpaces() {
+        long start = System.nanoTime();
+        try {
+            LinkedHashMap<String, Integer> freeSpaces = new LinkedHashMap<>();
+            // The zones keep count, so the display boards don't copy or scan any ParkingSpaces
+            for (ParkingZone pz : parking.getParkingZones()) {
+                freeSpaces.put(pz.getId(), pz.getNumberOfFreeSpaces());
+            }
+            return freeSpaces;
+        } finally {
+            parking.getMetrics().record(ParkingMetrics.Timer.FREE_SPACES, start);
+        }
+    }
+
+    /**
+     * Returns a parked Vehicle.
+     *
+     * @param licensePlate Vehicle's license plate
+     * @return the Vehicle
+     * @throws VehicleDoesNotExistException thrown if the Vehicle doesn't exist
+     */
+    Vehicle getVehicle(String licensePlate) throws VehicleDoesNotExistException {
+        ParkingSpace parkingSpace = parking.getParkingSpaceByLicensePlate(licensePlate.toUpperCase());
+        Vehicle vehicle = (parkingSpace == null) ? null : parkingSpace.getVehicle();
+        if (vehicle == null) {
+            throw new VehicleDoesNotExistException("The vehicle does not exist!");
+        }
+        return vehicle;
+    }
+
+    /**
+     * Removes a Vehicle (and the corresponding ParkingReceipt) from the Parking.
+     *
+     * @param licensePlate Vehicle's license plate
+     * @return the removed Vehicle
+     * @throws VehicleDoesNotExistException thrown if the Vehicle doesn't exist
+     */
+    Vehicle removeVehicle(String licensePlate) throws VehicleDoesNotExistException {
+        ParkingSpace parkingSpace = parking.getParkingSpaceByLicensePlate(licensePlate.toUpperCase());
+        Vehicle vehicle = (parkingSpace == null) ? null : parkingSpace.getVehicle();
+
+        // The Vehicle may have been collected in the meantime
+        if (vehicle == null || !parkingSpace.release(vehicle)) {
+            throw new VehicleDoesNotExistException("The vehicle does not exist!");
+        }
+        parking.unregisterLicensePlate(vehicle);
+        parking.unregisterParkingReceipt(vehicle, parkingSpace);
+        parking.getEventBus().publishSpaceFreed(parkingSpace);
+        return vehicle;
+    }
+
+    /**
+     * Checks if there is at least one Employee (free or busy) who can park or collect Vehicles.
+     * If all of them are busy, assisted jobs wait in the ValetDispatcher's queue.
+     *
+     * @return a boolean whether there are any Employees
+     */
+    boolean hasEmployees() {
+        return parking.getNumberOfEmployees() > 0;
+    }
+
+    /**
+     * Adds a new Employee to the Parking.
+     *
+     * @param name new Employee's name
+     * @return new Employee's ID
+     */
+    int addEmployee(String name) {
+        return parking.addEmployee(name).getId();
+    }
+
+    /**
+     * Removes an Employee from the Parking.
+     *
+     * @param id Employee's ID
+     * @return the removed Employee
+     * @throws EmployeeDoesNotExistException thrown if the Employee doesn't exist (or isn't free)
+     */
+    FreeEmployee removeEmployee(int id) throws EmployeeDoesNotExistException {
+        FreeEmployee freeEmployee = parking.removeEmployee(id);
+        if (freeEmployee == null) {
+            throw new EmployeeDoesNotExistException();
+        }
+        return freeEmployee;
+    }
+
+    /**
+     * Sets the ParkingReceipt's endDate to "now" and its pricePerHour to the ParkingZone's price,
+     * then calculates the price to pay.
+     *
+     * @param ps ParkingSpace the Vehicle is parked in
+     * @param v the Vehicle
+     * @return price to pay (in pence)
+     */
+    private long priceStay(ParkingSpace ps, Vehicle v) {
+        ParkingReceipt pr = v.getParkingReceipt();
+        pr.setPricePerHour(ps.getParkingZone().getPrice());
+
+        // The endDate can't be before the startDate, even if the clock has been moved back
+        Date endDate = new Date(Math.max(System.currentTimeMillis(), pr.getStartDate().getTime()));
+        try {
+            pr.setEndDate(endDate);
+        } catch (EndDateBeforeStartDateException e) {
+            throw new IllegalStateException(e);
+        }
+        return calculatePrice(ps, v);
+    }
+
+    /**
+     * Records a paid stay in the Parking's StayArchive, before its ParkingReceipt is gone.
+     * The stay ends now, when the Vehicle leaves its ParkingSpace.
+     *
+     * @param ps ParkingSpace the Vehicle was parked in
+     * @param v the Vehicle
+     * @param pricePence price paid
+     */
+    private void archiveStay(ParkingSpace ps, Vehicle v, long pricePence) {
+        ParkingReceipt pr = v.getParkingReceipt();
+        long start = pr.getStartDate().getTime();
+        long discount = 0;
+        if (pr.isOwnerDisabled()) {
+            // What the stay would have cost without the discount
+            discount = parking.getTariff().pricePence(start, pr.getEndDate().getTime(),
+                    toPence(ps.getParkingZone().getPrice()), v.getVehicleType(), false) - pricePence;
+        }
+        parking.getStayArchive().record(ps.getParkingZone().getId(), v.getVehicleType(), pr.isOwnerDisabled(),
+                start, pricePence, Math.max(0, discount));
+    }
+
+    /**
+     * Calculates the price to pay for a Vehicle whose ParkingReceipt has the endDate set,
+     * using the Parking's Tariff (which applies the discounts for disabled Drivers).
+     *
+     * @param ps ParkingSpace the Vehicle is parked in
+     * @param v the Vehicle
+     * @return price to pay (in pence)
+     */
+    private long calculatePrice(ParkingSpace ps, Vehicle v) {
+        ParkingReceipt pr = v.getParkingReceipt();
+        return parking.getTariff().pricePence(pr.getStartDate().getTime(), pr.getEndDate().getTime(),
+                toPence(ps.getParkingZone().getPrice()), v.getVehicleType(), pr.isOwnerDisabled());
+    }
+
+}
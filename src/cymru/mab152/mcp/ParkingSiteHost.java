@@ -0,0 +1,218 @@
+package cymru.mab152.mcp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hosts many Parkings (sites) in one JVM behind a single HTTP server.
+ * Every JSON database in the sites directory is a site, named after its file
+ * (i.e. "cardiff.json" is the site "cardiff").
+ * <p>
+ * A site is loaded on the first request for it, so sites nobody uses cost no memory.
+ * All sites share the request threads and the background saving thread.
+ * <p>
+ * Endpoints:<br>
+ * <b>GET /sites</b> -- all sites and whether they're loaded<br>
+ * <b>/sites/{site}/...</b> -- the ParkingGateServer endpoints of the site, i.e. POST /sites/cardiff/park
+ */
+public class ParkingSiteHost {
+
+    private static final int BACKLOG = 1024;
+    private static final int SAVE_INTERVAL_SECONDS = 1;
+    private static final String SITES_PATH = "/sites";
+
+    private File directory;
+    private ConcurrentHashMap<String, Site> sites;
+    private HttpServer server;
+    private ExecutorService requestExecutor;
+    private ScheduledExecutorService saveExecutor;
+
+    /**
+     * The constructor for ParkingSiteHost objects.
+     *
+     * @param directory directory with the JSON databases of the sites
+     */
+    ParkingSiteHost(String directory) {
+        this.directory = new File(directory);
+        this.sites = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * A site whose Parking is loaded on first use.
+     */
+    private static class Site {
+        private final String filename;
+        private final ReentrantLock loadLock;
+        private volatile ParkingGateServer gate;
+
+        private Site(String filename) {
+            this.filename = filename;
+            this.loadLock = new ReentrantLock();
+        }
+
+        /**
+         * Returns the site's gate server, loading the Parking first if needed.
+         * Other sites can be loaded at the same time. Loading a big site takes a while, so the requests
+         * waiting for it wait on a ReentrantLock -- unlike a monitor, it unmounts their virtual threads
+         * instead of pinning the carrier threads the other sites need.
+         */
+        private ParkingGateServer get() throws Throwable {
+            ParkingGateServer loaded = gate;
+            if (loaded == null) {
+                loadLock.lock();
+                try {
+                    loaded = gate;
+                    if (loaded == null) {
+                        Parking parking = new Parking();
+                        parking.load(filename);
+                        parking.getMetrics().registerMBean(filename);
+                        parking.getLog().open(ParkingLog.filenameFor(filename));
+                        loaded = new ParkingGateServer(parking, filename);
+                        gate = loaded;
+                    }
+                } finally {
+                    loadLock.unlock();
+                }
+            }
+            return loaded;
+        }
+
+        private boolean isLoaded() {
+            return gate != null;
+        }
+    }
+
+    /**
+     * Finds the sites and starts listening on the port given. No site is loaded yet.
+     *
+     * @param port TCP port to listen on
+     * @throws IOException thrown if the sites directory cannot be read or the server cannot be started
+     */
+    void start(int port) throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".json"));
+        if (files == null) {
+            throw new IOException("The sites directory cannot be read: " + directory.getAbsolutePath());
+        }
+        for (File file : files) {
+            String siteId = file.getName().substring(0, file.getName().length() - ".json".length());
+            sites.put(siteId, new Site(file.getPath()));
+        }
+
+        server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        server.createContext(SITES_PATH, this::route);
+
+        // All sites share one virtual thread per request executor and one saving thread
+        requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(requestExecutor);
+        saveExecutor = Executors.newSingleThreadScheduledExecutor();
+        saveExecutor.scheduleWithFixedDelay(this::saveAll, SAVE_INTERVAL_SECONDS, SAVE_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+
+        server.start();
+    }
+
+    /**
+     * Stops the server, waits for the requests in progress and the valet jobs of every loaded site,
+     * saves the changes of all loaded sites and closes their event logs.
+     *
+     * @param delaySeconds how long to wait for the requests (and then the valet jobs of a site) in progress
+     */
+    void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        requestExecutor.shutdown();
+        saveExecutor.shutdown();
+        try {
+            saveExecutor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Site site : sites.values()) {
+            ParkingGateServer gate = site.gate;
+            if (gate != null) {
+                gate.getParking().getValetDispatcher().shutdown(delaySeconds);
+            }
+        }
+        saveAll();
+        for (Site site : sites.values()) {
+            ParkingGateServer gate = site.gate;
+            if (gate != null) {
+                gate.getParking().getLog().close();
+            }
+        }
+    }
+
+    /**
+     * Saves every loaded site that has changed since its last save.
+     */
+    private void saveAll() {
+        for (Site site : sites.values()) {
+            ParkingGateServer gate = site.gate;
+            if (gate != null) {
+                gate.saveIfDirty();
+            }
+        }
+    }
+
+    /**
+     * Passes the request to the site named in the path.
+     *
+     * @param exchange the HTTP exchange
+     * @throws IOException thrown if the response cannot be sent
+     */
+    private void route(HttpExchange exchange) throws IOException {
+        // "/sites/{site}/{endpoint}"
+        String path = exchange.getRequestURI().getPath().substring(SITES_PATH.length());
+        if (path.isEmpty() || path.equals("/")) {
+            ParkingGateServer.send(exchange, 200, listSites());
+            return;
+        }
+
+        int slash = path.indexOf('/', 1);
+        String siteId = (slash < 0) ? path.substring(1) : path.substring(1, slash);
+        Site site = sites.get(siteId);
+        if (site == null) {
+            ParkingGateServer.send(exchange, 404, ParkingGateServer.error("Unknown site: " + siteId));
+            return;
+        }
+
+        ParkingGateServer gate;
+        try {
+            gate = site.get();
+        } catch (Throwable t) {
+            ParkingGateServer.send(exchange, 500,
+                    ParkingGateServer.error("The site " + siteId + " cannot be loaded: " + t.getMessage()));
+            return;
+        }
+        gate.route(exchange, (slash < 0) ? "/" : path.substring(slash));
+    }
+
+    /**
+     * GET /sites
+     */
+    private JSONObject listSites() {
+        JSONArray jsonSites = new JSONArray();
+        for (String siteId : new TreeSet<>(sites.keySet())) {
+            JSONObject jsonSite = new JSONObject();
+            jsonSite.put("id", siteId);
+            jsonSite.put("loaded", sites.get(siteId).isLoaded());
+            jsonSites.add(jsonSite);
+        }
+        JSONObject response = new JSONObject();
+        response.put("sites", jsonSites);
+        return response;
+    }
+
+}
@@ -0,0 +1,315 @@
+package cymru.mab152.mcp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An immutable, versioned picture of the ParkingZones, their ParkingSpaces and the Vehicles in them.
+ * <p>
+ * Reports and dashboards read a snapshot instead of the live Parking, so they always see a consistent
+ * state (the free count of a zone matches its spaces) and never hold up the gates.
+ * A new snapshot reuses the zones of the previous one that haven't changed since,
+ * so only the zones with arrivals or departures are copied again.
+ */
+public final class ParkingSnapshot {
+
+    private final long version;
+    private final String parkingName;
+    private final List<Zone> zones;
+
+    private ParkingSnapshot(long version, String parkingName, List<Zone> zones) {
+        this.version = version;
+        this.parkingName = parkingName;
+        this.zones = zones;
+    }
+
+    /**
+     * Takes a snapshot of the ParkingZones given, reusing the unchanged zones of the previous snapshot.
+     *
+     * @param parkingName name of the Parking
+     * @param parkingZones the live ParkingZones
+     * @param previous the previous snapshot or null if there's none
+     * @return the new snapshot
+     */
+    static ParkingSnapshot of(String parkingName, List<ParkingZone> parkingZones, ParkingSnapshot previous) {
+        IdentityHashMap<ParkingZone, Zone> previousZones = new IdentityHashMap<>();
+        if (previous != null) {
+            for (Zone zone : previous.zones) {
+                previousZones.put(zone.source, zone);
+            }
+        }
+
+        ArrayList<Zone> zones = new ArrayList<>(parkingZones.size());
+        for (ParkingZone pz : parkingZones) {
+            Zone zone = previousZones.get(pz);
+            zones.add((zone != null && zone.version == pz.getVersion()) ? zone : new Zone(pz));
+        }
+        return new ParkingSnapshot((previous == null) ? 0 : previous.version + 1, parkingName,
+                Collections.unmodifiableList(zones));
+    }
+
+    /**
+     * Checks if nothing has changed since the snapshot was taken.
+     *
+     * @param parkingName current name of the Parking
+     * @param parkingZones the live ParkingZones
+     * @return TRUE if the snapshot is still up to date
+     */
+    boolean isUpToDate(String parkingName, List<ParkingZone> parkingZones) {
+        if (!Objects.equals(this.parkingName, parkingName) || zones.size() != parkingZones.size()) {
+            return false;
+        }
+        for (int i = 0; i < zones.size(); i++) {
+            Zone zone = zones.get(i);
+            ParkingZone pz = parkingZones.get(i);
+            if (zone.source != pz || zone.version != pz.getVersion()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the snapshot's version. Every new snapshot of the same Parking has a higher one.
+     *
+     * @return version
+     */
+    long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Returns the name of the Parking.
+     *
+     * @return Parking's name
+     */
+    String getParkingName() {
+        return this.parkingName;
+    }
+
+    /**
+     * Returns the ParkingZones.
+     *
+     * @return unmodifiable list of zones
+     */
+    List<Zone> getZones() {
+        return this.zones;
+    }
+
+    /**
+     * Returns all parked Vehicles.
+     *
+     * @return list of Vehicles
+     */
+    List<Vehicle> getVehicles() {
+        ArrayList<Vehicle> vehicles = new ArrayList<>();
+        for (Zone zone : zones) {
+            for (Space space : zone.spaces) {
+                if (space.vehicle != null) {
+                    vehicles.add(space.vehicle);
+                }
+            }
+        }
+        return vehicles;
+    }
+
+    /**
+     * An immutable copy of a ParkingZone.
+     */
+    static final class Zone {
+        private final ParkingZone source; // only used to find out if the zone can be reused
+        private final long version;
+        private final String id;
+        private final float price;
+        private final List<VehicleType> acceptedVehicles;
+        private final List<Space> spaces;
+        private final int freeSpaces;
+        private final int vehicles;
+
+        /**
+         * Copies the ParkingZone given.
+         *
+         * @param pz the live ParkingZone
+         */
+        Zone(ParkingZone pz) {
+            // The version is read first, so a change made while copying makes the next snapshot copy the zone again
+            this.version = pz.getVersion();
+            this.source = pz;
+            this.id = pz.getId();
+            this.price = pz.getPrice();
+            this.acceptedVehicles = List.copyOf(pz.getListOfAcceptedVehicles());
+
+            ArrayList<ParkingSpace> parkingSpaces = pz.getListOfParkingSpaces();
+            Space[] copied = new Space[parkingSpaces.size()];
+            int free = 0;
+            int parked = 0;
+            for (int i = 0; i < copied.length; i++) {
+                ParkingSpace ps = parkingSpaces.get(i);
+                copied[i] = new Space(ps.getID(), ps.getVehicle(), ps.getReservation() != null);
+                if (copied[i].isFree()) {
+                    free++;
+                }
+                if (copied[i].vehicle != null) {
+                    parked++;
+                }
+            }
+            this.spaces = List.of(copied);
+            this.freeSpaces = free;
+            this.vehicles = parked;
+        }
+
+        /**
+         * Returns the ParkingZone's ID.
+         *
+         * @return ParkingZone's ID
+         */
+        String getId() {
+            return this.id;
+        }
+
+        /**
+         * Returns the price per one hour of parking in the Zone.
+         *
+         * @return price per hour
+         */
+        float getPrice() {
+            return this.price;
+        }
+
+        /**
+         * Returns the accepted VehicleTypes.
+         *
+         * @return unmodifiable list of accepted VehicleTypes
+         */
+        List<VehicleType> getAcceptedVehicles() {
+            return this.acceptedVehicles;
+        }
+
+        /**
+         * Returns the ParkingSpaces.
+         *
+         * @return unmodifiable list of spaces
+         */
+        List<Space> getSpaces() {
+            return this.spaces;
+        }
+
+        /**
+         * Returns the number of free ParkingSpaces, counted from the copied spaces.
+         *
+         * @return number of free ParkingSpaces
+         */
+        int getNumberOfFreeSpaces() {
+            return this.freeSpaces;
+        }
+
+        /**
+         * Returns the number of Vehicles parked in the zone, counted from the copied spaces.
+         *
+         * @return number of Vehicles
+         */
+        int getNumberOfVehicles() {
+            return this.vehicles;
+        }
+
+        /**
+         * Returns all info about the parking zone as a String.
+         *
+         * @return all info about the parking zone
+         */
+        public String toString() {
+            StringBuilder parking_zone_sb = new StringBuilder();
+            // Basic info
+            parking_zone_sb.append("Parking zone ");
+            parking_zone_sb.append(id);
+            parking_zone_sb.append(", the pricePerHour for 1 hour is ");
+            parking_zone_sb.append(price);
+            parking_zone_sb.append(" units.");
+            // Accepted vehicles
+            if (acceptedVehicles.isEmpty()) {
+                parking_zone_sb.append("\nIt doesn't currently accept any types of vehicles.");
+            } else {
+                parking_zone_sb.append("\nIt accepts following types of vehicles:\n");
+                for (VehicleType vt : acceptedVehicles) {
+                    parking_zone_sb.append(vt.toString());
+                    parking_zone_sb.append('\n');
+                }
+            }
+            // Parking spaces
+            if (spaces.isEmpty()) {
+                parking_zone_sb.append("\nIt doesn't currently contain any parking spaces.");
+            } else {
+                parking_zone_sb.append(".\nContains parking spaces:\n");
+                for (Space space : spaces) {
+                    parking_zone_sb.append(space.toString());
+                    parking_zone_sb.append('\n');
+                }
+            }
+            return parking_zone_sb.toString();
+        }
+    }
+
+    /**
+     * An immutable copy of a ParkingSpace.
+     */
+    static final class Space {
+        private final String id;
+        private final Vehicle vehicle; // null if the space was free
+        private final boolean isHeld;
+
+        private Space(String id, Vehicle vehicle, boolean isHeld) {
+            this.id = id;
+            this.vehicle = vehicle;
+            this.isHeld = isHeld;
+        }
+
+        /**
+         * Returns the ParkingSpace's ID.
+         *
+         * @return ParkingSpace's ID
+         */
+        String getID() {
+            return this.id;
+        }
+
+        /**
+         * Returns the Vehicle parked in the space.
+         *
+         * @return the Vehicle or null if the space was free
+         */
+        Vehicle getVehicle() {
+            return this.vehicle;
+        }
+
+        /**
+         * Returns a boolean whether the parking space was free (and not held by a Reservation).
+         *
+         * @return was the parking space free
+         */
+        boolean isFree() {
+            return this.vehicle == null && !this.isHeld;
+        }
+
+        /**
+         * Returns a boolean whether the parking space was held by a Reservation.
+         *
+         * @return was the parking space held
+         */
+        boolean isHeld() {
+            return this.isHeld;
+        }
+
+        /**
+         * Returns info about the parking space as a String.
+         *
+         * @return all info about the parking space
+         */
+        public String toString() {
+            return ParkingSpace.describe(id, vehicle);
+        }
+    }
+
+}
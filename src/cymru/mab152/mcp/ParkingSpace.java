@@ -1,10 +1,39 @@
 package cymru.mab152.mcp;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
+/**
+ * A ParkingSpace holds at most one Vehicle.
+ * The Vehicle slot is claimed and released with an atomic compare-and-set,
+ * so several gates can park at the same time without double-booking a space.
+ * <p>
+ * A space can also be held by a Reservation, in the same way. Claiming and holding each set their own slot
+ * first and then check the other one, backing off if it's taken -- so a space is never both held for one
+ * Vehicle and taken by another.
+ */
 public class ParkingSpace {
 
+    private static final VarHandle VEHICLE;
+    private static final VarHandle RESERVATION;
+
+    static {
+        try {
+            VEHICLE = MethodHandles.lookup().findVarHandle(ParkingSpace.class, "vehicle", Vehicle.class);
+            RESERVATION = MethodHandles.lookup().findVarHandle(ParkingSpace.class, "reservation", Reservation.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private String id;
-    private Vehicle vehicle;
+    private volatile Vehicle vehicle;
+    private volatile Reservation reservation; // null if the space isn't held
+    private ParkingZone parkingZone; // null until the space is added to a ParkingZone
+    private int position; // index within the ParkingZone
+    private int distance; // metres to the exit, -1 if not configured
+    private float maxHeight; // metres, 0 if not configured
+    private float maxLength; // metres, 0 if not configured
 
     /**
      * Constructor for parking spaces.
@@ -14,6 +43,18 @@ public class ParkingSpace {
     ParkingSpace(String id) {
         this.id = id;
         this.vehicle = null;
+        this.distance = -1;
+    }
+
+    /**
+     * Constructor for parking spaces with a known distance to the exit.
+     *
+     * @param id stands for  ParkingSpace's ID
+     * @param distance metres to the exit
+     */
+    ParkingSpace(String id, int distance) {
+        this(id);
+        this.distance = distance;
     }
 
     /**
@@ -22,16 +63,28 @@ public class ParkingSpace {
      * @return all info about the parking space
      */
     public String toString() {
+        return describe(id, this.vehicle);
+    }
+
+    /**
+     * Returns info about a parking space as a String
+     * (shared with the ParkingSpaces of ParkingSnapshots).
+     *
+     * @param id ParkingSpace's ID
+     * @param v the Vehicle parked in it or null if it's free
+     * @return all info about the parking space
+     */
+    static String describe(String id, Vehicle v) {
         StringBuilder parking_space_sb = new StringBuilder();
         parking_space_sb.append("Parking space ");
         parking_space_sb.append(id);
 
         // Is free?
-        if (this.vehicle == null) {
+        if (v == null) {
             parking_space_sb.append("\n - empty.");
         } else {
             parking_space_sb.append("\n with a vehicle parked in it:\n");
-            parking_space_sb.append(this.vehicle.toString());
+            parking_space_sb.append(v.toString());
         }
 
         return parking_space_sb.toString();
@@ -47,14 +100,99 @@ public class ParkingSpace {
     }
 
     /**
-     * Assigns a Vehicle to the ParkingSpace.
-     * It's also used to remove the Vehicle from the ParkingSpace
-     * (by using setVehicle(null))
+     * Checks if the parking space can be given to an arriving Vehicle: it's free and not held by a Reservation.
+     *
+     * @return is the parking space available
+     */
+    boolean isAvailable() {
+        return this.vehicle == null && this.reservation == null;
+    }
+
+    /**
+     * Atomically assigns a Vehicle to the ParkingSpace, but only if the space is free
+     * and not held for another Vehicle.
      *
      * @param v vehicle to be "parked" in the parking space
+     * @return TRUE if the space was claimed, FALSE if another Vehicle got there first or it's held
+     */
+    boolean claim(Vehicle v) {
+        if (!VEHICLE.compareAndSet(this, null, v)) {
+            return false;
+        }
+        Reservation r = this.reservation;
+        if (r != null && !r.isFor(v)) {
+            // Held for someone else -- back off before anyone is told
+            VEHICLE.compareAndSet(this, v, null);
+            return false;
+        }
+        v.setParkingSpace(this);
+        if (parkingZone != null) {
+            parkingZone.onSpaceClaimed(this, v);
+        }
+        return true;
+    }
+
+    /**
+     * Atomically removes the Vehicle from the ParkingSpace,
+     * but only if it's still the Vehicle provided.
+     *
+     * @param v vehicle currently parked in the parking space
+     * @return TRUE if the space was freed, FALSE if the Vehicle wasn't parked here
+     */
+    boolean release(Vehicle v) {
+        if (!VEHICLE.compareAndSet(this, v, null)) {
+            return false;
+        }
+        if (parkingZone != null) {
+            parkingZone.onSpaceReleased(this, v);
+        }
+        return true;
+    }
+
+    /**
+     * Atomically holds the ParkingSpace for a Reservation, but only if the space is available.
+     *
+     * @param r the Reservation
+     * @return TRUE if the space is now held, FALSE if it's taken or already held
+     */
+    boolean hold(Reservation r) {
+        if (!RESERVATION.compareAndSet(this, null, r)) {
+            return false;
+        }
+        if (this.vehicle != null) {
+            // A Vehicle got here first
+            RESERVATION.compareAndSet(this, r, null);
+            return false;
+        }
+        if (parkingZone != null) {
+            parkingZone.onSpaceHoldChanged(this);
+        }
+        return true;
+    }
+
+    /**
+     * Atomically removes the hold, but only if it's still the Reservation provided.
+     *
+     * @param r the Reservation holding the space
+     * @return TRUE if the hold was removed, FALSE if the space wasn't held by it
+     */
+    boolean unhold(Reservation r) {
+        if (!RESERVATION.compareAndSet(this, r, null)) {
+            return false;
+        }
+        if (parkingZone != null) {
+            parkingZone.onSpaceHoldChanged(this);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the Reservation holding the space.
+     *
+     * @return the Reservation or null if the space isn't held
      */
-    void setVehicle(Vehicle v) {
-        this.vehicle = v;
+    Reservation getReservation() {
+        return this.reservation;
     }
 
     /**
@@ -66,6 +204,109 @@ public class ParkingSpace {
         return this.vehicle;
     }
 
+    /**
+     * Returns the ParkingZone the parking space belongs to.
+     *
+     * @return ParkingZone containing the space (null if it hasn't been added to any)
+     */
+    ParkingZone getParkingZone() {
+        return this.parkingZone;
+    }
+
+    /**
+     * Sets the ParkingZone the parking space belongs to.
+     * Called by ParkingZone when the space is added to it.
+     *
+     * @param pz ParkingZone containing the space
+     * @param position index of the space within the ParkingZone
+     */
+    void setParkingZone(ParkingZone pz, int position) {
+        this.parkingZone = pz;
+        this.position = position;
+    }
+
+    /**
+     * Returns the configured distance to the exit.
+     *
+     * @return metres to the exit or -1 if it hasn't been configured
+     */
+    int getConfiguredDistance() {
+        return this.distance;
+    }
+
+    /**
+     * Returns the distance to the exit. Without a configured one,
+     * the spaces of a ParkingZone are assumed to be in order, one metre apart.
+     *
+     * @return metres to the exit
+     */
+    int getDistance() {
+        return (distance >= 0) ? distance : position;
+    }
+
+    /**
+     * Sets the largest Vehicle that fits into the ParkingSpace. A space with dimensions
+     * accepts any Vehicle that fits, whatever the VehicleTypes of its ParkingZone.
+     *
+     * @param maxHeight maximum height in metres
+     * @param maxLength maximum length in metres
+     */
+    void setMaxDimensions(float maxHeight, float maxLength) {
+        this.maxHeight = maxHeight;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Checks if the dimensions of the ParkingSpace have been configured.
+     *
+     * @return TRUE if the space has a maximum height and length
+     */
+    boolean hasDimensions() {
+        return maxHeight > 0 && maxLength > 0;
+    }
+
+    /**
+     * Returns the maximum height of a Vehicle parked in the space.
+     *
+     * @return maximum height in metres (0 if not configured)
+     */
+    float getMaxHeight() {
+        return this.maxHeight;
+    }
+
+    /**
+     * Returns the maximum length of a Vehicle parked in the space.
+     *
+     * @return maximum length in metres (0 if not configured)
+     */
+    float getMaxLength() {
+        return this.maxLength;
+    }
+
+    /**
+     * Checks if a Vehicle can be parked in the space: by its dimensions if the space has them
+     * (a Vehicle without dimensions doesn't fit), otherwise by the VehicleTypes accepted in the ParkingZone.
+     *
+     * @param v the Vehicle
+     * @return TRUE if the Vehicle can be parked here
+     */
+    boolean accepts(Vehicle v) {
+        if (hasDimensions()) {
+            return v.getHeight() > 0 && v.getLength() > 0 && v.getHeight() <= maxHeight && v.getLength() <= maxLength;
+        }
+        return parkingZone != null && parkingZone.isVehicleAccepted(v.getVehicleType());
+    }
+
+    /**
+     * Returns the key the free ParkingSpaces of a ParkingZone are ordered by:
+     * nearest to the exit first, then in the order they were added.
+     *
+     * @return ordering key
+     */
+    long getRank() {
+        return ((long) getDistance() << 32) | position;
+    }
+
     /**
      * Returns parking space's ID.
      *
@@ -3,6 +3,10 @@ package cymru.mab152.mcp;
 import cymru.mab152.mcp.exception.ParkingZoneMismatchException;
 
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A ParkingZone contains a list of ParkingSpaces, a list of accepted Vehicles
@@ -14,6 +18,12 @@ public class ParkingZone {
     private ArrayList<ParkingSpace> parkingSpaces;
     private float price;
     private ArrayList<VehicleType> acceptedVehicles;
+    private AtomicInteger freeSpaces; // kept up to date by the ParkingSpaces when they are claimed or released
+    private AtomicLong version; // changes whenever any of the ParkingSpaces does
+    private ConcurrentSkipListMap<Long, ParkingSpace> freeParkingSpaces; // by ParkingSpace.getRank()
+    private volatile AllocationStrategy allocationStrategy; // told whenever the number of free spaces changes
+    private volatile ParkingEventBus eventBus; // told when a hold changes the number of free spaces, null if none
+    private ZoneOccupancy occupancy;
 
     /**
      * Constructor for parking zone.
@@ -29,6 +39,10 @@ public class ParkingZone {
         this.price = price;
         this.acceptedVehicles = av;
         parkingSpaces = new ArrayList<>();
+        freeSpaces = new AtomicInteger(0);
+        version = new AtomicLong(0);
+        freeParkingSpaces = new ConcurrentSkipListMap<>();
+        occupancy = new ZoneOccupancy(this);
     }
 
     /**
@@ -58,7 +72,13 @@ public class ParkingZone {
         if (!ps.getID().toUpperCase().startsWith(this.id.toUpperCase())) {
             throw new ParkingZoneMismatchException();
         } else {
+            ps.setParkingZone(this, parkingSpaces.size());
             parkingSpaces.add(ps);
+            if (ps.isAvailable()) {
+                freeSpaces.incrementAndGet();
+                freeParkingSpaces.put(ps.getRank(), ps);
+            }
+            version.incrementAndGet();
         }
     }
 
@@ -80,34 +100,7 @@ public class ParkingZone {
      * @return all info about the parking zone
      */
     public String toString() {
-        StringBuilder parking_zone_sb = new StringBuilder();
-        // Basic info
-        parking_zone_sb.append("Parking zone ");
-        parking_zone_sb.append(id);
-        parking_zone_sb.append(", the pricePerHour for 1 hour is ");
-        parking_zone_sb.append(price);
-        parking_zone_sb.append(" units.");
-        // Accepted vehicles
-        if (acceptedVehicles.isEmpty()) {
-            parking_zone_sb.append("\nIt doesn't currently accept any types of vehicles.");
-        } else {
-            parking_zone_sb.append("\nIt accepts following types of vehicles:\n");
-            for (VehicleType vt : acceptedVehicles) {
-                parking_zone_sb.append(vt.toString());
-                parking_zone_sb.append('\n');
-            }
-        }
-        // Parking spaces
-        if (parkingSpaces.isEmpty()) {
-            parking_zone_sb.append("\nIt doesn't currently contain any parking spaces.");
-        } else {
-            parking_zone_sb.append(".\nContains parking spaces:\n");
-            for (ParkingSpace ps : parkingSpaces) {
-                parking_zone_sb.append(ps.toString());
-                parking_zone_sb.append('\n');
-            }
-        }
-        return parking_zone_sb.toString();
+        return new ParkingSnapshot.Zone(this).toString();
     }
 
     /**
@@ -126,13 +119,166 @@ public class ParkingZone {
      * @return list of free parking spaces in the parking zone
      */
     ArrayList<ParkingSpace> getListOfFreeParkingSpaces() {
-        ArrayList<ParkingSpace> freeParkingSpaces = new ArrayList<>();
-        for (ParkingSpace ps : parkingSpaces) {
-            if (ps.isFree()) {
-                freeParkingSpaces.add(ps);
+        return new ArrayList<>(freeParkingSpaces.values());
+    }
+
+    /**
+     * Returns the free ParkingSpace nearest to the exit.
+     *
+     * @return the nearest free ParkingSpace or null if there are none
+     */
+    ParkingSpace getNearestFreeParkingSpace() {
+        Map.Entry<Long, ParkingSpace> entry = freeParkingSpaces.firstEntry();
+        return (entry != null) ? entry.getValue() : null;
+    }
+
+    /**
+     * Returns the free ParkingSpace nearest to the exit that accepts the Vehicle given.
+     * The free spaces with dimensions the Vehicle doesn't fit into are skipped.
+     *
+     * @param v the Vehicle
+     * @return the nearest free ParkingSpace for the Vehicle or null if there are none
+     */
+    ParkingSpace getNearestFreeParkingSpaceFor(Vehicle v) {
+        for (ParkingSpace ps : freeParkingSpaces.values()) {
+            if (ps.accepts(v)) {
+                return ps;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the first free ParkingSpace that accepts the Vehicle given, at or after the ParkingSpace given
+     * (in the order of the free spaces), wrapping around to the nearest one.
+     *
+     * @param from where to start looking
+     * @param v the Vehicle
+     * @return a free ParkingSpace for the Vehicle or null if there are none
+     */
+    ParkingSpace getFreeParkingSpaceFrom(ParkingSpace from, Vehicle v) {
+        for (ParkingSpace ps : freeParkingSpaces.tailMap(from.getRank(), true).values()) {
+            if (ps.accepts(v)) {
+                return ps;
             }
         }
-        return freeParkingSpaces;
+        for (ParkingSpace ps : freeParkingSpaces.headMap(from.getRank(), false).values()) {
+            if (ps.accepts(v)) {
+                return ps;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of free ParkingSpaces in the ParkingZone (not counting the held ones)
+     * without scanning them.
+     *
+     * @return number of free ParkingSpaces
+     */
+    int getNumberOfFreeSpaces() {
+        return freeSpaces.get();
+    }
+
+    /**
+     * Called by a ParkingSpace of the zone once a Vehicle has claimed it.
+     *
+     * @param ps the ParkingSpace
+     * @param v the Vehicle
+     */
+    void onSpaceClaimed(ParkingSpace ps, Vehicle v) {
+        occupancy.onArrival(v.getVehicleType());
+        version.incrementAndGet();
+        updateFreeParkingSpaces(ps);
+    }
+
+    /**
+     * Called by a ParkingSpace of the zone once its Vehicle has been released.
+     *
+     * @param ps the ParkingSpace
+     * @param v the Vehicle
+     */
+    void onSpaceReleased(ParkingSpace ps, Vehicle v) {
+        occupancy.onDeparture(v.getVehicleType());
+        version.incrementAndGet();
+        updateFreeParkingSpaces(ps);
+    }
+
+    /**
+     * Called by a ParkingSpace of the zone once a Reservation has started or stopped holding it.
+     *
+     * @param ps the ParkingSpace
+     */
+    void onSpaceHoldChanged(ParkingSpace ps) {
+        version.incrementAndGet();
+        updateFreeParkingSpaces(ps);
+        // Arrivals and departures are published by the ParkingService, holds only here
+        ParkingEventBus bus = eventBus;
+        if (bus != null) {
+            bus.publishZoneCount(this);
+        }
+    }
+
+    /**
+     * Brings the ParkingSpace's entry in the free spaces and the free count up to date,
+     * and tells the AllocationStrategy. The space may have been claimed, released or held again meanwhile,
+     * so its current state is used, under the space's lock -- whichever update runs last sees the final state.
+     * The AllocationStrategy is told after the lock is released, so the space isn't held while it updates.
+     *
+     * @param ps the ParkingSpace
+     */
+    private void updateFreeParkingSpaces(ParkingSpace ps) {
+        AllocationStrategy strategy = allocationStrategy;
+        synchronized (ps) {
+            if (ps.isAvailable()) {
+                if (freeParkingSpaces.put(ps.getRank(), ps) == null) {
+                    freeSpaces.incrementAndGet();
+                }
+            } else if (freeParkingSpaces.remove(ps.getRank(), ps)) {
+                freeSpaces.decrementAndGet();
+            }
+        }
+        if (strategy != null) {
+            strategy.onSpaceChanged(ps);
+            strategy.onFreeSpacesChanged(this);
+        }
+    }
+
+    /**
+     * Sets the AllocationStrategy to tell whenever the number of free ParkingSpaces changes.
+     *
+     * @param strategy the AllocationStrategy (null for none)
+     */
+    void setAllocationStrategy(AllocationStrategy strategy) {
+        this.allocationStrategy = strategy;
+    }
+
+    /**
+     * Sets the ParkingEventBus to publish the free count on when a Reservation holds or releases a ParkingSpace.
+     *
+     * @param eventBus the ParkingEventBus (null for none)
+     */
+    void setEventBus(ParkingEventBus eventBus) {
+        this.eventBus = eventBus;
+    }
+
+    /**
+     * Returns the occupancy of the ParkingZone, now and over time.
+     *
+     * @return the ZoneOccupancy
+     */
+    ZoneOccupancy getOccupancy() {
+        return this.occupancy;
+    }
+
+    /**
+     * Returns the version of the ParkingZone. It changes whenever a ParkingSpace is added, claimed or released,
+     * so ParkingSnapshots can tell if the zone has to be copied again.
+     *
+     * @return version
+     */
+    long getVersion() {
+        return version.get();
     }
 
     /**
@@ -0,0 +1,72 @@
+package cymru.mab152.mcp;
+
+/**
+ * A request to pay for a collected Vehicle and release it from its ParkingSpace.
+ */
+public class PaymentRequest {
+
+    private final int receiptId;
+    private final long amountPaidPence;
+    private final boolean needsAssistance;
+
+    /**
+     * The constructor for PaymentRequest objects.
+     *
+     * @param receiptId ID of the Vehicle's ParkingReceipt
+     * @param amountPaid total amount inserted by the Customer (in units)
+     * @param needsAssistance should the Vehicle be collected by an Employee
+     */
+    PaymentRequest(int receiptId, float amountPaid, boolean needsAssistance) {
+        this(receiptId, ParkingService.toPence(amountPaid), needsAssistance);
+    }
+
+    /**
+     * The constructor for PaymentRequest objects with the amount in pence.
+     *
+     * @param receiptId ID of the Vehicle's ParkingReceipt
+     * @param amountPaidPence total amount inserted by the Customer (in pence)
+     * @param needsAssistance should the Vehicle be collected by an Employee
+     */
+    PaymentRequest(int receiptId, long amountPaidPence, boolean needsAssistance) {
+        this.receiptId = receiptId;
+        this.amountPaidPence = amountPaidPence;
+        this.needsAssistance = needsAssistance;
+    }
+
+    /**
+     * Returns the ParkingReceipt's ID.
+     *
+     * @return ParkingReceipt id
+     */
+    int getReceiptId() {
+        return this.receiptId;
+    }
+
+    /**
+     * Returns the total amount inserted by the Customer (in units).
+     *
+     * @return amount paid
+     */
+    float getAmountPaid() {
+        return this.amountPaidPence / 100.0f;
+    }
+
+    /**
+     * Returns the total amount inserted by the Customer (in pence).
+     *
+     * @return amount paid
+     */
+    long getAmountPaidPence() {
+        return this.amountPaidPence;
+    }
+
+    /**
+     * Returns a boolean whether the Customer asked for an Employee's assistance.
+     *
+     * @return does the Customer need assistance
+     */
+    boolean needsAssistance() {
+        return this.needsAssistance;
+    }
+
+}
@@ -0,0 +1,73 @@
+package cymru.mab152.mcp;
+
+/**
+ * The result of an accepted PaymentRequest.
+ */
+public class PaymentResult {
+
+    private final int exitToken;
+    private final long changePence;
+    private final String parkingSpaceId;
+    private final ValetJob valetJob; // null if the Customer collects the Vehicle by themselves
+
+    /**
+     * The constructor for PaymentResult objects.
+     *
+     * @param exitToken ID of the ExitToken issued to the Customer
+     * @param changePence change to be given back (in pence)
+     * @param psId ID of the ParkingSpace the Vehicle was parked in
+     * @param valetJob the job queued for an Employee to collect the Vehicle or null if none
+     */
+    PaymentResult(int exitToken, long changePence, String psId, ValetJob valetJob) {
+        this.exitToken = exitToken;
+        this.changePence = changePence;
+        this.parkingSpaceId = psId;
+        this.valetJob = valetJob;
+    }
+
+    /**
+     * Returns the ID of the issued ExitToken.
+     *
+     * @return exit token
+     */
+    int getExitToken() {
+        return this.exitToken;
+    }
+
+    /**
+     * Returns the change to be given back (in units).
+     *
+     * @return change
+     */
+    float getChange() {
+        return this.changePence / 100.0f;
+    }
+
+    /**
+     * Returns the change to be given back (in pence).
+     *
+     * @return change
+     */
+    long getChangePence() {
+        return this.changePence;
+    }
+
+    /**
+     * Returns the ID of the ParkingSpace the Vehicle was parked in.
+     *
+     * @return ParkingSpace id
+     */
+    String getParkingSpaceId() {
+        return this.parkingSpaceId;
+    }
+
+    /**
+     * Returns the job queued for an Employee to collect the Vehicle.
+     *
+     * @return the ValetJob or null if the Customer didn't ask for assistance
+     */
+    ValetJob getValetJob() {
+        return this.valetJob;
+    }
+
+}
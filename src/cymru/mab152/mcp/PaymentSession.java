@@ -0,0 +1,285 @@
+package cymru.mab152.mcp;
+
+import cymru.mab152.mcp.exception.InsufficientPaymentException;
+import cymru.mab152.mcp.exception.InvalidCoinException;
+import cymru.mab152.mcp.exception.PaymentSessionClosedException;
+import cymru.mab152.mcp.exception.VehicleDoesNotExistException;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A payment at a pay station, driven by events (coin inserted, cancel, timeout) instead of a blocking loop.
+ * <p>
+ * A session doesn't hold a thread while the Customer looks for coins -- each event is handled
+ * straight away by whichever thread delivers it, so any number of pay stations can be open at once.
+ * All amounts are whole pence, so there are no rounding errors.
+ * <p>
+ * AWAITING_COINS goes to COMPLETED once enough has been inserted (and the payment has been accepted),
+ * to CANCELLED or TIMED_OUT with everything refunded, or to FAILED (refunded) if the payment is rejected.
+ */
+public class PaymentSession {
+
+    /**
+     * Coins (and notes) accepted by the pay stations, in pence.
+     */
+    static final int[] COINS = {2000, 1000, 500, 200, 100, 50, 20, 10};
+
+    /**
+     * The states of a payment.
+     */
+    enum State {
+        AWAITING_COINS, COMPLETED, CANCELLED, TIMED_OUT, FAILED
+    }
+
+    private final int id;
+    private final CollectResult collectResult;
+    private final long pricePence;
+    private boolean needsAssistance;
+    private State state;
+    private long insertedPence;
+    private long refundPence;
+    private PaymentResult paymentResult; // set once COMPLETED
+    private String failure; // set once FAILED
+    private ScheduledFuture<?> timeout;
+
+    /**
+     * The constructor for PaymentSession objects.
+     *
+     * @param id session's ID
+     * @param collectResult the price and info about the stay
+     * @param needsAssistance should the Vehicle be collected by an Employee
+     */
+    PaymentSession(int id, CollectResult collectResult, boolean needsAssistance) {
+        this.id = id;
+        this.collectResult = collectResult;
+        this.pricePence = collectResult.getPricePence();
+        this.needsAssistance = needsAssistance;
+        this.state = State.AWAITING_COINS;
+    }
+
+    /**
+     * Checks if the amount is one of the accepted coins.
+     *
+     * @param pence amount in pence
+     * @return TRUE if it's a valid coin
+     */
+    static boolean isValidCoin(long pence) {
+        for (int coin : COINS) {
+            if (coin == pence) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses an amount in units typed by the Customer, i.e. "0.50", into pence.
+     *
+     * @param units amount in units
+     * @return amount in pence or -1 if it's not a valid amount
+     */
+    static long parsePence(String units) {
+        try {
+            return new BigDecimal(units.trim()).movePointRight(2).longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Formats an amount in pence as units, i.e. 150 as "1.50".
+     *
+     * @param pence amount in pence
+     * @return formatted amount
+     */
+    static String formatPence(long pence) {
+        return (pence < 0 ? "-" : "") + Math.abs(pence) / 100 + "." + String.format("%02d", Math.abs(pence) % 100);
+    }
+
+    /**
+     * Handles a coin inserted by the Customer. Once the price is covered,
+     * the payment is passed on to ParkingService.
+     *
+     * @param pence the coin in pence
+     * @param service the ParkingService that accepts the payment
+     * @return the state after the coin
+     * @throws InvalidCoinException thrown if the coin isn't accepted (it's given back)
+     * @throws PaymentSessionClosedException thrown if the session isn't awaiting coins any more
+     */
+    synchronized State insertCoin(long pence, ParkingService service)
+            throws InvalidCoinException, PaymentSessionClosedException {
+        checkOpen();
+        if (!isValidCoin(pence)) {
+            throw new InvalidCoinException();
+        }
+        insertedPence += pence;
+        return settle(service);
+    }
+
+    /**
+     * Passes the payment on to ParkingService if the price is covered
+     * (straight away for a free stay).
+     *
+     * @param service the ParkingService that accepts the payment
+     * @return the state afterwards
+     */
+    synchronized State settle(ParkingService service) {
+        if (state != State.AWAITING_COINS || insertedPence < pricePence) {
+            return state;
+        }
+
+        try {
+            paymentResult = service.pay(new PaymentRequest(collectResult.getReceiptId(), insertedPence,
+                    needsAssistance));
+            state = State.COMPLETED;
+        } catch (VehicleDoesNotExistException | InsufficientPaymentException e) {
+            // i.e. the Vehicle has been removed by an Employee meanwhile -- the Customer gets everything back
+            failure = e.getMessage();
+            close(State.FAILED);
+        }
+        return state;
+    }
+
+    /**
+     * Changes whether the Vehicle should be collected by an Employee (only before the price is covered).
+     *
+     * @param needsAssistance should the Vehicle be collected by an Employee
+     * @throws PaymentSessionClosedException thrown if the session isn't awaiting coins any more
+     */
+    synchronized void setNeedsAssistance(boolean needsAssistance) throws PaymentSessionClosedException {
+        checkOpen();
+        this.needsAssistance = needsAssistance;
+    }
+
+    /**
+     * Cancels the payment and refunds everything inserted.
+     *
+     * @return the state after cancelling
+     * @throws PaymentSessionClosedException thrown if the session isn't awaiting coins any more
+     */
+    synchronized State cancel() throws PaymentSessionClosedException {
+        checkOpen();
+        close(State.CANCELLED);
+        return state;
+    }
+
+    /**
+     * Ends the payment because the Customer has been inactive for too long.
+     * Everything inserted is refunded. Does nothing if the session is already closed.
+     *
+     * @return TRUE if the session has timed out now
+     */
+    synchronized boolean timeOut() {
+        if (state != State.AWAITING_COINS) {
+            return false;
+        }
+        close(State.TIMED_OUT);
+        return true;
+    }
+
+    private void checkOpen() throws PaymentSessionClosedException {
+        if (state != State.AWAITING_COINS) {
+            throw new PaymentSessionClosedException();
+        }
+    }
+
+    private void close(State newState) {
+        refundPence = insertedPence;
+        state = newState;
+    }
+
+    /**
+     * Replaces the pending inactivity timeout.
+     *
+     * @param timeout the scheduled timeout
+     */
+    synchronized void setTimeout(ScheduledFuture<?> timeout) {
+        if (this.timeout != null) {
+            this.timeout.cancel(false);
+        }
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns session's ID.
+     *
+     * @return session's ID
+     */
+    int getId() {
+        return this.id;
+    }
+
+    /**
+     * Returns the price and info about the stay being paid for.
+     *
+     * @return the CollectResult
+     */
+    CollectResult getCollectResult() {
+        return this.collectResult;
+    }
+
+    /**
+     * Returns the price to pay (in pence).
+     *
+     * @return price
+     */
+    long getPricePence() {
+        return this.pricePence;
+    }
+
+    /**
+     * Returns the current state.
+     *
+     * @return state
+     */
+    synchronized State getState() {
+        return this.state;
+    }
+
+    /**
+     * Returns the total amount inserted so far (in pence).
+     *
+     * @return amount inserted
+     */
+    synchronized long getInsertedPence() {
+        return this.insertedPence;
+    }
+
+    /**
+     * Returns the amount still to pay (in pence).
+     *
+     * @return amount still to pay (0 if the price is covered)
+     */
+    synchronized long getRemainingPence() {
+        return Math.max(0, pricePence - insertedPence);
+    }
+
+    /**
+     * Returns the amount given back because the payment was cancelled, timed out or failed (in pence).
+     *
+     * @return amount refunded
+     */
+    synchronized long getRefundPence() {
+        return this.refundPence;
+    }
+
+    /**
+     * Returns the accepted payment.
+     *
+     * @return the PaymentResult or null if the session hasn't been COMPLETED
+     */
+    synchronized PaymentResult getPaymentResult() {
+        return this.paymentResult;
+    }
+
+    /**
+     * Returns why the payment has been rejected.
+     *
+     * @return the reason or null if the session hasn't FAILED
+     */
+    synchronized String getFailure() {
+        return this.failure;
+    }
+
+}
@@ -0,0 +1,151 @@
+package cymru.mab152.mcp;
+
+import cymru.mab152.mcp.exception.InvalidCoinException;
+import cymru.mab152.mcp.exception.PaymentSessionClosedException;
+import cymru.mab152.mcp.exception.PaymentSessionDoesNotExistException;
+import cymru.mab152.mcp.exception.VehicleDoesNotExistException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The open PaymentSessions of all pay stations of a Parking.
+ * Closed sessions are forgotten straight away -- the caller keeps the session object to read the outcome.
+ */
+public class PaymentSessions {
+
+    private static final int DEFAULT_TIMEOUT_SECONDS = 120;
+
+    // A single timer thread for the inactivity timeouts of all Parkings
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "payment-timeouts");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ParkingService service;
+    private ConcurrentHashMap<Integer, PaymentSession> sessions;
+    private AtomicInteger nextId;
+    private volatile int timeoutSeconds;
+
+    /**
+     * The constructor for PaymentSessions objects.
+     *
+     * @param service the ParkingService that prices the stays and accepts the payments
+     */
+    PaymentSessions(ParkingService service) {
+        this.service = service;
+        this.sessions = new ConcurrentHashMap<>();
+        this.nextId = new AtomicInteger(1);
+        this.timeoutSeconds = DEFAULT_TIMEOUT_SECONDS;
+    }
+
+    /**
+     * Sets how long a session can wait for the next coin before it times out.
+     *
+     * @param seconds inactivity timeout in seconds
+     */
+    void setTimeoutSeconds(int seconds) {
+        this.timeoutSeconds = seconds;
+    }
+
+    /**
+     * Prices the stay and opens a payment for it.
+     *
+     * @param receiptId ID of the Vehicle's ParkingReceipt
+     * @param needsAssistance should the Vehicle be collected by an Employee
+     * @return the new session, awaiting coins (or already COMPLETED if the stay is free)
+     * @throws VehicleDoesNotExistException thrown if there's no Vehicle with that ParkingReceipt
+     */
+    PaymentSession open(int receiptId, boolean needsAssistance) throws VehicleDoesNotExistException {
+        CollectResult collectResult = service.collect(new CollectRequest(receiptId));
+        PaymentSession session = new PaymentSession(nextId.getAndIncrement(), collectResult, needsAssistance);
+        if (session.settle(service) == PaymentSession.State.AWAITING_COINS) {
+            sessions.put(session.getId(), session);
+            scheduleTimeout(session);
+        }
+        return session;
+    }
+
+    /**
+     * Returns an open session.
+     *
+     * @param id session's ID
+     * @return the session
+     * @throws PaymentSessionDoesNotExistException thrown if there's no open session with that ID
+     */
+    PaymentSession get(int id) throws PaymentSessionDoesNotExistException {
+        PaymentSession session = sessions.get(id);
+        if (session == null) {
+            throw new PaymentSessionDoesNotExistException();
+        }
+        return session;
+    }
+
+    /**
+     * Passes a coin to a session.
+     *
+     * @param id session's ID
+     * @param pence the coin in pence
+     * @return the session
+     * @throws PaymentSessionDoesNotExistException thrown if there's no open session with that ID
+     * @throws InvalidCoinException thrown if the coin isn't accepted
+     * @throws PaymentSessionClosedException thrown if the session has been closed meanwhile
+     */
+    PaymentSession insertCoin(int id, long pence)
+            throws PaymentSessionDoesNotExistException, InvalidCoinException, PaymentSessionClosedException {
+        PaymentSession session = get(id);
+        if (session.insertCoin(pence, service) == PaymentSession.State.AWAITING_COINS) {
+            scheduleTimeout(session);
+        } else {
+            forget(session);
+        }
+        return session;
+    }
+
+    /**
+     * Cancels a session and refunds everything inserted.
+     *
+     * @param id session's ID
+     * @return the session
+     * @throws PaymentSessionDoesNotExistException thrown if there's no open session with that ID
+     * @throws PaymentSessionClosedException thrown if the session has been closed meanwhile
+     */
+    PaymentSession cancel(int id) throws PaymentSessionDoesNotExistException, PaymentSessionClosedException {
+        PaymentSession session = get(id);
+        session.cancel();
+        forget(session);
+        return session;
+    }
+
+    /**
+     * Returns the number of open sessions.
+     *
+     * @return number of open sessions
+     */
+    int getNumberOfOpenSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * (Re)starts the inactivity timeout of a session.
+     *
+     * @param session the session
+     */
+    private void scheduleTimeout(PaymentSession session) {
+        session.setTimeout(TIMER.schedule(() -> {
+            if (session.timeOut()) {
+                forget(session);
+            }
+        }, timeoutSeconds, TimeUnit.SECONDS));
+    }
+
+    private void forget(PaymentSession session) {
+        session.setTimeout(null);
+        sessions.remove(session.getId(), session);
+    }
+
+}
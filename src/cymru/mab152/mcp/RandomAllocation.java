@@ -0,0 +1,64 @@
+package cymru.mab152.mcp;
+
+import cymru.mab152.mcp.exception.NoFreeParkingSpacesException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Parks the Vehicle in a random free ParkingSpace of a random ParkingZone that accepts it
+ * (the default strategy).
+ */
+public class RandomAllocation implements AllocationStrategy {
+
+    static final String NAME = "random";
+
+    /**
+     * Returns the name the strategy is saved under.
+     *
+     * @return name of the strategy
+     */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Picks a random ParkingZone with free ParkingSpaces, then a random free space in it:
+     * a random ParkingSpace is looked up and, if it's taken or the Vehicle doesn't fit, the next free one
+     * after it that it fits. If there's none in the zone, the next zone is tried.
+     *
+     * @param v Vehicle to be parked
+     * @param zones all ParkingZones of the Parking
+     * @return a free ParkingSpace that accepts the Vehicle
+     * @throws NoFreeParkingSpacesException thrown if there are no free ParkingSpaces for the Vehicle
+     */
+    @Override
+    public ParkingSpace choose(Vehicle v, List<ParkingZone> zones) throws NoFreeParkingSpacesException {
+        ArrayList<ParkingZone> tempParkingZones = new ArrayList<>();
+        VehicleType vt = v.getVehicleType();
+
+        // Get all ParkingZones that will accept the Vehicle and have free ParkingSpaces
+        for (ParkingZone pz : zones) {
+            if (pz.isVehicleAccepted(vt) && pz.getNumberOfFreeSpaces() > 0) {
+                tempParkingZones.add(pz);
+            }
+        }
+
+        if (tempParkingZones.size() != 0) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(tempParkingZones.size());
+            for (int i = 0; i < tempParkingZones.size(); i++) {
+                ParkingZone pz = tempParkingZones.get((first + i) % tempParkingZones.size());
+                ArrayList<ParkingSpace> parkingSpaces = pz.getListOfParkingSpaces();
+                ParkingSpace ps = pz.getFreeParkingSpaceFrom(parkingSpaces.get(random.nextInt(parkingSpaces.size())), v);
+                if (ps != null) {
+                    return ps;
+                }
+            }
+        }
+        throw new NoFreeParkingSpacesException("There are no free parking spaces! Try again later.");
+    }
+
+}
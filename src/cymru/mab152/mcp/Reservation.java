@@ -0,0 +1,89 @@
+package cymru.mab152.mcp;
+
+import java.util.Date;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A ParkingSpace held for a pre-booked Vehicle until a deadline.
+ * While it's held, the space isn't counted as free and isn't given to anyone else.
+ */
+public class Reservation {
+
+    private final String licensePlate;
+    private final ParkingSpace parkingSpace;
+    private final long untilMillis;
+    private ScheduledFuture<?> expiry;
+
+    /**
+     * The constructor for Reservation objects.
+     *
+     * @param licensePlate license plate of the Vehicle the space is held for
+     * @param parkingSpace the ParkingSpace held
+     * @param untilMillis when the hold expires (epoch milliseconds)
+     */
+    Reservation(String licensePlate, ParkingSpace parkingSpace, long untilMillis) {
+        this.licensePlate = licensePlate.toUpperCase();
+        this.parkingSpace = parkingSpace;
+        this.untilMillis = untilMillis;
+    }
+
+    /**
+     * Checks if the space is held for the Vehicle given.
+     *
+     * @param v the Vehicle
+     * @return TRUE if the Vehicle has the reserved license plate
+     */
+    boolean isFor(Vehicle v) {
+        return licensePlate.equals(v.getLicensePlate());
+    }
+
+    /**
+     * Returns the license plate of the Vehicle the space is held for.
+     *
+     * @return license plate
+     */
+    String getLicensePlate() {
+        return this.licensePlate;
+    }
+
+    /**
+     * Returns the ParkingSpace held.
+     *
+     * @return the ParkingSpace
+     */
+    ParkingSpace getParkingSpace() {
+        return this.parkingSpace;
+    }
+
+    /**
+     * Returns when the hold expires.
+     *
+     * @return deadline in epoch milliseconds
+     */
+    long getUntilMillis() {
+        return this.untilMillis;
+    }
+
+    /**
+     * Replaces the pending expiry.
+     *
+     * @param expiry the scheduled expiry (null to just cancel the pending one)
+     */
+    synchronized void setExpiry(ScheduledFuture<?> expiry) {
+        if (this.expiry != null) {
+            this.expiry.cancel(false);
+        }
+        this.expiry = expiry;
+    }
+
+    /**
+     * Returns info about the reservation as a String.
+     *
+     * @return all info about the reservation
+     */
+    public String toString() {
+        return "Parking space " + parkingSpace.getID() + " is reserved for " + licensePlate
+                + " until " + new Date(untilMillis) + ".";
+    }
+
+}
@@ -0,0 +1,199 @@
+package cymru.mab152.mcp;
+
+import cymru.mab152.mcp.exception.NoFreeParkingSpacesException;
+import cymru.mab152.mcp.exception.ParkingSpaceDoesNotExistException;
+import cymru.mab152.mcp.exception.ParkingSpaceOccupiedException;
+import cymru.mab152.mcp.exception.ParkingZoneDoesNotExistException;
+import cymru.mab152.mcp.exception.ReservationAlreadyExistsException;
+import cymru.mab152.mcp.exception.ReservationDoesNotExistException;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Reservations of a Parking, one per license plate.
+ * Each one is released by a scheduled expiry at its deadline, unless the Vehicle arrives
+ * (or the Reservation is cancelled) first.
+ */
+public class Reservations {
+
+    // A single timer thread for the expiries of all Parkings
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "reservation-expiries");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private Parking parking;
+    private ConcurrentHashMap<String, Reservation> reservations; // by license plate
+
+    /**
+     * The constructor for Reservations objects.
+     *
+     * @param parking the Parking whose ParkingSpaces are held
+     */
+    Reservations(Parking parking) {
+        this.parking = parking;
+        this.reservations = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Holds a given ParkingSpace for a license plate.
+     *
+     * @param licensePlate license plate of the expected Vehicle
+     * @param parkingSpaceId ID of the ParkingSpace to hold
+     * @param untilMillis when the hold expires (epoch milliseconds)
+     * @return the new Reservation
+     * @throws ReservationAlreadyExistsException thrown if there's already a Reservation for the license plate
+     * @throws ParkingSpaceDoesNotExistException thrown if there's no ParkingSpace with that ID
+     * @throws ParkingSpaceOccupiedException thrown if the ParkingSpace is taken or already held
+     */
+    Reservation reserveSpace(String licensePlate, String parkingSpaceId, long untilMillis)
+            throws ReservationAlreadyExistsException, ParkingSpaceDoesNotExistException,
+            ParkingSpaceOccupiedException {
+        ParkingSpace ps = parking.getParkingSpaceById(parkingSpaceId.toUpperCase());
+        if (ps == null) {
+            throw new ParkingSpaceDoesNotExistException();
+        }
+
+        Reservation reservation = new Reservation(licensePlate, ps, untilMillis);
+        if (reservations.putIfAbsent(reservation.getLicensePlate(), reservation) != null) {
+            throw new ReservationAlreadyExistsException();
+        }
+        if (!ps.hold(reservation)) {
+            reservations.remove(reservation.getLicensePlate(), reservation);
+            throw new ParkingSpaceOccupiedException();
+        }
+        scheduleExpiry(reservation);
+        return reservation;
+    }
+
+    /**
+     * Holds a space in a given ParkingZone for a license plate -- the free ParkingSpace nearest to the exit.
+     *
+     * @param licensePlate license plate of the expected Vehicle
+     * @param parkingZoneId ID of the ParkingZone
+     * @param untilMillis when the hold expires (epoch milliseconds)
+     * @return the new Reservation
+     * @throws ReservationAlreadyExistsException thrown if there's already a Reservation for the license plate
+     * @throws ParkingZoneDoesNotExistException thrown if there's no ParkingZone with that ID
+     * @throws NoFreeParkingSpacesException thrown if there are no free ParkingSpaces in the ParkingZone
+     */
+    Reservation reserveInZone(String licensePlate, String parkingZoneId, long untilMillis)
+            throws ReservationAlreadyExistsException, ParkingZoneDoesNotExistException,
+            NoFreeParkingSpacesException {
+        ParkingZone pz = null;
+        for (ParkingZone temp : parking.getParkingZones()) {
+            if (temp.getId().equalsIgnoreCase(parkingZoneId)) {
+                pz = temp;
+            }
+        }
+        if (pz == null) {
+            throw new ParkingZoneDoesNotExistException();
+        }
+
+        String key = licensePlate.toUpperCase();
+        if (reservations.containsKey(key)) {
+            throw new ReservationAlreadyExistsException();
+        }
+        while (true) {
+            ParkingSpace ps = pz.getNearestFreeParkingSpace();
+            if (ps == null) {
+                throw new NoFreeParkingSpacesException("There are no free parking spaces in this zone!");
+            }
+            Reservation reservation = new Reservation(licensePlate, ps, untilMillis);
+            if (reservations.putIfAbsent(key, reservation) != null) {
+                throw new ReservationAlreadyExistsException();
+            }
+            if (ps.hold(reservation)) {
+                scheduleExpiry(reservation);
+                return reservation;
+            }
+            // Someone else took this ParkingSpace in the meantime -- try another one
+            reservations.remove(key, reservation);
+        }
+    }
+
+    /**
+     * Returns the Reservation for a license plate.
+     *
+     * @param licensePlate the license plate
+     * @return the Reservation
+     * @throws ReservationDoesNotExistException thrown if there's no Reservation for the license plate
+     */
+    Reservation get(String licensePlate) throws ReservationDoesNotExistException {
+        Reservation reservation = reservations.get(licensePlate.toUpperCase());
+        if (reservation == null) {
+            throw new ReservationDoesNotExistException();
+        }
+        return reservation;
+    }
+
+    /**
+     * Cancels the Reservation for a license plate and frees its ParkingSpace.
+     *
+     * @param licensePlate the license plate
+     * @return the cancelled Reservation
+     * @throws ReservationDoesNotExistException thrown if there's no Reservation for the license plate
+     */
+    Reservation cancel(String licensePlate) throws ReservationDoesNotExistException {
+        Reservation reservation = reservations.remove(licensePlate.toUpperCase());
+        if (reservation == null) {
+            throw new ReservationDoesNotExistException();
+        }
+        release(reservation);
+        return reservation;
+    }
+
+    /**
+     * Parks an arriving Vehicle in the ParkingSpace held for it, if there's one.
+     * The Reservation is used up either way; if the Vehicle doesn't fit the space, the space is freed.
+     *
+     * @param v the arriving Vehicle
+     * @return the ParkingSpace the Vehicle has been parked in or null if it had no (usable) Reservation
+     */
+    ParkingSpace parkReserved(Vehicle v) {
+        Reservation reservation = reservations.remove(v.getLicensePlate());
+        if (reservation == null) {
+            return null;
+        }
+        reservation.setExpiry(null);
+
+        ParkingSpace ps = reservation.getParkingSpace();
+        boolean isParked = ps.accepts(v) && ps.claim(v);
+        ps.unhold(reservation);
+        return isParked ? ps : null;
+    }
+
+    /**
+     * Returns all current Reservations.
+     *
+     * @return list of Reservations
+     */
+    ArrayList<Reservation> getAll() {
+        return new ArrayList<>(reservations.values());
+    }
+
+    /**
+     * Schedules the release of the Reservation at its deadline.
+     *
+     * @param reservation the Reservation
+     */
+    private void scheduleExpiry(Reservation reservation) {
+        long delay = Math.max(0, reservation.getUntilMillis() - System.currentTimeMillis());
+        reservation.setExpiry(TIMER.schedule(() -> {
+            if (reservations.remove(reservation.getLicensePlate(), reservation)) {
+                release(reservation);
+            }
+        }, delay, TimeUnit.MILLISECONDS));
+    }
+
+    private void release(Reservation reservation) {
+        reservation.setExpiry(null);
+        reservation.getParkingSpace().unhold(reservation);
+    }
+
+}
@@ -0,0 +1,287 @@
+package cymru.mab152.mcp;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Grouped aggregations over the completed stays of a StayArchive.
+ * Every query only counts the stays that ended in [fromMillis, toMillis) and adds them up
+ * in parallel into flat arrays of totals (see StayArchive.scan).
+ */
+public class StayAnalytics {
+
+    private static final long HOUR_MILLIS = 3_600_000L;
+    private static final long MAX_HOURS = 24L * 366; // longest period revenueByZoneAndHour() is kept for
+
+    private StayAnalytics() {
+    }
+
+    /**
+     * Adds up the revenue of every ParkingZone for every hour (by the time the stays ended).
+     *
+     * @param archive the StayArchive
+     * @param fromMillis start of the period (epoch milliseconds), rounded down to a whole hour
+     * @param toMillis end of the period (epoch milliseconds), exclusive
+     * @return revenue by zone and hour
+     */
+    static HourlyRevenue revenueByZoneAndHour(StayArchive archive, long fromMillis, long toMillis) {
+        long firstHour = Math.floorDiv(fromMillis, HOUR_MILLIS);
+        long hoursLong = Math.max(0, Math.ceilDiv(toMillis, HOUR_MILLIS) - firstHour);
+        if (hoursLong > MAX_HOURS) {
+            throw new IllegalArgumentException("The period cannot be longer than " + MAX_HOURS + " hours!");
+        }
+        int hours = (int) hoursLong;
+        String[] zoneIds = archive.getZoneIds();
+        int zones = zoneIds.length;
+        long fromHourMillis = firstHour * HOUR_MILLIS;
+
+        long[] pence = archive.scan(() -> new long[zones * hours], (totals, b) -> {
+            for (int i = b.from; i < b.to; i++) {
+                long end = b.endMillis[i];
+                // Zones recorded after the scan started aren't in the totals
+                if (end < fromMillis || end >= toMillis || b.zone[i] >= zones) {
+                    continue;
+                }
+                int hour = (int) ((end - fromHourMillis) / HOUR_MILLIS);
+                totals[b.zone[i] * hours + hour] += b.paidPence[i];
+            }
+        }, StayAnalytics::add);
+        return new HourlyRevenue(fromHourMillis, hours, zoneIds, pence);
+    }
+
+    /**
+     * Adds up the number of stays and the time parked by VehicleType.
+     *
+     * @param archive the StayArchive
+     * @param fromMillis start of the period (epoch milliseconds)
+     * @param toMillis end of the period (epoch milliseconds), exclusive
+     * @return dwell times by VehicleType
+     */
+    static DwellTimes dwellByVehicleType(StayArchive archive, long fromMillis, long toMillis) {
+        int types = VehicleType.values().length;
+        // [type] is the number of stays, [types + type] the seconds parked
+        long[] totals = archive.scan(() -> new long[2 * types], (t, b) -> {
+            for (int i = b.from; i < b.to; i++) {
+                long end = b.endMillis[i];
+                if (end < fromMillis || end >= toMillis) {
+                    continue;
+                }
+                int type = StayArchive.typeIndexOf(b.flags[i]);
+                t[type]++;
+                t[types + type] += b.dwellSeconds[i];
+            }
+        }, StayAnalytics::add);
+        return new DwellTimes(totals);
+    }
+
+    /**
+     * Adds up the stays, revenue and discounts of disabled Drivers compared with all stays.
+     *
+     * @param archive the StayArchive
+     * @param fromMillis start of the period (epoch milliseconds)
+     * @param toMillis end of the period (epoch milliseconds), exclusive
+     * @return the discounts
+     */
+    static DiscountShare disabledDiscounts(StayArchive archive, long fromMillis, long toMillis) {
+        // [0] stays, [1] stays with the discount, [2] revenue, [3] discounts given
+        long[] totals = archive.scan(() -> new long[4], (t, b) -> {
+            for (int i = b.from; i < b.to; i++) {
+                long end = b.endMillis[i];
+                if (end < fromMillis || end >= toMillis) {
+                    continue;
+                }
+                t[0]++;
+                t[2] += b.paidPence[i];
+                if (StayArchive.isDisabled(b.flags[i])) {
+                    t[1]++;
+                    t[3] += b.discountPence[i];
+                }
+            }
+        }, StayAnalytics::add);
+        return new DiscountShare(totals[0], totals[1], totals[2], totals[3]);
+    }
+
+    private static void add(long[] totals, long[] other) {
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] += other[i];
+        }
+    }
+
+    /**
+     * Revenue of every ParkingZone for every hour of a period, in pence.
+     */
+    static final class HourlyRevenue {
+        private final long fromMillis;
+        private final int hours;
+        private final String[] zoneIds;
+        private final long[] pence; // [zone * hours + hour]
+
+        private HourlyRevenue(long fromMillis, int hours, String[] zoneIds, long[] pence) {
+            this.fromMillis = fromMillis;
+            this.hours = hours;
+            this.zoneIds = zoneIds;
+            this.pence = pence;
+        }
+
+        /**
+         * Returns the IDs of the ParkingZones, by their index.
+         *
+         * @return zone IDs
+         */
+        String[] getZoneIds() {
+            return this.zoneIds.clone();
+        }
+
+        /**
+         * Returns the number of hours in the period.
+         *
+         * @return number of hours
+         */
+        int getHours() {
+            return this.hours;
+        }
+
+        /**
+         * Returns the revenue of a ParkingZone in one hour.
+         *
+         * @param zone index of the ParkingZone
+         * @param hour index of the hour from the start of the period
+         * @return revenue (in pence)
+         */
+        long getPence(int zone, int hour) {
+            return pence[zone * hours + hour];
+        }
+
+        /**
+         * Writes the hours with any revenue as CSV: zone,hour,revenue.
+         *
+         * @param out where the CSV is written to
+         * @throws IOException thrown if it cannot be written
+         */
+        void writeCsv(Appendable out) throws IOException {
+            out.append("zone,hour,revenue\n");
+            for (int z = 0; z < zoneIds.length; z++) {
+                for (int h = 0; h < hours; h++) {
+                    if (getPence(z, h) == 0) {
+                        continue;
+                    }
+                    out.append(zoneIds[z]).append(',')
+                            .append(Instant.ofEpochMilli(fromMillis + h * HOUR_MILLIS).toString()).append(',')
+                            .append(PaymentSession.formatPence(getPence(z, h))).append('\n');
+                }
+            }
+        }
+    }
+
+    /**
+     * The number of stays and the time parked, by VehicleType.
+     */
+    static final class DwellTimes {
+        private final long[] totals; // [type] stays, [types + type] seconds parked
+
+        private DwellTimes(long[] totals) {
+            this.totals = totals;
+        }
+
+        /**
+         * Returns the number of stays of a VehicleType.
+         *
+         * @param vt the VehicleType
+         * @return number of stays
+         */
+        long getStays(VehicleType vt) {
+            return totals[vt.ordinal()];
+        }
+
+        /**
+         * Returns the average time a VehicleType was parked for.
+         *
+         * @param vt the VehicleType
+         * @return average dwell in minutes (0 if there were no stays)
+         */
+        double getAverageMinutes(VehicleType vt) {
+            long stays = getStays(vt);
+            return (stays == 0) ? 0 : totals[VehicleType.values().length + vt.ordinal()] / 60.0 / stays;
+        }
+
+        /**
+         * Returns the average dwell of every VehicleType as a String.
+         *
+         * @return one line per VehicleType
+         */
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (VehicleType vt : VehicleType.values()) {
+                sb.append(String.format("%s: %d stays, %.1f minutes on average%n", vt, getStays(vt),
+                        getAverageMinutes(vt)));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * The stays and revenue of disabled Drivers compared with all stays.
+     */
+    static final class DiscountShare {
+        private final long stays;
+        private final long discountedStays;
+        private final long revenuePence;
+        private final long discountPence;
+
+        private DiscountShare(long stays, long discountedStays, long revenuePence, long discountPence) {
+            this.stays = stays;
+            this.discountedStays = discountedStays;
+            this.revenuePence = revenuePence;
+            this.discountPence = discountPence;
+        }
+
+        /**
+         * Returns the number of stays with the disabled discount.
+         *
+         * @return number of stays
+         */
+        long getDiscountedStays() {
+            return this.discountedStays;
+        }
+
+        /**
+         * Returns the share of stays with the disabled discount.
+         *
+         * @return share between 0 and 1
+         */
+        double getShareOfStays() {
+            return (stays == 0) ? 0 : (double) discountedStays / stays;
+        }
+
+        /**
+         * Returns the discounts given, i.e. the revenue lost to them.
+         *
+         * @return discounts (in pence)
+         */
+        long getDiscountPence() {
+            return this.discountPence;
+        }
+
+        /**
+         * Returns the discounts as a share of the revenue there would have been without them.
+         *
+         * @return share between 0 and 1
+         */
+        double getShareOfRevenue() {
+            long gross = revenuePence + discountPence;
+            return (gross == 0) ? 0 : (double) discountPence / gross;
+        }
+
+        /**
+         * Returns the discounts as a String.
+         *
+         * @return all figures
+         */
+        public String toString() {
+            return String.format("%d of %d stays (%.1f%%) had the disabled discount, worth %s (%.1f%% of revenue)",
+                    discountedStays, stays, 100 * getShareOfStays(), PaymentSession.formatPence(discountPence),
+                    100 * getShareOfRevenue());
+        }
+    }
+
+}
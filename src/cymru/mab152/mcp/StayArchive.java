@@ -0,0 +1,262 @@
+package cymru.mab152.mcp;
+
+import java.util.HashMap;
+import java.util.Spliterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.StreamSupport;
+
+/**
+ * The completed (paid) stays of a Parking, kept after their ParkingReceipts are gone.
+ * <p>
+ * Every stay takes 23 bytes: it's stored in primitive columns, in chunks of 65536 stays, and its ParkingZone
+ * is kept as an index into the list of zone IDs. Recording a stay only takes a short lock, once per payment.
+ * Queries scan the columns in parallel: a Spliterator hands out blocks of rows, every block is added up
+ * into the query's own primitive totals and the totals are merged -- no object is created per stay.
+ * Stays recorded while a query runs may or may not be included.
+ */
+public class StayArchive {
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int BLOCK_SIZE = 8192; // rows added up by a single task
+
+    // Bits of the flags column
+    private static final int TYPE_MASK = 0x7F;
+    private static final int DISABLED = 0x80;
+
+    private final Object lock = new Object();
+    private volatile Chunk[] chunks;
+    private volatile int size; // rows below it are complete
+    private final CopyOnWriteArrayList<String> zoneIds;
+    private final HashMap<String, Short> zoneIndex; // only used under the lock
+
+    /**
+     * The constructor for StayArchive objects.
+     */
+    StayArchive() {
+        this.chunks = new Chunk[0];
+        this.size = 0;
+        this.zoneIds = new CopyOnWriteArrayList<>();
+        this.zoneIndex = new HashMap<>();
+    }
+
+    /**
+     * Records a stay that has just been paid for -- its end is the current time.
+     * The end is read under the lock, so the stays are recorded in the order they ended.
+     *
+     * @param zoneId ID of the ParkingZone the Vehicle was parked in
+     * @param vt the Vehicle's type
+     * @param isDisabled TRUE if the Driver had the disabled discount
+     * @param startMillis when the Vehicle was parked (epoch milliseconds)
+     * @param paidPence price paid
+     * @param discountPence discount given to the disabled Driver (0 if none)
+     */
+    void record(String zoneId, VehicleType vt, boolean isDisabled, long startMillis, long paidPence,
+                long discountPence) {
+        synchronized (lock) {
+            long endMillis = System.currentTimeMillis();
+            Short zone = zoneIndex.get(zoneId);
+            if (zone == null) {
+                zone = (short) zoneIds.size();
+                zoneIds.add(zoneId);
+                zoneIndex.put(zoneId, zone);
+            }
+            int row = size;
+            int c = row >>> CHUNK_BITS;
+            Chunk[] current = chunks;
+            if (c == current.length) {
+                Chunk[] grown = new Chunk[c + 1];
+                System.arraycopy(current, 0, grown, 0, c);
+                grown[c] = new Chunk();
+                chunks = grown;
+                current = grown;
+            }
+            Chunk chunk = current[c];
+            int i = row & (CHUNK_SIZE - 1);
+            chunk.endMillis[i] = endMillis;
+            chunk.dwellSeconds[i] = (int) Math.min(Integer.MAX_VALUE, Math.max(0, endMillis - startMillis) / 1000);
+            chunk.paidPence[i] = (int) Math.min(Integer.MAX_VALUE, paidPence);
+            chunk.discountPence[i] = (int) Math.min(Integer.MAX_VALUE, discountPence);
+            chunk.zone[i] = zone;
+            chunk.flags[i] = (byte) (vt.ordinal() | (isDisabled ? DISABLED : 0));
+            // Publishes the row to the readers
+            size = row + 1;
+        }
+    }
+
+    /**
+     * Returns the current time, read under the lock: every stay that ended before it has been recorded,
+     * so it can be used as the start of the next incremental export.
+     *
+     * @return current time (epoch milliseconds)
+     */
+    long currentMillis() {
+        synchronized (lock) {
+            return System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Returns the number of stays recorded.
+     *
+     * @return number of stays
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the IDs of the ParkingZones stays have been recorded in, by their index.
+     *
+     * @return zone IDs
+     */
+    String[] getZoneIds() {
+        return zoneIds.toArray(new String[0]);
+    }
+
+    /**
+     * Adds up the stays recorded so far in parallel.
+     *
+     * @param supplier creates empty totals for a task
+     * @param aggregator adds the rows of a Block to the totals
+     * @param combiner adds the second totals to the first
+     * @param <R> type of the totals
+     * @return the totals of all stays
+     */
+    <R> R scan(Supplier<R> supplier, BiConsumer<R, Block> aggregator, BiConsumer<R, R> combiner) {
+        int rows = size;
+        return StreamSupport.stream(new BlockSpliterator(chunks, 0, rows), true)
+                .collect(supplier, aggregator, combiner);
+    }
+
+    /**
+     * Hands the stays recorded so far to the action one Block at a time, in the order they were recorded.
+     *
+     * @param action called for every Block
+     */
+    void forEachBlock(Consumer<Block> action) {
+        int rows = size;
+        new BlockSpliterator(chunks, 0, rows).forEachRemaining(action);
+    }
+
+    /**
+     * Returns the VehicleType from the flags column.
+     *
+     * @param flags the flags of a stay
+     * @return the VehicleType
+     */
+    static VehicleType typeOf(byte flags) {
+        return VehicleType.values()[flags & TYPE_MASK];
+    }
+
+    /**
+     * Returns the VehicleType's index from the flags column.
+     *
+     * @param flags the flags of a stay
+     * @return VehicleType.ordinal()
+     */
+    static int typeIndexOf(byte flags) {
+        return flags & TYPE_MASK;
+    }
+
+    /**
+     * Checks the disabled bit of the flags column.
+     *
+     * @param flags the flags of a stay
+     * @return TRUE if the Driver had the disabled discount
+     */
+    static boolean isDisabled(byte flags) {
+        return (flags & DISABLED) != 0;
+    }
+
+    /**
+     * The columns of up to CHUNK_SIZE stays.
+     */
+    private static final class Chunk {
+        private final long[] endMillis = new long[CHUNK_SIZE];
+        private final int[] dwellSeconds = new int[CHUNK_SIZE];
+        private final int[] paidPence = new int[CHUNK_SIZE];
+        private final int[] discountPence = new int[CHUNK_SIZE];
+        private final short[] zone = new short[CHUNK_SIZE];
+        private final byte[] flags = new byte[CHUNK_SIZE];
+    }
+
+    /**
+     * A run of rows [from, to) within one chunk, handed to the aggregators.
+     */
+    static final class Block {
+        final long[] endMillis;
+        final int[] dwellSeconds;
+        final int[] paidPence;
+        final int[] discountPence;
+        final short[] zone;
+        final byte[] flags;
+        final int from;
+        final int to;
+
+        private Block(Chunk chunk, int from, int to) {
+            this.endMillis = chunk.endMillis;
+            this.dwellSeconds = chunk.dwellSeconds;
+            this.paidPence = chunk.paidPence;
+            this.discountPence = chunk.discountPence;
+            this.zone = chunk.zone;
+            this.flags = chunk.flags;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * Hands out the rows [from, to) as Blocks of at most BLOCK_SIZE rows, splitting the range in half
+     * (at a block boundary) for the parallel stream.
+     */
+    private static final class BlockSpliterator implements Spliterator<Block> {
+        private final Chunk[] chunks;
+        private int from;
+        private final int to;
+
+        private BlockSpliterator(Chunk[] chunks, int from, int to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Block> action) {
+            if (from >= to) {
+                return false;
+            }
+            int i = from & (CHUNK_SIZE - 1);
+            // Blocks never cross a chunk, as BLOCK_SIZE divides CHUNK_SIZE
+            int end = Math.min(to - from, BLOCK_SIZE - (i % BLOCK_SIZE));
+            action.accept(new Block(chunks[from >>> CHUNK_BITS], i, i + end));
+            from += end;
+            return true;
+        }
+
+        @Override
+        public Spliterator<Block> trySplit() {
+            int middle = ((from + to) >>> 1) / BLOCK_SIZE * BLOCK_SIZE;
+            if (middle <= from) {
+                return null;
+            }
+            BlockSpliterator prefix = new BlockSpliterator(chunks, from, middle);
+            from = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return (to - from + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
+
+}
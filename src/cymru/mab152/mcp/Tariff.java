@@ -0,0 +1,345 @@
+package cymru.mab152.mcp;
+
+import cymru.mab152.mcp.exception.InvalidTariffException;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The pricing rules of a Parking, compiled once into lookup tables.
+ * <p>
+ * Every started hour of a stay is charged at the ParkingZone's price per hour, multiplied by the percentage
+ * of the time-of-day band it starts in. The rules are read from the "tariff" object of the database:
+ * <pre>
+ * "tariff": {
+ *   "timeZone": "Europe/London",
+ *   "bands": [{"from": 0, "to": 7, "percent": 50},
+ *             {"from": 8, "to": 18, "days": ["MONDAY", "FRIDAY"], "percent": 120}],
+ *   "dailyCapHours": 10,
+ *   "vehicleTypePercent": {"COACH": 100},
+ *   "disabledPercent": 50,
+ *   "disabledExempt": ["COACH"],
+ *   "disabledFreeOnSunday": true
+ * }
+ * </pre>
+ * The daily cap is a number of hours (-1 for none); the percentages of vehicle types and disabled Drivers
+ * are between 0 and 100. All fields are optional; without them, the tariff is the original one (every hour
+ * at the full price, disabled Drivers pay half except for coaches and nothing if they park and leave on a Sunday).
+ * <p>
+ * The bands are compiled into a table of the 168 hours of a week with prefix sums, the daily cap
+ * into tables of capped days and weeks for every starting hour, and the time zone's daylight saving
+ * transitions into an array of epoch seconds. Pricing a stay is then a handful of array lookups,
+ * with no allocation.
+ */
+public final class Tariff {
+
+    private static final int HOURS_PER_WEEK = 168;
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+    private static final int SUNDAY = 6; // days of the week are counted from Monday (0)
+    private static final int NO_CAP = -1;
+
+    /**
+     * The original tariff, used when the database doesn't have one.
+     */
+    static final Tariff DEFAULT;
+
+    static {
+        try {
+            DEFAULT = compile(null);
+        } catch (InvalidTariffException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final JSONObject config; // null for the DEFAULT tariff
+    private final int[] slotPercent = new int[HOURS_PER_WEEK];
+    private final long[] prefix = new long[2 * HOURS_PER_WEEK + 1]; // two weeks, so ranges never wrap
+    private final long weekTotal;
+    private final long capPercent;
+    private final long[] dayCapped = new long[HOURS_PER_WEEK];
+    private final long[] weekCapped = new long[HOURS_PER_WEEK];
+    private final int[] vehicleTypePercent = new int[VehicleType.values().length];
+    private final boolean[] disabledExempt = new boolean[VehicleType.values().length];
+    private final int disabledPercent;
+    private final boolean disabledFreeOnSunday;
+
+    // Daylight saving: the offset before the first transition, the transitions and the offsets after them
+    private final int initialOffsetSeconds;
+    private final long[] transitionSeconds;
+    private final int[] offsetSecondsAfter;
+
+    private Tariff(JSONObject config) throws InvalidTariffException {
+        this.config = config;
+        JSONObject c = (config == null) ? new JSONObject() : config;
+
+        // Time-of-day bands -- later bands override the earlier ones
+        Arrays.fill(slotPercent, 100);
+        for (Object o : getArray(c, "bands")) {
+            JSONObject band = (JSONObject) o;
+            int from = getInt(band, "from", 0);
+            int to = getInt(band, "to", 24);
+            int percent = getInt(band, "percent", 100);
+            if (from < 0 || to > 24 || from >= to || percent < 0) {
+                throw new InvalidTariffException("Invalid band: " + band.toJSONString());
+            }
+            boolean[] days = new boolean[7];
+            JSONArray jsonDays = (JSONArray) band.get("days");
+            if (jsonDays == null) {
+                Arrays.fill(days, true);
+            } else {
+                for (Object day : jsonDays) {
+                    days[parseDay(day.toString())] = true;
+                }
+            }
+            for (int d = 0; d < 7; d++) {
+                if (days[d]) {
+                    Arrays.fill(slotPercent, d * 24 + from, d * 24 + to, percent);
+                }
+            }
+        }
+        for (int i = 0; i < 2 * HOURS_PER_WEEK; i++) {
+            prefix[i + 1] = prefix[i] + slotPercent[i % HOURS_PER_WEEK];
+        }
+        weekTotal = prefix[HOURS_PER_WEEK];
+
+        // Daily cap: a 24-hour period of the stay never costs more than this many full-price hours
+        int capHours = getInt(c, "dailyCapHours", NO_CAP);
+        if (capHours < 0 && capHours != NO_CAP) {
+            throw new InvalidTariffException("Invalid daily cap: " + capHours);
+        }
+        capPercent = (capHours == NO_CAP) ? NO_CAP : capHours * 100L;
+        for (int slot = 0; slot < HOURS_PER_WEEK; slot++) {
+            dayCapped[slot] = cap(rangeSum(slot, 24));
+        }
+        for (int slot = 0; slot < HOURS_PER_WEEK; slot++) {
+            long week = 0;
+            for (int d = 0; d < 7; d++) {
+                week += dayCapped[(slot + 24 * d) % HOURS_PER_WEEK];
+            }
+            weekCapped[slot] = week;
+        }
+
+        // Vehicle types and disabled Drivers
+        Arrays.fill(vehicleTypePercent, 100);
+        JSONObject typePercent = (JSONObject) c.get("vehicleTypePercent");
+        if (typePercent != null) {
+            for (Object key : typePercent.keySet()) {
+                vehicleTypePercent[parseVehicleType(key.toString()).ordinal()] =
+                        getPercent(typePercent, key.toString(), 100);
+            }
+        }
+        disabledPercent = getPercent(c, "disabledPercent", 50);
+        JSONArray exempt = (JSONArray) c.get("disabledExempt");
+        if (exempt == null) {
+            disabledExempt[VehicleType.COACH.ordinal()] = true;
+        } else {
+            for (Object type : exempt) {
+                disabledExempt[parseVehicleType(type.toString()).ordinal()] = true;
+            }
+        }
+        Object freeOnSunday = c.get("disabledFreeOnSunday");
+        disabledFreeOnSunday = (freeOnSunday == null) || Boolean.TRUE.equals(freeOnSunday);
+
+        // Time zone
+        ZoneRules rules;
+        try {
+            Object timeZone = c.get("timeZone");
+            rules = ((timeZone == null) ? ZoneId.systemDefault() : ZoneId.of(timeZone.toString())).getRules();
+        } catch (DateTimeException e) {
+            throw new InvalidTariffException("Invalid time zone: " + c.get("timeZone"));
+        }
+        Instant from = Instant.EPOCH;
+        Instant until = Instant.parse("2100-01-01T00:00:00Z");
+        initialOffsetSeconds = rules.getOffset(from).getTotalSeconds();
+        ArrayList<ZoneOffsetTransition> transitions = new ArrayList<>();
+        ZoneOffsetTransition t = rules.nextTransition(from);
+        while (t != null && t.getInstant().isBefore(until)) {
+            transitions.add(t);
+            t = rules.nextTransition(t.getInstant());
+        }
+        transitionSeconds = new long[transitions.size()];
+        offsetSecondsAfter = new int[transitions.size()];
+        for (int i = 0; i < transitions.size(); i++) {
+            transitionSeconds[i] = transitions.get(i).toEpochSecond();
+            offsetSecondsAfter[i] = transitions.get(i).getOffsetAfter().getTotalSeconds();
+        }
+    }
+
+    /**
+     * Compiles the tariff described by the JSON object given.
+     *
+     * @param config the "tariff" object of the database or null for the DEFAULT tariff
+     * @return the compiled Tariff
+     * @throws InvalidTariffException thrown if the description is not valid
+     */
+    static Tariff compile(JSONObject config) throws InvalidTariffException {
+        try {
+            return new Tariff(config);
+        } catch (ClassCastException | IllegalArgumentException e) {
+            throw new InvalidTariffException("Invalid tariff: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the JSON description the tariff was compiled from.
+     *
+     * @return the "tariff" object or null for the DEFAULT tariff
+     */
+    JSONObject getConfig() {
+        return this.config;
+    }
+
+    /**
+     * Calculates the price of a stay.
+     *
+     * @param startMillis start of the stay (epoch milliseconds)
+     * @param endMillis end of the stay (epoch milliseconds)
+     * @param pencePerHour the ParkingZone's price per hour (in pence)
+     * @param vt Vehicle's type
+     * @param isDisabled is the Driver disabled
+     * @return price to pay (in pence)
+     */
+    long pricePence(long startMillis, long endMillis, long pencePerHour, VehicleType vt, boolean isDisabled) {
+        if (isDisabled && disabledFreeOnSunday && dayOfWeek(startMillis) == SUNDAY
+                && dayOfWeek(endMillis) == SUNDAY) {
+            return 0;
+        }
+
+        // Every started hour (even by a millisecond) is charged
+        long hours = Math.ceilDiv(Math.max(0, endMillis - startMillis), MILLIS_PER_HOUR);
+        long percentHours = (nextTransitionIndex(startMillis / 1000) == nextTransitionIndex(endMillis / 1000))
+                ? percentHours(slot(startMillis), hours) : percentHoursAcrossTransitions(startMillis, hours);
+
+        long disabled = (isDisabled && !disabledExempt[vt.ordinal()]) ? disabledPercent : 100;
+        // Rounded to the nearest penny once, at the very end
+        return (pencePerHour * percentHours * vehicleTypePercent[vt.ordinal()] * disabled + 500_000) / 1_000_000;
+    }
+
+    /**
+     * Sums the band percentages of consecutive hours, applying the daily cap.
+     *
+     * @param slot hour of the week the stay starts in
+     * @param hours number of started hours
+     * @return sum of the percentages
+     */
+    private long percentHours(int slot, long hours) {
+        if (capPercent == NO_CAP) {
+            return (hours / HOURS_PER_WEEK) * weekTotal + rangeSum(slot, (int) (hours % HOURS_PER_WEEK));
+        }
+        long days = hours / 24;
+        long total = (days / 7) * weekCapped[slot];
+        int s = slot;
+        for (long d = 0; d < days % 7; d++) {
+            total += dayCapped[s];
+            s = (s + 24) % HOURS_PER_WEEK;
+        }
+        return total + cap(rangeSum(s, (int) (hours % 24)));
+    }
+
+    /**
+     * Sums the band percentages hour by hour, for the (rare) stays across a daylight saving change.
+     *
+     * @param startMillis start of the stay (epoch milliseconds)
+     * @param hours number of started hours
+     * @return sum of the percentages
+     */
+    private long percentHoursAcrossTransitions(long startMillis, long hours) {
+        long total = 0;
+        long day = 0;
+        for (long h = 0; h < hours; h++) {
+            day += slotPercent[slot(startMillis + h * MILLIS_PER_HOUR)];
+            if (h % 24 == 23 || h == hours - 1) {
+                total += cap(day);
+                day = 0;
+            }
+        }
+        return total;
+    }
+
+    private long cap(long percentHours) {
+        return (capPercent == NO_CAP) ? percentHours : Math.min(capPercent, percentHours);
+    }
+
+    /**
+     * Sums the band percentages of up to a week of consecutive hours.
+     */
+    private long rangeSum(int slot, int hours) {
+        return prefix[slot + hours] - prefix[slot];
+    }
+
+    /**
+     * Returns the hour of the week (0 is Monday 00:00-01:00, local time) the instant falls in.
+     */
+    private int slot(long epochMillis) {
+        long localSeconds = Math.floorDiv(epochMillis, 1000) + offsetSeconds(Math.floorDiv(epochMillis, 1000));
+        long localHours = Math.floorDiv(localSeconds, 3600);
+        // 1970-01-01 was a Thursday (3)
+        return Math.floorMod(localHours + 3 * 24, HOURS_PER_WEEK);
+    }
+
+    /**
+     * Returns the local day of the week (0 is Monday) of the instant.
+     */
+    private int dayOfWeek(long epochMillis) {
+        return slot(epochMillis) / 24;
+    }
+
+    private int offsetSeconds(long epochSecond) {
+        int i = nextTransitionIndex(epochSecond);
+        return (i == 0) ? initialOffsetSeconds : offsetSecondsAfter[i - 1];
+    }
+
+    /**
+     * Returns the index of the first transition after the instant.
+     */
+    private int nextTransitionIndex(long epochSecond) {
+        int i = Arrays.binarySearch(transitionSeconds, epochSecond);
+        return (i >= 0) ? i + 1 : -i - 1;
+    }
+
+    private static JSONArray getArray(JSONObject o, String key) {
+        JSONArray array = (JSONArray) o.get(key);
+        return (array == null) ? new JSONArray() : array;
+    }
+
+    private static int getInt(JSONObject o, String key, int defaultValue) {
+        Object value = o.get(key);
+        return (value == null) ? defaultValue : ((Number) value).intValue();
+    }
+
+    /**
+     * Returns a percentage of the price, which can only lower it (0 - 100).
+     */
+    private static int getPercent(JSONObject o, String key, int defaultValue) throws InvalidTariffException {
+        int percent = getInt(o, key, defaultValue);
+        if (percent < 0 || percent > 100) {
+            throw new InvalidTariffException("Invalid percentage of " + key + ": " + percent);
+        }
+        return percent;
+    }
+
+    private static int parseDay(String day) throws InvalidTariffException {
+        try {
+            return DayOfWeek.valueOf(day.toUpperCase()).ordinal();
+        } catch (IllegalArgumentException e) {
+            throw new InvalidTariffException("Invalid day: " + day);
+        }
+    }
+
+    private static VehicleType parseVehicleType(String type) throws InvalidTariffException {
+        try {
+            return VehicleType.valueOf(type.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidTariffException("Invalid vehicle type: " + type);
+        }
+    }
+
+}
@@ -0,0 +1,239 @@
+package cymru.mab152.mcp;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Assigns assisted parking and collection jobs to Employees.
+ * <p>
+ * Jobs wait in a priority queue (disabled Drivers first, then by the time waited). As soon as an
+ * Employee is free, the job at the head of the queue is handed to them and carried out on its own
+ * virtual thread, so all free Employees work at the same time.
+ * The dispatcher is started on the first job.
+ */
+public class ValetDispatcher {
+
+    private static final long SHUTDOWN_POLL_MILLIS = 10;
+
+    private Parking parking;
+    private PriorityBlockingQueue<ValetJob> queue;
+    private ExecutorService executor;
+    private AtomicLong sequence;
+    private volatile long driveMillis;
+    private volatile boolean isStarted;
+    private long startedNanos;
+
+    // Metrics
+    private LongAdder jobsQueued;
+    private LongAdder jobsCompleted;
+    private LongAdder totalWaitNanos;
+    private LongAccumulator maxWaitNanos;
+    private LongAdder busyNanos;
+
+    /**
+     * The constructor for ValetDispatcher objects.
+     *
+     * @param parking the Parking whose Employees do the jobs
+     */
+    ValetDispatcher(Parking parking) {
+        this.parking = parking;
+        this.queue = new PriorityBlockingQueue<>();
+        this.sequence = new AtomicLong(0);
+        this.driveMillis = 0;
+        this.jobsQueued = new LongAdder();
+        this.jobsCompleted = new LongAdder();
+        this.totalWaitNanos = new LongAdder();
+        this.maxWaitNanos = new LongAccumulator(Long::max, 0);
+        this.busyNanos = new LongAdder();
+    }
+
+    /**
+     * Sets how long an Employee needs to park or collect a Vehicle.
+     * As this is a demo, it's 0 by default (jobs are done straight away).
+     *
+     * @param millis time per job in milliseconds
+     */
+    void setDriveMillis(long millis) {
+        this.driveMillis = millis;
+    }
+
+    /**
+     * Queues a job for the next free Employee.
+     *
+     * @param kind park or collect
+     * @param v the Vehicle
+     * @param ps the ParkingSpace the Vehicle is (or will be) parked in
+     * @return the queued job
+     */
+    ValetJob submit(ValetJob.Kind kind, Vehicle v, ParkingSpace ps) {
+        ValetJob job = new ValetJob(kind, v, ps.getID(), ps.getParkingZone().getId(),
+                v.getParkingReceipt().isOwnerDisabled(), sequence.getAndIncrement());
+        start();
+        jobsQueued.increment();
+        queue.add(job);
+        return job;
+    }
+
+    /**
+     * Starts the dispatching thread (only once).
+     */
+    private synchronized void start() {
+        if (isStarted) {
+            return;
+        }
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        startedNanos = System.nanoTime();
+        isStarted = true;
+        executor.execute(this::dispatch);
+    }
+
+    /**
+     * Hands the queued jobs to free Employees, highest priority first.
+     */
+    private void dispatch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                // Wait for an Employee first, so the best job is picked at the moment someone can take it
+                parking.awaitFreeEmployees();
+                ValetJob job = queue.take();
+
+                DriverEmployee driverEmployee = parking.dispatchFreeEmployee();
+                if (driverEmployee == null) {
+                    // Somebody else took the Employee in the meantime
+                    queue.add(job);
+                    continue;
+                }
+                executor.execute(() -> carryOut(job, driverEmployee));
+            }
+        } catch (InterruptedException e) {
+            // The dispatcher is shutting down
+        }
+    }
+
+    /**
+     * Carries out a job and frees the Employee afterwards (recorded as a ParkingEvents.Dispatch).
+     *
+     * @param job the job
+     * @param de the Employee doing it
+     */
+    private void carryOut(ValetJob job, DriverEmployee de) {
+        ParkingEvents.Dispatch event = new ParkingEvents.Dispatch();
+        event.begin();
+        job.start(de.getName());
+        long waitNanos = job.getWaitNanos();
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulate(waitNanos);
+        event.kind = job.getKind().toString();
+        event.employee = de.getName();
+        event.parkingZone = job.getParkingZoneId();
+        event.vehicleType = job.getVehicle().getVehicleType().toString();
+        event.waitNanos = waitNanos;
+
+        long start = System.nanoTime();
+        try {
+            de.setVehicle(job.getVehicle());
+            if (driveMillis > 0) {
+                Thread.sleep(driveMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            de.setVehicle(null);
+            busyNanos.add(System.nanoTime() - start);
+            parking.releaseDriverEmployee(de);
+            jobsCompleted.increment();
+            job.finish();
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the number of jobs waiting for an Employee.
+     *
+     * @return queue length
+     */
+    int getQueueLength() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the number of jobs queued since the start.
+     *
+     * @return number of jobs queued
+     */
+    long getJobsQueued() {
+        return jobsQueued.sum();
+    }
+
+    /**
+     * Returns the number of jobs done since the start.
+     *
+     * @return number of jobs done
+     */
+    long getJobsCompleted() {
+        return jobsCompleted.sum();
+    }
+
+    /**
+     * Returns the average time jobs waited for an Employee.
+     *
+     * @return average waiting time in milliseconds
+     */
+    double getAverageWaitMillis() {
+        long completed = jobsCompleted.sum();
+        return (completed == 0) ? 0.0 : totalWaitNanos.sum() / (double) completed / 1_000_000.0;
+    }
+
+    /**
+     * Returns the longest time a job waited for an Employee.
+     *
+     * @return maximum waiting time in milliseconds
+     */
+    double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Returns the share of Employee time spent on jobs since the dispatcher started,
+     * based on the current number of Employees.
+     *
+     * @return utilization (0.0 - 1.0)
+     */
+    double getUtilization() {
+        int employees = parking.getNumberOfEmployees();
+        if (!isStarted || employees == 0) {
+            return 0.0;
+        }
+        long elapsed = System.nanoTime() - startedNanos;
+        return Math.min(1.0, busyNanos.sum() / ((double) elapsed * employees));
+    }
+
+    /**
+     * Stops dispatching once the queued jobs have been handed out and all jobs are done.
+     * Whatever is left when the time is up is interrupted (and jobs still in the queue are not carried out).
+     *
+     * @param timeoutSeconds how long to wait for the queued jobs and the jobs in progress
+     */
+    synchronized void shutdown(int timeoutSeconds) {
+        if (!isStarted) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        try {
+            while (jobsCompleted.sum() < jobsQueued.sum() && System.nanoTime() < deadline) {
+                Thread.sleep(SHUTDOWN_POLL_MILLIS);
+            }
+            executor.shutdownNow();
+            executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
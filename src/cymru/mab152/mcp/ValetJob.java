@@ -0,0 +1,158 @@
+package cymru.mab152.mcp;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A request for an Employee to park or collect a Vehicle, waiting in the ValetDispatcher's queue.
+ * Jobs of disabled Drivers go first, then the ones that have been waiting longest.
+ */
+public class ValetJob implements Comparable<ValetJob> {
+
+    /**
+     * Kinds of ValetJobs.
+     */
+    enum Kind {
+        PARK, COLLECT
+    }
+
+    private final Kind kind;
+    private final Vehicle vehicle;
+    private final String parkingSpaceId;
+    private final String parkingZoneId;
+    private final boolean isDriverDisabled;
+    private final long sequence; // breaks ties between jobs queued in the same nanosecond
+    private final long queuedNanos;
+    private volatile long startedNanos;
+    private volatile String employeeName;
+    private final CountDownLatch done;
+
+    /**
+     * The constructor for ValetJob objects.
+     *
+     * @param kind park or collect
+     * @param v the Vehicle to be parked or collected
+     * @param psId ID of the ParkingSpace the Vehicle is (or will be) parked in
+     * @param pzId ID of the ParkingZone of that ParkingSpace
+     * @param isDisabled is the Driver disabled (disabled Drivers are served first)
+     * @param sequence order in which the job was queued
+     */
+    ValetJob(Kind kind, Vehicle v, String psId, String pzId, boolean isDisabled, long sequence) {
+        this.kind = kind;
+        this.vehicle = v;
+        this.parkingSpaceId = psId;
+        this.parkingZoneId = pzId;
+        this.isDriverDisabled = isDisabled;
+        this.sequence = sequence;
+        this.queuedNanos = System.nanoTime();
+        this.done = new CountDownLatch(1);
+    }
+
+    /**
+     * Orders the jobs: disabled Drivers first, then by the time waited.
+     *
+     * @param other the other job
+     * @return comparison result
+     */
+    @Override
+    public int compareTo(ValetJob other) {
+        if (this.isDriverDisabled != other.isDriverDisabled) {
+            return this.isDriverDisabled ? -1 : 1;
+        }
+        return Long.compare(this.sequence, other.sequence);
+    }
+
+    /**
+     * Returns the kind of the job.
+     *
+     * @return park or collect
+     */
+    Kind getKind() {
+        return this.kind;
+    }
+
+    /**
+     * Returns the Vehicle to be parked or collected.
+     *
+     * @return the Vehicle
+     */
+    Vehicle getVehicle() {
+        return this.vehicle;
+    }
+
+    /**
+     * Returns the ID of the ParkingSpace the Vehicle is (or will be) parked in.
+     *
+     * @return ParkingSpace id
+     */
+    String getParkingSpaceId() {
+        return this.parkingSpaceId;
+    }
+
+    /**
+     * Returns the ID of the ParkingZone the Vehicle is (or will be) parked in.
+     *
+     * @return ParkingZone id
+     */
+    String getParkingZoneId() {
+        return this.parkingZoneId;
+    }
+
+    /**
+     * Returns the time the job was queued at (System.nanoTime()).
+     *
+     * @return time queued
+     */
+    long getQueuedNanos() {
+        return this.queuedNanos;
+    }
+
+    /**
+     * Marks the job as taken by an Employee.
+     *
+     * @param name Employee's name
+     */
+    void start(String name) {
+        this.employeeName = name;
+        this.startedNanos = System.nanoTime();
+    }
+
+    /**
+     * Marks the job as done.
+     */
+    void finish() {
+        done.countDown();
+    }
+
+    /**
+     * Returns how long the job waited for an Employee (or has been waiting so far).
+     *
+     * @return waiting time in nanoseconds
+     */
+    long getWaitNanos() {
+        long started = this.startedNanos;
+        return ((started == 0) ? System.nanoTime() : started) - queuedNanos;
+    }
+
+    /**
+     * Returns the name of the Employee who took the job.
+     *
+     * @return Employee's name or null if nobody has taken the job yet
+     */
+    String getEmployeeName() {
+        return this.employeeName;
+    }
+
+    /**
+     * Waits until the job is done.
+     *
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return TRUE if the job is done, FALSE if the time has run out
+     * @throws InterruptedException thrown if the waiting thread is interrupted
+     */
+    boolean awaitDone(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+}
@@ -12,6 +12,7 @@ public class Vehicle {
     private VehicleType type;
     private float height, length;
     private ParkingReceipt parkingReceipt; // null if not assigned
+    private volatile ParkingSpace parkingSpace; // the last ParkingSpace it has claimed, null if none
 
     // This is NOT an ID of the ParkingReceipt! It's used when loading the Vehicle
     // from the database to connect the Vehicle and the ParkingReceipt together.
@@ -68,7 +69,7 @@ public class Vehicle {
      * @return VehicleType (enum) calculated by vehicle's size
      * @throws VehicleSizeNotSupportedException thrown if the vehicle can't be fitted into any type
      */
-    private VehicleType checkType(float height, float length) throws VehicleSizeNotSupportedException {
+    static VehicleType checkType(float height, float length) throws VehicleSizeNotSupportedException {
         // Size cannot be negative or equal to 0
         if (height <= 0.0F || length <= 0.0F) {
             throw new VehicleSizeNotSupportedException();
@@ -132,15 +133,15 @@ public class Vehicle {
 
     /**
      * Parks the Vehicle in the ParkingSpace specified.
-     * Throws an exception if the ParkingSpace is already occupied.
+     * Throws an exception if the ParkingSpace is already occupied
+     * (including when another Vehicle claims it concurrently).
      *
      * @param ps the ParkingSpace you want to park the Vehicle in
      * @throws ParkingSpaceOccupiedException thrown if the ParkingSpace is already occupied
      */
     void parkIn(ParkingSpace ps) throws ParkingSpaceOccupiedException {
-        if (ps.isFree()) {
-            ps.setVehicle(this);
-        } else {
+        // Check-and-set in one atomic step, so two Vehicles can't both take the same space
+        if (!ps.claim(this)) {
             throw new ParkingSpaceOccupiedException();
         }
     }
@@ -163,6 +164,26 @@ public class Vehicle {
         this.parkingReceipt = pr;
     }
 
+    /**
+     * Returns the ParkingSpace the Vehicle has last claimed.
+     * It may have left it since, so check the ParkingSpace's Vehicle.
+     *
+     * @return the ParkingSpace or null if the Vehicle has never been parked
+     */
+    ParkingSpace getParkingSpace() {
+        return this.parkingSpace;
+    }
+
+    /**
+     * Sets the ParkingSpace the Vehicle has claimed.
+     * Called by ParkingSpace once the Vehicle is parked in it.
+     *
+     * @param ps the ParkingSpace
+     */
+    void setParkingSpace(ParkingSpace ps) {
+        this.parkingSpace = ps;
+    }
+
     /**
      * Returns Vehicle's type.
      *
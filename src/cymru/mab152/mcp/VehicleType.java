@@ -1,8 +1,39 @@
 package cymru.mab152.mcp;
 
 
+/**
+ * The types of Vehicles, each with the largest dimensions a Vehicle of the type can have.
+ * Those are used for Vehicles that arrive with only their type known (i.e. from a number-plate camera),
+ * so they are never parked in a space too small for them.
+ */
 public enum VehicleType {
 
-    STANDARD, HIGHER, LONGER, COACH, MOTORBIKE
+    STANDARD(2.0f, 5.0f), HIGHER(3.0f, 5.0f), LONGER(3.0f, 6.0f), COACH(4.0f, 15.0f), MOTORBIKE(1.5f, 2.5f);
+
+    private final float maxHeight;
+    private final float maxLength;
+
+    VehicleType(float maxHeight, float maxLength) {
+        this.maxHeight = maxHeight;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Returns the height of the highest Vehicle of the type.
+     *
+     * @return height in metres
+     */
+    float getMaxHeight() {
+        return this.maxHeight;
+    }
+
+    /**
+     * Returns the length of the longest Vehicle of the type.
+     *
+     * @return length in metres
+     */
+    float getMaxLength() {
+        return this.maxLength;
+    }
 
 }
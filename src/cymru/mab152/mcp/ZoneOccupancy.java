@@ -0,0 +1,250 @@
+package cymru.mab152.mcp;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Occupancy of one ParkingZone by VehicleType, now and over the last hour, day and week.
+ * <p>
+ * Parking and collecting only change two atomic counters. Once a minute the counters are copied
+ * into fixed-size ring buffers -- lazily, by whoever touches the zone first in a new minute, as the occupancy
+ * can't have changed without someone touching it. Every window keeps a running sum and a monotonic queue
+ * of its largest samples, so the peak, average and turnover of any window are read in O(1),
+ * without walking any ParkingSpaces. The buffers of a VehicleType are only allocated once it's first seen.
+ */
+public class ZoneOccupancy {
+
+    /**
+     * The windows the aggregates are kept for, in minutes.
+     */
+    enum Window {
+        HOUR(60), DAY(1440), WEEK(10080);
+
+        private final int minutes;
+
+        Window(int minutes) {
+            this.minutes = minutes;
+        }
+
+        /**
+         * Returns the length of the window.
+         *
+         * @return length in minutes
+         */
+        int getMinutes() {
+            return this.minutes;
+        }
+    }
+
+    // Samples kept per series -- one more than the longest window, so the running sum from just before it is kept
+    private static final int CAPACITY = Window.WEEK.minutes + 1;
+    private static final int ALL = VehicleType.values().length; // index of the series of all VehicleTypes together
+
+    private final ParkingZone parkingZone;
+    private final AtomicIntegerArray occupied; // by VehicleType.ordinal(), ALL for the total
+    private final AtomicLongArray arrivals;
+    private final Series[] series; // null until the VehicleType is first seen
+    private final long[] arrivalsBase; // arrivals that don't count, i.e. from loading the database
+    private volatile long lastMinute; // the last minute that has been sampled
+
+    /**
+     * The constructor for ZoneOccupancy objects.
+     *
+     * @param parkingZone the ParkingZone
+     */
+    ZoneOccupancy(ParkingZone parkingZone) {
+        this.parkingZone = parkingZone;
+        this.occupied = new AtomicIntegerArray(ALL + 1);
+        this.arrivals = new AtomicLongArray(ALL + 1);
+        this.series = new Series[ALL + 1];
+        this.series[ALL] = new Series(0);
+        this.arrivalsBase = new long[ALL + 1];
+        this.lastMinute = currentMinute();
+    }
+
+    /**
+     * Called when a Vehicle has been parked in the ParkingZone.
+     *
+     * @param vt the Vehicle's type
+     */
+    void onArrival(VehicleType vt) {
+        catchUp();
+        occupied.incrementAndGet(vt.ordinal());
+        occupied.incrementAndGet(ALL);
+        arrivals.incrementAndGet(vt.ordinal());
+        arrivals.incrementAndGet(ALL);
+    }
+
+    /**
+     * Called when a Vehicle has left the ParkingZone.
+     *
+     * @param vt the Vehicle's type
+     */
+    void onDeparture(VehicleType vt) {
+        catchUp();
+        occupied.decrementAndGet(vt.ordinal());
+        occupied.decrementAndGet(ALL);
+    }
+
+    /**
+     * Forgets the arrivals so far, i.e. the Vehicles parked while loading the database.
+     */
+    synchronized void resetArrivals() {
+        for (int i = 0; i <= ALL; i++) {
+            arrivalsBase[i] = arrivals.get(i);
+        }
+    }
+
+    /**
+     * Returns the number of Vehicles parked in the ParkingZone now.
+     *
+     * @param vt the VehicleType (null for all)
+     * @return number of Vehicles
+     */
+    int getOccupied(VehicleType vt) {
+        return occupied.get(index(vt));
+    }
+
+    /**
+     * Returns the aggregates of a window, up to the last full minute.
+     *
+     * @param vt the VehicleType (null for all)
+     * @param window the window
+     * @return the aggregates
+     */
+    OccupancyStats getStats(VehicleType vt, Window window) {
+        catchUp();
+        int i = index(vt);
+        synchronized (this) {
+            Series s = series[i];
+            if (s == null) {
+                return new OccupancyStats(window, occupied.get(i), 0, 0, 0, 0);
+            }
+            int samples = (int) Math.min(window.minutes, s.count);
+            long last = s.count - 1;
+            long arrived = s.cumulativeArrivals(last) - s.cumulativeArrivals(last - samples);
+            double average = (samples == 0) ? 0 : (double) (s.sum(last) - s.sum(last - samples)) / samples;
+            int spaces = parkingZone.getListOfParkingSpaces().size();
+            return new OccupancyStats(window, occupied.get(i), s.peak(window), average, arrived,
+                    (spaces == 0) ? 0 : (double) arrived / spaces);
+        }
+    }
+
+    private static int index(VehicleType vt) {
+        return (vt == null) ? ALL : vt.ordinal();
+    }
+
+    private static long currentMinute() {
+        return System.currentTimeMillis() / 60_000L;
+    }
+
+    /**
+     * Samples the counters for every minute that has ended since the last sample.
+     * The counters haven't changed since then (or the change would have sampled them), so all missed
+     * minutes get the current values.
+     */
+    private void catchUp() {
+        long minute = currentMinute();
+        if (minute == lastMinute) {
+            return;
+        }
+        synchronized (this) {
+            long missed = Math.min(minute - lastMinute, CAPACITY);
+            if (missed <= 0) {
+                return;
+            }
+            long count = series[ALL].count;
+            for (int i = 0; i <= ALL; i++) {
+                int value = occupied.get(i);
+                long arrived = arrivals.get(i) - arrivalsBase[i];
+                if (series[i] == null) {
+                    if (value == 0 && arrived == 0) {
+                        continue;
+                    }
+                    // All samples so far have been 0
+                    series[i] = new Series(count);
+                }
+                for (long m = 0; m < missed; m++) {
+                    series[i].add(value, arrived);
+                }
+            }
+            lastMinute = minute;
+        }
+    }
+
+    /**
+     * The samples of one VehicleType (or of all of them).
+     * Samples are numbered from 0; sample n is kept at n % CAPACITY.
+     */
+    private static class Series {
+        private final int[] samples = new int[CAPACITY];
+        private final long[] sums = new long[CAPACITY]; // sum of all samples up to and including this one
+        private final long[] arrived = new long[CAPACITY]; // arrivals up to the end of this sample
+        private final MaxQueue[] peaks = new MaxQueue[Window.values().length];
+        private long count;
+
+        private Series(long count) {
+            this.count = count;
+            for (Window w : Window.values()) {
+                peaks[w.ordinal()] = new MaxQueue(w.minutes);
+            }
+        }
+
+        private void add(int value, long arrivedSoFar) {
+            int slot = (int) (count % CAPACITY);
+            samples[slot] = value;
+            sums[slot] = sum(count - 1) + value;
+            arrived[slot] = arrivedSoFar;
+            for (MaxQueue peak : peaks) {
+                peak.add(count, value, samples);
+            }
+            count++;
+        }
+
+        private long sum(long n) {
+            return (n < 0) ? 0 : sums[(int) (n % CAPACITY)];
+        }
+
+        private long cumulativeArrivals(long n) {
+            return (n < 0) ? 0 : arrived[(int) (n % CAPACITY)];
+        }
+
+        private int peak(Window w) {
+            return peaks[w.ordinal()].max(samples);
+        }
+    }
+
+    /**
+     * The sample numbers of a sliding window whose values are decreasing -- the first one is the window's peak.
+     */
+    private static class MaxQueue {
+        private final int window;
+        private final long[] queue;
+        private int head;
+        private int size;
+
+        private MaxQueue(int window) {
+            this.window = window;
+            this.queue = new long[window];
+        }
+
+        private void add(long n, int value, int[] samples) {
+            // Samples smaller than the new one can never be the peak again
+            while (size > 0 && samples[(int) (queue[(head + size - 1) % window] % CAPACITY)] <= value) {
+                size--;
+            }
+            // Samples that have left the window
+            if (size > 0 && queue[head] <= n - window) {
+                head = (head + 1) % window;
+                size--;
+            }
+            queue[(head + size) % window] = n;
+            size++;
+        }
+
+        private int max(int[] samples) {
+            return (size == 0) ? 0 : samples[(int) (queue[head] % CAPACITY)];
+        }
+    }
+
+}
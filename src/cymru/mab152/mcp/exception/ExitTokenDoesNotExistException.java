@@ -0,0 +1,9 @@
+package cymru.mab152.mcp.exception;
+
+public class ExitTokenDoesNotExistException extends Throwable {
+
+    public ExitTokenDoesNotExistException() {
+        super("This token is invalid! Try again.");
+    }
+
+}
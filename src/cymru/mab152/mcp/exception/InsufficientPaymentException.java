@@ -0,0 +1,9 @@
+package cymru.mab152.mcp.exception;
+
+public class InsufficientPaymentException extends Throwable {
+
+    public InsufficientPaymentException() {
+        super("The amount paid doesn't cover the price of parking!");
+    }
+
+}
@@ -0,0 +1,10 @@
+package cymru.mab152.mcp.exception;
+
+public class InvalidCoinException extends Throwable {
+
+    public InvalidCoinException() {
+        super("That's not a valid coin!" +
+                "\nYou can insert: 20.00, 10.00, 5.00, 2.00, 1.00, 0.50, 0.20, 0.10");
+    }
+
+}
@@ -0,0 +1,9 @@
+package cymru.mab152.mcp.exception;
+
+public class InvalidTariffException extends Throwable {
+
+    public InvalidTariffException(String message) {
+        super("The tariff in the database is not valid!\n" + message);
+    }
+
+}
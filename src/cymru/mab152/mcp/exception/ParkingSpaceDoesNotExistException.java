@@ -0,0 +1,9 @@
+package cymru.mab152.mcp.exception;
+
+public class ParkingSpaceDoesNotExistException extends Throwable {
+
+    public ParkingSpaceDoesNotExistException() {
+        super("The parking space specified does not exist!");
+    }
+
+}
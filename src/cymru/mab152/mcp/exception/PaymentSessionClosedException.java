@@ -0,0 +1,10 @@
+package cymru.mab152.mcp.exception;
+
+public class PaymentSessionClosedException extends Throwable {
+
+    public PaymentSessionClosedException() {
+        super("This payment has already been finished, cancelled or has timed out." +
+                "\nStart a new payment.");
+    }
+
+}
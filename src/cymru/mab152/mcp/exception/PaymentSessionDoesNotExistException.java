@@ -0,0 +1,9 @@
+package cymru.mab152.mcp.exception;
+
+public class PaymentSessionDoesNotExistException extends Throwable {
+
+    public PaymentSessionDoesNotExistException() {
+        super("This payment doesn't exist!");
+    }
+
+}
@@ -0,0 +1,9 @@
+package cymru.mab152.mcp.exception;
+
+public class ReservationAlreadyExistsException extends Throwable {
+
+    public ReservationAlreadyExistsException() {
+        super("There is already a reservation for this license plate!");
+    }
+
+}
@@ -0,0 +1,9 @@
+package cymru.mab152.mcp.exception;
+
+public class ReservationDoesNotExistException extends Throwable {
+
+    public ReservationDoesNotExistException() {
+        super("There is no reservation for this license plate!");
+    }
+
+}
@@ -0,0 +1,9 @@
+package cymru.mab152.mcp.exception;
+
+public class VehicleTypeNotAcceptedException extends Throwable {
+
+    public VehicleTypeNotAcceptedException() {
+        super("This parking zone cannot support this type of vehicle.");
+    }
+
+}